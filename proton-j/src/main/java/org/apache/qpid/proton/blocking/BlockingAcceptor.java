@@ -0,0 +1,57 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking;
+
+import java.io.IOException;
+
+import org.apache.qpid.proton.blocking.impl.BlockingAcceptorImpl;
+
+/**
+ * Listens for incoming connections and hands each one out as a
+ * {@link BlockingConnection}, typically to a thread of its own.
+ */
+public interface BlockingAcceptor
+{
+
+    public static final class Factory
+    {
+        public static BlockingAcceptor create(String host, int port) throws IOException
+        {
+            return new BlockingAcceptorImpl(host, port);
+        }
+    }
+
+    /**
+     * Blocks until a peer connects.  The AMQP handshake is not waited for
+     * here, so that a slow peer can't hold up the accepting thread; it is
+     * completed by the first blocking call made on the returned connection.
+     */
+    BlockingConnection accept() throws IOException;
+
+    /**
+     * @return the port number the acceptor is listening on.
+     */
+    int getPort();
+
+    void close() throws IOException;
+
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking;
+
+import java.io.IOException;
+
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.blocking.impl.BlockingConnectionImpl;
+
+/**
+ * A synchronous AMQP connection, driven entirely by the threads that call
+ * its methods.
+ * <p>
+ * There is no event thread: whichever thread is blocked waiting for
+ * something to happen on the connection (link credit, a settlement, an
+ * incoming message) performs the socket I/O on behalf of every other thread
+ * waiting on the same connection.  A connection therefore costs one socket
+ * and no threads of its own, which makes it practical to give every
+ * application thread (including very cheap ones) its own connection.
+ * <p>
+ * All the methods of this interface, and of the {@link BlockingSender} and
+ * {@link BlockingReceiver} objects it creates, are thread safe.  Unless
+ * documented otherwise, methods taking a <code>timeout</code> (in
+ * milliseconds) throw {@link TimeoutException} if the operation doesn't
+ * complete in time; a negative timeout waits forever.  Methods throw
+ * {@link org.apache.qpid.proton.ProtonException} if the connection fails or
+ * is closed by the peer.
+ */
+public interface BlockingConnection
+{
+
+    public static final class Factory
+    {
+        /**
+         * Opens a connection to the given host and port, blocking until the
+         * peer has opened its end of the connection.
+         */
+        public static BlockingConnection connect(String host, int port, long timeout)
+            throws IOException, TimeoutException
+        {
+            return BlockingConnectionImpl.connect(host, port, timeout);
+        }
+    }
+
+    /**
+     * Creates a link sending to the given address, blocking until the peer
+     * has attached it.
+     */
+    BlockingSender sender(String address, long timeout) throws TimeoutException;
+
+    /**
+     * Creates a link receiving from the given address, blocking until the
+     * peer has attached it.
+     *
+     * @param credit the number of messages the peer may send ahead of them
+     *        being consumed by {@link BlockingReceiver#receive(long)}.
+     */
+    BlockingReceiver receiver(String address, int credit, long timeout) throws TimeoutException;
+
+    /**
+     * Blocks until the peer attaches a link over which it wants to send
+     * messages, and returns the local end of that link.
+     */
+    BlockingReceiver acceptReceiver(int credit, long timeout) throws TimeoutException;
+
+    /**
+     * Blocks until the peer attaches a link over which it wants to receive
+     * messages, and returns the local end of that link.
+     */
+    BlockingSender acceptSender(long timeout) throws TimeoutException;
+
+    /**
+     * @return the container id advertised by the peer.
+     */
+    String getRemoteContainer();
+
+    /**
+     * Closes the connection, waiting up to the given time for the peer to
+     * acknowledge the close, then closes the socket.
+     */
+    void close(long timeout);
+
+    boolean isClosed();
+
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking;
+
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * The receiving end of a link belonging to a {@link BlockingConnection}.
+ * Credit is replenished one message at a time as messages are received, so
+ * the peer never has more than the link's initial credit outstanding.
+ */
+public interface BlockingReceiver
+{
+
+    /**
+     * Blocks until a message arrives, then accepts and settles it.
+     * <p>
+     * The message is settled before it is returned, so delivery is at most
+     * once: the peer forgets it even if the application then fails to
+     * process it, and it won't be redelivered.
+     *
+     * @return the message, or <code>null</code> if none arrived within the
+     *         timeout or either end has closed the link.
+     */
+    Message receive(long timeout);
+
+    String getAddress();
+
+    void close(long timeout) throws TimeoutException;
+
+}
@@ -0,0 +1,48 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking;
+
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * The sending end of a link belonging to a {@link BlockingConnection}.
+ */
+public interface BlockingSender
+{
+
+    /**
+     * Sends a message, blocking until the peer has granted credit for it and
+     * has then settled it.
+     *
+     * @return the outcome (e.g. {@link org.apache.qpid.proton.amqp.messaging.Accepted})
+     *         the peer settled the message with, or <code>null</code> if the
+     *         link is pre-settled.
+     */
+    DeliveryState send(Message message, long timeout) throws TimeoutException;
+
+    String getAddress();
+
+    void close(long timeout) throws TimeoutException;
+
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.apache.qpid.proton.blocking.BlockingAcceptor;
+import org.apache.qpid.proton.blocking.BlockingConnection;
+
+public class BlockingAcceptorImpl implements BlockingAcceptor
+{
+    private final ServerSocket _serverSocket;
+
+    public BlockingAcceptorImpl(String host, int port) throws IOException
+    {
+        _serverSocket = new ServerSocket();
+        _serverSocket.setReuseAddress(true);
+        _serverSocket.bind(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public BlockingConnection accept() throws IOException
+    {
+        Socket socket = _serverSocket.accept();
+        try
+        {
+            return new BlockingConnectionImpl(socket, null);
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getPort()
+    {
+        return _serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _serverSocket.close();
+    }
+}
@@ -0,0 +1,690 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.InterruptException;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.ProtonException;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.apache.qpid.proton.blocking.BlockingConnection;
+import org.apache.qpid.proton.blocking.BlockingReceiver;
+import org.apache.qpid.proton.blocking.BlockingSender;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.TransportException;
+
+/**
+ * Drives a {@link Transport} over a blocking socket from whichever threads
+ * are waiting on the connection.
+ * <p>
+ * All engine state is guarded by a single lock.  Of the threads waiting for
+ * a condition to become true, one at a time becomes the reader: it releases
+ * the lock while blocked on the socket, then re-acquires it to feed what it
+ * read to the transport and wakes the others to re-test their conditions.
+ * Writes are done the same way, by one thread at a time outside the lock.
+ * A {@link ReentrantLock} rather than a monitor is used so that waiting
+ * threads park rather than pin their carrier on JVMs with virtual threads.
+ */
+public class BlockingConnectionImpl implements BlockingConnection
+{
+    private static final Logger _logger = Logger.getLogger("proton.blocking");
+
+    private static final EnumSet<EndpointState> UNINIT = EnumSet.of(EndpointState.UNINITIALIZED);
+    private static final EnumSet<EndpointState> ACTIVE = EnumSet.of(EndpointState.ACTIVE);
+    private static final EnumSet<EndpointState> CLOSED = EnumSet.of(EndpointState.CLOSED);
+    private static final EnumSet<EndpointState> ANY = EnumSet.allOf(EndpointState.class);
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The longest a reader blocks on the socket.  Other threads can't signal
+     * it there, so it re-tests its condition at least this often.
+     */
+    private static final long READ_POLL_INTERVAL = 100;
+
+    interface Predicate
+    {
+        boolean test();
+    }
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _stateChanged = _lock.newCondition();
+    private final Socket _socket;
+    private final InputStream _input;
+    private final OutputStream _output;
+    private final Transport _transport;
+    private final Connection _connection;
+    private final byte[] _inputBytes = new byte[IO_BUFFER_SIZE];
+    private final byte[] _outputBytes = new byte[IO_BUFFER_SIZE];
+    private boolean _reading;
+    private boolean _writing;
+    private boolean _socketClosed;
+    private ProtonException _failure;
+    private int _linkCount;
+
+    BlockingConnectionImpl(Socket socket, String hostname) throws IOException
+    {
+        _socket = socket;
+        _socket.setTcpNoDelay(true);
+        _input = socket.getInputStream();
+        _output = socket.getOutputStream();
+
+        _connection = Proton.connection();
+        _connection.setContainer(UUID.randomUUID().toString());
+        _transport = Proton.transport();
+        Sasl sasl = _transport.sasl();
+        if (hostname != null)
+        {
+            _connection.setHostname(hostname);
+            sasl.client();
+            sasl.setMechanisms("ANONYMOUS");
+        }
+        else
+        {
+            sasl.server();
+            sasl.setMechanisms("ANONYMOUS");
+            sasl.done(Sasl.SaslOutcome.PN_SASL_OK);
+        }
+        _transport.bind(_connection);
+        _connection.open();
+    }
+
+    public static BlockingConnection connect(String host, int port, long timeout)
+        throws IOException, TimeoutException
+    {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), timeout < 0 ? 0 : (int) Math.min(timeout, Integer.MAX_VALUE));
+        BlockingConnectionImpl connection = new BlockingConnectionImpl(socket, host);
+        connection.waitUntil(connection.new RemoteOpened(), timeout);
+        return connection;
+    }
+
+    @Override
+    public BlockingSender sender(String address, long timeout) throws TimeoutException
+    {
+        Sender sender;
+        _lock.lock();
+        try
+        {
+            Session session = _connection.session();
+            session.open();
+            sender = session.sender(linkName(address));
+            Target target = new Target();
+            target.setAddress(address);
+            sender.setTarget(target);
+            Source source = new Source();
+            source.setAddress(address);
+            sender.setSource(source);
+            sender.open();
+            stateChanged();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+        awaitAttach(sender, timeout);
+        return new BlockingSenderImpl(this, sender, true);
+    }
+
+    @Override
+    public BlockingReceiver receiver(String address, int credit, long timeout) throws TimeoutException
+    {
+        Receiver receiver;
+        _lock.lock();
+        try
+        {
+            Session session = _connection.session();
+            session.open();
+            receiver = session.receiver(linkName(address));
+            Source source = new Source();
+            source.setAddress(address);
+            receiver.setSource(source);
+            Target target = new Target();
+            target.setAddress(address);
+            receiver.setTarget(target);
+            receiver.open();
+            receiver.flow(credit);
+            stateChanged();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+        awaitAttach(receiver, timeout);
+        return new BlockingReceiverImpl(this, receiver, true);
+    }
+
+    @Override
+    public BlockingReceiver acceptReceiver(int credit, long timeout) throws TimeoutException
+    {
+        RemoteLinkAttached<Receiver> attached = new RemoteLinkAttached<Receiver>(Receiver.class);
+        waitUntil(attached, timeout);
+        Receiver receiver = attached.getLink();
+        _lock.lock();
+        try
+        {
+            receiver.flow(credit);
+            stateChanged();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+        return new BlockingReceiverImpl(this, receiver, false);
+    }
+
+    @Override
+    public BlockingSender acceptSender(long timeout) throws TimeoutException
+    {
+        RemoteLinkAttached<Sender> attached = new RemoteLinkAttached<Sender>(Sender.class);
+        waitUntil(attached, timeout);
+        return new BlockingSenderImpl(this, attached.getLink(), false);
+    }
+
+    @Override
+    public String getRemoteContainer()
+    {
+        _lock.lock();
+        try
+        {
+            return _connection.getRemoteContainer();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void close(long timeout)
+    {
+        _lock.lock();
+        try
+        {
+            if (_connection.getLocalState() != EndpointState.CLOSED)
+            {
+                _connection.close();
+            }
+            stateChanged();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+
+        try
+        {
+            waitUntil(new Predicate()
+            {
+                @Override
+                public boolean test()
+                {
+                    return _connection.getRemoteState() == EndpointState.CLOSED || _failure != null;
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "connection closed";
+                }
+            }, timeout);
+        }
+        catch (TimeoutException e)
+        {
+            _logger.log(Level.FINE, "Peer did not acknowledge close of " + this, e);
+        }
+        finally
+        {
+            _lock.lock();
+            try
+            {
+                closeSocket();
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        _lock.lock();
+        try
+        {
+            return _socketClosed || _connection.getLocalState() == EndpointState.CLOSED;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    ReentrantLock getLock()
+    {
+        return _lock;
+    }
+
+    /**
+     * Waits until the condition, which is always tested with the lock held,
+     * is true, performing I/O on the connection in the meantime.
+     */
+    void waitUntil(Predicate condition, long timeout) throws TimeoutException
+    {
+        final long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+
+        _lock.lock();
+        try
+        {
+            while (true)
+            {
+                processEndpoints();
+                flush();
+
+                if (condition.test())
+                {
+                    // the condition may itself have updated endpoints
+                    flush();
+                    stateChanged();
+                    return;
+                }
+                if (_failure != null)
+                {
+                    throw _failure;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= deadline)
+                {
+                    throw new TimeoutException(timeout, condition.toString());
+                }
+
+                long wait = deadline == Long.MAX_VALUE ? 0 : deadline - now;
+                long tick = _transport.tick(now);
+                if (tick != 0)
+                {
+                    long untilTick = Math.max(tick - now, 1);
+                    wait = wait == 0 ? untilTick : Math.min(wait, untilTick);
+                }
+
+                if (_reading)
+                {
+                    awaitInput(wait);
+                }
+                else
+                {
+                    read(wait);
+                }
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the threads waiting in {@link #waitUntil} to re-test their
+     * conditions, which a change made by this thread may have satisfied.
+     * Must be called with the lock held.
+     */
+    void stateChanged()
+    {
+        _stateChanged.signalAll();
+    }
+
+    /**
+     * Writes any pending output.  Must be called with the lock held, which
+     * is released while blocked on the socket so that a peer doing the same
+     * can still read what this side sent.  If another thread is already
+     * writing, this returns at once and that thread writes the output too.
+     */
+    void flush()
+    {
+        if (_writing)
+        {
+            return;
+        }
+
+        _writing = true;
+        try
+        {
+            while (!_socketClosed && _transport.pending() > 0)
+            {
+                ByteBuffer head = _transport.head().duplicate();
+                int size = Math.min(head.remaining(), _outputBytes.length);
+                head.get(_outputBytes, 0, size);
+                _transport.pop(size);
+
+                IOException failure = null;
+                _lock.unlock();
+                try
+                {
+                    _output.write(_outputBytes, 0, size);
+                }
+                catch (IOException e)
+                {
+                    failure = e;
+                }
+                finally
+                {
+                    _lock.lock();
+                }
+
+                if (failure != null)
+                {
+                    fail(failure);
+                }
+            }
+        }
+        finally
+        {
+            _writing = false;
+        }
+    }
+
+    private void read(long wait)
+    {
+        int capacity = _transport.capacity();
+        if (capacity <= 0)
+        {
+            // nothing can be read until the application consumes something
+            awaitInput(wait);
+            return;
+        }
+
+        int read;
+        IOException failure = null;
+        _reading = true;
+        _lock.unlock();
+        try
+        {
+            _socket.setSoTimeout((int) (wait == 0 ? READ_POLL_INTERVAL : Math.min(wait, READ_POLL_INTERVAL)));
+            read = _input.read(_inputBytes, 0, Math.min(capacity, _inputBytes.length));
+        }
+        catch (SocketTimeoutException e)
+        {
+            read = 0;
+        }
+        catch (IOException e)
+        {
+            read = Transport.END_OF_STREAM;
+            failure = e;
+        }
+        finally
+        {
+            _lock.lock();
+            _reading = false;
+        }
+
+        try
+        {
+            if (failure != null)
+            {
+                fail(failure);
+            }
+            else if (read == Transport.END_OF_STREAM)
+            {
+                _transport.close_tail();
+            }
+            else if (read > 0)
+            {
+                _transport.tail().put(_inputBytes, 0, read);
+                _transport.process();
+            }
+        }
+        catch (TransportException e)
+        {
+            fail(e);
+        }
+        finally
+        {
+            stateChanged();
+        }
+    }
+
+    private void awaitInput(long wait)
+    {
+        try
+        {
+            if (wait == 0)
+            {
+                _stateChanged.await();
+            }
+            else
+            {
+                _stateChanged.await(wait, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptException(e);
+        }
+    }
+
+    private void processEndpoints()
+    {
+        for (Session session = _connection.sessionHead(UNINIT, ANY); session != null; session = session.next(UNINIT, ANY))
+        {
+            session.open();
+        }
+
+        for (Link link = _connection.linkHead(ACTIVE, CLOSED); link != null; link = link.next(ACTIVE, CLOSED))
+        {
+            link.close();
+        }
+
+        for (Session session = _connection.sessionHead(ACTIVE, CLOSED); session != null; session = session.next(ACTIVE, CLOSED))
+        {
+            session.close();
+        }
+
+        if (_connection.getRemoteState() == EndpointState.CLOSED)
+        {
+            if (_connection.getLocalState() == EndpointState.ACTIVE)
+            {
+                _connection.close();
+            }
+            if (_failure == null)
+            {
+                _failure = new ProtonException("Connection closed by peer" + describe(_connection.getRemoteCondition()));
+            }
+        }
+        else if (_transport.isClosed() && _failure == null)
+        {
+            _failure = new ProtonException("Connection lost" + describe(_transport.getCondition()));
+        }
+    }
+
+    private void fail(Exception cause)
+    {
+        _logger.log(Level.FINE, "I/O failure on " + this, cause);
+        if (_failure == null)
+        {
+            _failure = new ProtonException("Connection failed: " + cause.getMessage(), cause);
+        }
+        closeSocket();
+    }
+
+    private void closeSocket()
+    {
+        if (!_socketClosed)
+        {
+            _socketClosed = true;
+            try
+            {
+                _socket.close();
+            }
+            catch (IOException e)
+            {
+                // Ignore
+            }
+            _transport.close_tail();
+            _transport.close_head();
+            stateChanged();
+        }
+    }
+
+    private void awaitAttach(final Link link, long timeout) throws TimeoutException
+    {
+        waitUntil(new Predicate()
+        {
+            @Override
+            public boolean test()
+            {
+                return link.getRemoteState() != EndpointState.UNINITIALIZED;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "link " + link.getName() + " attached";
+            }
+        }, timeout);
+
+        _lock.lock();
+        try
+        {
+            if (link.getRemoteState() == EndpointState.CLOSED ||
+                (link instanceof Sender ? link.getRemoteTarget() == null : link.getRemoteSource() == null))
+            {
+                throw new ProtonException("Link " + link.getName() + " refused by peer" + describe(link.getRemoteCondition()));
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    private String linkName(String address)
+    {
+        return address + "-" + (++_linkCount);
+    }
+
+    private static String describe(ErrorCondition condition)
+    {
+        if (condition == null || condition.getCondition() == null)
+        {
+            return "";
+        }
+        return ": " + condition.getCondition() +
+            (condition.getDescription() == null ? "" : " " + condition.getDescription());
+    }
+
+    private class RemoteOpened implements Predicate
+    {
+        @Override
+        public boolean test()
+        {
+            return _connection.getRemoteState() == EndpointState.ACTIVE;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "connection opened";
+        }
+    }
+
+    /**
+     * Finds, and opens, a link the peer has attached but the application
+     * hasn't yet accepted.  The link is claimed inside test() so that two
+     * threads accepting at the same time can't both claim it.
+     */
+    private class RemoteLinkAttached<L extends Link> implements Predicate
+    {
+        private final Class<L> _type;
+        private L _link;
+
+        RemoteLinkAttached(Class<L> type)
+        {
+            _type = type;
+        }
+
+        @Override
+        public boolean test()
+        {
+            for (Link link = _connection.linkHead(UNINIT, ACTIVE); link != null; link = link.next(UNINIT, ACTIVE))
+            {
+                if (_type.isInstance(link))
+                {
+                    if (link.getRemoteSource() != null)
+                    {
+                        link.setSource(link.getRemoteSource().copy());
+                    }
+                    if (link.getRemoteTarget() != null)
+                    {
+                        link.setTarget(link.getRemoteTarget().copy());
+                    }
+                    link.open();
+                    _link = _type.cast(link);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        L getLink()
+        {
+            return _link;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "peer attached a " + _type.getSimpleName().toLowerCase() + " link";
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BlockingConnectionImpl [" + _socket + "]";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking.impl;
+
+import org.apache.qpid.proton.ProtonException;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Session;
+
+/**
+ * State and behaviour common to {@link BlockingSenderImpl} and
+ * {@link BlockingReceiverImpl}.
+ */
+abstract class BlockingLinkImpl<L extends Link>
+{
+    protected final BlockingConnectionImpl _connection;
+    protected final L _link;
+    private final boolean _ownsSession;
+
+    /**
+     * @param ownsSession true if the link's session was created just for it,
+     *        and so should be ended along with it.
+     */
+    BlockingLinkImpl(BlockingConnectionImpl connection, L link, boolean ownsSession)
+    {
+        _connection = connection;
+        _link = link;
+        _ownsSession = ownsSession;
+    }
+
+    public void close(long timeout) throws TimeoutException
+    {
+        _connection.getLock().lock();
+        try
+        {
+            if (_link.getLocalState() != EndpointState.CLOSED)
+            {
+                _link.close();
+            }
+            _connection.stateChanged();
+        }
+        finally
+        {
+            _connection.getLock().unlock();
+        }
+
+        try
+        {
+            _connection.waitUntil(new BlockingConnectionImpl.Predicate()
+            {
+                @Override
+                public boolean test()
+                {
+                    return _link.getRemoteState() == EndpointState.CLOSED;
+                }
+
+                @Override
+                public String toString()
+                {
+                    return "link " + _link.getName() + " closed";
+                }
+            }, timeout);
+        }
+        catch (TimeoutException e)
+        {
+            throw e;
+        }
+        catch (ProtonException e)
+        {
+            // the connection has gone, and the link along with it
+        }
+
+        _connection.getLock().lock();
+        try
+        {
+            Session session = _link.getSession();
+            _link.free();
+            if (_ownsSession && session.getLocalState() == EndpointState.ACTIVE)
+            {
+                session.close();
+            }
+            _connection.flush();
+            _connection.stateChanged();
+        }
+        finally
+        {
+            _connection.getLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + " [" + _link.getName() + "]";
+    }
+}
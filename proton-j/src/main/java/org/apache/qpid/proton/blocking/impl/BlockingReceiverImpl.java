@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking.impl;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.blocking.BlockingReceiver;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.message.Message;
+
+class BlockingReceiverImpl extends BlockingLinkImpl<Receiver> implements BlockingReceiver
+{
+    BlockingReceiverImpl(BlockingConnectionImpl connection, Receiver receiver, boolean ownsSession)
+    {
+        super(connection, receiver, ownsSession);
+    }
+
+    @Override
+    public String getAddress()
+    {
+        return _link.getSource() == null ? null : _link.getSource().getAddress();
+    }
+
+    @Override
+    public Message receive(long timeout)
+    {
+        MessageAvailable available = new MessageAvailable();
+        try
+        {
+            _connection.waitUntil(available, timeout);
+        }
+        catch (TimeoutException e)
+        {
+            return null;
+        }
+
+        if (available.getEncoded() == null)
+        {
+            return null;
+        }
+
+        Message message = Proton.message();
+        message.decode(available.getEncoded(), 0, available.getEncoded().length);
+        return message;
+    }
+
+    /**
+     * Takes the next complete delivery off the link, accepting and settling
+     * it and replacing the credit it used, all with the connection lock held.
+     */
+    private class MessageAvailable implements BlockingConnectionImpl.Predicate
+    {
+        private byte[] _encoded;
+
+        @Override
+        public boolean test()
+        {
+            Delivery delivery = _link.current();
+            if (delivery != null && delivery.isReadable() && !delivery.isPartial())
+            {
+                _encoded = new byte[delivery.pending()];
+                _link.recv(_encoded, 0, _encoded.length);
+                _link.advance();
+                if (!delivery.remotelySettled())
+                {
+                    delivery.disposition(Accepted.getInstance());
+                }
+                delivery.settle();
+                _link.flow(1);
+                return true;
+            }
+
+            // nothing more will arrive once either end has detached
+            return _link.getRemoteState() == EndpointState.CLOSED || _link.getLocalState() == EndpointState.CLOSED;
+        }
+
+        byte[] getEncoded()
+        {
+            return _encoded;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "message on link " + _link.getName();
+        }
+    }
+}
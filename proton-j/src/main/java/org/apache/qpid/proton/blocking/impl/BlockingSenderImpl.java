@@ -0,0 +1,174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking.impl;
+
+import java.nio.BufferOverflowException;
+
+import org.apache.qpid.proton.ProtonException;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.amqp.transport.SenderSettleMode;
+import org.apache.qpid.proton.blocking.BlockingSender;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.message.Message;
+
+class BlockingSenderImpl extends BlockingLinkImpl<Sender> implements BlockingSender
+{
+    private long _nextTag = 1;
+
+    BlockingSenderImpl(BlockingConnectionImpl connection, Sender sender, boolean ownsSession)
+    {
+        super(connection, sender, ownsSession);
+    }
+
+    @Override
+    public String getAddress()
+    {
+        return _link.getTarget() == null ? null : _link.getTarget().getAddress();
+    }
+
+    @Override
+    public DeliveryState send(Message message, long timeout) throws TimeoutException
+    {
+        final byte[] encoded = encode(message);
+        final long deadline = timeout < 0 ? -1 : System.currentTimeMillis() + timeout;
+
+        // The delivery is created inside the credit test, with the lock held,
+        // so concurrent senders on the link never over-commit its credit.
+        final Delivery[] delivery = new Delivery[1];
+        _connection.waitUntil(new BlockingConnectionImpl.Predicate()
+        {
+            @Override
+            public boolean test()
+            {
+                checkOpen();
+                if (_link.getCredit() <= 0)
+                {
+                    return false;
+                }
+                delivery[0] = _link.delivery(String.valueOf(_nextTag++).getBytes());
+                _link.send(encoded, 0, encoded.length);
+                _link.advance();
+                if (_link.getSenderSettleMode() == SenderSettleMode.SETTLED)
+                {
+                    delivery[0].settle();
+                }
+                return true;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "credit on link " + _link.getName();
+            }
+        }, remaining(deadline));
+
+        if (delivery[0].isSettled())
+        {
+            // pre-settled: nothing more to wait for once it has been written
+            _connection.waitUntil(new Written(), remaining(deadline));
+            return null;
+        }
+
+        _connection.waitUntil(new BlockingConnectionImpl.Predicate()
+        {
+            @Override
+            public boolean test()
+            {
+                if (delivery[0].remotelySettled())
+                {
+                    return true;
+                }
+                checkOpen();
+                return false;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "settlement of delivery on link " + _link.getName();
+            }
+        }, remaining(deadline));
+
+        _connection.getLock().lock();
+        try
+        {
+            DeliveryState state = delivery[0].getRemoteState();
+            delivery[0].settle();
+            _connection.stateChanged();
+            return state;
+        }
+        finally
+        {
+            _connection.getLock().unlock();
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (_link.getRemoteState() == EndpointState.CLOSED || _link.getLocalState() == EndpointState.CLOSED)
+        {
+            throw new ProtonException("Link " + _link.getName() + " is closed");
+        }
+    }
+
+    private static byte[] encode(Message message)
+    {
+        byte[] buffer = new byte[1024];
+        while (true)
+        {
+            try
+            {
+                int encoded = message.encode(buffer, 0, buffer.length);
+                byte[] result = new byte[encoded];
+                System.arraycopy(buffer, 0, result, 0, encoded);
+                return result;
+            }
+            catch (BufferOverflowException e)
+            {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+    }
+
+    private static long remaining(long deadline)
+    {
+        return deadline < 0 ? -1 : Math.max(deadline - System.currentTimeMillis(), 0);
+    }
+
+    private class Written implements BlockingConnectionImpl.Predicate
+    {
+        @Override
+        public boolean test()
+        {
+            return _link.getQueued() == 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "messages written on link " + _link.getName();
+        }
+    }
+}
@@ -20,8 +20,11 @@ import static org.apache.qpid.proton.driver.impl.ConnectorImpl.ConnectorState.UN
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,7 +36,7 @@ import org.apache.qpid.proton.engine.Sasl;
 import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.engine.TransportException;
 
-class ConnectorImpl<C> implements Connector<C>
+class ConnectorImpl<C> implements Connector<C>, SelectorThread.Handle
 {
     private static int DEFAULT_BUFFER_SIZE = 64 * 1024;
     private static int readBufferSize = Integer.getInteger
@@ -44,6 +47,7 @@ class ConnectorImpl<C> implements Connector<C>
     enum ConnectorState {UNINITIALIZED, OPENED, EOS, CLOSED};
 
     private final DriverImpl _driver;
+    private final SelectorThread _shard;
     private final Listener<C> _listener;
     private final SocketChannel _channel;
     private final Logger _logger = Logger.getLogger("proton.driver");
@@ -51,42 +55,124 @@ class ConnectorImpl<C> implements Connector<C>
 
     private Connection _connection;
     private Transport _transport = Proton.transport();
-    private SelectionKey _key;
     private ConnectorState _state = UNINITIALIZED;
 
     private boolean _inputDone = false;
     private boolean _outputDone = false;
-    private boolean _closed = false;
+    private volatile boolean _closed = false;
+
+    private final AtomicBoolean _selected = new AtomicBoolean();
+    private volatile boolean _readAllowed = false;
+
+    // the interest set wanted by the caller, and the one last handed to the shard
+    private int _ops = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+    private volatile int _interest;
+    private volatile boolean _armed = false;
+    private final AtomicBoolean _updatePending = new AtomicBoolean();
 
-    private boolean _selected = false;
-    private boolean _readAllowed = false;
+    // only touched on the selector thread
+    private SelectionKey _key;
 
-    ConnectorImpl(DriverImpl driver, Listener<C> listener, SocketChannel c, C context, SelectionKey key)
+    ConnectorImpl(DriverImpl driver, SelectorThread shard, Listener<C> listener, SocketChannel c, C context)
     {
         _driver = driver;
+        _shard = shard;
         _listener = listener;
         _channel = c;
         _context = context;
-        _key = key;
+    }
+
+    void register()
+    {
+        if (_channel.isConnectionPending())
+        {
+            _ops = SelectionKey.OP_CONNECT;
+        }
+        _shard.attached();
+        rearm();
+    }
+
+    public void apply(Selector selector) throws IOException
+    {
+        _updatePending.set(false);
+        if (_closed) return;
+        try
+        {
+            if (_key == null)
+            {
+                _key = _channel.register(selector, _interest, this);
+            }
+            else
+            {
+                _key.interestOps(_interest);
+            }
+            _armed = true;
+        }
+        catch (ClosedChannelException e)
+        {
+            // closed before the shard got to it
+        }
+    }
+
+    public void ready()
+    {
+        _armed = false;
+        selected();
     }
 
     void selected()
     {
-        if (!_selected) {
-            _selected = true;
-            _driver.selectConnector(this);
+        if (_selected.compareAndSet(false, true)) {
             _readAllowed = true;
+            _driver.selectConnector(this);
         }
     }
 
     void unselected()
     {
-        _selected = false;
+        _selected.set(false);
+    }
+
+    /**
+     * Hands the wanted interest set to the shard, unless it is already in
+     * effect.
+     */
+    private void rearm()
+    {
+        if (_ops != _interest || !_armed)
+        {
+            _interest = _ops;
+            if (_updatePending.compareAndSet(false, true))
+            {
+                _shard.update(this);
+            }
+        }
     }
 
     public boolean process() throws IOException
     {
-        if (isClosed() || !_channel.finishConnect()) return false;
+        if (isClosed()) return false;
+        boolean connected;
+        try
+        {
+            connected = _channel.finishConnect();
+        }
+        catch (IOException e)
+        {
+            // the connection attempt failed, so the connector is done with
+            close();
+            throw e;
+        }
+        if (!connected)
+        {
+            _ops = SelectionKey.OP_CONNECT;
+            rearm();
+            return false;
+        }
+        if (_ops == SelectionKey.OP_CONNECT)
+        {
+            _ops = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        }
 
         boolean processed = false;
         if (!_inputDone)
@@ -107,6 +193,10 @@ class ConnectorImpl<C> implements Connector<C>
         {
             close();
         }
+        else
+        {
+            rearm();
+        }
 
         return processed;
     }
@@ -117,7 +207,7 @@ class ConnectorImpl<C> implements Connector<C>
         _readAllowed = false;
         boolean processed = false;
 
-        int interest = _key.interestOps();
+        int interest = _ops;
         int capacity = _transport.capacity();
         if (capacity == Transport.END_OF_STREAM)
         {
@@ -149,7 +239,7 @@ class ConnectorImpl<C> implements Connector<C>
                 _inputDone = true;
             }
         }
-        _key.interestOps(interest);
+        _ops = interest;
 
         return processed;
     }
@@ -158,7 +248,7 @@ class ConnectorImpl<C> implements Connector<C>
     {
         boolean processed = false;
 
-        int interest = _key.interestOps();
+        int interest = _ops;
         boolean writeBlocked = false;
 
         try {
@@ -190,7 +280,7 @@ class ConnectorImpl<C> implements Connector<C>
             _outputDone = true;
         }
 
-        _key.interestOps(interest);
+        _ops = interest;
 
         return processed;
     }
@@ -253,6 +343,9 @@ class ConnectorImpl<C> implements Connector<C>
             finally
             {
                 _closed = true;
+                _shard.detached();
+                // let the shard deregister the key so the socket is released
+                _shard.update(this);
                 selected();
             }
         }
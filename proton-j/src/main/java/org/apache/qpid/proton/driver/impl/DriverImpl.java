@@ -25,93 +25,129 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayDeque;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Queue;
-import java.util.logging.Level;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 import org.apache.qpid.proton.driver.Connector;
 import org.apache.qpid.proton.driver.Driver;
 import org.apache.qpid.proton.driver.Listener;
 
+/**
+ * A driver that spreads its channels across several selector threads.
+ *
+ * Each {@link SelectorThread} waits on its own selector and hands ready
+ * listeners and connectors to the driver through lock-free queues. All
+ * engine work still happens on the thread calling {@link #doWait(long)},
+ * {@link #listener()} and {@link #connector()}; the selector threads never
+ * touch a transport.
+ *
+ * The number of selector threads defaults to the number of processors, up
+ * to four, and may be set with the {@code pn.driver_selectors} system
+ * property.
+ */
 public class DriverImpl implements Driver
 {
-    private Selector _selector;
-    private Collection<Listener> _listeners = new LinkedList();
-    private Collection<Connector> _connectors = new LinkedList();
-    private Logger _logger = Logger.getLogger("proton.driver");
-    private Object _wakeupLock = new Object();
-    private boolean _woken = false;
-    private Queue<ConnectorImpl> _selectedConnectors = new ArrayDeque<ConnectorImpl>();
-    private Queue<ListenerImpl> _selectedListeners = new ArrayDeque<ListenerImpl>();
+    private static final int DEFAULT_SELECTORS =
+        Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int SELECTORS = Integer.getInteger
+        ("pn.driver_selectors", DEFAULT_SELECTORS);
+
+    private final SelectorThread[] _shards;
+    private final Set<Listener> _listeners =
+        Collections.newSetFromMap(new ConcurrentHashMap<Listener, Boolean>());
+    private final Set<Connector> _connectors =
+        Collections.newSetFromMap(new ConcurrentHashMap<Connector, Boolean>());
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final AtomicBoolean _woken = new AtomicBoolean();
+    private volatile Thread _waiter;
+    private final Queue<ConnectorImpl> _selectedConnectors = new ConcurrentLinkedQueue<ConnectorImpl>();
+    private final Queue<ListenerImpl> _selectedListeners = new ConcurrentLinkedQueue<ListenerImpl>();
 
     public DriverImpl() throws IOException
     {
-        _selector = Selector.open();
+        this(SELECTORS);
     }
 
-    public void wakeup()
+    public DriverImpl(int selectors) throws IOException
     {
-        synchronized (_wakeupLock) {
-            _woken = true;
+        if (selectors < 1)
+        {
+            throw new IllegalArgumentException("selectors must be positive: " + selectors);
         }
-        _selector.wakeup();
+        _shards = new SelectorThread[selectors];
+        for (int i = 0; i < selectors; i++)
+        {
+            _shards[i] = new SelectorThread("proton-driver-selector-" + i);
+        }
+        for (SelectorThread shard : _shards)
+        {
+            shard.start();
+        }
+    }
+
+    public void wakeup()
+    {
+        _woken.set(true);
+        signal();
     }
 
     public boolean doWait(long timeout)
     {
-        try
+        if (timeout != 0 && !ready())
         {
-            boolean woken;
-            synchronized (_wakeupLock) {
-                woken = _woken;
-            }
-
-            if (woken || timeout == 0) {
-                _selector.selectNow();
-            } else if (timeout < 0) {
-                _selector.select();
-            } else {
-                _selector.select(timeout);
-            }
-
-            synchronized (_wakeupLock) {
-                woken = woken || _woken;
-                _woken = false;
-            }
-
-            for (SelectionKey key : _selector.selectedKeys()) {
-                if (key.isAcceptable()) {
-                    ListenerImpl l = (ListenerImpl) key.attachment();
-                    l.selected();
-                } else {
-                    ConnectorImpl c = (ConnectorImpl) key.attachment();
-                    c.selected();
+            _waiter = Thread.currentThread();
+            try
+            {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (!ready())
+                {
+                    if (timeout < 0)
+                    {
+                        LockSupport.park(this);
+                    }
+                    else
+                    {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) break;
+                        LockSupport.parkNanos(this, remaining);
+                    }
                 }
             }
+            finally
+            {
+                _waiter = null;
+            }
+        }
+        return _woken.getAndSet(false);
+    }
 
-            _selector.selectedKeys().clear();
+    private boolean ready()
+    {
+        return _woken.get() || !_selectedConnectors.isEmpty() || !_selectedListeners.isEmpty();
+    }
 
-            return woken;
-        }
-        catch (IOException e)
+    private void signal()
+    {
+        Thread waiter = _waiter;
+        if (waiter != null)
         {
-            _logger.log(Level.SEVERE, "Exception when waiting for IO Event",e);
-            throw new RuntimeException(e);
+            LockSupport.unpark(waiter);
         }
     }
 
     void selectListener(ListenerImpl l)
     {
         _selectedListeners.add(l);
+        signal();
     }
 
     public Listener listener()
@@ -127,6 +163,7 @@ public class DriverImpl implements Driver
     void selectConnector(ConnectorImpl c)
     {
         _selectedConnectors.add(c);
+        signal();
     }
 
     public Connector connector()
@@ -140,14 +177,9 @@ public class DriverImpl implements Driver
 
     public void destroy()
     {
-        try
-        {
-            _selector.close();
-        }
-        catch (IOException e)
+        for (SelectorThread shard : _shards)
         {
-            _logger.log(Level.SEVERE, "Exception when closing selector",e);
-            throw new RuntimeException(e);
+            shard.stop();
         }
         _listeners.clear();
         _connectors.clear();
@@ -179,10 +211,9 @@ public class DriverImpl implements Driver
 
     public <C> Listener<C> createListener(ServerSocketChannel c, C context)
     {
-        Listener<C> l = new ListenerImpl<C>(this, c, context);
-        SelectionKey key = registerInterest(c,SelectionKey.OP_ACCEPT);
-        key.attach(l);
+        ListenerImpl<C> l = new ListenerImpl<C>(this, shard(), c, context);
         _listeners.add(l);
+        l.register();
         return l;
     }
 
@@ -207,11 +238,7 @@ public class DriverImpl implements Driver
 
     public <C> Connector<C> createConnector(SelectableChannel c, C context)
     {
-        SelectionKey key = registerInterest(c, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-        Connector<C> co = new ConnectorImpl<C>(this, null, (SocketChannel)c, context, key);
-        key.attach(co);
-        _connectors.add(co);
-        return co;
+        return createConnector(c, context, null);
     }
 
     public <C> void removeConnector(Connector<C> c)
@@ -231,23 +258,30 @@ public class DriverImpl implements Driver
 
     protected <C> Connector<C> createServerConnector(SelectableChannel c, C context, Listener<C> l)
     {
-        SelectionKey key = registerInterest(c, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-        Connector<C> co = new ConnectorImpl<C>(this, l, (SocketChannel)c, context, key);
-        key.attach(co);
+        return createConnector(c, context, l);
+    }
+
+    private <C> Connector<C> createConnector(SelectableChannel c, C context, Listener<C> l)
+    {
+        ConnectorImpl<C> co = new ConnectorImpl<C>(this, shard(), l, (SocketChannel)c, context);
         _connectors.add(co);
+        co.register();
         return co;
     }
 
-    private <C> SelectionKey registerInterest(SelectableChannel c, int opKeys)
+    /**
+     * Picks the least loaded shard for a new channel.
+     */
+    private SelectorThread shard()
     {
-        try
+        SelectorThread shard = _shards[0];
+        for (int i = 1; i < _shards.length; i++)
         {
-            return c.register(_selector, opKeys);
-        }
-        catch (ClosedChannelException e)
-        {
-            e.printStackTrace();  // TODO - Implement
-            throw new RuntimeException(e);
+            if (_shards[i].getLoad() < shard.getLoad())
+            {
+                shard = _shards[i];
+            }
         }
+        return shard;
     }
 }
@@ -21,40 +21,74 @@
 package org.apache.qpid.proton.driver.impl;
 
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.qpid.proton.driver.Connector;
 import org.apache.qpid.proton.driver.Listener;
 
-class ListenerImpl<C> implements Listener<C>
+class ListenerImpl<C> implements Listener<C>, SelectorThread.Handle
 {
     private C _context;
     private final ServerSocketChannel _channel;
     private final DriverImpl _driver;
+    private final SelectorThread _shard;
     private final Logger _logger = Logger.getLogger("proton.driver");
-    private boolean _selected = false;
+    private final AtomicBoolean _selected = new AtomicBoolean();
 
-    ListenerImpl(DriverImpl driver, ServerSocketChannel c, C context)
+    // only touched on the selector thread
+    private SelectionKey _key;
+
+    ListenerImpl(DriverImpl driver, SelectorThread shard, ServerSocketChannel c, C context)
     {
         _driver = driver;
+        _shard = shard;
         _channel = c;
         _context = context;
     }
 
-    void selected()
+    void register()
+    {
+        _shard.attached();
+        _shard.update(this);
+    }
+
+    public void apply(Selector selector) throws IOException
+    {
+        if (!_channel.isOpen()) return;
+        try
+        {
+            if (_key == null)
+            {
+                _key = _channel.register(selector, SelectionKey.OP_ACCEPT, this);
+            }
+            else
+            {
+                _key.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+        catch (ClosedChannelException e)
+        {
+            // closed before the shard got to it
+        }
+    }
+
+    public void ready()
     {
-        if (!_selected) {
-            _selected = true;
+        if (_selected.compareAndSet(false, true)) {
             _driver.selectListener(this);
         }
     }
 
     void unselected()
     {
-        _selected = false;
+        _selected.set(false);
     }
 
     public Connector<C> accept()
@@ -62,6 +96,8 @@ class ListenerImpl<C> implements Listener<C>
         try
         {
             SocketChannel c = _channel.accept();
+            // listen again; any further pending connections will select it
+            _shard.update(this);
             if(c != null)
             {
                 c.configureBlocking(false);
@@ -87,6 +123,11 @@ class ListenerImpl<C> implements Listener<C>
 
     public void close() throws IOException
     {
-        _channel.socket().close();
+        if (_channel.isOpen())
+        {
+            _channel.socket().close();
+            _shard.detached();
+            _shard.update(this);
+        }
     }
 }
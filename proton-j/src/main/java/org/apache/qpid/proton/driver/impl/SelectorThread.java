@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One shard of a {@link DriverImpl}: a selector and the daemon thread that
+ * waits on it.
+ *
+ * Keys are only ever registered and re-armed on the selector thread, so the
+ * caller never contends with a blocked select. When a key becomes ready its
+ * interest is cleared and its handle is passed to the driver; the handle asks
+ * for its interest to be restored once the caller has serviced it.
+ */
+class SelectorThread implements Runnable
+{
+    /**
+     * A channel owned by a shard.
+     */
+    interface Handle
+    {
+        /**
+         * Called on the selector thread to register the channel or restore
+         * its interest set.
+         */
+        void apply(Selector selector) throws IOException;
+
+        /**
+         * Called on the selector thread when the channel is ready. Its
+         * interest set has already been cleared.
+         */
+        void ready();
+    }
+
+    private final Selector _selector;
+    private final Queue<Handle> _updates = new ConcurrentLinkedQueue<Handle>();
+    private final AtomicInteger _load = new AtomicInteger();
+    private final Logger _logger = Logger.getLogger("proton.driver");
+    private final Thread _thread;
+    private volatile boolean _running = true;
+
+    SelectorThread(String name) throws IOException
+    {
+        _selector = Selector.open();
+        _thread = new Thread(this, name);
+        _thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        _thread.start();
+    }
+
+    /**
+     * Queues the handle to have {@link Handle#apply(Selector)} called on the
+     * selector thread.
+     */
+    void update(Handle handle)
+    {
+        _updates.add(handle);
+        _selector.wakeup();
+    }
+
+    int getLoad()
+    {
+        return _load.get();
+    }
+
+    void attached()
+    {
+        _load.incrementAndGet();
+    }
+
+    void detached()
+    {
+        _load.decrementAndGet();
+    }
+
+    void stop()
+    {
+        _running = false;
+        _selector.wakeup();
+        if (Thread.currentThread() != _thread)
+        {
+            try
+            {
+                _thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (_running)
+            {
+                for (Handle handle = _updates.poll(); handle != null; handle = _updates.poll())
+                {
+                    try
+                    {
+                        handle.apply(_selector);
+                    }
+                    catch (CancelledKeyException e)
+                    {
+                        // the channel was closed under us; nothing to restore
+                    }
+                    catch (IOException e)
+                    {
+                        _logger.log(Level.SEVERE, "Exception when registering channel", e);
+                    }
+                }
+
+                _selector.select();
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try
+                    {
+                        key.interestOps(0);
+                    }
+                    catch (CancelledKeyException e)
+                    {
+                        // still hand it over so a closed connector is noticed
+                    }
+                    ((Handle) key.attachment()).ready();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            _logger.log(Level.SEVERE, "Exception when waiting for IO Event", e);
+        }
+        finally
+        {
+            try
+            {
+                _selector.close();
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Exception when closing selector", e);
+            }
+        }
+    }
+}
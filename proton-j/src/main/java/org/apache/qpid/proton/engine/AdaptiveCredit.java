@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine;
+
+
+/**
+ * AdaptiveCredit
+ *
+ * Sizes the credit window of a receiver from what its consumer actually
+ * does, rather than from a fixed number of messages.
+ *
+ * The owner reports, as often as it likes, how many messages have been
+ * delivered and consumed so far, how much credit is outstanding and how
+ * many bytes are waiting to be consumed. Each time the consumer has taken
+ * about half a window, or a second has passed, the window is adjusted in
+ * AIMD fashion:
+ * <ul>
+ * <li>it is halved if the buffered bytes exceed the byte budget, or if
+ *     the time a message waits to be consumed, estimated from the buffered
+ *     count and the consume rate, exceeds the target latency;</li>
+ * <li>otherwise it grows if the consumer ran out of messages during the
+ *     period, doubling until the first cut and by an eighth after;</li>
+ * <li>it is always capped so that a window of average sized messages fits
+ *     the byte budget.</li>
+ * </ul>
+ * Starting from a small window and letting it grow keeps a consumer of
+ * large messages from being flooded before anything is known about it.
+ *
+ * Instances are not thread-safe.
+ */
+public class AdaptiveCredit
+{
+    public static final long DEFAULT_TARGET_LATENCY = 100;
+
+    // the longest a period runs, in milliseconds, once something is consumed
+    private static final long MAX_PERIOD = 1000;
+
+    private final int _min;
+    private final int _max;
+    private int _window;
+    private long _byteBudget = 0;
+    private long _targetLatency = DEFAULT_TARGET_LATENCY;
+    private boolean _slowStart = true;
+
+    // the period being measured
+    private long _periodStart = -1;
+    private long _periodConsumed;
+    private boolean _starved;
+
+    // smoothed observations
+    private double _rate;       // messages consumed per millisecond
+    private double _size;       // bytes per buffered message
+
+    private long _buffered;
+    private long _bufferedBytes;
+    private int _outstanding;
+
+    public AdaptiveCredit(int min, int initial, int max)
+    {
+        if (min < 1 || initial < min || max < initial)
+        {
+            throw new IllegalArgumentException("require 1 <= min <= initial <= max: "
+                                               + min + ", " + initial + ", " + max);
+        }
+        _min = min;
+        _window = initial;
+        _max = max;
+    }
+
+    public int getWindow()
+    {
+        return _window;
+    }
+
+    public int getMinWindow()
+    {
+        return _min;
+    }
+
+    public int getMaxWindow()
+    {
+        return _max;
+    }
+
+    public long getByteBudget()
+    {
+        return _byteBudget;
+    }
+
+    /**
+     * Caps the bytes that may be buffered for the consumer. Zero means no
+     * cap.
+     */
+    public void setByteBudget(long bytes)
+    {
+        _byteBudget = bytes;
+    }
+
+    public long getTargetLatency()
+    {
+        return _targetLatency;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a message should wait to be consumed.
+     * Zero disables the latency check.
+     */
+    public void setTargetLatency(long millis)
+    {
+        _targetLatency = millis;
+    }
+
+    /**
+     * Consume rate in messages per second, as last measured.
+     */
+    public double getConsumeRate()
+    {
+        return _rate * 1000;
+    }
+
+    /**
+     * @param delivered total messages delivered to the consumer's buffer
+     * @param consumed total messages taken from it by the consumer
+     * @param outstanding credit granted for messages not yet delivered
+     * @param bufferedBytes bytes currently buffered for the consumer
+     * @param now the current time in milliseconds
+     */
+    public void update(long delivered, long consumed, int outstanding, long bufferedBytes, long now)
+    {
+        _buffered = Math.max(0, delivered - consumed);
+        _bufferedBytes = bufferedBytes;
+        _outstanding = Math.max(0, outstanding);
+        if (_buffered > 0)
+        {
+            _size = smooth(_size, (double) bufferedBytes / _buffered);
+            capToBudget();
+        }
+        if (_periodStart < 0)
+        {
+            startPeriod(consumed, now);
+            return;
+        }
+        if (_buffered == 0)
+        {
+            _starved = true;
+        }
+
+        long taken = consumed - _periodConsumed;
+        if (taken < Math.max(1, _window / 2) && (taken == 0 || now - _periodStart < MAX_PERIOD)) return;
+
+        long elapsed = Math.max(1, now - _periodStart);
+        _rate = smooth(_rate, (double) taken / elapsed);
+
+        if (overBudget() || (_targetLatency > 0 && _buffered > _rate * _targetLatency))
+        {
+            _window = Math.max(_min, _window / 2);
+            _slowStart = false;
+        }
+        else if (_starved)
+        {
+            _window = (int) Math.min(_max, _slowStart ? 2L * _window : _window + Math.max(1, _window / 8));
+        }
+        capToBudget();
+
+        startPeriod(consumed, now);
+    }
+
+    private void capToBudget()
+    {
+        if (_byteBudget > 0 && _size > 0)
+        {
+            _window = (int) Math.max(_min, Math.min(_window, _byteBudget / _size));
+        }
+    }
+
+    private boolean overBudget()
+    {
+        return _byteBudget > 0 && _bufferedBytes > _byteBudget;
+    }
+
+    private void startPeriod(long consumed, long now)
+    {
+        _periodStart = now;
+        _periodConsumed = consumed;
+        _starved = false;
+    }
+
+    private static double smooth(double average, double sample)
+    {
+        return average == 0 ? sample : average * 0.75 + sample * 0.25;
+    }
+
+    /**
+     * How much more credit to grant so that, as of the last update,
+     * outstanding credit plus buffered messages fill the window. Nothing is
+     * granted while the byte budget is exceeded.
+     */
+    public int credit()
+    {
+        if (overBudget()) return 0;
+        long more = _window - _outstanding - _buffered;
+        return more > 0 ? (int) more : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AdaptiveCredit [window=" + _window + ", outstanding=" + _outstanding
+            + ", buffered=" + _buffered
+            + ", bufferedBytes=" + _bufferedBytes + ", rate=" + getConsumeRate() + "/s]";
+    }
+}
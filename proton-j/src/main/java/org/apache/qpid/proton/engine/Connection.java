@@ -123,6 +123,25 @@ public interface Connection extends Endpoint, ReactorChild
 
     void setProperties(Map<Symbol,Object> properties);
 
+    /**
+     * Bounds the bytes buffered across all sessions of this connection.
+     *
+     * Each session's incoming window is narrowed so that the bytes already
+     * buffered plus the windows offered by every session stay within this
+     * capacity.  As with {@link Session#setIncomingCapacity(int)} the bound
+     * is only enforced when the transport has a max frame size set.
+     *
+     * @param bytes the capacity, or 0 (the default) for no connection wide limit
+     */
+    void setIncomingCapacity(int bytes);
+
+    int getIncomingCapacity();
+
+    /**
+     * @return the bytes received on this connection and not yet consumed
+     */
+    int getIncomingBytes();
+
     @Override
     Object getContext();
 
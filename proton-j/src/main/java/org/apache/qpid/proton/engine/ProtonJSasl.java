@@ -0,0 +1,65 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine;
+
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+
+/**
+ * Extends {@link Sasl} with functionality that is specific to proton-j
+ */
+public interface ProtonJSasl extends Sasl
+{
+    /**
+     * Makes this the server side of the exchange, offering the given mechanisms in order of
+     * preference and using the one the client selects to authenticate it.  The exchange is then
+     * carried out without the application calling {@link #recv(byte[], int, int)},
+     * {@link #send(byte[], int, int)} or {@link #done(SaslOutcome)}.
+     */
+    void setServerMechanisms(SaslServerMechanism... mechanisms);
+
+    /**
+     * Makes this the client side of the exchange, using the first of the given mechanisms that
+     * the server offers to authenticate with it.  If the server offers none of them, or does not
+     * authenticate itself as the mechanism requires, the transport is closed with an error.
+     */
+    void setClientMechanisms(SaslClientMechanism... mechanisms);
+
+    /**
+     * @return on the server, the user that a mechanism installed by
+     *         {@link #setServerMechanisms(SaslServerMechanism...)} authenticated, or null.
+     */
+    String getAuthenticatedUser();
+
+    /**
+     * Makes the client send the AMQP header, and whatever AMQP frames the connection has ready,
+     * straight after its init, in the same write, rather than waiting for the outcome, saving a
+     * round trip when connecting.  The client must choose its mechanism without seeing those the
+     * server offers, either using {@link #setMechanisms(String...)} or, with
+     * {@link #setClientMechanisms(SaslClientMechanism...)}, taking the first given.  The
+     * mechanism must complete with its initial response, as ANONYMOUS, PLAIN and EXTERNAL do; a
+     * challenge from the server fails the exchange.
+     */
+    void setPipelined(boolean pipelined);
+
+    boolean isPipelined();
+}
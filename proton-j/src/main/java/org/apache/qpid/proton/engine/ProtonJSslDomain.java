@@ -18,6 +18,8 @@
  */
 package org.apache.qpid.proton.engine;
 
+import java.util.concurrent.Executor;
+
 import org.apache.qpid.proton.engine.SslDomain;
 
 /**
@@ -25,5 +27,45 @@ import org.apache.qpid.proton.engine.SslDomain;
  */
 public interface ProtonJSslDomain extends SslDomain
 {
+    /**
+     * Selects the {@link SslContextProvider} whose
+     * SSL engine implementation is used for this domain.
+     *
+     * @param name the name of the provider, or null (the default) to use the provider selected
+     *        by the <code>proton.ssl_provider</code> system property, or failing that the first
+     *        available one.
+     */
+    void setSslContextProvider(String name);
+
+    String getSslContextProvider();
+
+    /**
+     * Runs the delegated tasks of SSL handshakes, which include their expensive key exchange and
+     * certificate checks, on the given executor rather than on the thread driving the transport.
+     * The transport's input and output wait while the tasks run.  A transport driven by a reactor
+     * is resumed on the reactor thread once they complete; any other is resumed when its capacity
+     * is next checked.
+     * <p>
+     * A bounded pool, for example from {@link java.util.concurrent.Executors#newFixedThreadPool(int)},
+     * limits the threads used during a burst of connections.  Tasks that the executor rejects
+     * are run on the calling thread.
+     *
+     * @param executor the executor, or null (the default) to run the tasks on the calling thread.
+     */
+    void setDelegatedTaskExecutor(Executor executor);
+
+    Executor getDelegatedTaskExecutor();
+
+    /**
+     * Permit small outgoing frames to be coalesced into fuller SSL/TLS records.
+     *
+     * When enabled, output that would not fill a record is held back while previously
+     * encrypted output is still waiting to be written, and is then encrypted together with
+     * any output produced meanwhile. This reduces the number of records (and so the per-record
+     * overhead) for chatty workloads, at the cost of delaying small frames by up to the time
+     * taken to write the preceding output. This option is disabled by default.
+     */
+    void coalesceRecords(boolean coalesce);
 
+    boolean coalesceRecords();
 }
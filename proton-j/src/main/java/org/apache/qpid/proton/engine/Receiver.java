@@ -61,6 +61,30 @@ public interface Receiver extends Link
 
     public void drain(int credit);
 
+    /**
+     * Bounds the bytes this receiver may buffer.
+     *
+     * Credit granted by {@link #flow(int)} is only issued to the peer as the
+     * remaining capacity allows, judged by the average size of the deliveries
+     * received so far, and the rest is released as the application consumes
+     * data with {@link #recv(byte[], int, int)} and {@link #advance()}.  At
+     * least one credit is always issued while nothing is buffered, so a single
+     * delivery may exceed the capacity.  For a hard limit regardless of
+     * message size, bound the session or connection with
+     * {@link Session#setIncomingCapacity(int)} or
+     * {@link Connection#setIncomingCapacity(int)}.
+     *
+     * @param bytes the capacity, or 0 (the default) for no limit
+     */
+    public void setIncomingCapacity(int bytes);
+
+    public int getIncomingCapacity();
+
+    /**
+     * @return the bytes received on this link and not yet consumed
+     */
+    public int getIncomingBytes();
+
     /**
      * {@inheritDoc}
      *
@@ -50,6 +50,22 @@ public interface Session extends Endpoint
 
     public int getIncomingBytes();
 
+    /**
+     * Lets the incoming window follow the bandwidth-delay product of the path
+     * to the peer instead of offering the whole incoming capacity.
+     *
+     * While transfers arrive the round trip is measured with flows that set
+     * echo, and the window grows while the peer is found waiting on it and
+     * shrinks when it is well beyond what the measured rate needs.  The
+     * incoming capacity becomes the ceiling, so it may be set generously for
+     * high latency links.  A peer that does not answer echo is offered the
+     * full capacity.  Like the incoming capacity itself, tuning only applies
+     * when the transport has a max frame size set.
+     */
+    public void setIncomingWindowAutoTuning(boolean enabled);
+
+    public boolean isIncomingWindowAutoTuning();
+
     public int getOutgoingBytes();
 
     public long getOutgoingWindow();
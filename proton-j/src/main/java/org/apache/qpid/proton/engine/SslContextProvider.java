@@ -0,0 +1,62 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ServiceLoader;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Supplies the {@link SSLContext} implementation from which the SSL engines of proton transports
+ * are created, allowing an alternative {@link javax.net.ssl.SSLEngine} implementation (for
+ * example one backed by a native TLS library) to be used in place of the JDK's.
+ * <p>
+ * Implementations are discovered using {@link ServiceLoader}, by listing them in a
+ * <code>META-INF/services/org.apache.qpid.proton.engine.SslContextProvider</code>
+ * resource, and must have a public no-argument constructor.  When one or more of them is
+ * available it is used by default in preference to the JDK's; otherwise a provider can be
+ * selected by name with the <code>proton.ssl_provider</code> system property or
+ * {@link ProtonJSslDomain#setSslContextProvider(String)}.
+ *
+ * @see org.apache.qpid.proton.engine.impl.ssl.SslContextProviders
+ */
+public interface SslContextProvider
+{
+    /**
+     * @return the name used to select this provider.
+     */
+    String getName();
+
+    /**
+     * @return whether this provider can currently be used, for example whether the native
+     *         library it depends on has been loaded.
+     */
+    boolean isAvailable();
+
+    /**
+     * @param protocol the standard name of the protocol, e.g. "TLS".
+     * @return a new, uninitialised, {@link SSLContext}.  It will be initialised with the key and
+     *         trust managers for the domain it is created for.
+     */
+    SSLContext createSslContext(String protocol) throws NoSuchAlgorithmException;
+}
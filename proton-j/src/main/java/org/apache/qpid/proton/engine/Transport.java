@@ -99,6 +99,16 @@ public interface Transport extends Endpoint
 
     public int pending();
     public ByteBuffer head();
+
+    /**
+     * Returns the transport's pending output as a sequence of buffers, for use
+     * with a gathering write such as
+     * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}.
+     * The total number of bytes written from the returned buffers should then
+     * be passed to {@link #pop(int)}.  As with {@link #head()}, the returned
+     * buffers must not be used after the call to {@link #pop(int)}.
+     */
+    public ByteBuffer[] heads();
     public void pop(int bytes);
     public void close_head();
 
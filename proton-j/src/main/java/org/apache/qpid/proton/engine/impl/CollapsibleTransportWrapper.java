@@ -0,0 +1,44 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl;
+
+/**
+ * A {@link TransportWrapper} that, once its part in the connection is over, such as a completed
+ * handshake, passes all bytes straight through to the layers beneath it.  The layers above can
+ * then call those directly, removing it from the stack, using
+ * {@link TransportWrappers#collapse(TransportInput)} and
+ * {@link TransportWrappers#collapse(TransportOutput)}.
+ */
+public interface CollapsibleTransportWrapper extends TransportWrapper
+{
+    /**
+     * @return the input to call in place of this wrapper, or null while this wrapper is still
+     *         needed on the input side.
+     */
+    TransportInput getCollapsedInput();
+
+    /**
+     * @return the output to call in place of this wrapper, or null while this wrapper is still
+     *         needed on the output side.
+     */
+    TransportOutput getCollapsedOutput();
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
 import org.apache.qpid.proton.amqp.transport.Open;
 import org.apache.qpid.proton.engine.Collector;
 import org.apache.qpid.proton.engine.EndpointState;
@@ -70,6 +71,8 @@ public class ConnectionImpl extends EndpointImpl implements ProtonJConnection
     private Symbol[] _remoteDesiredCapabilities;
     private Map<Symbol, Object> _properties;
     private Map<Symbol, Object> _remoteProperties;
+    private int _incomingCapacity = 0;
+    private int _incomingBytes = 0;
 
     private Object _context;
     private CollectorImpl _collector;
@@ -406,6 +409,79 @@ public class ConnectionImpl extends EndpointImpl implements ProtonJConnection
         _remoteProperties = remoteProperties;
     }
 
+    @Override
+    public void setIncomingCapacity(int capacity)
+    {
+        _incomingCapacity = capacity;
+    }
+
+    @Override
+    public int getIncomingCapacity()
+    {
+        return _incomingCapacity;
+    }
+
+    @Override
+    public int getIncomingBytes()
+    {
+        return _incomingBytes;
+    }
+
+    void incrementIncomingBytes(int delta)
+    {
+        _incomingBytes += delta;
+    }
+
+    /**
+     * The bytes the given session may still be offered: its even share of
+     * the connection's capacity less what it has buffered, and never more
+     * than the capacity less what is buffered and less what the other
+     * sessions' incoming windows already allow the peer to send.
+     */
+    long getAvailableIncomingBytes(SessionImpl session, int frameSize)
+    {
+        long available = _incomingCapacity - _incomingBytes;
+        int sharing = 1;
+        if (_sessions != null)
+        {
+            for (SessionImpl ssn : _sessions)
+            {
+                TransportSession transportSession = ssn.getTransportSession();
+                if (ssn != session && transportSession != null)
+                {
+                    available -= transportSession.getIncomingWindowSize().longValue() * frameSize;
+                    if (ssn.getLocalState() == EndpointState.ACTIVE)
+                    {
+                        sharing++;
+                    }
+                }
+            }
+        }
+        long share = _incomingCapacity / sharing - session.getIncomingBytes();
+        return Math.max(0, Math.min(share, available));
+    }
+
+    /**
+     * Has the sessions left with a closed incoming window flow again, now
+     * that the given one has given up some of the connection's capacity.
+     */
+    void incomingWindowShrunk(SessionImpl session)
+    {
+        if (_sessions != null)
+        {
+            for (SessionImpl ssn : _sessions)
+            {
+                TransportSession transportSession = ssn.getTransportSession();
+                if (ssn != session && transportSession != null
+                    && ssn.getLocalState() == EndpointState.ACTIVE
+                    && transportSession.getIncomingWindowSize().equals(UnsignedInteger.ZERO))
+                {
+                    ssn.modified(false);
+                }
+            }
+        }
+    }
+
     @Override
     public String getHostname()
     {
@@ -29,6 +29,9 @@ import org.apache.qpid.proton.framing.TransportFrame;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * FrameWriter
@@ -41,6 +44,27 @@ class FrameWriter
     static final byte AMQP_FRAME_TYPE = 0;
     static final byte SASL_FRAME_TYPE = (byte) 1;
 
+    // Payloads at least this large are referenced in place rather than being
+    // copied into _bbuf; below it the bookkeeping costs more than the copy.
+    static final int PAYLOAD_REFERENCE_THRESHOLD = Integer.getInteger("proton.frame_payload_reference_threshold", 1024);
+
+    private static final ByteBuffer[] NO_SEGMENTS = new ByteBuffer[0];
+
+    /**
+     * A payload that logically sits at _offset within the bytes held in _bbuf.
+     */
+    private static final class PayloadReference
+    {
+        private int _offset;
+        private final ByteBuffer _payload;
+
+        PayloadReference(int offset, ByteBuffer payload)
+        {
+            _offset = offset;
+            _payload = payload;
+        }
+    }
+
     private EncoderImpl _encoder;
     private ByteBuffer _bbuf;
     private WritableBuffer _buffer;
@@ -54,6 +78,9 @@ class FrameWriter
     private int _performativeSize;
     private long _framesOutput = 0;
 
+    private final ArrayDeque<PayloadReference> _payloadReferences = new ArrayDeque<PayloadReference>();
+    private int _referencedBytes = 0;
+
     FrameWriter(EncoderImpl encoder, int maxFrameSize, byte frameType,
                 Ref<ProtocolTracer> protocolTracer, TransportImpl transport)
     {
@@ -116,9 +143,9 @@ class FrameWriter
         _performativeSize = _payloadStart - _frameStart;
     }
 
-    private void endFrame(int channel)
+    private void endFrame(int channel, int referencedPayloadSize)
     {
-        int frameSize = _buffer.position() - _frameStart;
+        int frameSize = _buffer.position() - _frameStart + referencedPayloadSize;
         int limit = _buffer.position();
         _buffer.position(_frameStart);
         _buffer.putInt(frameSize);
@@ -188,19 +215,31 @@ class FrameWriter
             }
         }
 
+        int referencedPayloadSize = 0;
         if(payloadSize > 0)
         {
-            while (_buffer.remaining() < payloadSize) {
-                grow();
-            }
-
             int oldLimit = payload.limit();
             payload.limit(payload.position() + payloadSize);
-            _buffer.put(payload);
+            if (payloadSize >= PAYLOAD_REFERENCE_THRESHOLD)
+            {
+                // The payload's backing data is not modified once handed to
+                // the transport, so refer to it rather than copying it.
+                _payloadReferences.add(new PayloadReference(_buffer.position(), payload.slice()));
+                _referencedBytes += payloadSize;
+                referencedPayloadSize = payloadSize;
+                payload.position(payload.limit());
+            }
+            else
+            {
+                while (_buffer.remaining() < payloadSize) {
+                    grow();
+                }
+                _buffer.put(payload);
+            }
             payload.limit(oldLimit);
         }
 
-        endFrame(channel);
+        endFrame(channel, referencedPayloadSize);
 
         _framesOutput += 1;
     }
@@ -212,22 +251,119 @@ class FrameWriter
 
     boolean isFull() {
         // XXX: this should probably be tunable
-        return _bbuf.position() > 64*1024;
+        return _bbuf.position() + _referencedBytes > 64*1024;
     }
 
     int readBytes(ByteBuffer dst)
+    {
+        return transfer(dst, dst.remaining());
+    }
+
+    /**
+     * Returns the pending output, without copying it, as a sequence of
+     * read-only buffers: slices of the frame buffer interleaved with any
+     * referenced payloads.  The buffers are only valid until the next call to
+     * {@link #readBytes(ByteBuffer)}, {@link #skipBytes(int)} or writeFrame.
+     */
+    ByteBuffer[] segments()
+    {
+        if (_payloadReferences.isEmpty())
+        {
+            return _bbuf.position() == 0 ? NO_SEGMENTS : new ByteBuffer[] { slice(0, _bbuf.position()) };
+        }
+
+        List<ByteBuffer> segments = new ArrayList<ByteBuffer>(2 * _payloadReferences.size() + 1);
+        int start = 0;
+        for (PayloadReference reference : _payloadReferences)
+        {
+            if (reference._offset > start)
+            {
+                segments.add(slice(start, reference._offset));
+                start = reference._offset;
+            }
+            segments.add(reference._payload.asReadOnlyBuffer());
+        }
+        if (_bbuf.position() > start)
+        {
+            segments.add(slice(start, _bbuf.position()));
+        }
+        return segments.toArray(new ByteBuffer[segments.size()]);
+    }
+
+    /**
+     * Discards bytes from the front of the pending output, typically once
+     * they have been written from the buffers returned by {@link #segments()}.
+     */
+    int skipBytes(int bytes)
+    {
+        return transfer(null, bytes);
+    }
+
+    private ByteBuffer slice(int start, int end)
+    {
+        ByteBuffer slice = _bbuf.asReadOnlyBuffer();
+        slice.limit(end);
+        slice.position(start);
+        return slice;
+    }
+
+    /**
+     * Moves up to max bytes of pending output, in order, into dst (or
+     * discards them if dst is null) then compacts what remains.
+     */
+    private int transfer(ByteBuffer dst, int max)
     {
         ByteBuffer src = _bbuf.duplicate();
         src.flip();
 
-        int size = Math.min(src.remaining(), dst.remaining());
-        int limit = src.limit();
-        src.limit(size);
-        dst.put(src);
-        src.limit(limit);
-        _bbuf.rewind();
-        _bbuf.put(src);
+        int transferred = 0;
+        while (transferred < max)
+        {
+            PayloadReference reference = _payloadReferences.peek();
+            int end = reference == null ? src.limit() : reference._offset;
+            transferred += move(src, dst, Math.min(end - src.position(), max - transferred));
+            if (reference == null || src.position() < end)
+            {
+                break;
+            }
 
+            int size = move(reference._payload, dst, Math.min(reference._payload.remaining(), max - transferred));
+            transferred += size;
+            _referencedBytes -= size;
+            if (reference._payload.hasRemaining())
+            {
+                break;
+            }
+            _payloadReferences.poll();
+        }
+
+        int consumed = src.position();
+        if (consumed > 0)
+        {
+            _bbuf.rewind();
+            _bbuf.put(src);
+            for (PayloadReference reference : _payloadReferences)
+            {
+                reference._offset -= consumed;
+            }
+        }
+
+        return transferred;
+    }
+
+    private static int move(ByteBuffer src, ByteBuffer dst, int size)
+    {
+        if (dst == null)
+        {
+            src.position(src.position() + size);
+        }
+        else
+        {
+            int limit = src.limit();
+            src.limit(src.position() + size);
+            dst.put(src);
+            src.limit(limit);
+        }
         return size;
     }
 
@@ -27,7 +27,7 @@ import org.apache.qpid.proton.engine.TransportException;
 import org.apache.qpid.proton.engine.impl.TransportWrapper;
 
 public abstract class HandshakeSniffingTransportWrapper<T1 extends TransportWrapper, T2 extends TransportWrapper>
-    implements TransportWrapper
+    implements CollapsibleTransportWrapper
 {
 
     protected final T1 _wrapper1;
@@ -154,6 +154,16 @@ public abstract class HandshakeSniffingTransportWrapper<T1 extends TransportWrap
         }
     }
 
+    @Override
+    public ByteBuffer[] heads()
+    {
+        if (isDeterminationMade()) {
+            return _selectedTransportWrapper.heads();
+        } else {
+            return new ByteBuffer[] { EMPTY };
+        }
+    }
+
     @Override
     public void pop(int bytes)
     {
@@ -174,6 +184,22 @@ public abstract class HandshakeSniffingTransportWrapper<T1 extends TransportWrap
         }
     }
 
+    /**
+     * Once the determination has been made, and the sniffed bytes passed on, the selected
+     * wrapper can be called directly.
+     */
+    @Override
+    public TransportInput getCollapsedInput()
+    {
+        return isDeterminationMade() && !_head_closed ? _selectedTransportWrapper : null;
+    }
+
+    @Override
+    public TransportOutput getCollapsedOutput()
+    {
+        return isDeterminationMade() && !_head_closed ? _selectedTransportWrapper : null;
+    }
+
     protected boolean isDeterminationMade()
     {
         return _selectedTransportWrapper != null;
@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes a session's incoming capacity toward the bandwidth-delay product of
+ * the path to the peer.
+ *
+ * While transfers arrive, one flow at a time is sent with echo set, and the
+ * window used until the peer's next session flow gives the rate over that
+ * round trip.  Window is counted in whole frames, as the peer spends it.
+ * The rate times the smallest recent round trip is the bandwidth-delay
+ * product; a longer round trip only adds time queued along the path.  Since
+ * the window is reopened once half of it is used, a product of half the
+ * capacity means the peer is held back by the window, and the capacity
+ * doubles.  A capacity more than eight times the largest recent sample is
+ * cut back to four times that sample.  A peer that never answers an echo
+ * leaves the full capacity in place.
+ */
+class IncomingWindowTuner
+{
+    static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private static final long SAMPLE_EXPIRY = TimeUnit.SECONDS.toNanos(10);
+    private static final long MAX_ECHO_WAIT = TimeUnit.SECONDS.toNanos(2);
+
+    private long _capacity;
+    private boolean _probeWanted;
+    private boolean _probing;
+    private boolean _answered;
+    private boolean _disabled;
+    private long _probeTime;
+    private long _probeBytes;
+    private long _rtt;
+    private long _minRtt;
+    private long _minRttTime;
+    private long _maxBdp;
+    private long _maxBdpTime;
+
+    IncomingWindowTuner(long capacity)
+    {
+        _capacity = capacity;
+    }
+
+    /**
+     * @return the tuned capacity in bytes, clamped to the given bounds
+     */
+    long getCapacity(long floor, long ceiling)
+    {
+        if (_disabled)
+        {
+            return ceiling;
+        }
+        _capacity = Math.max(Math.min(floor, ceiling), Math.min(_capacity, ceiling));
+        return _capacity;
+    }
+
+    /**
+     * @return the last round trip measured in nanoseconds, or 0 before the
+     * first echo is answered
+     */
+    long getRoundTripTime()
+    {
+        return _rtt;
+    }
+
+    /**
+     * @return the smallest recent round trip in nanoseconds
+     */
+    long getMinRoundTripTime()
+    {
+        return _minRtt;
+    }
+
+    /**
+     * @return whether the next flow should request an echo
+     */
+    boolean isProbeWanted()
+    {
+        return _probeWanted;
+    }
+
+    void probeSent(long now)
+    {
+        _probeWanted = false;
+        _probing = true;
+        _probeTime = now;
+        _probeBytes = 0;
+    }
+
+    /**
+     * @param window the window the transfer used, in bytes
+     */
+    void transferReceived(int window, long now)
+    {
+        if (_probing)
+        {
+            _probeBytes += window;
+            if (!_answered && now - _probeTime > MAX_ECHO_WAIT)
+            {
+                _probing = false;
+                _disabled = true;
+            }
+        }
+        else if (!_disabled)
+        {
+            _probeWanted = true;
+        }
+    }
+
+    void flowReceived(long now)
+    {
+        if (!_probing)
+        {
+            return;
+        }
+        _probing = false;
+        _answered = true;
+        _rtt = Math.max(1, now - _probeTime);
+        if (_minRtt == 0 || _rtt <= _minRtt || now - _minRttTime > SAMPLE_EXPIRY)
+        {
+            _minRtt = _rtt;
+            _minRttTime = now;
+        }
+
+        long bdp = (long) ((double) _probeBytes * _minRtt / _rtt);
+        if (bdp >= _maxBdp || now - _maxBdpTime > SAMPLE_EXPIRY)
+        {
+            _maxBdp = bdp;
+            _maxBdpTime = now;
+        }
+
+        if (bdp * 2 >= _capacity)
+        {
+            _capacity = 2 * _capacity;
+        }
+        else if (_capacity > 8 * _maxBdp)
+        {
+            _capacity = 4 * _maxBdp;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.nio.ByteBuffer;
 
 import org.apache.qpid.proton.engine.TransportException;
 
-public class PlainTransportWrapper implements TransportWrapper
+public class PlainTransportWrapper implements CollapsibleTransportWrapper
 {
     private final TransportOutput _outputProcessor;
     private final TransportInput _inputProcessor;
@@ -78,6 +78,12 @@ public class PlainTransportWrapper implements TransportWrapper
         return _outputProcessor.head();
     }
 
+    @Override
+    public ByteBuffer[] heads()
+    {
+        return _outputProcessor.heads();
+    }
+
     @Override
     public void pop(int bytes)
     {
@@ -90,4 +96,16 @@ public class PlainTransportWrapper implements TransportWrapper
         _outputProcessor.close_head();
     }
 
+    @Override
+    public TransportInput getCollapsedInput()
+    {
+        return _inputProcessor;
+    }
+
+    @Override
+    public TransportOutput getCollapsedOutput()
+    {
+        return _outputProcessor;
+    }
+
 }
\ No newline at end of file
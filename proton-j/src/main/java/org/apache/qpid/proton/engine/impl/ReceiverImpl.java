@@ -21,7 +21,6 @@
 package org.apache.qpid.proton.engine.impl;
 
 import java.util.Iterator;
-import org.apache.qpid.proton.amqp.UnsignedInteger;
 import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.engine.Receiver;
 
@@ -44,7 +43,9 @@ public class ReceiverImpl extends LinkImpl implements Receiver
             decrementCredit();
             getSession().incrementIncomingBytes(-current.pending());
             getSession().incrementIncomingDeliveries(-1);
-            if (getSession().getTransportSession().getIncomingWindowSize().equals(UnsignedInteger.ZERO)) {
+            incrementIncomingBytes(-current.pending());
+            if (getSession().getTransportSession().needsIncomingWindowUpdate()
+                || isCreditWithheld()) {
                 modified();
             }
         }
@@ -53,6 +54,10 @@ public class ReceiverImpl extends LinkImpl implements Receiver
 
     private TransportReceiver _transportReceiver;
     private int _unsentCredits;
+    private int _incomingCapacity = 0;
+    private int _incomingBytes = 0;
+    private long _receivedBytes = 0;
+    private long _receivedDeliveries = 0;
 
 
     ReceiverImpl(SessionImpl session, String name)
@@ -79,6 +84,87 @@ public class ReceiverImpl extends LinkImpl implements Receiver
         return credits;
     }
 
+    /**
+     * Takes the unsent credit that may be issued given the link credit the
+     * peer already holds.  With an incoming capacity set, only as much
+     * credit is released as the remaining capacity can hold at the average
+     * delivery size seen so far; the rest is kept until bytes are consumed.
+     * A receiver with an empty buffer always gets at least one credit, so
+     * a delivery larger than the capacity cannot stall the link.
+     */
+    int takeUnsentCredits(int linkCredit)
+    {
+        if (_incomingCapacity <= 0 || _unsentCredits <= 0)
+        {
+            return clearUnsentCredits();
+        }
+
+        long available = _incomingCapacity - _incomingBytes;
+        long allowed;
+        if (_receivedDeliveries == 0)
+        {
+            allowed = available > 0 ? 1 : 0;
+        }
+        else
+        {
+            long average = Math.max(1, _receivedBytes / _receivedDeliveries);
+            allowed = Math.max(0, available) / average;
+        }
+        if (_incomingBytes == 0)
+        {
+            allowed = Math.max(allowed, 1);
+        }
+
+        int credits = (int) Math.max(0, Math.min(_unsentCredits, allowed - linkCredit));
+        _unsentCredits -= credits;
+        if (getDrain() && _unsentCredits > 0)
+        {
+            // a drain must not wait on credit the peer has never seen
+            addCredit(-_unsentCredits);
+            setDrained(getDrained() + _unsentCredits);
+            _unsentCredits = 0;
+        }
+        return credits;
+    }
+
+    private boolean isCreditWithheld()
+    {
+        return _incomingCapacity > 0 && _unsentCredits > 0;
+    }
+
+    @Override
+    public void setIncomingCapacity(int bytes)
+    {
+        _incomingCapacity = bytes;
+        modified();
+    }
+
+    @Override
+    public int getIncomingCapacity()
+    {
+        return _incomingCapacity;
+    }
+
+    @Override
+    public int getIncomingBytes()
+    {
+        return _incomingBytes;
+    }
+
+    void incrementIncomingBytes(int delta)
+    {
+        _incomingBytes += delta;
+        if (delta > 0)
+        {
+            _receivedBytes += delta;
+        }
+    }
+
+    void incomingDelivery()
+    {
+        _receivedDeliveries++;
+    }
+
 
     public int recv(final byte[] bytes, int offset, int size)
     {
@@ -89,7 +175,9 @@ public class ReceiverImpl extends LinkImpl implements Receiver
         int consumed = _current.recv(bytes, offset, size);
         if (consumed > 0) {
             getSession().incrementIncomingBytes(-consumed);
-            if (getSession().getTransportSession().getIncomingWindowSize().equals(UnsignedInteger.ZERO)) {
+            incrementIncomingBytes(-consumed);
+            if (getSession().getTransportSession().needsIncomingWindowUpdate()
+                || isCreditWithheld()) {
                 modified();
             }
         }
@@ -29,4 +29,10 @@ interface SaslFrameHandler
     void handle(SaslFrameBody frameBody, Binary payload);
 
     boolean isDone();
+
+    /**
+     * @return whether the handler cannot take another frame yet, such as while the result of the
+     *         last one is being worked out on another thread.
+     */
+    boolean isPaused();
 }
@@ -31,6 +31,9 @@ import org.apache.qpid.proton.engine.TransportException;
 
 class SaslFrameParser
 {
+    /** The first four bytes of an AMQP header, read as the size of a frame. */
+    private static final int AMQP_HEADER_AS_SIZE = ByteBuffer.wrap(AmqpHeader.HEADER).getInt();
+
     private SaslFrameHandler _sasl;
 
     enum State
@@ -78,7 +81,7 @@ class SaslFrameParser
             _ignore -= bytesToEat;
         }
 
-        while(input.hasRemaining() && state != State.ERROR && !_sasl.isDone())
+        while(input.hasRemaining() && state != State.ERROR && !_sasl.isDone() && !_sasl.isPaused())
         {
             switch(state)
             {
@@ -126,6 +129,14 @@ class SaslFrameParser
                         break;
                     }
 
+                    if(size == AMQP_HEADER_AS_SIZE)
+                    {
+                        // a pipelining client whose mechanism needed more than its init
+                        frameParsingError = new TransportException("AMQP header received before SASL negotiation completed");
+                        state = State.ERROR;
+                        break;
+                    }
+
                     if(input.remaining() < size-4)
                     {
                         _buffer = ByteBuffer.allocate(size-4);
@@ -22,13 +22,17 @@
 package org.apache.qpid.proton.engine.impl;
 
 import static org.apache.qpid.proton.engine.impl.ByteBufferUtils.newWriteableBuffer;
+import static org.apache.qpid.proton.engine.impl.ByteBufferUtils.pour;
 import static org.apache.qpid.proton.engine.impl.ByteBufferUtils.pourAll;
 import static org.apache.qpid.proton.engine.impl.ByteBufferUtils.pourBufferToArray;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.security.sasl.SaslException;
+
 import org.apache.qpid.proton.amqp.Binary;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.security.SaslChallenge;
@@ -40,11 +44,13 @@ import org.apache.qpid.proton.amqp.security.SaslResponse;
 import org.apache.qpid.proton.codec.AMQPDefinedTypes;
 import org.apache.qpid.proton.codec.DecoderImpl;
 import org.apache.qpid.proton.codec.EncoderImpl;
-import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.ProtonJSasl;
 import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.engine.TransportException;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
 
-public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>, SaslFrameHandler
+public class SaslImpl implements ProtonJSasl, SaslFrameBody.SaslFrameBodyHandler<Void>, SaslFrameHandler
 {
     private static final Logger _logger = Logger.getLogger(SaslImpl.class.getName());
 
@@ -78,11 +84,26 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
     private String _hostname;
     private boolean _done;
     private Symbol[] _mechanisms;
+    private boolean _mechanismsReceived;
 
     private Symbol _chosenMechanism;
 
     private Role _role;
     private boolean _allowSkip = true;
+    private boolean _pipelined;
+
+    private SaslServerMechanism[] _serverMechanisms;
+    private SaslServerMechanism.Exchange _serverExchange;
+    private Thread _serverExchangeThread;
+    private boolean _serverExchangePending;
+    private volatile Runnable _serverExchangeResult;
+    private String _authenticatedUser;
+    private Binary _outcomeAdditionalData;
+
+    private SaslClientMechanism[] _clientMechanisms;
+    private SaslClientMechanism _clientMechanism;
+
+    private static final Binary EMPTY = new Binary(new byte[0]);
 
     /**
      * @param maxFrameSize the size of the input and output buffers
@@ -118,6 +139,16 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         return _done && (_role==Role.CLIENT || _initReceived);
     }
 
+    /**
+     * Input that follows a response is held back while the server mechanism works out its
+     * result, as it may have been pipelined by the client to follow the end of the exchange.
+     */
+    @Override
+    public boolean isPaused()
+    {
+        return _serverExchangePending;
+    }
+
     private void writeSaslOutput()
     {
         process();
@@ -158,11 +189,17 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
                 org.apache.qpid.proton.amqp.security.SaslOutcome outcome =
                         new org.apache.qpid.proton.amqp.security.SaslOutcome();
                 outcome.setCode(SaslCode.values()[_outcome.getCode()]);
+                outcome.setAdditionalData(_outcomeAdditionalData);
                 writeFrame(outcome);
             }
         }
         else if(_role == Role.CLIENT)
         {
+            if(_pipelined && _chosenMechanism == null && _clientMechanisms != null && _clientMechanisms.length > 0)
+            {
+                useClientMechanism(_clientMechanisms[0], Symbol.valueOf(_clientMechanisms[0].getName()));
+            }
+
             if(getState() == SaslState.PN_SASL_IDLE && _chosenMechanism != null)
             {
                 processInit();
@@ -336,7 +373,11 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         _hostname = saslInit.getHostname();
         _chosenMechanism = saslInit.getMechanism();
         _initReceived = true;
-        if(saslInit.getInitialResponse() != null)
+        if(_serverMechanisms != null)
+        {
+            startServerExchange(saslInit.getInitialResponse());
+        }
+        else if(saslInit.getInitialResponse() != null)
         {
             setPending(saslInit.getInitialResponse().asByteBuffer());
         }
@@ -346,7 +387,14 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
     public void handleResponse(SaslResponse saslResponse, Binary payload, Void context)
     {
         checkRole(Role.SERVER);
-        setPending(saslResponse.getResponse()  == null ? null : saslResponse.getResponse().asByteBuffer());
+        if(_serverExchange != null)
+        {
+            handleServerExchangeResponse(saslResponse.getResponse());
+        }
+        else
+        {
+            setPending(saslResponse.getResponse()  == null ? null : saslResponse.getResponse().asByteBuffer());
+        }
     }
 
     @Override
@@ -376,13 +424,41 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         }
         checkRole(Role.CLIENT);
         _mechanisms = saslMechanisms.getSaslServerMechanisms();
+        _mechanismsReceived = true;
+        if(_clientMechanisms != null && _clientMechanism == null)
+        {
+            selectClientMechanism();
+        }
     }
 
     @Override
     public void handleChallenge(SaslChallenge saslChallenge, Binary payload, Void context)
     {
         checkRole(Role.CLIENT);
-        setPending(saslChallenge.getChallenge()  == null ? null : saslChallenge.getChallenge().asByteBuffer());
+        if(_pipelined)
+        {
+            failClient("Challenged by the server after pipelining the AMQP header");
+        }
+        else if(_clientMechanism != null)
+        {
+            try
+            {
+                Binary response = _clientMechanism.getChallengeResponse(saslChallenge.getChallenge());
+                setChallengeResponse(response == null ? EMPTY : response);
+            }
+            catch (SaslException e)
+            {
+                failClient(e.getMessage());
+            }
+        }
+        else if(_clientMechanisms != null && _outcome != SaslOutcome.PN_SASL_OK)
+        {
+            closeClient("outcome " + _outcome);
+        }
+        else
+        {
+            setPending(saslChallenge.getChallenge()  == null ? null : saslChallenge.getChallenge().asByteBuffer());
+        }
     }
 
     @Override
@@ -405,12 +481,238 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         }
         _done = true;
 
+        if(_clientMechanism != null && _outcome == SaslOutcome.PN_SASL_OK)
+        {
+            try
+            {
+                _clientMechanism.verifyCompletion(saslOutcome.getAdditionalData());
+            }
+            catch (SaslException e)
+            {
+                failClient(e.getMessage());
+            }
+        }
+        else if(_clientMechanisms != null && _outcome != SaslOutcome.PN_SASL_OK)
+        {
+            closeClient("outcome " + _outcome);
+        }
+
         if(_logger.isLoggable(Level.FINE))
         {
             _logger.fine("Handled outcome: " + this);
         }
     }
 
+    @Override
+    public void setServerMechanisms(SaslServerMechanism... mechanisms)
+    {
+        server();
+        _serverMechanisms = mechanisms.clone();
+        // an outcome set up front (e.g. by the reactor's acceptor) must not
+        // short-circuit the exchange these mechanisms are about to perform
+        _done = false;
+        _outcome = SaslOutcome.PN_SASL_NONE;
+        _state = SaslState.PN_SASL_IDLE;
+        String[] names = new String[mechanisms.length];
+        for(int i = 0; i < mechanisms.length; i++)
+        {
+            names[i] = mechanisms[i].getName();
+        }
+        setMechanisms(names);
+    }
+
+    @Override
+    public void setClientMechanisms(SaslClientMechanism... mechanisms)
+    {
+        _role = Role.CLIENT;
+        _clientMechanisms = mechanisms.clone();
+        // discard any mechanism preselected through setMechanisms()
+        _chosenMechanism = null;
+        if(_mechanismsReceived)
+        {
+            selectClientMechanism();
+        }
+    }
+
+    @Override
+    public String getAuthenticatedUser()
+    {
+        return _authenticatedUser;
+    }
+
+    @Override
+    public void setPipelined(boolean pipelined)
+    {
+        _pipelined = pipelined;
+    }
+
+    @Override
+    public boolean isPipelined()
+    {
+        return _pipelined;
+    }
+
+    private void startServerExchange(Binary initialResponse)
+    {
+        for(SaslServerMechanism mechanism : _serverMechanisms)
+        {
+            if(Symbol.valueOf(mechanism.getName()).equals(_chosenMechanism))
+            {
+                _serverExchange = mechanism.createExchange();
+                handleServerExchangeResponse(initialResponse);
+                return;
+            }
+        }
+        failServer(SaslOutcome.PN_SASL_AUTH);
+    }
+
+    /**
+     * Fails the client being authenticated with the server mechanisms.  Nothing follows the
+     * outcome of a failed exchange, so the server's output ends once the outcome is written.
+     */
+    private void failServer(SaslOutcome outcome)
+    {
+        _serverExchange = null;
+        done(outcome);
+        _head_closed = true;
+    }
+
+    private void handleServerExchangeResponse(Binary response)
+    {
+        _serverExchangeThread = Thread.currentThread();
+        _serverExchangePending = true;
+        try
+        {
+            _serverExchange.handleResponse(response == null ? EMPTY : response, new ServerExchangeResult());
+        }
+        finally
+        {
+            _serverExchangeThread = null;
+        }
+    }
+
+    /**
+     * Applies the result of a server exchange that completed on another thread.
+     */
+    private void applyServerExchangeResult()
+    {
+        Runnable result = _serverExchangeResult;
+        if(result != null)
+        {
+            _serverExchangeResult = null;
+            _serverExchangePending = false;
+            result.run();
+        }
+    }
+
+    /**
+     * Applies the results of the server mechanism's exchange directly when they are produced
+     * on the transport's thread, during {@link SaslServerMechanism.Exchange#handleResponse},
+     * and otherwise hands them to that thread, waking the transport.
+     */
+    private class ServerExchangeResult implements SaslServerMechanism.Result
+    {
+        private void apply(Runnable result)
+        {
+            if(Thread.currentThread() == _serverExchangeThread)
+            {
+                _serverExchangePending = false;
+                result.run();
+            }
+            else
+            {
+                _serverExchangeResult = result;
+                _transport.resumeFromOtherThread();
+            }
+        }
+
+        @Override
+        public void challenge(final Binary challenge)
+        {
+            apply(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    setChallengeResponse(challenge);
+                }
+            });
+        }
+
+        @Override
+        public void success(final String user, final Binary additionalData)
+        {
+            apply(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _authenticatedUser = user;
+                    _outcomeAdditionalData = additionalData;
+                    _serverExchange = null;
+                    done(SaslOutcome.PN_SASL_OK);
+                }
+            });
+        }
+
+        @Override
+        public void failure(final SaslOutcome outcome)
+        {
+            apply(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    failServer(outcome);
+                }
+            });
+        }
+    }
+
+    private void selectClientMechanism()
+    {
+        for(SaslClientMechanism mechanism : _clientMechanisms)
+        {
+            for(Symbol offered : _mechanisms)
+            {
+                if(offered.toString().equals(mechanism.getName()))
+                {
+                    useClientMechanism(mechanism, offered);
+                    return;
+                }
+            }
+        }
+        failClient("No SASL mechanism in common with the server, which offers " + Arrays.toString(_mechanisms));
+    }
+
+    private void useClientMechanism(SaslClientMechanism mechanism, Symbol name)
+    {
+        _clientMechanism = mechanism;
+        _chosenMechanism = name;
+        setChallengeResponse(mechanism.getInitialResponse());
+    }
+
+    private void failClient(String reason)
+    {
+        _outcome = SaslOutcome.PN_SASL_AUTH;
+        _state = SaslState.PN_SASL_FAIL;
+        _done = true;
+        closeClient(reason);
+    }
+
+    /**
+     * Closes the transport of a client using the client mechanisms, which will neither write nor
+     * read any AMQP frames once its authentication has failed.
+     */
+    private void closeClient(String reason)
+    {
+        _logger.fine("SASL authentication failed: " + reason);
+        _initSent = true;
+        _head_closed = true;
+        _tail_closed = true;
+        _transport.closed(new TransportException("SASL authentication failed: " + reason));
+    }
+
     private SaslState classifyStateFromOutcome(SaslOutcome outcome)
     {
         return outcome == SaslOutcome.PN_SASL_OK ? SaslState.PN_SASL_PASS : SaslState.PN_SASL_FAIL;
@@ -510,7 +812,7 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         return builder.toString();
     }
 
-    private class SaslTransportWrapper implements TransportWrapper
+    private class SaslTransportWrapper implements CollapsibleTransportWrapper
     {
         private final TransportInput _underlyingInput;
         private final TransportOutput _underlyingOutput;
@@ -548,12 +850,64 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
 
         private boolean isOutputInSaslMode()
         {
-            return _role == null || (_role == Role.CLIENT && (!_done || !_initSent)) || (_role == Role.SERVER && !_outputComplete);
+            return _role == null || (_role == Role.CLIENT && (!_initSent || (!_done && !_pipelined))) || (_role == Role.SERVER && !_outputComplete);
+        }
+
+        /**
+         * A server that has failed the client passes on none of its input, in particular none
+         * pipelined after its init, and nor does a client that has closed after failing.
+         */
+        private boolean isInputDiscarded()
+        {
+            return (_role == Role.SERVER || _tail_closed) && _done && _outcome != SaslOutcome.PN_SASL_OK;
+        }
+
+        /**
+         * Processes input that was held back while a server mechanism worked out its result on
+         * another thread, now that it has.
+         */
+        private void processHeldBackInput()
+        {
+            if (!_tail_closed && !isPaused() && _inputBuffer.position() != 0)
+            {
+                try
+                {
+                    process();
+                }
+                catch (TransportException e)
+                {
+                    _transport.closed(e);
+                }
+            }
+        }
+
+        /**
+         * Appends the underlying output, when pipelining, to the SASL frames still waiting to be
+         * written, so that they are written together.
+         */
+        private void appendUnderlyingOutput()
+        {
+            int pending = _underlyingOutput.pending();
+            if (pending > 0 && _outputBuffer.hasRemaining())
+            {
+                _underlyingOutput.pop(pour(_underlyingOutput.head().duplicate(), _outputBuffer));
+            }
+        }
+
+        /**
+         * Output is written through the SASL output buffer while negotiating, until that buffer
+         * is drained, and after the head has been closed during negotiation, so that nothing of
+         * the underlying output follows a failed negotiation.
+         */
+        private boolean isOutputBuffered()
+        {
+            return isOutputInSaslMode() || _head_closed || _outputBuffer.position() != 0;
         }
 
         @Override
         public int capacity()
         {
+            applyServerExchangeResult();
             if (_tail_closed) return Transport.END_OF_STREAM;
             if (isInputInSaslMode())
             {
@@ -593,6 +947,7 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         @Override
         public void process() throws TransportException
         {
+            applyServerExchangeResult();
             _inputBuffer.flip();
 
             try
@@ -629,7 +984,11 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
                 _frameParser.input(_inputBuffer);
             }
 
-            if(!isInputInSaslMode())
+            if(!isInputInSaslMode() && isInputDiscarded())
+            {
+                _inputBuffer.position(_inputBuffer.limit());
+            }
+            else if(!isInputInSaslMode())
             {
                 if(_logger.isLoggable(Level.FINER))
                 {
@@ -656,9 +1015,15 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         @Override
         public int pending()
         {
-            if (isOutputInSaslMode() || _outputBuffer.position() != 0)
+            applyServerExchangeResult();
+            processHeldBackInput();
+            if (isOutputBuffered())
             {
                 fillOutputBuffer();
+                if (_pipelined && !isOutputInSaslMode() && !_head_closed && _outputBuffer.position() != 0)
+                {
+                    appendUnderlyingOutput();
+                }
                 _head.limit(_outputBuffer.position());
 
                 if (_head_closed && _outputBuffer.position() == 0)
@@ -679,7 +1044,7 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         @Override
         public ByteBuffer head()
         {
-            if (isOutputInSaslMode() || _outputBuffer.position() != 0)
+            if (isOutputBuffered())
             {
                 pending();
                 return _head;
@@ -690,10 +1055,23 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
             }
         }
 
+        @Override
+        public ByteBuffer[] heads()
+        {
+            if (isOutputBuffered())
+            {
+                return new ByteBuffer[] { head() };
+            }
+            else
+            {
+                return _underlyingOutput.heads();
+            }
+        }
+
         @Override
         public void pop(int bytes)
         {
-            if (isOutputInSaslMode() || _outputBuffer.position() != 0)
+            if (isOutputBuffered())
             {
                 _outputBuffer.flip();
                 _outputBuffer.position(bytes);
@@ -712,6 +1090,26 @@ public class SaslImpl implements Sasl, SaslFrameBody.SaslFrameBodyHandler<Void>,
         {
             _underlyingOutput.close_head();
         }
+
+        /**
+         * Once negotiation is over, and any input received beyond its end has been passed on,
+         * the underlying input can be called directly.
+         */
+        @Override
+        public TransportInput getCollapsedInput()
+        {
+            if (_tail_closed || isInputInSaslMode() || isInputDiscarded() || _inputBuffer.position() != 0)
+            {
+                return null;
+            }
+            return _underlyingInput;
+        }
+
+        @Override
+        public TransportOutput getCollapsedOutput()
+        {
+            return isOutputBuffered() ? null : _underlyingOutput;
+        }
     }
 
     @Override
@@ -41,6 +41,7 @@ public class SessionImpl extends EndpointImpl implements ProtonJSession
     private TransportSession _transportSession;
     private int _incomingCapacity = 1024*1024;
     private int _incomingBytes = 0;
+    private boolean _incomingWindowAutoTuning;
     private int _outgoingBytes = 0;
     private int _incomingDeliveries = 0;
     private int _outgoingDeliveries = 0;
@@ -227,9 +228,22 @@ public class SessionImpl extends EndpointImpl implements ProtonJSession
         return _incomingBytes;
     }
 
+    @Override
+    public void setIncomingWindowAutoTuning(boolean enabled)
+    {
+        _incomingWindowAutoTuning = enabled;
+    }
+
+    @Override
+    public boolean isIncomingWindowAutoTuning()
+    {
+        return _incomingWindowAutoTuning;
+    }
+
     void incrementIncomingBytes(int delta)
     {
         _incomingBytes += delta;
+        getConnectionImpl().incrementIncomingBytes(delta);
     }
 
     @Override
@@ -138,6 +138,9 @@ public class TransportImpl extends EndpointImpl
     private Selectable _selectable;
     private Reactor _reactor;
 
+    /** Run by {@link #resumeFromOtherThread()}, and so read from other threads. */
+    private volatile Runnable _wakeup;
+
     /**
      * @deprecated This constructor's visibility will be reduced to the default scope in a future release.
      * Client code outside this module should use {@link org.apache.qpid.proton.engine.Transport.Factory#create()} instead
@@ -337,6 +340,18 @@ public class TransportImpl extends EndpointImpl
         return _isCloseSent || _head_closed;
     }
 
+    @Override
+    public ByteBuffer[] unwrittenOutput()
+    {
+        return _frameWriter.segments();
+    }
+
+    @Override
+    public void popUnwrittenOutput(int bytes)
+    {
+        _frameWriter.skipBytes(bytes);
+    }
+
     @Override
     public Sasl sasl()
     {
@@ -371,6 +386,14 @@ public class TransportImpl extends EndpointImpl
         {
             init();
             _ssl = new SslImpl(sslDomain, sslPeerDetails);
+            _ssl.setDelegatedTaskListener(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    resumeFromOtherThread();
+                }
+            });
             TransportWrapper transportWrapper = _ssl.wrap(_inputProcessor, _outputProcessor);
             _inputProcessor = transportWrapper;
             _outputProcessor = transportWrapper;
@@ -454,6 +477,7 @@ public class TransportImpl extends EndpointImpl
             flow.setLinkCredit(link.getLinkCredit());
             flow.setDrain(link.getLink().getDrain());
         }
+        ssn.flowSent(flow);
         writeFrame(ssn.getLocalChannel(), flow, null, null);
     }
 
@@ -687,9 +711,9 @@ public class TransportImpl extends EndpointImpl
 
                     if(receiver.getLocalState() == EndpointState.ACTIVE && transportSession.isLocalChannelSet())
                     {
-                        int credits = receiver.clearUnsentCredits();
+                        int credits = receiver.takeUnsentCredits(transportLink.getLinkCredit().intValue());
                         if(credits != 0 || receiver.getDrain() ||
-                           transportSession.getIncomingWindowSize().equals(UnsignedInteger.ZERO))
+                           transportSession.needsIncomingWindowUpdate())
                         {
                             transportLink.addCredit(credits);
                             writeFlow(transportSession, transportLink);
@@ -709,7 +733,7 @@ public class TransportImpl extends EndpointImpl
 
                     if(session.getLocalState() == EndpointState.ACTIVE && transportSession.isLocalChannelSet())
                     {
-                        if(transportSession.getIncomingWindowSize().equals(UnsignedInteger.ZERO))
+                        if(transportSession.needsIncomingWindowUpdate() || transportSession.needsSessionFlow())
                         {
                             writeFlow(transportSession, null);
                         }
@@ -1442,6 +1466,7 @@ public class TransportImpl extends EndpointImpl
             int beforePosition = _inputProcessor.position();
             _inputProcessor.process();
             _bytesInput += beforePosition - _inputProcessor.position();
+            _inputProcessor = TransportWrappers.collapse(_inputProcessor);
         } catch (TransportException e) {
             _head_closed = true;
             throw e;
@@ -1469,12 +1494,20 @@ public class TransportImpl extends EndpointImpl
         return _outputProcessor.head();
     }
 
+    @Override
+    public ByteBuffer[] heads()
+    {
+        init();
+        return _outputProcessor.heads();
+    }
+
     @Override
     public void pop(int bytes)
     {
         init();
         _outputProcessor.pop(bytes);
         _bytesOutput += bytes;
+        _outputProcessor = TransportWrappers.collapse(_outputProcessor);
 
         int p = pending();
         if (p < 0 && !postedHeadClosed) {
@@ -1637,12 +1670,48 @@ public class TransportImpl extends EndpointImpl
         return (_levels & TRACE_FRM) != 0;
     }
 
+    /**
+     * @return the top of the stack of input layers, from which finished layers are removed.
+     */
+    TransportInput getInputProcessor()
+    {
+        return _inputProcessor;
+    }
+
+    TransportOutput getOutputProcessor()
+    {
+        return _outputProcessor;
+    }
+
     @Override
     void localOpen() {}
 
     @Override
     void localClose() {}
 
+    /**
+     * Called from another thread when work handed off by this transport, such as SSL delegated
+     * tasks or SASL credential verification, completes.  A driver that has set a
+     * {@link #setWakeup(Runnable) wake-up callback}, such as a reactor, is woken by it to resume
+     * its I/O; other drivers resume it when they next check its capacity.
+     */
+    void resumeFromOtherThread()
+    {
+        Runnable wakeup = _wakeup;
+        if (wakeup != null)
+        {
+            wakeup.run();
+        }
+    }
+
+    /**
+     * Sets the callback run by {@link #resumeFromOtherThread()}, which must be safe to run from
+     * any thread.
+     */
+    public void setWakeup(Runnable wakeup) {
+        _wakeup = wakeup;
+    }
+
     public void setSelectable(Selectable selectable) {
         _selectable = selectable;
     }
@@ -31,6 +31,15 @@ public interface TransportOutput
 
     ByteBuffer head();
 
+    /**
+     * Returns the pending output as a sequence of buffers, suitable for a
+     * gathering write.  The buffers must be consumed in order; {@link #pop(int)}
+     * releases bytes from the front of the sequence, possibly spanning several
+     * of them.  Implementations that hold their output in a single buffer
+     * return a one element array containing {@link #head()}.
+     */
+    ByteBuffer[] heads();
+
     void pop(int bytes);
 
     void close_head();
@@ -79,15 +79,38 @@ class TransportOutputAdaptor implements TransportOutput
         return _head != null ? _head : _emptyHead;
     }
 
+    /**
+     * Returns the contents of the output buffer followed by any output the
+     * writer could not fit into it, which is referenced rather than copied.
+     */
+    @Override
+    public ByteBuffer[] heads()
+    {
+        ByteBuffer head = head();
+        ByteBuffer[] unwritten = _head_closed ? null : _transportOutputWriter.unwrittenOutput();
+        if (unwritten == null || unwritten.length == 0) {
+            return new ByteBuffer[] { head };
+        }
+
+        ByteBuffer[] heads = new ByteBuffer[unwritten.length + 1];
+        heads[0] = head;
+        System.arraycopy(unwritten, 0, heads, 1, unwritten.length);
+        return heads;
+    }
+
     @Override
     public void pop(int bytes)
     {
         if (_outputBuffer != null) {
+            int buffered = Math.min(bytes, _outputBuffer.position());
             _outputBuffer.flip();
-            _outputBuffer.position(bytes);
+            _outputBuffer.position(buffered);
             _outputBuffer.compact();
             _head.position(0);
             _head.limit(_outputBuffer.position());
+            if (bytes > buffered) {
+                _transportOutputWriter.popUnwrittenOutput(bytes - buffered);
+            }
             if (_outputBuffer.position() == 0 && _outputBuffer.capacity() > TransportImpl.BUFFER_RELEASE_THRESHOLD) {
                 release_buffers();
             }
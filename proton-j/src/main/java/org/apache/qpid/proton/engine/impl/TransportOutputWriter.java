@@ -30,6 +30,19 @@ interface TransportOutputWriter
      */
     boolean writeInto(ByteBuffer outputBuffer);
 
+    /**
+     * Returns, without copying, whatever output did not fit into the buffer
+     * last passed to {@link #writeInto(ByteBuffer)}, as a sequence of read-only
+     * buffers.  Returns an empty array if there is none.
+     */
+    ByteBuffer[] unwrittenOutput();
+
+    /**
+     * Discards bytes from the front of the output returned by
+     * {@link #unwrittenOutput()}.
+     */
+    void popUnwrittenOutput(int bytes);
+
     void closed(TransportException error);
 
 }
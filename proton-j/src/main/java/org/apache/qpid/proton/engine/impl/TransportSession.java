@@ -68,6 +68,8 @@ class TransportSession
     private int _unsettledIncomingSize;
     private boolean _endReceived;
     private boolean _beginSent;
+    private IncomingWindowTuner _windowTuner;
+    private boolean _echoRequested;
 
     TransportSession(TransportImpl transport, SessionImpl session)
     {
@@ -185,7 +187,74 @@ class TransportSession
         if (size <= 0) {
             _incomingWindowSize = UnsignedInteger.valueOf(2147483647); // biggest legal value
         } else {
-            _incomingWindowSize = UnsignedInteger.valueOf((_session.getIncomingCapacity() - _session.getIncomingBytes())/size);
+            UnsignedInteger previous = _incomingWindowSize;
+            _incomingWindowSize = UnsignedInteger.valueOf(getAvailableIncomingBytes(size)/size);
+            ConnectionImpl connection = _session.getConnectionImpl();
+            if (connection.getIncomingCapacity() > 0 && _incomingWindowSize.compareTo(previous) < 0) {
+                connection.incomingWindowShrunk(_session);
+            }
+        }
+    }
+
+    private long getAvailableIncomingBytes(int size)
+    {
+        long capacity = _session.getIncomingCapacity();
+        if (_session.isIncomingWindowAutoTuning()) {
+            if (_windowTuner == null) {
+                _windowTuner = new IncomingWindowTuner(IncomingWindowTuner.INITIAL_CAPACITY);
+            }
+            capacity = _windowTuner.getCapacity(Math.max(2L * size, IncomingWindowTuner.INITIAL_CAPACITY), capacity);
+        } else {
+            _windowTuner = null;
+        }
+        long available = capacity - _session.getIncomingBytes();
+        ConnectionImpl connection = _session.getConnectionImpl();
+        if (connection.getIncomingCapacity() > 0) {
+            available = Math.min(available, connection.getAvailableIncomingBytes(_session, size));
+        }
+        return Math.max(0, available);
+    }
+
+    /**
+     * Whether a flow should be sent to reopen the incoming window: always once
+     * it is closed, and when auto-tuning also once less than half of what
+     * could now be offered remains, so a peer on a long path is not left
+     * waiting for the window to run dry first.
+     */
+    boolean needsIncomingWindowUpdate()
+    {
+        if (_incomingWindowSize.equals(UnsignedInteger.ZERO)) {
+            return true;
+        }
+        int size = _transport.getMaxFrameSize();
+        return _windowTuner != null && size > 0
+            && _incomingWindowSize.longValue() * 2 <= getAvailableIncomingBytes(size) / size;
+    }
+
+    IncomingWindowTuner getIncomingWindowTuner()
+    {
+        return _windowTuner;
+    }
+
+    /**
+     * Whether a session flow is owed to the peer, either to answer its echo
+     * or to carry a round trip probe of our own.
+     */
+    boolean needsSessionFlow()
+    {
+        return _echoRequested || (_windowTuner != null && _windowTuner.isProbeWanted());
+    }
+
+    /**
+     * Called as a flow is written, clearing any echo it answers and setting
+     * echo on it when the window tuner wants a round trip measured.
+     */
+    void flowSent(Flow flow)
+    {
+        _echoRequested = false;
+        if (_windowTuner != null && _windowTuner.isProbeWanted()) {
+            flow.setEcho(true);
+            _windowTuner.probeSent(System.nanoTime());
         }
     }
 
@@ -315,6 +384,7 @@ class TransportSession
                 delivery.setDataLength(data.length);
             }
             getSession().incrementIncomingBytes(payload.getLength());
+            ((ReceiverImpl) delivery.getLink()).incrementIncomingBytes(payload.getLength());
         }
         delivery.updateWork();
 
@@ -322,6 +392,7 @@ class TransportSession
         if(!(transfer.getMore() || transfer.getAborted()))
         {
             delivery.setComplete();
+            ((ReceiverImpl) delivery.getLink()).incomingDelivery();
             delivery.getLink().getTransportLink().decrementLinkCredit();
             delivery.getLink().getTransportLink().incrementDeliveryCount();
         }
@@ -331,9 +402,15 @@ class TransportSession
         }
 
         _incomingWindowSize = _incomingWindowSize.subtract(UnsignedInteger.ONE);
+        if (_windowTuner != null) {
+            _windowTuner.transferReceived(_transport.getMaxFrameSize(), System.nanoTime());
+            if (_windowTuner.isProbeWanted()) {
+                _session.modified(false);
+            }
+        }
 
         // this will cause a flow to happen
-        if (_incomingWindowSize.equals(UnsignedInteger.ZERO)) {
+        if (needsIncomingWindowUpdate()) {
             delivery.getLink().modified(false);
         }
 
@@ -382,6 +459,16 @@ class TransportSession
         setRemoteNextOutgoingId(flow.getNextOutgoingId());
         setRemoteOutgoingWindow(flow.getOutgoingWindow());
 
+        // a link's flow may be sent for its own reasons, so only the
+        // session's own flow answers the probe
+        if (_windowTuner != null && flow.getHandle() == null) {
+            _windowTuner.flowReceived(System.nanoTime());
+        }
+        if (flow.getEcho()) {
+            _echoRequested = true;
+            _session.modified(false);
+        }
+
         if(flow.getHandle() != null)
         {
             TransportLink transportLink = getLinkFromRemoteHandle(flow.getHandle());
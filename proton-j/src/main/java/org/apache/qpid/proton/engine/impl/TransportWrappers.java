@@ -0,0 +1,63 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl;
+
+public class TransportWrappers
+{
+    private TransportWrappers()
+    {
+    }
+
+    /**
+     * @return the first layer, starting from the given input, that is still needed.
+     */
+    public static TransportInput collapse(TransportInput input)
+    {
+        while (input instanceof CollapsibleTransportWrapper)
+        {
+            TransportInput collapsed = ((CollapsibleTransportWrapper) input).getCollapsedInput();
+            if (collapsed == null)
+            {
+                break;
+            }
+            input = collapsed;
+        }
+        return input;
+    }
+
+    /**
+     * @return the first layer, starting from the given output, that is still needed.
+     */
+    public static TransportOutput collapse(TransportOutput output)
+    {
+        while (output instanceof CollapsibleTransportWrapper)
+        {
+            TransportOutput collapsed = ((CollapsibleTransportWrapper) output).getCollapsedOutput();
+            if (collapsed == null)
+            {
+                break;
+            }
+            output = collapsed;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+
+/**
+ * The server side of ANONYMOUS (RFC 4505), which accepts every client as the user "anonymous".
+ */
+public class AnonymousServerMechanism implements SaslServerMechanism
+{
+    public static final String MECHANISM = "ANONYMOUS";
+    public static final String USER = "anonymous";
+
+    private static final Exchange EXCHANGE = new Exchange()
+    {
+        @Override
+        public void handleResponse(Binary response, Result result)
+        {
+            result.success(USER, null);
+        }
+    };
+
+    @Override
+    public String getName()
+    {
+        return MECHANISM;
+    }
+
+    @Override
+    public Exchange createExchange()
+    {
+        return EXCHANGE;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import java.util.Arrays;
+
+/**
+ * The standard base64 encoding of RFC 4648, with padding, as used by SCRAM.
+ */
+public final class Base64
+{
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final int[] VALUES = new int[128];
+
+    static
+    {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++)
+        {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64()
+    {
+    }
+
+    public static String encode(byte[] data)
+    {
+        StringBuilder builder = new StringBuilder(((data.length + 2) / 3) * 4);
+        for (int i = 0; i < data.length; i += 3)
+        {
+            int remaining = data.length - i;
+            int bits = (data[i] & 0xff) << 16;
+            if (remaining > 1)
+            {
+                bits |= (data[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2)
+            {
+                bits |= data[i + 2] & 0xff;
+            }
+            builder.append(ALPHABET[(bits >> 18) & 0x3f]);
+            builder.append(ALPHABET[(bits >> 12) & 0x3f]);
+            builder.append(remaining > 1 ? ALPHABET[(bits >> 6) & 0x3f] : '=');
+            builder.append(remaining > 2 ? ALPHABET[bits & 0x3f] : '=');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not valid, padded, base64.
+     */
+    public static byte[] decode(String encoded)
+    {
+        int length = encoded.length();
+        if (length % 4 != 0)
+        {
+            throw new IllegalArgumentException("Invalid base64 length " + length);
+        }
+        int padding = length == 0 ? 0 : encoded.endsWith("==") ? 2 : encoded.endsWith("=") ? 1 : 0;
+        byte[] data = new byte[length / 4 * 3 - padding];
+        int position = 0;
+        for (int i = 0; i < length; i += 4)
+        {
+            int bits = 0;
+            for (int j = 0; j < 4; j++)
+            {
+                char c = encoded.charAt(i + j);
+                int value;
+                if (c == '=' && i + j >= length - padding)
+                {
+                    value = 0;
+                }
+                else if (c >= 128 || (value = VALUES[c]) < 0)
+                {
+                    throw new IllegalArgumentException("Invalid base64 character '" + c + "'");
+                }
+                bits = (bits << 6) | value;
+            }
+            for (int shift = 16; shift >= 0 && position < data.length; shift -= 8)
+            {
+                data[position++] = (byte) (bits >> shift);
+            }
+        }
+        return data;
+    }
+}
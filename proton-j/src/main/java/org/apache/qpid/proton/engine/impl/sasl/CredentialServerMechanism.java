@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialCache;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+
+/**
+ * A server mechanism that verifies clients against a {@link SaslCredentialStore}, doing so on an
+ * executor, where it has one, so that slow lookups and password hashing do not hold up the
+ * transport's thread.  Clients it has recently verified may be remembered in a
+ * {@link SaslCredentialCache}.
+ */
+abstract class CredentialServerMechanism implements SaslServerMechanism
+{
+    private static final Logger _logger = Logger.getLogger(CredentialServerMechanism.class.getName());
+
+    private final SaslCredentialStore _credentialStore;
+    private final Executor _executor;
+    private final SaslCredentialCache _credentialCache;
+
+    CredentialServerMechanism(SaslCredentialStore credentialStore, Executor executor,
+                              SaslCredentialCache credentialCache)
+    {
+        if (credentialStore == null)
+        {
+            throw new IllegalArgumentException("credential store must not be null");
+        }
+        _credentialStore = credentialStore;
+        _executor = executor;
+        _credentialCache = credentialCache;
+    }
+
+    SaslCredentialStore getCredentialStore()
+    {
+        return _credentialStore;
+    }
+
+    /**
+     * @return the credential cached for the user by this mechanism, or null.
+     */
+    ScramCredential getCachedCredential(String username)
+    {
+        return _credentialCache == null ? null : _credentialCache.get(getName(), username);
+    }
+
+    void cacheCredential(String username, ScramCredential credential)
+    {
+        if (_credentialCache != null)
+        {
+            _credentialCache.put(getName(), username, credential);
+        }
+    }
+
+    /**
+     * Runs the verification on the executor, or directly if there is none or it rejects it.  A
+     * verification that fails unexpectedly completes the exchange with a system error.
+     */
+    void verify(final Result result, final Runnable verification)
+    {
+        Runnable guarded = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    verification.run();
+                }
+                catch (RuntimeException e)
+                {
+                    _logger.log(Level.WARNING, getName() + " verification failed", e);
+                    result.failure(SaslOutcome.PN_SASL_SYS);
+                }
+            }
+        };
+
+        if (_executor != null)
+        {
+            try
+            {
+                _executor.execute(guarded);
+                return;
+            }
+            catch (RejectedExecutionException e)
+            {
+                _logger.log(Level.FINE, getName() + " verification rejected by executor, running it directly", e);
+            }
+        }
+        guarded.run();
+    }
+}
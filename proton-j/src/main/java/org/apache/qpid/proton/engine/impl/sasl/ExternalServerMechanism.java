@@ -0,0 +1,57 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+
+/**
+ * The server side of EXTERNAL (RFC 4422), which accepts every client, relying on a lower layer,
+ * normally TLS with peer verification, to have authenticated it.  The authenticated user is the
+ * authorization identity the client gives, or null if it gives none.
+ */
+public class ExternalServerMechanism implements SaslServerMechanism
+{
+    public static final String MECHANISM = "EXTERNAL";
+
+    private static final Exchange EXCHANGE = new Exchange()
+    {
+        @Override
+        public void handleResponse(Binary response, Result result)
+        {
+            String authorizationId = ScramSha256.toString(response);
+            result.success(authorizationId.isEmpty() ? null : authorizationId, null);
+        }
+    };
+
+    @Override
+    public String getName()
+    {
+        return MECHANISM;
+    }
+
+    @Override
+    public Exchange createExchange()
+    {
+        return EXCHANGE;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+
+/**
+ * A client mechanism, such as PLAIN, ANONYMOUS or EXTERNAL, whose only message is its initial
+ * response.
+ */
+public class FixedResponseClientMechanism implements SaslClientMechanism
+{
+    private final String _name;
+    private final Binary _initialResponse;
+
+    public FixedResponseClientMechanism(String name, Binary initialResponse)
+    {
+        _name = name;
+        _initialResponse = initialResponse;
+    }
+
+    public static FixedResponseClientMechanism plain(String username, String password)
+    {
+        byte[] usernameBytes = username.getBytes(ScramSha256.UTF_8);
+        byte[] passwordBytes = password.getBytes(ScramSha256.UTF_8);
+        byte[] data = new byte[usernameBytes.length + passwordBytes.length + 2];
+        System.arraycopy(usernameBytes, 0, data, 1, usernameBytes.length);
+        System.arraycopy(passwordBytes, 0, data, 2 + usernameBytes.length, passwordBytes.length);
+        return new FixedResponseClientMechanism(PlainServerMechanism.MECHANISM, new Binary(data));
+    }
+
+    public static FixedResponseClientMechanism anonymous()
+    {
+        return new FixedResponseClientMechanism(AnonymousServerMechanism.MECHANISM, new Binary(new byte[0]));
+    }
+
+    public static FixedResponseClientMechanism external(String authorizationId)
+    {
+        return new FixedResponseClientMechanism(ExternalServerMechanism.MECHANISM,
+                                                ScramSha256.toBinary(authorizationId == null ? "" : authorizationId));
+    }
+
+    @Override
+    public String getName()
+    {
+        return _name;
+    }
+
+    @Override
+    public Binary getInitialResponse()
+    {
+        return _initialResponse;
+    }
+
+    /**
+     * An empty challenge asks for the initial response, should the server not have received it.
+     */
+    @Override
+    public Binary getChallengeResponse(Binary challenge) throws SaslException
+    {
+        if (challenge != null && challenge.getLength() > 0)
+        {
+            throw new SaslException("Unexpected challenge for " + _name);
+        }
+        return _initialResponse;
+    }
+
+    @Override
+    public void verifyCompletion(Binary additionalData)
+    {
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialCache;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+
+/**
+ * The server side of PLAIN (RFC 4616), verifying the password against the user's
+ * {@link ScramCredential}.  Authorization identities other than the user itself are refused.
+ * <p>
+ * A verified password is cached as a credential salted with a single iteration, so a client
+ * reconnecting with the same password is accepted without the cost of salting it again.
+ */
+public class PlainServerMechanism extends CredentialServerMechanism
+{
+    public static final String MECHANISM = "PLAIN";
+
+    private static final int CACHED_ITERATIONS = 1;
+
+    public PlainServerMechanism(SaslCredentialStore credentialStore, Executor executor)
+    {
+        this(credentialStore, executor, null);
+    }
+
+    public PlainServerMechanism(SaslCredentialStore credentialStore, Executor executor,
+                                SaslCredentialCache credentialCache)
+    {
+        super(credentialStore, executor, credentialCache);
+    }
+
+    @Override
+    public String getName()
+    {
+        return MECHANISM;
+    }
+
+    @Override
+    public Exchange createExchange()
+    {
+        return new Exchange()
+        {
+            @Override
+            public void handleResponse(Binary response, Result result)
+            {
+                if (response.getLength() == 0)
+                {
+                    // ask for the credentials the client did not send with its init
+                    result.challenge(response);
+                    return;
+                }
+                PlainServerMechanism.this.handleResponse(response, result);
+            }
+        };
+    }
+
+    private void handleResponse(Binary response, final Result result)
+    {
+        String[] fields = ScramSha256.toString(response).split("\0", -1);
+        if (fields.length != 3 || (fields[0].length() > 0 && !fields[0].equals(fields[1])))
+        {
+            result.failure(SaslOutcome.PN_SASL_AUTH);
+            return;
+        }
+
+        final String username = fields[1];
+        final String password = fields[2];
+        ScramCredential cached = getCachedCredential(username);
+        if (cached != null && matches(cached, password))
+        {
+            result.success(username, null);
+            return;
+        }
+
+        verify(result, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (isValid(username, password))
+                {
+                    cacheCredential(username, ScramCredential.create(password, CACHED_ITERATIONS));
+                    result.success(username, null);
+                }
+                else
+                {
+                    result.failure(SaslOutcome.PN_SASL_AUTH);
+                }
+            }
+        });
+    }
+
+    boolean isValid(String username, String password)
+    {
+        ScramCredential credential = getCredentialStore().getCredential(username);
+        return credential != null && matches(credential, password);
+    }
+
+    private static boolean matches(ScramCredential credential, String password)
+    {
+        byte[] saltedPassword = ScramSha256.saltPassword(password, credential.getSalt(), credential.getIterations());
+        return MessageDigest.isEqual(ScramSha256.storedKey(saltedPassword), credential.getStoredKey());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+
+/**
+ * The primitives and message syntax of SCRAM-SHA-256 (RFC 5802, RFC 7677).
+ * <p>
+ * Passwords are used as their UTF-8 encoding, without SASLprep normalisation, so must already be
+ * normalised if they are not ASCII.
+ */
+public final class ScramSha256
+{
+    public static final String MECHANISM = "SCRAM-SHA-256";
+
+    /** The GS2 header of a client that neither supports channel binding nor gives an authorization id. */
+    static final String GS2_HEADER = "n,,";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String HMAC = "HmacSHA256";
+    private static final String HASH = "SHA-256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ScramSha256()
+    {
+    }
+
+    /**
+     * @return Hi(password, salt, iterations), i.e. PBKDF2 with HMAC-SHA-256.
+     */
+    public static byte[] saltPassword(String password, byte[] salt, int iterations)
+    {
+        Mac mac = mac(password.getBytes(UTF_8));
+        mac.update(salt);
+        byte[] u = mac.doFinal(new byte[] { 0, 0, 0, 1 });
+        byte[] result = u.clone();
+        for (int i = 1; i < iterations; i++)
+        {
+            u = mac.doFinal(u);
+            for (int j = 0; j < result.length; j++)
+            {
+                result[j] ^= u[j];
+            }
+        }
+        return result;
+    }
+
+    public static byte[] clientKey(byte[] saltedPassword)
+    {
+        return hmac(saltedPassword, "Client Key");
+    }
+
+    public static byte[] storedKey(byte[] saltedPassword)
+    {
+        return hash(clientKey(saltedPassword));
+    }
+
+    public static byte[] serverKey(byte[] saltedPassword)
+    {
+        return hmac(saltedPassword, "Server Key");
+    }
+
+    static byte[] hmac(byte[] key, String data)
+    {
+        return mac(key).doFinal(data.getBytes(UTF_8));
+    }
+
+    static byte[] hash(byte[] data)
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH).digest(data);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mac mac(byte[] key)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(key, HMAC));
+            return mac;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] xor(byte[] a, byte[] b)
+    {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++)
+        {
+            result[i] = (byte) (a[i] ^ b[i]);
+        }
+        return result;
+    }
+
+    static String nonce()
+    {
+        byte[] bytes = new byte[18];
+        RANDOM.nextBytes(bytes);
+        return Base64.encode(bytes);
+    }
+
+    /**
+     * Parses the comma separated <code>attribute=value</code> pairs of a message.
+     */
+    static Map<Character, String> parse(String message) throws SaslException
+    {
+        Map<Character, String> attributes = new HashMap<Character, String>();
+        for (String pair : message.split(","))
+        {
+            if (pair.length() < 2 || pair.charAt(1) != '=')
+            {
+                throw new SaslException("Malformed SCRAM message: " + message);
+            }
+            attributes.put(pair.charAt(0), pair.substring(2));
+        }
+        return attributes;
+    }
+
+    static String required(Map<Character, String> attributes, char attribute) throws SaslException
+    {
+        String value = attributes.get(attribute);
+        if (value == null)
+        {
+            throw new SaslException("SCRAM message lacks attribute " + attribute);
+        }
+        return value;
+    }
+
+    static byte[] decode(String encoded) throws SaslException
+    {
+        try
+        {
+            return Base64.decode(encoded);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new SaslException(e.getMessage());
+        }
+    }
+
+    static String escapeUsername(String username)
+    {
+        return username.replace("=", "=3D").replace(",", "=2C");
+    }
+
+    static String unescapeUsername(String escaped) throws SaslException
+    {
+        if (escaped.replace("=3D", "").replace("=2C", "").indexOf('=') >= 0)
+        {
+            throw new SaslException("Invalid username encoding: " + escaped);
+        }
+        return escaped.replace("=2C", ",").replace("=3D", "=");
+    }
+
+    static Binary toBinary(String message)
+    {
+        return new Binary(message.getBytes(UTF_8));
+    }
+
+    static String toString(Binary binary)
+    {
+        return binary == null ? "" : new String(binary.getArray(), binary.getArrayOffset(), binary.getLength(), UTF_8);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import static org.apache.qpid.proton.engine.impl.sasl.ScramSha256.GS2_HEADER;
+
+import java.security.MessageDigest;
+import java.util.Map;
+
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+
+/**
+ * The client side of SCRAM-SHA-256, which also authenticates the server by checking its
+ * signature in the server-final-message.
+ */
+public class ScramSha256ClientMechanism implements SaslClientMechanism
+{
+    private final String _username;
+    private final String _password;
+
+    private String _clientNonce;
+    private String _clientFirstMessageBare;
+    private byte[] _expectedServerSignature;
+    private boolean _serverVerified;
+
+    public ScramSha256ClientMechanism(String username, String password)
+    {
+        this(username, password, ScramSha256.nonce());
+    }
+
+    ScramSha256ClientMechanism(String username, String password, String clientNonce)
+    {
+        _username = username;
+        _password = password;
+        _clientNonce = clientNonce;
+    }
+
+    @Override
+    public String getName()
+    {
+        return ScramSha256.MECHANISM;
+    }
+
+    @Override
+    public Binary getInitialResponse()
+    {
+        _clientFirstMessageBare = "n=" + ScramSha256.escapeUsername(_username) + ",r=" + _clientNonce;
+        return ScramSha256.toBinary(GS2_HEADER + _clientFirstMessageBare);
+    }
+
+    @Override
+    public Binary getChallengeResponse(Binary challenge) throws SaslException
+    {
+        if (_clientFirstMessageBare == null)
+        {
+            throw new SaslException("Challenge received before the client-first-message was sent");
+        }
+        if (_expectedServerSignature != null)
+        {
+            // some servers send the server-final-message as a challenge rather than with the outcome
+            verifyCompletion(challenge);
+            return new Binary(new byte[0]);
+        }
+
+        String serverFirstMessage = ScramSha256.toString(challenge);
+        Map<Character, String> attributes = ScramSha256.parse(serverFirstMessage);
+        String nonce = ScramSha256.required(attributes, 'r');
+        if (!nonce.startsWith(_clientNonce) || nonce.length() == _clientNonce.length())
+        {
+            throw new SaslException("Server nonce does not extend the client nonce");
+        }
+        byte[] salt = ScramSha256.decode(ScramSha256.required(attributes, 's'));
+        int iterations;
+        try
+        {
+            iterations = Integer.parseInt(ScramSha256.required(attributes, 'i'));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new SaslException("Invalid iteration count in " + serverFirstMessage);
+        }
+        if (iterations < 1)
+        {
+            throw new SaslException("Invalid iteration count in " + serverFirstMessage);
+        }
+
+        byte[] saltedPassword = ScramSha256.saltPassword(_password, salt, iterations);
+        byte[] clientKey = ScramSha256.clientKey(saltedPassword);
+        String clientFinalMessageWithoutProof = "c=" + Base64.encode(GS2_HEADER.getBytes(ScramSha256.UTF_8)) + ",r=" + nonce;
+        String authMessage = _clientFirstMessageBare + "," + serverFirstMessage + "," + clientFinalMessageWithoutProof;
+        byte[] clientSignature = ScramSha256.hmac(ScramSha256.hash(clientKey), authMessage);
+        _expectedServerSignature = ScramSha256.hmac(ScramSha256.serverKey(saltedPassword), authMessage);
+
+        byte[] proof = ScramSha256.xor(clientKey, clientSignature);
+        return ScramSha256.toBinary(clientFinalMessageWithoutProof + ",p=" + Base64.encode(proof));
+    }
+
+    @Override
+    public void verifyCompletion(Binary additionalData) throws SaslException
+    {
+        if (_serverVerified)
+        {
+            return;
+        }
+        if (_expectedServerSignature == null)
+        {
+            throw new SaslException("Authentication completed before the client-final-message was sent");
+        }
+        if (additionalData == null || additionalData.getLength() == 0)
+        {
+            throw new SaslException("Server did not send its signature");
+        }
+
+        Map<Character, String> attributes = ScramSha256.parse(ScramSha256.toString(additionalData));
+        if (attributes.containsKey('e'))
+        {
+            throw new SaslException("Server reported error: " + attributes.get('e'));
+        }
+        byte[] serverSignature = ScramSha256.decode(ScramSha256.required(attributes, 'v'));
+        if (!MessageDigest.isEqual(serverSignature, _expectedServerSignature))
+        {
+            throw new SaslException("Server signature is invalid");
+        }
+        _serverVerified = true;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialCache;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+
+/**
+ * The server side of SCRAM-SHA-256 (RFC 5802, RFC 7677).  Channel binding is not supported, and
+ * authorization identities other than the user itself are refused.  The server-final-message is
+ * sent as the additional data of the outcome.
+ * <p>
+ * The credentials of authenticated users may be cached, so that the server-first-message of a
+ * reconnecting client is sent without a store lookup.
+ * <p>
+ * A user the store doesn't know is given a made-up credential, with a salt derived from the
+ * name, so that the exchange looks the same as for a real user until the client's proof fails.
+ */
+public class ScramSha256ServerMechanism extends CredentialServerMechanism
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] _unknownUserKey = new byte[32];
+
+    public ScramSha256ServerMechanism(SaslCredentialStore credentialStore, Executor executor)
+    {
+        this(credentialStore, executor, null);
+    }
+
+    public ScramSha256ServerMechanism(SaslCredentialStore credentialStore, Executor executor,
+                                      SaslCredentialCache credentialCache)
+    {
+        super(credentialStore, executor, credentialCache);
+        RANDOM.nextBytes(_unknownUserKey);
+    }
+
+    @Override
+    public String getName()
+    {
+        return ScramSha256.MECHANISM;
+    }
+
+    @Override
+    public Exchange createExchange()
+    {
+        return new ScramExchange();
+    }
+
+    /**
+     * @return a credential no proof can match, whose salt is the same on every attempt for the name.
+     */
+    private ScramCredential unknownUserCredential(String username)
+    {
+        byte[] salt = Arrays.copyOf(ScramSha256.hmac(_unknownUserKey, username), 16);
+        byte[] key = new byte[32];
+        RANDOM.nextBytes(key);
+        return new ScramCredential(salt, ScramCredential.DEFAULT_ITERATIONS, key, key);
+    }
+
+    private class ScramExchange implements Exchange
+    {
+        private String _gs2Header;
+        private String _username;
+        private String _clientFirstMessageBare;
+        private String _serverFirstMessage;
+        private String _nonce;
+        private ScramCredential _credential;
+        private boolean _unknownUser;
+
+        @Override
+        public void handleResponse(Binary response, Result result)
+        {
+            try
+            {
+                if (_clientFirstMessageBare == null)
+                {
+                    handleClientFirstMessage(ScramSha256.toString(response), result);
+                }
+                else if (_credential != null)
+                {
+                    handleClientFinalMessage(ScramSha256.toString(response), result);
+                }
+                else
+                {
+                    throw new SaslException("Unexpected response");
+                }
+            }
+            catch (SaslException e)
+            {
+                result.failure(SaslOutcome.PN_SASL_AUTH);
+            }
+        }
+
+        private void handleClientFirstMessage(String message, final Result result) throws SaslException
+        {
+            int authzidEnd = message.indexOf(',', message.indexOf(',') + 1);
+            if (!(message.startsWith("n,") || message.startsWith("y,")) || authzidEnd < 0)
+            {
+                throw new SaslException("Unsupported GS2 header in " + message);
+            }
+            _gs2Header = message.substring(0, authzidEnd + 1);
+            _clientFirstMessageBare = message.substring(authzidEnd + 1);
+
+            Map<Character, String> attributes = ScramSha256.parse(_clientFirstMessageBare);
+            if (attributes.containsKey('m'))
+            {
+                throw new SaslException("Unsupported mandatory extension");
+            }
+            _username = ScramSha256.unescapeUsername(ScramSha256.required(attributes, 'n'));
+            String authorizationId = _gs2Header.substring(2, authzidEnd);
+            if (!authorizationId.isEmpty() && !authorizationId.equals("a=" + ScramSha256.escapeUsername(_username)))
+            {
+                throw new SaslException("Authorization identity " + authorizationId + " refused");
+            }
+            final String clientNonce = ScramSha256.required(attributes, 'r');
+
+            ScramCredential cached = getCachedCredential(_username);
+            if (cached != null)
+            {
+                sendServerFirstMessage(cached, clientNonce, result);
+                return;
+            }
+
+            verify(result, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ScramCredential credential = getCredentialStore().getCredential(_username);
+                    if (credential == null)
+                    {
+                        _unknownUser = true;
+                        credential = unknownUserCredential(_username);
+                    }
+                    sendServerFirstMessage(credential, clientNonce, result);
+                }
+            });
+        }
+
+        private void sendServerFirstMessage(ScramCredential credential, String clientNonce, Result result)
+        {
+            _nonce = clientNonce + ScramSha256.nonce();
+            _serverFirstMessage = "r=" + _nonce + ",s=" + Base64.encode(credential.getSalt()) +
+                                  ",i=" + credential.getIterations();
+            _credential = credential;
+            result.challenge(ScramSha256.toBinary(_serverFirstMessage));
+        }
+
+        private void handleClientFinalMessage(String message, Result result) throws SaslException
+        {
+            int proofStart = message.lastIndexOf(",p=");
+            if (proofStart < 0)
+            {
+                throw new SaslException("Client proof missing");
+            }
+            String clientFinalMessageWithoutProof = message.substring(0, proofStart);
+            Map<Character, String> attributes = ScramSha256.parse(message);
+            String channelBinding = ScramSha256.required(attributes, 'c');
+            if (!channelBinding.equals(Base64.encode(_gs2Header.getBytes(ScramSha256.UTF_8))) ||
+                !ScramSha256.required(attributes, 'r').equals(_nonce))
+            {
+                throw new SaslException("Channel binding or nonce mismatch");
+            }
+            byte[] proof = ScramSha256.decode(ScramSha256.required(attributes, 'p'));
+
+            String authMessage = _clientFirstMessageBare + "," + _serverFirstMessage + "," + clientFinalMessageWithoutProof;
+            byte[] storedKey = _credential.getStoredKey();
+            byte[] clientSignature = ScramSha256.hmac(storedKey, authMessage);
+            if (proof.length != clientSignature.length ||
+                !MessageDigest.isEqual(ScramSha256.hash(ScramSha256.xor(proof, clientSignature)), storedKey) ||
+                _unknownUser)
+            {
+                throw new SaslException("Client proof is invalid");
+            }
+
+            byte[] serverSignature = ScramSha256.hmac(_credential.getServerKey(), authMessage);
+            cacheCredential(_username, _credential);
+            result.success(_username, ScramSha256.toBinary("v=" + Base64.encode(serverSignature)));
+        }
+    }
+}
@@ -29,7 +29,7 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSession;
 
 
-class DefaultSslEngineFacade implements ProtonSslEngine
+class DefaultSslEngineFacade implements GatheringProtonSslEngine
 {
     private final SSLEngine _sslEngine;
 
@@ -41,6 +41,10 @@ class DefaultSslEngineFacade implements ProtonSslEngine
      */
     private static final int APPLICATION_BUFFER_EXTRA = 50;
 
+    /** used to tell whether the session established by the first handshake was resumed. */
+    private final long _creationTime = System.currentTimeMillis();
+    private boolean _handshakeCompleted;
+
     DefaultSslEngineFacade(SSLEngine sslEngine)
     {
         _sslEngine = sslEngine;
@@ -49,13 +53,29 @@ class DefaultSslEngineFacade implements ProtonSslEngine
     @Override
     public SSLEngineResult wrap(ByteBuffer src, ByteBuffer dst) throws SSLException
     {
-        return _sslEngine.wrap(src, dst);
+        return checkHandshakeCompleted(_sslEngine.wrap(src, dst));
+    }
+
+    @Override
+    public SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst) throws SSLException
+    {
+        return checkHandshakeCompleted(_sslEngine.wrap(srcs, dst));
     }
 
     @Override
     public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer dst) throws SSLException
     {
-        return _sslEngine.unwrap(src, dst);
+        return checkHandshakeCompleted(_sslEngine.unwrap(src, dst));
+    }
+
+    private SSLEngineResult checkHandshakeCompleted(SSLEngineResult result)
+    {
+        if (!_handshakeCompleted && result.getHandshakeStatus() == HandshakeStatus.FINISHED)
+        {
+            _handshakeCompleted = true;
+            SslContextCache.handshakeCompleted(_sslEngine.getSession(), _creationTime);
+        }
+        return result;
     }
 
     /**
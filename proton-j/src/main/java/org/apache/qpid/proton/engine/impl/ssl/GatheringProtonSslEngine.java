@@ -0,0 +1,42 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A {@link ProtonSslEngine} that can gather the data for a packet from several buffers.
+ * Engines that don't implement it are given the transport's output one buffer at a time.
+ */
+public interface GatheringProtonSslEngine extends ProtonSslEngine
+{
+    /**
+     * @see SSLEngine#wrap(ByteBuffer[], ByteBuffer)
+     *
+     * As {@link #wrap(ByteBuffer, ByteBuffer)}, but gathering the data for the
+     * packet from the srcs byte buffers in order.
+     */
+    SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst) throws SSLException;
+}
@@ -24,6 +24,8 @@ package org.apache.qpid.proton.engine.impl.ssl;
 import static org.apache.qpid.proton.engine.impl.ByteBufferUtils.newWriteableBuffer;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,7 @@ import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.engine.TransportException;
 import org.apache.qpid.proton.engine.impl.TransportInput;
 import org.apache.qpid.proton.engine.impl.TransportOutput;
+import org.apache.qpid.proton.engine.impl.TransportWrappers;
 
 /**
  * TODO close the SSLEngine when told to, and modify {@link #wrapOutput()} and {@link #unwrapInput()}
@@ -47,8 +50,9 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
 
     private final ProtonSslEngine _sslEngine;
 
-    private final TransportInput _underlyingInput;
-    private final TransportOutput _underlyingOutput;
+    /** The layers beneath, collapsed as they become pass-through. */
+    private TransportInput _underlyingInput;
+    private TransportOutput _underlyingOutput;
 
     private boolean _tail_closed = false;
     private ByteBuffer _inputBuffer;
@@ -70,12 +74,36 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
     /** could change during the lifetime of the ssl connection owing to renegotiation. */
     private String _protocolName;
 
+    /**
+     * Whether small amounts of output are held back, while earlier output is still waiting to
+     * be written, so that they can be wrapped together with later output into a fuller packet.
+     */
+    private final boolean _coalesceRecords;
+
+    /** Runs the engine's delegated tasks, or null to run them on the calling thread. */
+    private Executor _delegatedTaskExecutor;
+
+    /** Notified, on the executor's thread, when delegated tasks run by the executor complete. */
+    private Runnable _delegatedTaskListener;
+
+    /** Whether delegated tasks are running on the executor, during which the engine is left alone. */
+    private volatile boolean _delegatedTasksRunning;
+
+    /** Whether input may have been left in {@link #_inputBuffer} while delegated tasks ran. */
+    private boolean _unwrapDeferred;
 
     SimpleSslTransportWrapper(ProtonSslEngine sslEngine, TransportInput underlyingInput, TransportOutput underlyingOutput)
+    {
+        this(sslEngine, underlyingInput, underlyingOutput, false);
+    }
+
+    SimpleSslTransportWrapper(ProtonSslEngine sslEngine, TransportInput underlyingInput, TransportOutput underlyingOutput,
+                              boolean coalesceRecords)
     {
         _underlyingInput = underlyingInput;
         _underlyingOutput = underlyingOutput;
         _sslEngine = sslEngine;
+        _coalesceRecords = coalesceRecords;
 
         int effectiveAppBufferMax = _sslEngine.getEffectiveApplicationBufferSize();
         int packetSize = _sslEngine.getPacketBufferSize();
@@ -96,9 +124,24 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
     }
 
 
+    /**
+     * Runs the engine's delegated tasks on the given executor rather than on the thread driving
+     * this wrapper, notifying the listener, if any, on the executor's thread when they complete.
+     */
+    void setDelegatedTaskExecutor(Executor executor, Runnable listener)
+    {
+        _delegatedTaskExecutor = executor;
+        _delegatedTaskListener = listener;
+    }
+
     /**
      * Unwraps the contents of {@link #_inputBuffer} and passes it to {@link #_underlyingInput}.
      *
+     * Where the underlying input has room for the decoded bytes, they are unwrapped directly
+     * into its tail.  Otherwise, or if the engine reports {@link Status#BUFFER_OVERFLOW} for
+     * the underlying tail, they are unwrapped into {@link #_decodedInputBuffer} and copied
+     * across as the underlying input makes room.
+     *
      * Regarding the state of {@link #_inputBuffer}:
      * - On entry, it is assumed to be readable.
      * - On exit, it is still readable and its "remaining" bytes are those that we were unable
@@ -106,46 +149,45 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
      */
     private void unwrapInput() throws SSLException
     {
+        if (_delegatedTasksRunning) {
+            _unwrapDeferred = true;
+            return;
+        }
+
+        boolean direct = true;
         while (true) {
-            SSLEngineResult result = _sslEngine.unwrap(_inputBuffer, _decodedInputBuffer);
-            logEngineClientModeAndResult(result, "input");
+            int capacity = _underlyingInput.capacity();
+            SSLEngineResult result;
+            Status status;
 
-            int read = result.bytesProduced();
-            Status status = result.getStatus();
-            HandshakeStatus hstatus = result.getHandshakeStatus();
+            if (direct && canUnwrapDirectly(capacity)) {
+                result = _sslEngine.unwrap(_inputBuffer, _underlyingInput.tail());
+                logEngineClientModeAndResult(result, "input");
+                status = result.getStatus();
 
-            int capacity = _underlyingInput.capacity();
-            if (capacity == Transport.END_OF_STREAM || capacity <= 0) {
-                _tail_closed = true;
-                if (_decodedInputBuffer.position() > 0) {
-                    throw new TransportException("bytes left unconsumed");
+                if (status == Status.BUFFER_OVERFLOW) {
+                    direct = false;
+                    continue;
                 }
-            } else {
-                _decodedInputBuffer.flip();
-
-                while (_decodedInputBuffer.hasRemaining() && capacity > 0) {
-                    ByteBuffer tail = _underlyingInput.tail();
-                    int limit = _decodedInputBuffer.limit();
-                    int overflow = _decodedInputBuffer.remaining() - capacity;
-                    if (overflow > 0) {
-                        _decodedInputBuffer.limit(limit - overflow);
-                    }
-                    tail.put(_decodedInputBuffer);
-                    _decodedInputBuffer.limit(limit);
+
+                if (result.bytesProduced() > 0) {
                     _underlyingInput.process();
                     capacity = _underlyingInput.capacity();
                 }
-
                 if (capacity == Transport.END_OF_STREAM || capacity <= 0) {
                     _tail_closed = true;
-                    if (_decodedInputBuffer.hasRemaining()) {
-                        throw new TransportException("bytes left unconsumed");
-                    }
                 }
+            } else {
+                result = _sslEngine.unwrap(_inputBuffer, _decodedInputBuffer);
+                logEngineClientModeAndResult(result, "input");
+                status = result.getStatus();
+                direct = status != Status.BUFFER_OVERFLOW;
 
-                _decodedInputBuffer.compact();
+                passDecodedInput(capacity);
             }
 
+            HandshakeStatus hstatus = result.getHandshakeStatus();
+
             switch (status) {
             case CLOSED:
                 _tail_closed = true;
@@ -174,8 +216,10 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
                 // wait for write to kick in
                 break;
             case NEED_TASK:
-                runDelegatedTasks(result);
-                continue;
+                if (runDelegatedTasks(result)) {
+                    continue;
+                }
+                break;
             case FINISHED:
                 updateCipherAndProtocolName(result);
             case NOT_HANDSHAKING:
@@ -196,22 +240,87 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
         }
     }
 
+    /**
+     * The underlying tail can take the decoded bytes directly if nothing is already waiting in
+     * {@link #_decodedInputBuffer} and it has room for either all of the encoded input (which
+     * never decodes to more bytes) or the engine's largest decoded packet.
+     */
+    private boolean canUnwrapDirectly(int capacity)
+    {
+        return _decodedInputBuffer.position() == 0 && capacity > 0 &&
+               capacity >= Math.min(_inputBuffer.remaining(), _sslEngine.getEffectiveApplicationBufferSize());
+    }
+
+    /**
+     * Copies the contents of {@link #_decodedInputBuffer} into {@link #_underlyingInput}, as far
+     * as its capacity allows.
+     *
+     * {@link #_decodedInputBuffer} is assumed to be writeable on entry and is guaranteed to be
+     * still writeable on exit.
+     */
+    private void passDecodedInput(int capacity)
+    {
+        if (capacity == Transport.END_OF_STREAM || capacity <= 0) {
+            _tail_closed = true;
+            if (_decodedInputBuffer.position() > 0) {
+                throw new TransportException("bytes left unconsumed");
+            }
+            return;
+        }
+
+        _decodedInputBuffer.flip();
+
+        while (_decodedInputBuffer.hasRemaining() && capacity > 0) {
+            ByteBuffer tail = _underlyingInput.tail();
+            int limit = _decodedInputBuffer.limit();
+            int overflow = _decodedInputBuffer.remaining() - capacity;
+            if (overflow > 0) {
+                _decodedInputBuffer.limit(limit - overflow);
+            }
+            tail.put(_decodedInputBuffer);
+            _decodedInputBuffer.limit(limit);
+            _underlyingInput.process();
+            capacity = _underlyingInput.capacity();
+        }
+
+        if (capacity == Transport.END_OF_STREAM || capacity <= 0) {
+            _tail_closed = true;
+            if (_decodedInputBuffer.hasRemaining()) {
+                throw new TransportException("bytes left unconsumed");
+            }
+        }
+
+        _decodedInputBuffer.compact();
+    }
+
     /**
      * Wrap the underlying transport's output, passing it to the output buffer.
      *
+     * Where the engine can gather, all of the underlying output's {@link TransportOutput#heads()}
+     * are gathered into each packet, so that a packet is not limited by the size of the
+     * underlying output buffer.
+     *
      * {@link #_outputBuffer} is assumed to be writeable on entry and is guaranteed to
      * be still writeable on exit.
      */
     private void wrapOutput() throws SSLException
     {
+        if (_delegatedTasksRunning) {
+            return;
+        }
+
         while (true) {
             int pending = _underlyingOutput.pending();
             if (pending < 0) {
                 _head_closed = true;
             }
 
-            ByteBuffer clearOutputBuffer = _underlyingOutput.head();
-            SSLEngineResult result = _sslEngine.wrap(clearOutputBuffer, _outputBuffer);
+            ByteBuffer[] clearOutputBuffers = _underlyingOutput.heads();
+            if (deferWrap(pending, clearOutputBuffers)) {
+                break;
+            }
+
+            SSLEngineResult result = wrap(clearOutputBuffers);
             logEngineClientModeAndResult(result, "output");
 
             int written = result.bytesConsumed();
@@ -248,8 +357,10 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
                 // keep looping
                 continue;
             case NEED_TASK:
-                runDelegatedTasks(result);
-                continue;
+                if (runDelegatedTasks(result)) {
+                    continue;
+                }
+                break;
             case FINISHED:
                 updateCipherAndProtocolName(result);
                 // intentionally fall through
@@ -265,6 +376,49 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
         }
     }
 
+    /**
+     * Wraps the clear output into {@link #_outputBuffer}, gathering it from all of the buffers if
+     * the engine is a {@link GatheringProtonSslEngine}, and otherwise taking it from the first
+     * buffer with any bytes remaining.
+     */
+    private SSLEngineResult wrap(ByteBuffer[] clearOutputBuffers) throws SSLException
+    {
+        if (_sslEngine instanceof GatheringProtonSslEngine) {
+            return ((GatheringProtonSslEngine) _sslEngine).wrap(clearOutputBuffers, _outputBuffer);
+        }
+
+        ByteBuffer clearOutput = clearOutputBuffers[0];
+        for (ByteBuffer buffer : clearOutputBuffers) {
+            if (buffer.hasRemaining()) {
+                clearOutput = buffer;
+                break;
+            }
+        }
+        return _sslEngine.wrap(clearOutput, _outputBuffer);
+    }
+
+    /**
+     * When coalescing records, output that would make less than a full packet is held back while
+     * previously wrapped output is still waiting to be written.  It is wrapped, together with any
+     * output produced meanwhile, once the output buffer has been drained, so the delay is bounded
+     * by the time taken to write what is already pending.
+     */
+    private boolean deferWrap(int pending, ByteBuffer[] clearOutputBuffers)
+    {
+        if (!_coalesceRecords || pending <= 0 || _outputBuffer.position() == 0 ||
+            _sslEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+        {
+            return false;
+        }
+
+        int available = 0;
+        for (ByteBuffer buffer : clearOutputBuffers)
+        {
+            available += buffer.remaining();
+        }
+        return available < _sslEngine.getEffectiveApplicationBufferSize();
+    }
+
     private boolean hasSpaceForSslPacket(ByteBuffer byteBuffer)
     {
         return byteBuffer.remaining() >= _sslEngine.getPacketBufferSize();
@@ -293,22 +447,79 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
         }
     }
 
-    private void runDelegatedTasks(SSLEngineResult result)
+    /**
+     * @return true if the delegated tasks have been run, false if they have been handed to
+     *         {@link #_delegatedTaskExecutor} and wrapping and unwrapping must wait for them.
+     */
+    private boolean runDelegatedTasks(SSLEngineResult result)
     {
         if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK)
         {
-            Runnable runnable;
-            while ((runnable = _sslEngine.getDelegatedTask()) != null)
+            if (_delegatedTaskExecutor != null)
             {
-                runnable.run();
+                _delegatedTasksRunning = true;
+                _unwrapDeferred = true;
+                try
+                {
+                    _delegatedTaskExecutor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                runDelegatedTasks();
+                            }
+                            finally
+                            {
+                                _delegatedTasksRunning = false;
+                                if (_delegatedTaskListener != null)
+                                {
+                                    _delegatedTaskListener.run();
+                                }
+                            }
+                        }
+                    });
+                    return false;
+                }
+                catch (RejectedExecutionException e)
+                {
+                    _delegatedTasksRunning = false;
+                    _logger.log(Level.FINE, "Delegated tasks rejected by executor, running them directly", e);
+                }
             }
 
+            runDelegatedTasks();
+
             HandshakeStatus hsStatus = _sslEngine.getHandshakeStatus();
             if (hsStatus == HandshakeStatus.NEED_TASK)
             {
                 throw new RuntimeException("handshake shouldn't need additional tasks");
             }
         }
+        return true;
+    }
+
+    private void runDelegatedTasks()
+    {
+        Runnable runnable;
+        while ((runnable = _sslEngine.getDelegatedTask()) != null)
+        {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Unwraps any input left in {@link #_inputBuffer} while delegated tasks were running, once
+     * they have completed.
+     */
+    private void resumeDeferredUnwrap()
+    {
+        if (_unwrapDeferred && !_delegatedTasksRunning && !_tail_closed)
+        {
+            _unwrapDeferred = false;
+            process();
+        }
     }
 
     private void logEngineClientModeAndResult(SSLEngineResult result, String direction)
@@ -332,6 +543,7 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
     @Override
     public int capacity()
     {
+        resumeDeferredUnwrap();
         if (_tail_closed) return Transport.END_OF_STREAM;
         return _inputBuffer.remaining();
     }
@@ -355,6 +567,7 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
     {
         if (_tail_closed) throw new TransportException("tail closed");
 
+        _underlyingInput = TransportWrappers.collapse(_underlyingInput);
         _inputBuffer.flip();
 
         try {
@@ -381,6 +594,7 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
     @Override
     public int pending()
     {
+        _underlyingOutput = TransportWrappers.collapse(_underlyingOutput);
         try {
             wrapOutput();
         } catch (SSLException e) {
@@ -404,6 +618,12 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
         return _head;
     }
 
+    @Override
+    public ByteBuffer[] heads()
+    {
+        return new ByteBuffer[] { head() };
+    }
+
     @Override
     public void pop(int bytes)
     {
@@ -435,6 +655,7 @@ public class SimpleSslTransportWrapper implements SslTransportWrapper
             .append(", decodedInputBuffer=").append(_decodedInputBuffer)
             .append(", cipherName=").append(_cipherName)
             .append(", protocolName=").append(_protocolName)
+            .append(", coalesceRecords=").append(_coalesceRecords)
             .append("]");
         return builder.toString();
     }
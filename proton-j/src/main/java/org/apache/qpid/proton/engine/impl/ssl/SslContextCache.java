@@ -0,0 +1,349 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.qpid.proton.engine.SslDomain;
+
+/**
+ * A process-wide cache of {@link SSLContext}s, keyed by the settings of the {@link SslDomain}
+ * they were created from.  Transports created from equivalent domains therefore share key
+ * material (read from the PEM files once) and a TLS session cache, so reconnecting clients can
+ * resume their sessions rather than performing full handshakes.
+ * <p>
+ * A cached context is replaced if any of the certificate, key or CA files it was created from
+ * has since been modified.  The least recently used contexts are evicted once more than
+ * {@link #getContextCacheSize()} are cached.  The cache is keyed by a digest of the private key
+ * password rather than the password itself.
+ * <p>
+ * The number of cached contexts defaults to the <code>proton.ssl_context_cache_size</code>
+ * system property, or 16.  The sizing and timeout of the session caches default to the
+ * <code>proton.ssl_session_cache_size</code> and <code>proton.ssl_session_timeout</code>
+ * system properties, where a value of 0 leaves the JSSE default in place.
+ */
+public final class SslContextCache
+{
+    private static final Logger _logger = Logger.getLogger(SslContextCache.class.getName());
+
+    /** Guarded by itself, and kept in access order so that the eldest entry is the least recently used. */
+    private static final LinkedHashMap<Key, Entry> _contexts = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, SslContextCache.Entry> eldest)
+        {
+            return size() > _contextCacheSize;
+        }
+    };
+
+    private static volatile int _contextCacheSize = Integer.getInteger("proton.ssl_context_cache_size", 16);
+
+    private static volatile int _sessionCacheSize = Integer.getInteger("proton.ssl_session_cache_size", 0);
+    private static volatile int _sessionTimeout = Integer.getInteger("proton.ssl_session_timeout", 0);
+
+    private static final AtomicLong _fullHandshakes = new AtomicLong();
+    private static final AtomicLong _resumedHandshakes = new AtomicLong();
+
+    private SslContextCache()
+    {
+    }
+
+    /**
+     * Sets the maximum number of contexts cached, evicting the least recently used of those
+     * already cached if there are more.
+     *
+     * @param size the number of contexts, or 0 to cache none.
+     */
+    public static void setContextCacheSize(int size)
+    {
+        synchronized (_contexts)
+        {
+            _contextCacheSize = size;
+            Iterator<Entry> entries = _contexts.values().iterator();
+            while (_contexts.size() > size && entries.hasNext())
+            {
+                entries.next();
+                entries.remove();
+            }
+        }
+    }
+
+    public static int getContextCacheSize()
+    {
+        return _contextCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of sessions held by the client and server session caches of each
+     * cached context, including those already cached.
+     *
+     * @param size the number of sessions, or 0 for no limit.
+     */
+    public static void setSessionCacheSize(int size)
+    {
+        _sessionCacheSize = size;
+        for (Entry entry : entries())
+        {
+            configureSessionContexts(entry._context);
+        }
+    }
+
+    public static int getSessionCacheSize()
+    {
+        return _sessionCacheSize;
+    }
+
+    /**
+     * Sets the time after which cached sessions expire, for each cached context, including those
+     * already cached.
+     *
+     * @param seconds the timeout in seconds, or 0 for no limit.
+     */
+    public static void setSessionTimeout(int seconds)
+    {
+        _sessionTimeout = seconds;
+        for (Entry entry : entries())
+        {
+            configureSessionContexts(entry._context);
+        }
+    }
+
+    public static int getSessionTimeout()
+    {
+        return _sessionTimeout;
+    }
+
+    /**
+     * @return the number of completed handshakes that established a new session.
+     */
+    public static long getFullHandshakes()
+    {
+        return _fullHandshakes.get();
+    }
+
+    /**
+     * @return the number of completed handshakes that resumed a cached session.  Under TLSv1.3,
+     *         resumed sessions cannot be told apart from new ones and are counted as full.
+     */
+    public static long getResumedHandshakes()
+    {
+        return _resumedHandshakes.get();
+    }
+
+    /**
+     * Discards all cached contexts, and their sessions, and resets the handshake counters.
+     */
+    public static void clear()
+    {
+        synchronized (_contexts)
+        {
+            _contexts.clear();
+        }
+        _fullHandshakes.set(0);
+        _resumedHandshakes.set(0);
+    }
+
+    /**
+     * @return the context cached for the domain's settings, or null if there is none or the
+     *         files it was created from have been modified.
+     */
+    static SSLContext get(SslDomain domain)
+    {
+        Entry entry;
+        synchronized (_contexts)
+        {
+            entry = _contexts.get(new Key(domain));
+        }
+        if (entry == null || !Arrays.equals(entry._lastModified, lastModified(domain)))
+        {
+            return null;
+        }
+        return entry._context;
+    }
+
+    /**
+     * Caches the given context for the domain's settings, unless another thread has cached an
+     * up to date one first.
+     *
+     * @return the context to use.
+     */
+    static SSLContext put(SslDomain domain, SSLContext context)
+    {
+        Key key = new Key(domain);
+        Entry entry = new Entry(context, lastModified(domain));
+        configureSessionContexts(context);
+
+        Entry existing;
+        synchronized (_contexts)
+        {
+            existing = _contexts.get(key);
+            if (existing != null && Arrays.equals(existing._lastModified, entry._lastModified))
+            {
+                return existing._context;
+            }
+            _contexts.put(key, entry);
+        }
+
+        if (existing != null && _logger.isLoggable(Level.FINE))
+        {
+            _logger.fine("Replaced SSLContext for modified files of domain " + domain);
+        }
+        return context;
+    }
+
+    /**
+     * Records the completion of a handshake that started at the given time.
+     */
+    static void handshakeCompleted(SSLSession session, long handshakeStartTime)
+    {
+        if (session.getCreationTime() < handshakeStartTime)
+        {
+            _resumedHandshakes.incrementAndGet();
+        }
+        else
+        {
+            _fullHandshakes.incrementAndGet();
+        }
+    }
+
+    private static List<Entry> entries()
+    {
+        synchronized (_contexts)
+        {
+            return new ArrayList<Entry>(_contexts.values());
+        }
+    }
+
+    private static void configureSessionContexts(SSLContext context)
+    {
+        configureSessionContext(context.getClientSessionContext());
+        configureSessionContext(context.getServerSessionContext());
+    }
+
+    private static void configureSessionContext(SSLSessionContext sessionContext)
+    {
+        if (sessionContext != null)
+        {
+            if (_sessionCacheSize > 0)
+            {
+                sessionContext.setSessionCacheSize(_sessionCacheSize);
+            }
+            if (_sessionTimeout > 0)
+            {
+                sessionContext.setSessionTimeout(_sessionTimeout);
+            }
+        }
+    }
+
+    private static long[] lastModified(SslDomain domain)
+    {
+        return new long[] {
+            lastModified(domain.getCertificateFile()),
+            lastModified(domain.getPrivateKeyFile()),
+            lastModified(domain.getTrustedCaDb())
+        };
+    }
+
+    private static long lastModified(String file)
+    {
+        return file == null ? 0 : new File(file).lastModified();
+    }
+
+    private static final class Entry
+    {
+        private final SSLContext _context;
+        private final long[] _lastModified;
+
+        private Entry(SSLContext context, long[] lastModified)
+        {
+            _context = context;
+            _lastModified = lastModified;
+        }
+    }
+
+    /**
+     * The domain settings that determine the contents of an {@link SSLContext}.
+     */
+    private static final class Key
+    {
+        private final Object[] _settings;
+
+        private Key(SslDomain domain)
+        {
+            _settings = new Object[] {
+                domain.getPeerAuthentication(),
+                domain.getCertificateFile(),
+                domain.getPrivateKeyFile(),
+                digest(domain.getPrivateKeyPassword()),
+                domain.getTrustedCaDb(),
+                SslEngineFacadeFactory.getSslContextProvider(domain).getName()
+            };
+        }
+
+        private static String digest(String password)
+        {
+            if (password == null)
+            {
+                return null;
+            }
+            try
+            {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return new BigInteger(1, digest.digest(password.getBytes(StandardCharsets.UTF_8))).toString(16);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                // every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && Arrays.equals(_settings, ((Key) o)._settings);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(_settings);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.engine.SslContextProvider;
+import org.apache.qpid.proton.engine.TransportException;
+
+/**
+ * The {@link SslContextProvider}s known to proton: those discovered using {@link ServiceLoader},
+ * followed by {@link #JDK}.
+ */
+public final class SslContextProviders
+{
+    private static final Logger _logger = Logger.getLogger(SslContextProviders.class.getName());
+
+    /**
+     * The provider of the JDK's own {@link SSLContext} implementation, named "jdk".
+     */
+    public static final SslContextProvider JDK = new SslContextProvider()
+    {
+        @Override
+        public String getName()
+        {
+            return "jdk";
+        }
+
+        @Override
+        public boolean isAvailable()
+        {
+            return true;
+        }
+
+        @Override
+        public SSLContext createSslContext(String protocol) throws NoSuchAlgorithmException
+        {
+            return SSLContext.getInstance(protocol);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "SslContextProvider[jdk]";
+        }
+    };
+
+    private static final String DEFAULT_PROVIDER = System.getProperty("proton.ssl_provider");
+
+    private static final List<SslContextProvider> _providers = loadProviders();
+
+    private SslContextProviders()
+    {
+    }
+
+    private static List<SslContextProvider> loadProviders()
+    {
+        List<SslContextProvider> providers = new ArrayList<SslContextProvider>();
+        Iterator<SslContextProvider> iterator = ServiceLoader.load(SslContextProvider.class).iterator();
+        while (true)
+        {
+            try
+            {
+                if (!iterator.hasNext())
+                {
+                    break;
+                }
+                SslContextProvider provider = iterator.next();
+                if(_logger.isLoggable(Level.FINE))
+                {
+                    _logger.fine("Found SSL context provider " + provider.getName());
+                }
+                providers.add(provider);
+            }
+            catch (ServiceConfigurationError e)
+            {
+                _logger.log(Level.WARNING, "Unable to load SSL context provider", e);
+            }
+        }
+        providers.add(JDK);
+        return Collections.unmodifiableList(providers);
+    }
+
+    /**
+     * @return all known providers, available or not, in order of preference.
+     */
+    public static List<SslContextProvider> getProviders()
+    {
+        return _providers;
+    }
+
+    /**
+     * @param name the name of a provider, or null for the default: the one named by the
+     *        <code>proton.ssl_provider</code> system property, if set, else the first
+     *        available provider.
+     * @return the named provider.
+     * @throws TransportException if there is no such provider, or it is not available.
+     */
+    public static SslContextProvider getProvider(String name)
+    {
+        if (name == null)
+        {
+            name = DEFAULT_PROVIDER;
+        }
+
+        for (SslContextProvider provider : _providers)
+        {
+            if (name == null ? provider.isAvailable() : provider.getName().equals(name))
+            {
+                if (!provider.isAvailable())
+                {
+                    throw new TransportException("SSL context provider " + name + " is not available");
+                }
+                return provider;
+            }
+        }
+        throw new TransportException("Unknown SSL context provider " + name);
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.qpid.proton.engine.impl.ssl;
 
+import java.util.concurrent.Executor;
+
 import org.apache.qpid.proton.ProtonUnsupportedOperationException;
 import org.apache.qpid.proton.engine.ProtonJSslDomain;
 import org.apache.qpid.proton.engine.SslDomain;
@@ -32,6 +34,9 @@ public class SslDomainImpl implements SslDomain, ProtonSslEngineProvider, Proton
     private String _privateKeyPassword;
     private String _trustedCaDb;
     private boolean _allowUnsecuredClient;
+    private boolean _coalesceRecords;
+    private String _sslContextProvider;
+    private Executor _delegatedTaskExecutor;
 
     private final SslEngineFacadeFactory _sslEngineFacadeFactory = new SslEngineFacadeFactory();
 
@@ -126,6 +131,43 @@ public class SslDomainImpl implements SslDomain, ProtonSslEngineProvider, Proton
         return _allowUnsecuredClient;
     }
 
+    @Override
+    public void coalesceRecords(boolean coalesce)
+    {
+        _coalesceRecords = coalesce;
+    }
+
+    @Override
+    public boolean coalesceRecords()
+    {
+        return _coalesceRecords;
+    }
+
+    @Override
+    public void setSslContextProvider(String name)
+    {
+        _sslContextProvider = name;
+        _sslEngineFacadeFactory.resetCache();
+    }
+
+    @Override
+    public String getSslContextProvider()
+    {
+        return _sslContextProvider;
+    }
+
+    @Override
+    public void setDelegatedTaskExecutor(Executor executor)
+    {
+        _delegatedTaskExecutor = executor;
+    }
+
+    @Override
+    public Executor getDelegatedTaskExecutor()
+    {
+        return _delegatedTaskExecutor;
+    }
+
     @Override
     public ProtonSslEngine createSslEngine(SslPeerDetails peerDetails)
     {
@@ -142,6 +184,9 @@ public class SslDomainImpl implements SslDomain, ProtonSslEngineProvider, Proton
             .append(", _privateKeyFile=").append(_privateKeyFile)
             .append(", _trustedCaDb=").append(_trustedCaDb)
             .append(", _allowUnsecuredClient=").append(_allowUnsecuredClient)
+            .append(", _coalesceRecords=").append(_coalesceRecords)
+            .append(", _sslContextProvider=").append(_sslContextProvider)
+            .append(", _delegatedTaskExecutor=").append(_delegatedTaskExecutor)
             .append("]");
         return builder.toString();
     }
@@ -53,6 +53,8 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import org.apache.qpid.proton.engine.ProtonJSslDomain;
+import org.apache.qpid.proton.engine.SslContextProvider;
 import org.apache.qpid.proton.engine.SslDomain;
 import org.apache.qpid.proton.engine.SslPeerDetails;
 import org.apache.qpid.proton.ProtonUnsupportedOperationException;
@@ -244,54 +246,74 @@ public class SslEngineFacadeFactory
     {
         if(_sslContext == null)
         {
-            if(_logger.isLoggable(Level.FINE))
+            SSLContext sslContext = SslContextCache.get(sslDomain);
+            if (sslContext == null)
             {
-                _logger.fine("lazily creating new SSLContext using domain " + sslDomain);
+                sslContext = SslContextCache.put(sslDomain, createSslContext(sslDomain));
             }
+            _sslContext = sslContext;
+        }
+        return _sslContext;
+    }
 
-            final char[] dummyPassword = "unused-passphrase".toCharArray(); // Dummy password required by KeyStore and KeyManagerFactory, but never referred to again
+    static SslContextProvider getSslContextProvider(SslDomain sslDomain)
+    {
+        String name = null;
+        if (sslDomain instanceof ProtonJSslDomain)
+        {
+            name = ((ProtonJSslDomain) sslDomain).getSslContextProvider();
+        }
+        return SslContextProviders.getProvider(name);
+    }
 
-            try
-            {
-                SSLContext sslContext = SSLContext.getInstance(TLS_PROTOCOL);
-                KeyStore ksKeys = createKeyStoreFrom(sslDomain, dummyPassword);
+    private SSLContext createSslContext(SslDomain sslDomain)
+    {
+        if(_logger.isLoggable(Level.FINE))
+        {
+            _logger.fine("creating new SSLContext using domain " + sslDomain);
+        }
 
-                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                kmf.init(ksKeys, dummyPassword);
+        final char[] dummyPassword = "unused-passphrase".toCharArray(); // Dummy password required by KeyStore and KeyManagerFactory, but never referred to again
 
-                final TrustManager[] trustManagers;
-                if (sslDomain.getPeerAuthentication() == SslDomain.VerifyMode.ANONYMOUS_PEER)
-                {
-                    trustManagers = new TrustManager[] { new AlwaysTrustingTrustManager() };
-                }
-                else
-                {
-                    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-                    tmf.init(ksKeys);
-                    trustManagers = tmf.getTrustManagers();
-                }
+        try
+        {
+            SSLContext sslContext = getSslContextProvider(sslDomain).createSslContext(TLS_PROTOCOL);
+            KeyStore ksKeys = createKeyStoreFrom(sslDomain, dummyPassword);
 
-                sslContext.init(kmf.getKeyManagers(), trustManagers, null);
-                _sslContext = sslContext;
-            }
-            catch (NoSuchAlgorithmException e)
-            {
-                throw new TransportException("Unexpected exception creating SSLContext", e);
-            }
-            catch (KeyStoreException e)
-            {
-                throw new TransportException("Unexpected exception creating SSLContext", e);
-            }
-            catch (UnrecoverableKeyException e)
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(ksKeys, dummyPassword);
+
+            final TrustManager[] trustManagers;
+            if (sslDomain.getPeerAuthentication() == SslDomain.VerifyMode.ANONYMOUS_PEER)
             {
-                throw new TransportException("Unexpected exception creating SSLContext", e);
+                trustManagers = new TrustManager[] { new AlwaysTrustingTrustManager() };
             }
-            catch (KeyManagementException e)
+            else
             {
-                throw new TransportException("Unexpected exception creating SSLContext", e);
+                TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(ksKeys);
+                trustManagers = tmf.getTrustManagers();
             }
+
+            sslContext.init(kmf.getKeyManagers(), trustManagers, null);
+            return sslContext;
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new TransportException("Unexpected exception creating SSLContext", e);
+        }
+        catch (KeyStoreException e)
+        {
+            throw new TransportException("Unexpected exception creating SSLContext", e);
+        }
+        catch (UnrecoverableKeyException e)
+        {
+            throw new TransportException("Unexpected exception creating SSLContext", e);
+        }
+        catch (KeyManagementException e)
+        {
+            throw new TransportException("Unexpected exception creating SSLContext", e);
         }
-        return _sslContext;
     }
 
     private KeyStore createKeyStoreFrom(SslDomain sslDomain, char[] dummyPassword)
@@ -21,13 +21,16 @@
 package org.apache.qpid.proton.engine.impl.ssl;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 
 import org.apache.qpid.proton.ProtonUnsupportedOperationException;
+import org.apache.qpid.proton.engine.ProtonJSslDomain;
 import org.apache.qpid.proton.engine.Ssl;
 import org.apache.qpid.proton.engine.SslDomain;
 import org.apache.qpid.proton.engine.SslPeerDetails;
 import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.engine.TransportException;
+import org.apache.qpid.proton.engine.impl.CollapsibleTransportWrapper;
 import org.apache.qpid.proton.engine.impl.PlainTransportWrapper;
 import org.apache.qpid.proton.engine.impl.TransportInput;
 import org.apache.qpid.proton.engine.impl.TransportOutput;
@@ -42,6 +45,7 @@ public class SslImpl implements Ssl
 
     private final SslPeerDetails _peerDetails;
     private TransportException _initException;
+    private Runnable _delegatedTaskListener;
 
     /**
      * @param domain must implement {@link org.apache.qpid.proton.engine.impl.ssl.ProtonSslEngineProvider}. This is not possible
@@ -55,6 +59,15 @@ public class SslImpl implements Ssl
         _peerDetails = peerDetails;
     }
 
+    /**
+     * @param listener notified, on the thread that ran them, when SSL delegated tasks run by the
+     *        domain's {@link ProtonJSslDomain#getDelegatedTaskExecutor() executor} complete.
+     */
+    public void setDelegatedTaskListener(Runnable listener)
+    {
+        _delegatedTaskListener = listener;
+    }
+
     public TransportWrapper wrap(TransportInput inputProcessor, TransportOutput outputProcessor)
     {
         if (_unsecureClientAwareTransportWrapper != null)
@@ -88,7 +101,7 @@ public class SslImpl implements Ssl
         return _unsecureClientAwareTransportWrapper.getProtocolName();
     }
 
-    private class UnsecureClientAwareTransportWrapper implements SslTransportWrapper
+    private class UnsecureClientAwareTransportWrapper implements SslTransportWrapper, CollapsibleTransportWrapper
     {
         private final TransportInput _inputProcessor;
         private final TransportOutput _outputProcessor;
@@ -177,6 +190,17 @@ public class SslImpl implements Ssl
             }
         }
 
+        @Override
+        public ByteBuffer[] heads()
+        {
+            initTransportWrapperOnFirstIO();
+            if (_initException == null) {
+                return _transportWrapper.heads();
+            } else {
+                return null;
+            }
+        }
+
         @Override
         public void pop(int bytes)
         {
@@ -195,6 +219,18 @@ public class SslImpl implements Ssl
             }
         }
 
+        @Override
+        public TransportInput getCollapsedInput()
+        {
+            return _initException == null ? _transportWrapper : null;
+        }
+
+        @Override
+        public TransportOutput getCollapsedOutput()
+        {
+            return _initException == null ? _transportWrapper : null;
+        }
+
         @Override
         public String getCipherName()
         {
@@ -226,9 +262,19 @@ public class SslImpl implements Ssl
             try {
                 if (_initException == null && _transportWrapper == null)
                 {
-                    SslTransportWrapper sslTransportWrapper = new SimpleSslTransportWrapper
+                    boolean coalesceRecords = _domain instanceof ProtonJSslDomain &&
+                                              ((ProtonJSslDomain) _domain).coalesceRecords();
+                    SimpleSslTransportWrapper sslTransportWrapper = new SimpleSslTransportWrapper
                         (_protonSslEngineProvider.createSslEngine(_peerDetails),
-                         _inputProcessor, _outputProcessor);
+                         _inputProcessor, _outputProcessor, coalesceRecords);
+                    if (_domain instanceof ProtonJSslDomain)
+                    {
+                        Executor executor = ((ProtonJSslDomain) _domain).getDelegatedTaskExecutor();
+                        if (executor != null)
+                        {
+                            sslTransportWrapper.setDelegatedTaskExecutor(executor, _delegatedTaskListener);
+                        }
+                    }
 
                     if (_domain.allowUnsecuredClient() && _domain.getMode() == SslDomain.Mode.SERVER)
                     {
@@ -0,0 +1,88 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.sasl;
+
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.impl.sasl.FixedResponseClientMechanism;
+import org.apache.qpid.proton.engine.impl.sasl.ScramSha256ClientMechanism;
+
+/**
+ * A SASL mechanism with which a client authenticates itself, installed using
+ * {@link org.apache.qpid.proton.engine.ProtonJSasl#setClientMechanisms(SaslClientMechanism...)}.
+ * An instance holds the state of a single authentication, so must not be shared by transports.
+ */
+public interface SaslClientMechanism
+{
+    public static final class Factory
+    {
+        public static SaslClientMechanism plain(String username, String password)
+        {
+            return FixedResponseClientMechanism.plain(username, password);
+        }
+
+        public static SaslClientMechanism anonymous()
+        {
+            return FixedResponseClientMechanism.anonymous();
+        }
+
+        /**
+         * @param authorizationId the identity to act as, or null for that established by the
+         *        lower layer, normally TLS.
+         */
+        public static SaslClientMechanism external(String authorizationId)
+        {
+            return FixedResponseClientMechanism.external(authorizationId);
+        }
+
+        public static SaslClientMechanism scramSha256(String username, String password)
+        {
+            return new ScramSha256ClientMechanism(username, password);
+        }
+    }
+
+    /**
+     * @return the name of the mechanism, which is used if the server offers it.
+     */
+    String getName();
+
+    /**
+     * @return the response sent with the mechanism's selection, or null for none.
+     */
+    Binary getInitialResponse();
+
+    /**
+     * @param challenge a view of the received bytes, which must not be modified.
+     * @return the response to the challenge; it is sent without being copied.
+     */
+    Binary getChallengeResponse(Binary challenge) throws SaslException;
+
+    /**
+     * Checks the additional data the server sent with a successful outcome, for mechanisms such
+     * as SCRAM that authenticate the server too.
+     *
+     * @param additionalData the additional data, or null if there was none.
+     * @throws SaslException if the server is not authentic.
+     */
+    void verifyCompletion(Binary additionalData) throws SaslException;
+}
@@ -0,0 +1,250 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.sasl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the credentials of recently authenticated users, keyed by mechanism and
+ * user, which the PLAIN and SCRAM-SHA-256 server mechanisms consult before their
+ * {@link SaslCredentialStore}.  A client that reconnects within the cache's time to live is
+ * verified on the transport's thread, without a store lookup or, for PLAIN, the cost of salting
+ * its password.
+ * <p>
+ * Only successful authentications are cached.  A change to a user's credential in the store is
+ * not seen until the cached entry expires, unless it is {@link #invalidate(String) invalidated}.
+ * The least recently used entries are evicted once the cache is full.  A cache may be shared by
+ * several mechanisms, and is safe for use by many threads.
+ */
+public final class SaslCredentialCache
+{
+    private final int _maximumSize;
+    private final long _timeToLive;
+    private final Map<Key, CachedCredential> _entries;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    /**
+     * @param maximumSize the number of entries above which the least recently used is evicted.
+     * @param timeToLive how long after being cached an entry expires.
+     */
+    public SaslCredentialCache(int maximumSize, long timeToLive, TimeUnit unit)
+    {
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException("maximum size must be positive: " + maximumSize);
+        }
+        if (timeToLive <= 0)
+        {
+            throw new IllegalArgumentException("time to live must be positive: " + timeToLive);
+        }
+        _maximumSize = maximumSize;
+        _timeToLive = unit.toNanos(timeToLive);
+        _entries = new LinkedHashMap<Key, CachedCredential>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedCredential> eldest)
+            {
+                if (size() > _maximumSize)
+                {
+                    _evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the credential cached for the user by the mechanism, or null if there is none or
+     *         it has expired.
+     */
+    public ScramCredential get(String mechanism, String username)
+    {
+        Key key = new Key(mechanism, username);
+        synchronized (_entries)
+        {
+            CachedCredential entry = _entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime()))
+            {
+                _entries.remove(key);
+                _evictions.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null)
+            {
+                _misses.incrementAndGet();
+                return null;
+            }
+            _hits.incrementAndGet();
+            return entry._credential;
+        }
+    }
+
+    /**
+     * Caches the credential of a user the mechanism has just authenticated.
+     */
+    public void put(String mechanism, String username, ScramCredential credential)
+    {
+        CachedCredential entry = new CachedCredential(credential, System.nanoTime() + _timeToLive);
+        synchronized (_entries)
+        {
+            _entries.put(new Key(mechanism, username), entry);
+        }
+    }
+
+    /**
+     * Discards the entries of the user for all mechanisms, so that it is next verified against
+     * the store.
+     */
+    public void invalidate(String username)
+    {
+        synchronized (_entries)
+        {
+            for (Iterator<Key> keys = _entries.keySet().iterator(); keys.hasNext(); )
+            {
+                if (keys.next()._username.equals(username))
+                {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all entries and resets the counters.
+     */
+    public void clear()
+    {
+        synchronized (_entries)
+        {
+            _entries.clear();
+        }
+        _hits.set(0);
+        _misses.set(0);
+        _evictions.set(0);
+    }
+
+    /**
+     * @return the number of entries, including any that have expired but not yet been evicted.
+     */
+    public int size()
+    {
+        synchronized (_entries)
+        {
+            return _entries.size();
+        }
+    }
+
+    public int getMaximumSize()
+    {
+        return _maximumSize;
+    }
+
+    public long getTimeToLive(TimeUnit unit)
+    {
+        return unit.convert(_timeToLive, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of lookups that found an entry.
+     */
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no entry, or an expired one.
+     */
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was full or they had expired.
+     */
+    public long getEvictions()
+    {
+        return _evictions.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SaslCredentialCache[size=" + size() + ", hits=" + _hits + ", misses=" + _misses +
+               ", evictions=" + _evictions + "]";
+    }
+
+    private static final class CachedCredential
+    {
+        private final ScramCredential _credential;
+        private final long _expiry;
+
+        private CachedCredential(ScramCredential credential, long expiry)
+        {
+            _credential = credential;
+            _expiry = expiry;
+        }
+
+        private boolean isExpired(long now)
+        {
+            return now - _expiry >= 0;
+        }
+    }
+
+    private static final class Key
+    {
+        private final String _mechanism;
+        private final String _username;
+
+        private Key(String mechanism, String username)
+        {
+            _mechanism = mechanism;
+            _username = username;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key that = (Key) o;
+            return _mechanism.equals(that._mechanism) && _username.equals(that._username);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * _mechanism.hashCode() + _username.hashCode();
+        }
+    }
+}
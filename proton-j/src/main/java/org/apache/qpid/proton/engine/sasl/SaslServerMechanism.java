@@ -0,0 +1,144 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.sasl;
+
+import java.util.concurrent.Executor;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.impl.sasl.AnonymousServerMechanism;
+import org.apache.qpid.proton.engine.impl.sasl.ExternalServerMechanism;
+import org.apache.qpid.proton.engine.impl.sasl.PlainServerMechanism;
+import org.apache.qpid.proton.engine.impl.sasl.ScramSha256ServerMechanism;
+
+/**
+ * A SASL mechanism with which a server authenticates its peers, installed using
+ * {@link org.apache.qpid.proton.engine.ProtonJSasl#setServerMechanisms(SaslServerMechanism...)}.
+ * A single instance may be shared by many transports; it creates an {@link Exchange} to hold the
+ * state of each authentication.
+ */
+public interface SaslServerMechanism
+{
+    public static final class Factory
+    {
+        /**
+         * @param executor runs the credential lookup and password hashing, or null to run them
+         *        on the transport's thread.
+         */
+        public static SaslServerMechanism plain(SaslCredentialStore credentialStore, Executor executor)
+        {
+            return new PlainServerMechanism(credentialStore, executor);
+        }
+
+        /**
+         * @param credentialCache remembers the users verified by the mechanism, so that they are
+         *        verified on the transport's thread when they reconnect; it may be shared.
+         */
+        public static SaslServerMechanism plain(SaslCredentialStore credentialStore, Executor executor,
+                                                SaslCredentialCache credentialCache)
+        {
+            return new PlainServerMechanism(credentialStore, executor, credentialCache);
+        }
+
+        public static SaslServerMechanism anonymous()
+        {
+            return new AnonymousServerMechanism();
+        }
+
+        /**
+         * EXTERNAL accepts any peer, relying on a lower layer, normally TLS with peer
+         * verification, to have authenticated it.
+         */
+        public static SaslServerMechanism external()
+        {
+            return new ExternalServerMechanism();
+        }
+
+        /**
+         * @param executor runs the credential lookup and proof verification, or null to run
+         *        them on the transport's thread.
+         */
+        public static SaslServerMechanism scramSha256(SaslCredentialStore credentialStore, Executor executor)
+        {
+            return new ScramSha256ServerMechanism(credentialStore, executor);
+        }
+
+        /**
+         * @param credentialCache remembers the credentials of the users authenticated by the
+         *        mechanism, so that they are not looked up again when they reconnect; it may be
+         *        shared.
+         */
+        public static SaslServerMechanism scramSha256(SaslCredentialStore credentialStore, Executor executor,
+                                                      SaslCredentialCache credentialCache)
+        {
+            return new ScramSha256ServerMechanism(credentialStore, executor, credentialCache);
+        }
+    }
+
+    /**
+     * @return the name of the mechanism, as offered to clients.
+     */
+    String getName();
+
+    Exchange createExchange();
+
+    /**
+     * The server side of a single authentication.
+     */
+    interface Exchange
+    {
+        /**
+         * Handles the client's initial response, which is empty if it sent none, or its
+         * response to the last challenge.  Exactly one of the methods of the result must then be
+         * called, either before returning or later from another thread.
+         *
+         * @param response a view of the received bytes, which must not be modified.
+         */
+        void handleResponse(Binary response, Result result);
+    }
+
+    /**
+     * Receives the result of {@link Exchange#handleResponse(Binary, Result)}.  Its methods may be
+     * called from any thread.
+     */
+    interface Result
+    {
+        /**
+         * Sends a challenge to the client; the bytes are sent as they are, without being copied,
+         * so must not be modified afterwards.
+         */
+        void challenge(Binary challenge);
+
+        /**
+         * Completes the authentication successfully.
+         *
+         * @param user the identity of the authenticated client.
+         * @param additionalData sent to the client with the outcome, or null.
+         */
+        void success(String user, Binary additionalData);
+
+        /**
+         * Completes the authentication unsuccessfully.
+         */
+        void failure(SaslOutcome outcome);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.sasl;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.apache.qpid.proton.engine.impl.sasl.ScramSha256;
+
+/**
+ * A salted SCRAM-SHA-256 (RFC 5802, RFC 7677) credential, from which a password can be verified
+ * but not recovered.
+ */
+public final class ScramCredential
+{
+    public static final int DEFAULT_ITERATIONS = 4096;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] _salt;
+    private final int _iterations;
+    private final byte[] _storedKey;
+    private final byte[] _serverKey;
+
+    public ScramCredential(byte[] salt, int iterations, byte[] storedKey, byte[] serverKey)
+    {
+        _salt = salt.clone();
+        _iterations = iterations;
+        _storedKey = storedKey.clone();
+        _serverKey = serverKey.clone();
+    }
+
+    /**
+     * Derives a credential for the password, with a random salt.
+     */
+    public static ScramCredential create(String password, int iterations)
+    {
+        byte[] salt = new byte[16];
+        RANDOM.nextBytes(salt);
+        byte[] saltedPassword = ScramSha256.saltPassword(password, salt, iterations);
+        return new ScramCredential(salt, iterations,
+                                   ScramSha256.storedKey(saltedPassword),
+                                   ScramSha256.serverKey(saltedPassword));
+    }
+
+    public static ScramCredential create(String password)
+    {
+        return create(password, DEFAULT_ITERATIONS);
+    }
+
+    public byte[] getSalt()
+    {
+        return _salt.clone();
+    }
+
+    public int getIterations()
+    {
+        return _iterations;
+    }
+
+    public byte[] getStoredKey()
+    {
+        return _storedKey.clone();
+    }
+
+    public byte[] getServerKey()
+    {
+        return _serverKey.clone();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof ScramCredential))
+        {
+            return false;
+        }
+        ScramCredential that = (ScramCredential) o;
+        return _iterations == that._iterations && Arrays.equals(_salt, that._salt) &&
+               Arrays.equals(_storedKey, that._storedKey) && Arrays.equals(_serverKey, that._serverKey);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(_storedKey) + _iterations;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScramCredential[iterations=" + _iterations + "]";
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.messenger;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.apache.qpid.proton.message.Message;
+
+import org.apache.qpid.proton.messenger.impl.AsyncMessengerImpl;
+
+/**
+ *  AsyncMessenger sends and receives messages without blocking the
+ *  calling thread.
+ *
+ *  It wraps a {@link Messenger} that is driven by a single internal I/O
+ *  thread, so outgoing and incoming messages go through the same stores,
+ *  and obey the same routing, rewriting and journalling, as they would
+ *  with the blocking API. Any number of threads may put messages at once;
+ *  each put returns a future that completes with the message's remote
+ *  outcome once it is known.
+ *
+ *  Messages from subscriptions are passed to a {@link MessageHandler} on
+ *  the I/O thread. A handler that wants a queue instead can simply add each
+ *  message to one. Handlers and callbacks must not block, as no other
+ *  traffic moves while they run.
+ */
+public interface AsyncMessenger
+{
+
+    public static final class Factory
+    {
+        public static AsyncMessenger create() {
+            return new AsyncMessengerImpl(Messenger.Factory.create());
+        }
+
+        public static AsyncMessenger create(String name) {
+            return new AsyncMessengerImpl(Messenger.Factory.create(name));
+        }
+
+        /**
+         * Wraps a messenger that has been configured but not yet started.
+         * The messenger must not be used directly afterwards.
+         */
+        public static AsyncMessenger create(Messenger messenger) {
+            return new AsyncMessengerImpl(messenger);
+        }
+    }
+
+    /**
+     * Receives the outcome of an asynchronous operation, on the I/O thread.
+     */
+    public interface Callback<T>
+    {
+        void completed(T result);
+
+        void failed(Throwable cause);
+    }
+
+    /**
+     * Receives messages from subscriptions, on the I/O thread.
+     */
+    public interface MessageHandler
+    {
+        /**
+         * Handles a message. The message is accepted when this returns
+         * normally, and rejected if it throws.
+         */
+        void onMessage(Message message) throws Exception;
+    }
+
+    /**
+     * Starts the underlying messenger and the I/O thread.
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops the underlying messenger and waits for the I/O thread to
+     * finish. Puts still awaiting an outcome fail with a
+     * {@link MessengerException}.
+     * <p>
+     * This blocks while the peers close their connections, for at most the
+     * messenger's timeout or, if it has none, ten seconds.
+     */
+    void stop();
+
+    /**
+     * Queues a message for sending. The message is encoded on the I/O
+     * thread, so it must not be modified after being passed in.
+     *
+     * @return a future that completes with the remote outcome of the
+     *         message; it fails if the message cannot be sent
+     */
+    Future<Status> put(Message message);
+
+    /**
+     * As {@link #put(Message)}, also notifying the callback on completion.
+     */
+    Future<Status> put(Message message, Callback<Status> callback);
+
+    /**
+     * Subscribes to a source, passing each message received from it to
+     * the handler. Messages are matched to subscriptions by the name part
+     * of their address; those matching no subscription by name go to the
+     * first subscription made.
+     */
+    void subscribe(String source, MessageHandler handler);
+
+}
@@ -57,6 +57,11 @@ import org.apache.qpid.proton.messenger.impl.MessengerImpl;
  *   - 127.0.0.1:1234
  *   - amqps://127.0.0.1:1234
  *
+ *  For amqps addresses the host and port are given to the SSL engine,
+ *  so that a reconnecting client can resume its TLS session.  JSSE
+ *  also sends the host to the server as the TLS server name indication
+ *  (SNI) unless the jsse.enableSNIExtension system property is false.
+ *
  *  <h3>Sending &amp; Receiving Messages</h3>
  *
  *  The Messenger interface works in conjuction with the Message
@@ -145,6 +150,16 @@ public interface Messenger
      */
     Message get();
 
+    /**
+     * Decodes the message from the head of the incoming message queue
+     * into the given message, replacing all of its sections, so that
+     * one instance can be reused for every message received.
+     *
+     * @param message the message to decode into, or null for a new one
+     * @return the given message, or null if the queue is empty
+     */
+    Message get(Message message);
+
     /**
      * Transitions the Messenger to an active state. A Messenger is
      * initially created in an inactive state. When inactive, a
@@ -236,6 +251,21 @@ public interface Messenger
 
     void rewrite(String pattern, String address);
 
+    /**
+     * Set the path to a directory in which to journal outgoing
+     * messages until their receivers settle them, or null (the
+     * default) to keep them only in memory.  Messages still in the
+     * journal when the messenger is next started from the same
+     * directory are queued to be sent again, routed and rewritten
+     * using the rules in place at the time.
+     */
+    void setStorePath(String path);
+
+    /**
+     * Get the path to the outgoing message journal directory.
+     */
+    String getStorePath();
+
     /**
      * Set the path to the certificate file.
      */
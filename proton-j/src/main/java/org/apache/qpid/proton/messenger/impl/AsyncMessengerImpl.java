@@ -0,0 +1,366 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.messenger.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.InterruptException;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.messenger.AsyncMessenger;
+import org.apache.qpid.proton.messenger.Messenger;
+import org.apache.qpid.proton.messenger.MessengerException;
+import org.apache.qpid.proton.messenger.Status;
+import org.apache.qpid.proton.messenger.Tracker;
+
+/**
+ * AsyncMessengerImpl
+ *
+ * Runs a {@link MessengerImpl} on a thread of its own. Callers hand puts
+ * and subscriptions over through a lock-free queue and interrupt the
+ * messenger's wait; the I/O thread applies them, works the messenger,
+ * completes the futures of settled messages and dispatches incoming ones.
+ *
+ * Both windows are left open so that every message stays tracked until
+ * its outcome has been reported, at which point it is settled.
+ */
+public class AsyncMessengerImpl implements AsyncMessenger, Runnable
+{
+    /**
+     * How long, in milliseconds, stopping waits for peers to close their
+     * connections when the messenger has no timeout of its own.
+     */
+    static final long STOP_TIMEOUT = 10000;
+
+    private final Logger _logger = Logger.getLogger("proton.messenger");
+
+    private final MessengerImpl _messenger;
+    private final Queue<Object> _commands = new ConcurrentLinkedQueue<Object>();
+    private volatile boolean _running = false;
+    private Thread _thread;
+
+    // only touched on the I/O thread
+    private final Map<Integer, StatusFuture> _pending = new LinkedHashMap<Integer, StatusFuture>();
+    private final List<Tracker> _updated = new ArrayList<Tracker>();
+    private final Map<String, MessageHandler> _handlers = new LinkedHashMap<String, MessageHandler>();
+
+    private static class Subscription
+    {
+        final String _source;
+        final MessageHandler _handler;
+
+        Subscription(String source, MessageHandler handler)
+        {
+            _source = source;
+            _handler = handler;
+        }
+    }
+
+    public AsyncMessengerImpl(Messenger messenger)
+    {
+        if (!(messenger instanceof MessengerImpl))
+        {
+            throw new IllegalArgumentException("unsupported messenger: " + messenger);
+        }
+        _messenger = (MessengerImpl) messenger;
+    }
+
+    public synchronized void start() throws IOException
+    {
+        if (_thread != null)
+        {
+            throw new IllegalStateException("already started");
+        }
+        _messenger.setOutgoingWindow(Integer.MAX_VALUE);
+        _messenger.setIncomingWindow(Integer.MAX_VALUE);
+        _messenger.setOutgoingUpdates(_updated);
+        _messenger.start();
+        _running = true;
+        _thread = new Thread(this, "proton-messenger");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void stop()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            thread = _thread;
+            if (thread == null || !_running) return;
+            _running = false;
+        }
+        _messenger.interrupt();
+        if (thread != Thread.currentThread())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public Future<Status> put(Message message)
+    {
+        return put(message, null);
+    }
+
+    public Future<Status> put(Message message, Callback<Status> callback)
+    {
+        StatusFuture future = new StatusFuture(message, callback);
+        if (!_running)
+        {
+            future.fail(new MessengerException("messenger is stopped"));
+        }
+        else
+        {
+            _commands.add(future);
+            _messenger.interrupt();
+            // lost the race with stop, which has already drained the queue
+            if (!_running && _commands.remove(future))
+            {
+                future.fail(new MessengerException("messenger is stopped"));
+            }
+        }
+        return future;
+    }
+
+    public void subscribe(String source, MessageHandler handler)
+    {
+        if (!_running)
+        {
+            throw new IllegalStateException("messenger is stopped");
+        }
+        _commands.add(new Subscription(source, handler));
+        _messenger.interrupt();
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (_running)
+            {
+                execute();
+                complete();
+                dispatch();
+                try
+                {
+                    _messenger.work(-1);
+                }
+                catch (InterruptException e)
+                {
+                    // new commands, or stop
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            _logger.log(Level.SEVERE, "Messenger I/O thread failed", e);
+        }
+        finally
+        {
+            _running = false;
+            shutdown();
+        }
+    }
+
+    private void execute()
+    {
+        for (Object command = _commands.poll(); command != null; command = _commands.poll())
+        {
+            if (command instanceof StatusFuture)
+            {
+                StatusFuture future = (StatusFuture) command;
+                try
+                {
+                    _messenger.put(future.getMessage());
+                    TrackerImpl tracker = (TrackerImpl) _messenger.outgoingTracker();
+                    future.setTracker(tracker);
+                    _pending.put(tracker.getSequence(), future);
+                }
+                catch (RuntimeException e)
+                {
+                    future.fail(e);
+                }
+            }
+            else
+            {
+                Subscription subscription = (Subscription) command;
+                try
+                {
+                    _messenger.subscribe(subscription._source);
+                    _handlers.put(name(subscription._source), subscription._handler);
+                    _messenger.flow(-1);
+                }
+                catch (RuntimeException e)
+                {
+                    _logger.log(Level.SEVERE, "Unable to subscribe to " + subscription._source, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes the futures of the messages whose delivery has been
+     * updated since last time, if their outcome is now known.  A message
+     * whose link went before it was settled can't be sent, so its future
+     * fails.
+     */
+    private void complete()
+    {
+        for (Tracker tracker : _updated)
+        {
+            StatusFuture future = _pending.get(((TrackerImpl) tracker).getSequence());
+            if (future == null)
+            {
+                continue;
+            }
+            Status status = _messenger.getStatus(tracker);
+            switch (status)
+            {
+            case PENDING:
+            case UNKNOWN:
+                break;
+            case ABORTED:
+                _pending.remove(((TrackerImpl) tracker).getSequence());
+                _messenger.settle(tracker, 0);
+                future.fail(new MessengerException("link closed before outcome was known"));
+                break;
+            default:
+                _pending.remove(((TrackerImpl) tracker).getSequence());
+                _messenger.settle(tracker, 0);
+                future.complete(status);
+                break;
+            }
+        }
+        _updated.clear();
+    }
+
+    private void dispatch()
+    {
+        if (_handlers.isEmpty()) return;
+        for (Message message = _messenger.get(); message != null; message = _messenger.get())
+        {
+            Tracker tracker = _messenger.incomingTracker();
+            try
+            {
+                handler(message).onMessage(message);
+                _messenger.accept(tracker, 0);
+            }
+            catch (Exception e)
+            {
+                _logger.log(Level.WARNING, "Message handler failed, rejecting message", e);
+                _messenger.reject(tracker, 0);
+            }
+            _messenger.settle(tracker, 0);
+        }
+    }
+
+    private MessageHandler handler(Message message)
+    {
+        MessageHandler handler = null;
+        if (message.getAddress() != null)
+        {
+            handler = _handlers.get(name(message.getAddress()));
+        }
+        if (handler == null)
+        {
+            handler = _handlers.values().iterator().next();
+        }
+        return handler;
+    }
+
+    private static String name(String address)
+    {
+        String name = new Address(address).getName();
+        return name == null ? "" : name;
+    }
+
+    private void shutdown()
+    {
+        // an unresponsive peer mustn't hold the I/O thread, and with it the
+        // caller of stop, for ever
+        if (_messenger.getTimeout() < 0)
+        {
+            _messenger.setTimeout(STOP_TIMEOUT);
+        }
+        final long deadline = System.currentTimeMillis() + _messenger.getTimeout();
+        while (true)
+        {
+            try
+            {
+                _messenger.stop();
+                break;
+            }
+            catch (InterruptException e)
+            {
+                // woken by a late put; carry on stopping in the time left
+                _messenger.setTimeout(Math.max(0, deadline - System.currentTimeMillis()));
+            }
+            catch (TimeoutException e)
+            {
+                _logger.log(Level.WARNING, "Connections not closed by peers before stop timed out", e);
+                break;
+            }
+            catch (RuntimeException e)
+            {
+                _logger.log(Level.WARNING, "Error while stopping messenger", e);
+                break;
+            }
+        }
+
+        // anything that has settled in the meantime still gets its outcome
+        complete();
+        MessengerException stopped = new MessengerException("messenger stopped before outcome was known");
+        for (StatusFuture future : _pending.values())
+        {
+            future.fail(stopped);
+        }
+        _pending.clear();
+        for (Object command = _commands.poll(); command != null; command = _commands.poll())
+        {
+            if (command instanceof StatusFuture)
+            {
+                ((StatusFuture) command).fail(stopped);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AsyncMessengerImpl [" + _messenger + "]";
+    }
+}
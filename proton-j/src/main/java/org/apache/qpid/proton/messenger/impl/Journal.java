@@ -0,0 +1,451 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.messenger.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+
+/**
+ * Journal
+ *
+ * An append-only log of the messages a Messenger has yet to see
+ * settled, kept in a directory of memory-mapped segment files so that
+ * they survive a restart.  Appends only write to memory; sync() makes
+ * everything appended since the last sync durable at once.  A segment
+ * is deleted by the sync after none of the messages put in it, or in
+ * any older segment, are live, and when a new segment is started the
+ * live messages of a mostly dead oldest segment are moved into it so
+ * that the oldest can go once the copies are durable.
+ */
+
+class Journal
+{
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    // the length, type, id and checksum of every record
+    private static final int OVERHEAD = 4 + 1 + 8 + 4;
+
+    static class Record
+    {
+        private final long _id;
+        private final String _address;
+        private final byte[] _message;
+
+        Record(long id, String address, byte[] message)
+        {
+            _id = id;
+            _address = address;
+            _message = message;
+        }
+
+        long getId()
+        {
+            return _id;
+        }
+
+        String getAddress()
+        {
+            return _address;
+        }
+
+        byte[] getMessage()
+        {
+            return _message;
+        }
+    }
+
+    private static class Segment
+    {
+        private final long _sequence;
+        private final File _file;
+        private final MappedByteBuffer _buffer;
+        // messages put, and still live, in this segment
+        private int _puts;
+        private int _live;
+        private boolean _dirty;
+
+        Segment(File file, long sequence, int size) throws IOException
+        {
+            _file = file;
+            _sequence = sequence;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                // the mapping outlives the channel
+                _buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                               size < 0 ? raf.length() : size);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+    }
+
+    // where the record of a live message is
+    private static class Position
+    {
+        private final Segment _segment;
+        private final int _offset;
+
+        Position(Segment segment, int offset)
+        {
+            _segment = segment;
+            _offset = offset;
+        }
+    }
+
+    private final File _directory;
+    private final int _segmentSize;
+    private final LinkedList<Segment> _segments = new LinkedList<Segment>();
+    // the segment and position of the record of every live message
+    private final Map<Long, Position> _live = new HashMap<Long, Position>();
+    private final CRC32 _crc = new CRC32();
+    private byte[] _scratch = new byte[1024];
+    private long _nextId;
+    private boolean _compacting;
+
+    Journal(File directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    Journal(File directory, int segmentSize) throws IOException
+    {
+        _directory = directory;
+        _segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        List<Long> sequences = new ArrayList<Long>();
+        for (File file : files == null ? new File[0] : files)
+        {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+            {
+                try
+                {
+                    sequences.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                }
+                catch (NumberFormatException e)
+                {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (long sequence : sequences)
+        {
+            Segment segment = new Segment(segmentFile(sequence), sequence, -1);
+            _segments.add(segment);
+            replay(segment);
+        }
+        if (_segments.isEmpty())
+        {
+            roll(_segmentSize);
+        }
+        release();
+    }
+
+    private File segmentFile(long sequence)
+    {
+        return new File(_directory, PREFIX + sequence + SUFFIX);
+    }
+
+    // reads a segment's records, leaving its position after the last
+    // whole one, so that a torn write at the end is overwritten
+    private void replay(Segment segment)
+    {
+        ByteBuffer buffer = segment._buffer;
+        buffer.position(0);
+        while (buffer.remaining() >= OVERHEAD)
+        {
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < OVERHEAD - 4 || length > buffer.remaining() - 4 || !verify(buffer, start, length))
+            {
+                break;
+            }
+            byte type = buffer.get(start + 4);
+            long id = buffer.getLong(start + 5);
+            if (type == PUT)
+            {
+                live(id, segment, start);
+                segment._puts++;
+            }
+            else if (type == REMOVE)
+            {
+                dead(id);
+            }
+            _nextId = Math.max(_nextId, id + 1);
+            buffer.position(start + 4 + length);
+        }
+    }
+
+    private boolean verify(ByteBuffer buffer, int start, int length)
+    {
+        byte[] record = scratch(length - 4);
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(start + 4);
+        duplicate.get(record, 0, length - 4);
+        _crc.reset();
+        _crc.update(record, 0, length - 4);
+        return (int) _crc.getValue() == duplicate.getInt();
+    }
+
+    private byte[] scratch(int size)
+    {
+        if (_scratch.length < size)
+        {
+            _scratch = new byte[Math.max(size, _scratch.length * 2)];
+        }
+        return _scratch;
+    }
+
+    private void live(long id, Segment segment, int offset)
+    {
+        Position previous = _live.put(id, new Position(segment, offset));
+        if (previous != null)
+        {
+            previous._segment._live--;
+        }
+        segment._live++;
+    }
+
+    private boolean dead(long id)
+    {
+        Position position = _live.remove(id);
+        if (position != null)
+        {
+            position._segment._live--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the live messages, in the order they were put
+     */
+    List<Record> recover()
+    {
+        List<Long> ids = new ArrayList<Long>(_live.keySet());
+        Collections.sort(ids);
+        List<Record> records = new ArrayList<Record>(ids.size());
+        for (long id : ids)
+        {
+            records.add(read(id));
+        }
+        return records;
+    }
+
+    private Record read(long id)
+    {
+        Position position = _live.get(id);
+        ByteBuffer buffer = position._segment._buffer.duplicate();
+        buffer.position(position._offset + 4 + 1 + 8);
+        byte[] address = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(address);
+        byte[] message = new byte[buffer.getInt()];
+        buffer.get(message);
+        return new Record(id, new String(address, UTF8), message);
+    }
+
+    /**
+     * Appends a message, which is live until removed.
+     *
+     * @return the id to remove it by
+     */
+    long put(String address, byte[] message, int length) throws IOException
+    {
+        long id = _nextId++;
+        append(PUT, id, address.getBytes(UTF8), message, length);
+        return id;
+    }
+
+    /**
+     * Appends the removal of a live message.
+     */
+    void remove(long id) throws IOException
+    {
+        if (_live.containsKey(id))
+        {
+            append(REMOVE, id, null, null, 0);
+            dead(id);
+        }
+    }
+
+    private void append(byte type, long id, byte[] address, byte[] message, int length) throws IOException
+    {
+        int size = OVERHEAD + (type == PUT ? 2 + address.length + 4 + length : 0);
+        Segment segment = _segments.getLast();
+        // rolling may compact records into the new segment, leaving it
+        // without room for this one
+        while (segment._buffer.remaining() < size)
+        {
+            roll(Math.max(_segmentSize, size));
+            segment = _segments.getLast();
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(scratch(size));
+        record.putInt(size - 4);
+        record.put(type);
+        record.putLong(id);
+        if (type == PUT)
+        {
+            record.putShort((short) address.length);
+            record.put(address);
+            record.putInt(length);
+            record.put(message, 0, length);
+        }
+        _crc.reset();
+        _crc.update(record.array(), 4, size - 8);
+        record.putInt((int) _crc.getValue());
+
+        int position = segment._buffer.position();
+        segment._buffer.put(record.array(), 0, size);
+        segment._dirty = true;
+        if (type == PUT)
+        {
+            live(id, segment, position);
+            segment._puts++;
+        }
+    }
+
+    private Segment roll(int size) throws IOException
+    {
+        long sequence = _segments.isEmpty() ? 0 : _segments.getLast()._sequence + 1;
+        Segment segment = new Segment(segmentFile(sequence), sequence, size);
+        _segments.add(segment);
+        compact();
+        return segment;
+    }
+
+    // moves the live messages of the oldest segment, if at most half of
+    // those put in it are, to the newest
+    private void compact() throws IOException
+    {
+        Segment oldest = _segments.getFirst();
+        if (_compacting || oldest == _segments.getLast() || oldest._live * 2 > oldest._puts)
+        {
+            return;
+        }
+        _compacting = true;
+        try
+        {
+            List<Long> ids = new ArrayList<Long>();
+            for (Map.Entry<Long, Position> entry : _live.entrySet())
+            {
+                if (entry.getValue()._segment == oldest)
+                {
+                    ids.add(entry.getKey());
+                }
+            }
+            Collections.sort(ids);
+            for (long id : ids)
+            {
+                Record record = read(id);
+                append(PUT, id, record.getAddress().getBytes(UTF8), record.getMessage(), record.getMessage().length);
+            }
+        }
+        finally
+        {
+            _compacting = false;
+        }
+    }
+
+    // deletes the oldest segments, so long as nothing in them is live;
+    // a removal can only be forgotten along with what it removed, and a
+    // moved message only once its copy has been forced
+    private void release() throws IOException
+    {
+        while (_segments.size() > 1 && _segments.getFirst()._live == 0)
+        {
+            Segment segment = _segments.removeFirst();
+            if (!segment._file.delete())
+            {
+                throw new IOException("Cannot delete journal segment " + segment._file);
+            }
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable, then deletes the
+     * segments that are no longer needed.
+     */
+    void sync() throws IOException
+    {
+        for (Segment segment : _segments)
+        {
+            if (segment._dirty)
+            {
+                segment._buffer.force();
+                segment._dirty = false;
+            }
+        }
+        release();
+    }
+
+    int size()
+    {
+        return _live.size();
+    }
+
+    int getSegmentCount()
+    {
+        return _segments.size();
+    }
+
+    void close() throws IOException
+    {
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            _segments.clear();
+            _live.clear();
+        }
+    }
+}
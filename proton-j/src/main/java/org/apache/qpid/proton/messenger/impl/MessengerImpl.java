@@ -20,11 +20,15 @@
 */
 package org.apache.qpid.proton.messenger.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +38,7 @@ import org.apache.qpid.proton.TimeoutException;
 import org.apache.qpid.proton.driver.Connector;
 import org.apache.qpid.proton.driver.Driver;
 import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.AdaptiveCredit;
 import org.apache.qpid.proton.engine.Connection;
 import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.engine.EndpointState;
@@ -46,6 +51,7 @@ import org.apache.qpid.proton.engine.SslDomain;
 import org.apache.qpid.proton.engine.Ssl;
 import org.apache.qpid.proton.engine.Transport;
 import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.ProtonJMessage;
 import org.apache.qpid.proton.messenger.Messenger;
 import org.apache.qpid.proton.messenger.MessengerException;
 import org.apache.qpid.proton.messenger.Status;
@@ -76,9 +82,15 @@ public class MessengerImpl implements Messenger
     private long _timeout = -1;
     private boolean _blocking = true;
     private long _nextTag = 1;
-    private Driver _driver;
+    // read by interrupt() on other threads
+    private volatile Driver _driver;
     private LinkCreditMode _credit_mode = LinkCreditMode.LINK_CREDIT_EXPLICIT;
-    private final int _credit_batch = 1024;   // credit_mode == LINK_CREDIT_AUTO
+    // per receiver credit when credit_mode == LINK_CREDIT_AUTO, sized from
+    // how fast messages are taken with get()
+    private final AdaptiveCredit _credit_window = new AdaptiveCredit(16, 64, 64 * 1024);
+    private long _delivered;     // total messages pumped in
+    private long _consumed;      // total messages taken with get()
+    private long _incomingBytes; // encoded bytes waiting in the incoming store
     private int _credit;        // available
     private int _distributed;    // outstanding credit
     private int _receivers;      // total # receiver Links
@@ -90,16 +102,23 @@ public class MessengerImpl implements Messenger
     private TrackerImpl _outgoingTracker;
     private Store _incomingStore = new Store();
     private Store _outgoingStore = new Store();
+    // collects the trackers of outgoing messages whose status may have changed
+    private List<Tracker> _outgoingUpdates;
+    // messages are encoded here, then copied to an array of their size
+    private byte[] _encodeBuffer = new byte[5*1024];
     private List<Connector> _awaitingDestruction = new ArrayList<Connector>();
     private int _sendThreshold;
 
     private Transform _routes = new Transform();
     private Transform _rewrites = new Transform();
+    private final Map<String, Destination> _destinations = new DestinationIndex<Destination>();
 
     private String _certificate;
     private String _privateKey;
     private String _password;
     private String _trustedDb;
+    private String _storePath;
+    private Journal _journal;
 
 
     /**
@@ -140,6 +159,16 @@ public class MessengerImpl implements Messenger
         _blocking = b;
     }
 
+    public void setStorePath(String path)
+    {
+        _storePath = path;
+    }
+
+    public String getStorePath()
+    {
+        return _storePath;
+    }
+
     public void setCertificate(String certificate)
     {
         _certificate = certificate;
@@ -183,6 +212,63 @@ public class MessengerImpl implements Messenger
     public void start() throws IOException
     {
         _driver = Proton.driver();
+        // links from a previous run are gone with its driver
+        _destinations.clear();
+        if (_storePath != null)
+        {
+            _journal = new Journal(new File(_storePath));
+            recover();
+        }
+    }
+
+    // queues the messages left in the journal to be sent again
+    private void recover()
+    {
+        for (Journal.Record record : _journal.recover())
+        {
+            StoreEntry entry = _outgoingStore.put(record.getAddress());
+            entry.setEncodedMsg(record.getMessage(), record.getMessage().length);
+            entry.setJournalId(record.getId());
+            _outgoingStore.trackEntry(entry);
+
+            Destination destination = destination(entry.getAddress());
+            Address address = destination.getAddress();
+            if (address.getHost() == null)
+            {
+                _logger.log(Level.WARNING, "Unable to resend to address: " + destination.getRouted());
+                continue;
+            }
+            Sender sender = destination.getSender();
+            if (sender == null || sender.getLocalState() != EndpointState.ACTIVE)
+            {
+                sender = getLink(address, new SenderFinder(address.getName()));
+                destination.setSender(sender);
+            }
+            pumpOut(entry.getAddress(), sender);
+        }
+        _logger.log(Level.FINE, "Recovered " + _journal.size() + " messages from " + _storePath);
+    }
+
+    // forgets a journalled message once its receiver has settled it
+    private void journalUpdated(StoreEntry entry)
+    {
+        if (_journal == null || entry.getJournalId() < 0)
+        {
+            return;
+        }
+        Status status = entry.getStatus();
+        if (status != Status.PENDING && status != Status.UNKNOWN && status != Status.ABORTED)
+        {
+            try
+            {
+                _journal.remove(entry.getJournalId());
+                entry.setJournalId(-1);
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Error writing to the journal", e);
+            }
+        }
     }
 
     public void stop()
@@ -210,7 +296,25 @@ public class MessengerImpl implements Messenger
                     _logger.log(Level.WARNING, "Error while closing listener", e);
                 }
             }
-            waitUntil(_allClosed);
+            try
+            {
+                waitUntil(_allClosed);
+            }
+            finally
+            {
+                if (_journal != null)
+                {
+                    try
+                    {
+                        _journal.close();
+                    }
+                    catch (IOException e)
+                    {
+                        _logger.log(Level.SEVERE, "Error closing the journal", e);
+                    }
+                    _journal = null;
+                }
+            }
         }
     }
 
@@ -228,8 +332,10 @@ public class MessengerImpl implements Messenger
 
     public void interrupt()
     {
-        if (_driver != null) {
-            _driver.wakeup();
+        // may be called from another thread while the messenger stops
+        Driver driver = _driver;
+        if (driver != null) {
+            driver.wakeup();
         }
     }
 
@@ -263,16 +369,21 @@ public class MessengerImpl implements Messenger
 
     private String _original;
 
-    private void rewriteMessage(Message m)
+    private String rewriteAddress(String addr)
     {
-        _original = m.getAddress();
-        if (_rewrites.apply(_original)) {
-            m.setAddress(_rewrites.result());
+        if (_rewrites.apply(addr)) {
+            return _rewrites.result();
         } else {
-            m.setAddress(defaultRewrite(_original));
+            return defaultRewrite(addr);
         }
     }
 
+    private void rewriteMessage(Message m, Destination destination)
+    {
+        _original = m.getAddress();
+        m.setAddress(destination.getRewritten());
+    }
+
     private void restoreMessage(Message m)
     {
         m.setAddress(_original);
@@ -302,20 +413,64 @@ public class MessengerImpl implements Messenger
         _outgoingTracker = new TrackerImpl(TrackerImpl.Type.OUTGOING,
                                            _outgoingStore.trackEntry(entry));
 
-        String routedAddress = routeAddress(m.getAddress());
-        Address address = new Address(routedAddress);
+        Destination destination = destination(m.getAddress());
+        Address address = destination.getAddress();
         if (address.getHost() == null)
         {
-            throw new MessengerException("unable to send to address: " + routedAddress);
+            throw new MessengerException("unable to send to address: " + destination.getRouted());
         }
 
-        rewriteMessage(m);
+        rewriteMessage(m, destination);
 
         try {
             adjustReplyTo(m);
 
-            int encoded;
-            byte[] buffer = new byte[5*1024];
+            encodeMessage(m, entry);
+            if (_journal != null)
+            {
+                try
+                {
+                    entry.setJournalId(_journal.put(entry.getAddress(), entry.getEncodedMsg(),
+                                                    entry.getEncodedLength()));
+                }
+                catch (IOException e)
+                {
+                    _outgoingStore.freeEntry(entry);
+                    throw new MessengerException("unable to journal message", e);
+                }
+            }
+        }
+        finally
+        {
+            restoreMessage(m);
+        }
+
+        Sender sender = destination.getSender();
+        if (!isUsable(sender))
+        {
+            sender = getLink(address, new SenderFinder(address.getName()));
+            destination.setSender(sender);
+        }
+        pumpOut(m.getAddress(), sender);
+    }
+
+    private void encodeMessage(Message m, StoreEntry entry)
+    {
+        byte[] buffer = _encodeBuffer;
+        int encoded;
+        if (m instanceof ProtonJMessage)
+        {
+            // encode2 reports the full size even when it doesn't fit,
+            // so a second attempt is sure to succeed
+            encoded = ((ProtonJMessage) m).encode2(buffer, 0, buffer.length);
+            if (encoded > buffer.length)
+            {
+                buffer = new byte[encoded];
+                encoded = m.encode(buffer, 0, buffer.length);
+            }
+        }
+        else
+        {
             while (true)
             {
                 try
@@ -326,15 +481,68 @@ public class MessengerImpl implements Messenger
                     buffer = new byte[buffer.length*2];
                 }
             }
-            entry.setEncodedMsg( buffer, encoded );
         }
-        finally
+        if (buffer.length <= MAX_ENCODE_BUFFER)
         {
-            restoreMessage(m);
+            _encodeBuffer = buffer;
         }
+        entry.setEncodedMsg( Arrays.copyOf(buffer, encoded), encoded );
+    }
 
-        Sender sender = getLink(address, new SenderFinder(address.getName()));
-        pumpOut(m.getAddress(), sender);
+    // looks up, or works out and remembers, where messages for the
+    // given address are routed and what they are rewritten to
+    private Destination destination(String addr)
+    {
+        Destination destination = _destinations.get(addr);
+        if (destination == null)
+        {
+            String routed = routeAddress(addr);
+            destination = new Destination(routed, new Address(routed), rewriteAddress(addr));
+            _destinations.put(addr, destination);
+        }
+        return destination;
+    }
+
+    // forgets the link of any destination sending over it
+    private void forgetLink(Link link)
+    {
+        if (link instanceof Sender)
+        {
+            for (Destination destination : _destinations.values())
+            {
+                if (destination.getSender() == link)
+                {
+                    destination.setSender(null);
+                }
+            }
+        }
+    }
+
+    // whether a remembered sender can still be sent over: it, its session
+    // and its connection are open at both ends and the connector carrying
+    // them hasn't closed
+    private boolean isUsable(Sender sender)
+    {
+        if (sender == null || !isOpen(sender))
+        {
+            return false;
+        }
+        ConnectionContext ctx = (ConnectionContext) sender.getSession().getConnection().getContext();
+        return !ctx.getConnector().isClosed();
+    }
+
+    static boolean isOpen(Sender sender)
+    {
+        Session session = sender.getSession();
+        Connection connection = session.getConnection();
+        return isOpen(sender.getLocalState(), sender.getRemoteState())
+            && isOpen(session.getLocalState(), session.getRemoteState())
+            && isOpen(connection.getLocalState(), connection.getRemoteState());
+    }
+
+    private static boolean isOpen(EndpointState local, EndpointState remote)
+    {
+        return local == EndpointState.ACTIVE && remote != EndpointState.CLOSED;
     }
 
     private void reclaimLink(Link link)
@@ -358,10 +566,14 @@ public class MessengerImpl implements Messenger
                 entry.setDelivery(null);
                 if (delivery.isBuffered()) {
                     entry.setStatus(Status.ABORTED);
+                    if (link instanceof Sender) {
+                        outgoingUpdated(entry);
+                    }
                 }
             }
             delivery = delivery.next();
         }
+        forgetLink(link);
         linkRemoved(link);
     }
 
@@ -378,6 +590,8 @@ public class MessengerImpl implements Messenger
         entry.setDelivery( delivery );
         _logger.log(Level.FINE, "Sending on delivery: " + delivery);
         int n = sender.send( entry.getEncodedMsg(), 0, entry.getEncodedLength());
+        // the delivery has copied the message
+        entry.setEncodedMsg(null, 0);
         if (n < 0) {
             _outgoingStore.freeEntry( entry );
             _logger.log(Level.WARNING, "Send error: " + n);
@@ -428,6 +642,35 @@ public class MessengerImpl implements Messenger
             _logger.fine(this + " about to wait for up to " + n + " messages to be received");
         }
 
+        flow(n);
+
+        waitUntil(_messageAvailable);
+    }
+
+    /**
+     * Adds the tracker of each outgoing message to the given list as
+     * its delivery is updated or aborted, so that the caller need only
+     * check the status of those, or stops doing so if the list is null.
+     */
+    void setOutgoingUpdates(List<Tracker> updates)
+    {
+        _outgoingUpdates = updates;
+    }
+
+    private void outgoingUpdated(StoreEntry entry)
+    {
+        if (_outgoingUpdates != null)
+        {
+            _outgoingUpdates.add(new TrackerImpl(TrackerImpl.Type.OUTGOING, entry.getId()));
+        }
+    }
+
+    /**
+     * Issues credit for up to n messages, or for as many as the
+     * subscriptions will take if n is -1, without waiting for any.
+     */
+    void flow(int n)
+    {
         if (n == -1)
         {
             _credit_mode = LinkCreditMode.LINK_CREDIT_AUTO;
@@ -442,8 +685,6 @@ public class MessengerImpl implements Messenger
         }
 
         distributeCredit();
-
-        waitUntil(_messageAvailable);
     }
 
     public void recv() throws TimeoutException
@@ -457,12 +698,21 @@ public class MessengerImpl implements Messenger
     }
 
     public Message get()
+    {
+        return get(null);
+    }
+
+    public Message get(Message reuse)
     {
         StoreEntry entry = _incomingStore.get( null );
         if (entry != null)
         {
-            Message message = Proton.message();
+            Message message = reuse == null ? Proton.message() : reuse;
             message.decode( entry.getEncodedMsg(), 0, entry.getEncodedLength() );
+            _consumed++;
+            _incomingBytes -= entry.getEncodedLength();
+            // the decoded message holds no reference to the buffer
+            entry.setEncodedMsg(null, 0);
 
             _incomingTracker = new TrackerImpl(TrackerImpl.Type.INCOMING,
                                                _incomingStore.trackEntry(entry));
@@ -485,12 +735,14 @@ public class MessengerImpl implements Messenger
 
             int size = delivery.pending();
             byte[] buffer = new byte[size];
-            int read = receiver.recv( buffer, 0, buffer.length );
+            int read = receiver.recv( buffer, 0, size );
             if (read != size) {
                 throw new IllegalStateException();
             }
             entry.setEncodedMsg( buffer, size );
             receiver.advance();
+            _delivered++;
+            _incomingBytes += size;
 
             // account for the used credit, replenish if
             // low (< 20% maximum per-link batch) and
@@ -636,12 +888,14 @@ public class MessengerImpl implements Messenger
     public void route(String pattern, String address)
     {
         _routes.rule(pattern, address);
+        _destinations.clear();
     }
 
     @Override
     public void rewrite(String pattern, String address)
     {
         _rewrites.rule(pattern, address);
+        _destinations.clear();
     }
 
     private int queued(boolean outgoing)
@@ -769,7 +1023,15 @@ public class MessengerImpl implements Messenger
                     delivery.disposition(delivery.getRemoteState());
                 }
                 StoreEntry e = (StoreEntry) delivery.getContext();
-                if (e != null) e.updated();
+                if (e != null)
+                {
+                    e.updated();
+                    if (link instanceof Sender)
+                    {
+                        journalUpdated(e);
+                        outgoingUpdated(e);
+                    }
+                }
             }
 
             if (delivery.isReadable())
@@ -860,6 +1122,20 @@ public class MessengerImpl implements Messenger
             throw new IllegalStateException("cannot wait while messenger is stopped");
         }
 
+        // a single sync makes all the messages put since the last one
+        // durable before any of them can reach the network
+        if (_journal != null)
+        {
+            try
+            {
+                _journal.sync();
+            }
+            catch (IOException e)
+            {
+                _logger.log(Level.SEVERE, "Error writing to the journal", e);
+            }
+        }
+
         processAllConnectors();
 
         // wait until timeout expires or until test is true
@@ -907,6 +1183,11 @@ public class MessengerImpl implements Messenger
         for (Connector<?> c : _driver.connectors())
         {
             Connection connection = c.getConnection();
+            // a closing connection is replaced rather than sent over
+            if (c.isClosed() || !isOpen(connection.getLocalState(), connection.getRemoteState()))
+            {
+                continue;
+            }
             ConnectionContext ctx = (ConnectionContext) connection.getContext();
             if (ctx.matches(address))
             {
@@ -931,7 +1212,9 @@ public class MessengerImpl implements Messenger
         if (_credit_mode == LinkCreditMode.LINK_CREDIT_AUTO)
         {
             // replenish, but limit the max total messages buffered
-            final int max = _receivers * _credit_batch;
+            _credit_window.update(_delivered, _consumed, _distributed / _receivers, _incomingBytes,
+                                  System.currentTimeMillis());
+            final int max = _receivers * _credit_window.getWindow();
             final int used = _distributed + incoming();
             if (max > used)
                 _credit = max - used;
@@ -1268,7 +1551,9 @@ public class MessengerImpl implements Messenger
                 } else {
                     domain.setPeerAuthentication(SslDomain.VerifyMode.ANONYMOUS_PEER);
                 }
-                Ssl ssl = transport.ssl(domain);
+                // peer details let the client resume a cached session when reconnecting,
+                // and have JSSE send the host as the server name indication (SNI)
+                Ssl ssl = transport.ssl(domain, Proton.sslPeerDetails(host, port));
                 //ssl.setPeerHostname(host);
             }
             connection.open();
@@ -1477,6 +1762,69 @@ public class MessengerImpl implements Messenger
         }
     }
 
+    // the largest encode buffer kept for the next message
+    private static final int MAX_ENCODE_BUFFER = 1024 * 1024;
+
+    static final int MAX_DESTINATIONS = 1024;
+
+    // the destinations of the addresses most recently put to
+    static class DestinationIndex<V> extends LinkedHashMap<String, V>
+    {
+        DestinationIndex()
+        {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+        {
+            return size() > MAX_DESTINATIONS;
+        }
+    }
+
+    // where the messages put to an address go: the address they are
+    // routed to, the address they carry once rewritten and, once
+    // known, the link they are sent over
+    private static class Destination
+    {
+        private final String _routed;
+        private final Address _address;
+        private final String _rewritten;
+        private Sender _sender;
+
+        Destination(String routed, Address address, String rewritten)
+        {
+            _routed = routed;
+            _address = address;
+            _rewritten = rewritten;
+        }
+
+        String getRouted()
+        {
+            return _routed;
+        }
+
+        Address getAddress()
+        {
+            return _address;
+        }
+
+        String getRewritten()
+        {
+            return _rewritten;
+        }
+
+        Sender getSender()
+        {
+            return _sender;
+        }
+
+        void setSender(Sender sender)
+        {
+            _sender = sender;
+        }
+    }
+
     private static class ConnectionContext
     {
         private Address _address;
@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.messenger.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.messenger.AsyncMessenger;
+import org.apache.qpid.proton.messenger.Status;
+import org.apache.qpid.proton.messenger.Tracker;
+
+/**
+ * StatusFuture
+ *
+ * The pending outcome of a message put on an {@link AsyncMessengerImpl}.
+ * Completed once, by the I/O thread; waited on by any thread.
+ */
+class StatusFuture implements Future<Status>
+{
+    private static final Logger _logger = Logger.getLogger("proton.messenger");
+
+    private final Message _message;
+    private final AsyncMessenger.Callback<Status> _callback;
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile Status _status;
+    private volatile Throwable _failure;
+
+    // only touched on the I/O thread
+    private Tracker _tracker;
+
+    StatusFuture(Message message, AsyncMessenger.Callback<Status> callback)
+    {
+        _message = message;
+        _callback = callback;
+    }
+
+    Message getMessage()
+    {
+        return _message;
+    }
+
+    Tracker getTracker()
+    {
+        return _tracker;
+    }
+
+    void setTracker(Tracker tracker)
+    {
+        _tracker = tracker;
+    }
+
+    void complete(Status status)
+    {
+        _status = status;
+        _done.countDown();
+        if (_callback != null)
+        {
+            try
+            {
+                _callback.completed(status);
+            }
+            catch (RuntimeException e)
+            {
+                _logger.log(Level.WARNING, "Error in outcome callback", e);
+            }
+        }
+    }
+
+    void fail(Throwable cause)
+    {
+        _failure = cause;
+        _done.countDown();
+        if (_callback != null)
+        {
+            try
+            {
+                _callback.failed(cause);
+            }
+            catch (RuntimeException e)
+            {
+                _logger.log(Level.WARNING, "Error in outcome callback", e);
+            }
+        }
+    }
+
+    /**
+     * A message once sent cannot be recalled, so this always fails.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return false;
+    }
+
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+    public boolean isDone()
+    {
+        return _done.getCount() == 0;
+    }
+
+    public Status get() throws InterruptedException, ExecutionException
+    {
+        _done.await();
+        return result();
+    }
+
+    public Status get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!_done.await(timeout, unit))
+        {
+            throw new TimeoutException("no outcome after " + timeout + " " + unit);
+        }
+        return result();
+    }
+
+    private Status result() throws ExecutionException
+    {
+        if (_failure != null)
+        {
+            throw new ExecutionException(_failure);
+        }
+        return _status;
+    }
+}
@@ -20,12 +20,9 @@
 */
 package org.apache.qpid.proton.messenger.impl;
 
-import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
 import java.util.HashMap;
-import java.util.Collection;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.apache.qpid.proton.messenger.Status;
 import org.apache.qpid.proton.messenger.Messenger;
@@ -33,32 +30,50 @@ import org.apache.qpid.proton.engine.Delivery;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Rejected;
 
+/**
+ * Store
+ *
+ * Queues entries in the order they were put, both all together and by
+ * address, in lists linked through the entries themselves, so that an
+ * entry is freed in constant time.  Tracked entries are kept in a ring
+ * indexed by their sequence number.
+ */
 class Store
 {
     private static final Accepted ACCEPTED = Accepted.getInstance();
     private static final Rejected REJECTED = new Rejected();
 
-    private LinkedList<StoreEntry> _store = new LinkedList<StoreEntry>();
-    private HashMap<String, LinkedList<StoreEntry>> _stream = new HashMap<String, LinkedList<StoreEntry>>();
+    // the entries of one address, in the order they were put
+    private static class Stream
+    {
+        StoreEntry _head;
+        StoreEntry _tail;
+    }
+
+    private StoreEntry _head;
+    private StoreEntry _tail;
+    private int _size;
+    private HashMap<String, Stream> _stream = new HashMap<String, Stream>();
 
     // for incoming/outgoing window tracking
     int _window;
     int _lwm;
     int _hwm;
-    private HashMap<Integer, StoreEntry> _tracked = new HashMap<Integer, StoreEntry>();
+    // the tracked entries, by sequence, for sequences from _lwm up to _hwm
+    private StoreEntry[] _tracked = new StoreEntry[16];
 
     Store()
     {
     }
 
-    private boolean isTracking( Integer id )
+    private boolean isTracking( int id )
     {
-        return id != null && (id.intValue() - _lwm >= 0) && (_hwm - id.intValue() > 0);
+        return (id - _lwm >= 0) && (_hwm - id > 0);
     }
 
     int size()
     {
-        return _store.size();
+        return _size;
     }
 
     int getWindow()
@@ -75,15 +90,29 @@ class Store
     {
         if (address == null) address = "";
         StoreEntry entry = new StoreEntry(this, address);
-        _store.add( entry );
-        LinkedList<StoreEntry> list = _stream.get( address );
-        if (list != null) {
-            list.add( entry );
+
+        entry._prev = _tail;
+        if (_tail != null) {
+            _tail._next = entry;
         } else {
-            list = new LinkedList<StoreEntry>();
-            list.add( entry );
-            _stream.put( address, list );
+            _head = entry;
         }
+        _tail = entry;
+        _size++;
+
+        Stream stream = _stream.get( address );
+        if (stream == null) {
+            stream = new Stream();
+            _stream.put( address, stream );
+        }
+        entry._streamPrev = stream._tail;
+        if (stream._tail != null) {
+            stream._tail._streamNext = entry;
+        } else {
+            stream._head = entry;
+        }
+        stream._tail = entry;
+
         entry.stored();
         return entry;
     }
@@ -91,44 +120,111 @@ class Store
     StoreEntry get(String address)
     {
         if (address != null) {
-            LinkedList<StoreEntry> list = _stream.get( address );
-            if (list != null) return list.peekFirst();
+            Stream stream = _stream.get( address );
+            if (stream != null) return stream._head;
         } else {
-            return _store.peekFirst();
+            return _head;
         }
         return null;
     }
 
     StoreEntry getEntry(int id)
     {
-        return _tracked.get(id);
+        return isTracking(id) ? _tracked[id & (_tracked.length - 1)] : null;
     }
 
     Iterator<StoreEntry> trackedEntries()
     {
-        return _tracked.values().iterator();
+        return new Iterator<StoreEntry>()
+        {
+            private int _next = advance(_lwm);
+
+            private int advance(int id)
+            {
+                while (isTracking(id) && getEntry(id) == null) id++;
+                return id;
+            }
+
+            public boolean hasNext()
+            {
+                return isTracking(_next);
+            }
+
+            public StoreEntry next()
+            {
+                if (!hasNext()) throw new NoSuchElementException();
+                StoreEntry entry = getEntry(_next);
+                _next = advance(_next + 1);
+                return entry;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     void freeEntry(StoreEntry entry)
     {
         if (entry.isStored()) {
-            _store.remove( entry );
-            LinkedList<StoreEntry> list = _stream.get( entry.getAddress() );
-            if (list != null) list.remove( entry );
+            if (entry._prev != null) {
+                entry._prev._next = entry._next;
+            } else {
+                _head = entry._next;
+            }
+            if (entry._next != null) {
+                entry._next._prev = entry._prev;
+            } else {
+                _tail = entry._prev;
+            }
+            entry._prev = entry._next = null;
+            _size--;
+
+            Stream stream = _stream.get( entry.getAddress() );
+            if (entry._streamPrev != null) {
+                entry._streamPrev._streamNext = entry._streamNext;
+            } else {
+                stream._head = entry._streamNext;
+            }
+            if (entry._streamNext != null) {
+                entry._streamNext._streamPrev = entry._streamPrev;
+            } else {
+                stream._tail = entry._streamPrev;
+            }
+            entry._streamPrev = entry._streamNext = null;
+            if (stream._head == null) {
+                _stream.remove( entry.getAddress() );
+            }
+
             entry.notStored();
         }
-        // note well: may still be in _tracked map if still in window!
+        // note well: may still be tracked if still in window!
     }
 
     public int trackEntry(StoreEntry entry)
     {
         assert( entry.getStore() == this );
+        if (_hwm - _lwm == _tracked.length)
+        {
+            StoreEntry[] tracked = new StoreEntry[_tracked.length * 2];
+            for (int i = _lwm; _hwm - i > 0; i++)
+            {
+                tracked[i & (tracked.length - 1)] = _tracked[i & (_tracked.length - 1)];
+            }
+            _tracked = tracked;
+        }
         entry.setId(_hwm++);
-        _tracked.put(entry.getId(), entry);
+        _tracked[entry.getId() & (_tracked.length - 1)] = entry;
         slideWindow();
         return entry.getId();
     }
 
+    private void untrack(int id)
+    {
+        _tracked[id & (_tracked.length - 1)] = null;
+    }
+
     private void slideWindow()
     {
         if (_window >= 0)
@@ -138,7 +234,7 @@ class Store
                 StoreEntry old = getEntry(_lwm);
                 if (old != null)
                 {
-                    _tracked.remove( old.getId() );
+                    untrack( old.getId() );
                     Delivery d = old.getDelivery();
                     if (d != null) {
                         if (d.getLocalState() == null)
@@ -193,12 +289,12 @@ class Store
                     {
                         d.settle();
                     }
-                    _tracked.remove(e.getId());
+                    untrack(e.getId());
                 }
             }
         }
 
-        while (_hwm - _lwm > 0 && !_tracked.containsKey(_lwm))
+        while (_hwm - _lwm > 0 && getEntry(_lwm) == null)
         {
             _lwm++;
         }
@@ -206,5 +302,3 @@ class Store
         return 0;
     }
 }
-
-
@@ -33,7 +33,7 @@ import org.apache.qpid.proton.amqp.transport.DeliveryState;
 class StoreEntry
 {
     private Store  _store;
-    private Integer _id;
+    private int _id = -1;
     private String _address;
     private byte[] _encodedMsg;
     private int _encodedLength;
@@ -41,6 +41,7 @@ class StoreEntry
     private Status _status = Status.UNKNOWN;
     private Object _context;
     private boolean _inStore = false;
+    private long _journalId = -1;
 
     public StoreEntry(Store store, String address)
     {
@@ -89,16 +90,32 @@ class StoreEntry
         _encodedLength = length;
     }
 
+    // links of the Store's queues of all entries and of this address
+    StoreEntry _prev;
+    StoreEntry _next;
+    StoreEntry _streamPrev;
+    StoreEntry _streamNext;
+
     public void setId(int id)
     {
-        _id = new Integer(id);
+        _id = id;
     }
 
-    public Integer getId()
+    public int getId()
     {
         return _id;
     }
 
+    public long getJournalId()
+    {
+        return _journalId;
+    }
+
+    public void setJournalId(long journalId)
+    {
+        _journalId = journalId;
+    }
+
     public void setDelivery( Delivery d )
     {
         if (_delivery != null)
@@ -21,7 +21,11 @@
 package org.apache.qpid.proton.messenger.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,6 +33,11 @@ import java.util.regex.Pattern;
 /**
  * Transform
  *
+ * Applies the first of an ordered list of rules whose pattern matches
+ * an address.  Rules are indexed by the literal prefix of their
+ * pattern in a trie, so only those whose prefix the address starts
+ * with are tried, and the outcome for recently transformed addresses
+ * is remembered.
  */
 
 class Transform
@@ -44,6 +53,24 @@ class Transform
         boolean _matched = false;
         String _result = null;
 
+        // the part of the pattern every matching address starts with: an
+        // alternation may match anything, and a quantifier may drop the
+        // character it follows
+        String prefix()
+        {
+            if (_pattern.indexOf('|') >= 0) {
+                return "";
+            }
+            for (int i = 0; i < _pattern.length(); i++) {
+                char c = _pattern.charAt(i);
+                if (SPECIAL.indexOf(c) >= 0) {
+                    boolean quantifier = c == '?' || c == '{' || c == '*';
+                    return _pattern.substring(0, quantifier && i > 0 ? i - 1 : i);
+                }
+            }
+            return _pattern;
+        }
+
         Rule(String pattern, String substitution)
         {
             _pattern = pattern;
@@ -115,36 +142,121 @@ class Transform
 
     }
 
+    // wildcards, and the characters the compiled pattern treats specially
+    private static final String SPECIAL = "*%\\.[]{}()<>+?^$|";
+
+    private static final int MAX_CACHED = 1024;
+    private static final String NO_MATCH = new String();
+
+    private static class Node {
+
+        Map<Character, Node> _children = new HashMap<Character, Node>();
+        // indexes of the rules whose prefix ends here, in order
+        List<Integer> _rules = new ArrayList<Integer>();
+
+        Node child(char c) {
+            Node child = _children.get(c);
+            if (child == null) {
+                child = new Node();
+                _children.put(c, child);
+            }
+            return child;
+        }
+
+    }
+
+    private static class Cache extends LinkedHashMap<String, String> {
+
+        Cache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED;
+        }
+
+    }
+
     private List<Rule> _rules = new ArrayList<Rule>();
-    private Rule _matched = null;
+    private Node _root = new Node();
+    private Cache _cache = new Cache();
+    private int[] _candidates = new int[16];
+    private boolean _matched = false;
+    private String _result = null;
 
     public void rule(String pattern, String substitution)
     {
-        _rules.add(new Rule(pattern, substitution));
+        Rule rule = new Rule(pattern, substitution);
+        Node node = _root;
+        String prefix = rule.prefix();
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        node._rules.add(_rules.size());
+        _rules.add(rule);
+        _cache.clear();
     }
 
     public boolean apply(String src)
     {
-        _matched = null;
+        _matched = false;
+        _result = null;
 
-        for (Rule rule: _rules) {
-            if (rule.apply(src)) {
-                _matched = rule;
-                break;
+        if (_rules.isEmpty()) {
+            return false;
+        }
+
+        String cached = _cache.get(src);
+        if (cached == null) {
+            cached = NO_MATCH;
+            for (Rule rule : candidates(src)) {
+                if (rule.apply(src)) {
+                    cached = rule.result();
+                    break;
+                }
             }
+            _cache.put(src, cached);
         }
 
-        return _matched != null;
+        if (cached != NO_MATCH) {
+            _matched = true;
+            _result = cached;
+        }
+        return _matched;
+    }
+
+    // the rules whose prefix src starts with, in order
+    private List<Rule> candidates(String src)
+    {
+        int count = 0;
+        Node node = _root;
+        for (int i = 0; node != null; i++) {
+            for (Integer index : node._rules) {
+                if (count == _candidates.length) {
+                    _candidates = Arrays.copyOf(_candidates, count * 2);
+                }
+                _candidates[count++] = index;
+            }
+            node = i < src.length() ? node._children.get(src.charAt(i)) : null;
+        }
+        Arrays.sort(_candidates, 0, count);
+
+        List<Rule> rules = new ArrayList<Rule>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(_rules.get(_candidates[i]));
+        }
+        return rules;
     }
 
     public boolean matched()
     {
-        return _matched != null;
+        return _matched;
     }
 
     public String result()
     {
-        return _matched != null ? _matched.result() : null;
+        return _result;
     }
 
 }
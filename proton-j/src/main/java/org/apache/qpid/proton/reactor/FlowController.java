@@ -21,25 +21,50 @@
 
 package org.apache.qpid.proton.reactor;
 
+import org.apache.qpid.proton.engine.AdaptiveCredit;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.ExtendableAccessor;
 import org.apache.qpid.proton.engine.Link;
 import org.apache.qpid.proton.engine.Receiver;
 
 /**
  * A handler that applies flow control to a connection.  This handler tops-up
  * link credit each time credit is expended by the receipt of messages.
+ *
+ * By default every receiver is topped up to the same fixed window.  An
+ * adaptive flow controller instead gives each receiver an
+ * {@link AdaptiveCredit} window that follows how quickly the application
+ * consumes its messages and how many bytes its session is buffering.
  */
 public class FlowController extends BaseHandler {
 
+    private static final ExtendableAccessor<Link, Adaptive> ADAPTIVE =
+        new ExtendableAccessor<Link, Adaptive>(Adaptive.class);
+
+    // per receiver state of an adaptive flow controller
+    private static class Adaptive {
+        final AdaptiveCredit credit;
+        long granted;
+
+        Adaptive(AdaptiveCredit credit) {
+            this.credit = credit;
+        }
+    }
+
     private int drained;
     private int window;
+    private final int minWindow;
+    private final int maxWindow;
+    private long byteBudget;
 
     public FlowController(int window) {
         // XXX: a window of 1 doesn't work because we won't necessarily get
         // notified when the one allowed delivery is settled
         if (window <= 1) throw new IllegalArgumentException();
         this.window = window;
+        this.minWindow = window;
+        this.maxWindow = window;
         this.drained = 0;
     }
 
@@ -47,11 +72,64 @@ public class FlowController extends BaseHandler {
         this(1024);
     }
 
+    /**
+     * Creates an adaptive flow controller, whose receivers start with the
+     * given window and move between the minimum and maximum.
+     */
+    public FlowController(int minWindow, int window, int maxWindow) {
+        if (minWindow <= 1 || window < minWindow || maxWindow < window) {
+            throw new IllegalArgumentException();
+        }
+        this.window = window;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.drained = 0;
+    }
+
+    public boolean isAdaptive() {
+        return minWindow < maxWindow;
+    }
+
+    /**
+     * Caps the bytes each adaptive receiver's session may buffer.  Zero, the
+     * default, means no cap.
+     */
+    public void setByteBudget(long bytes) {
+        this.byteBudget = bytes;
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
     private void topup(Receiver link, int window) {
         int delta = window - link.getCredit();
         link.flow(delta);
     }
 
+    private void adapt(Receiver link, int drained) {
+        Adaptive state = ADAPTIVE.get(link);
+        if (state == null) {
+            AdaptiveCredit credit = new AdaptiveCredit(minWindow, window, maxWindow);
+            credit.setByteBudget(byteBudget);
+            state = new Adaptive(credit);
+            ADAPTIVE.set(link, state);
+        }
+        state.granted -= drained;
+
+        // a receiver's credit only goes down as deliveries are consumed
+        long consumed = state.granted - link.getCredit();
+        long delivered = consumed + link.getQueued();
+        state.credit.update(delivered, consumed, link.getRemoteCredit(),
+                            link.getSession().getIncomingBytes(), System.currentTimeMillis());
+
+        int more = state.credit.credit();
+        if (more > 0) {
+            link.flow(more);
+            state.granted += more;
+        }
+    }
+
     @Override
     public void onUnhandled(Event event) {
         int window = this.window;
@@ -63,8 +141,11 @@ public class FlowController extends BaseHandler {
         case LINK_FLOW:
         case DELIVERY:
             if (link instanceof Receiver) {
-                this.drained += link.drained();
-                if (this.drained == 0) {
+                int drained = link.drained();
+                this.drained += drained;
+                if (isAdaptive()) {
+                    adapt((Receiver)link, drained);
+                } else if (this.drained == 0) {
                     topup((Receiver)link, window);
                 }
             }
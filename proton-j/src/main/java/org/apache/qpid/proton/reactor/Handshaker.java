@@ -26,6 +26,8 @@ import org.apache.qpid.proton.engine.Endpoint;
 import org.apache.qpid.proton.engine.EndpointState;
 import org.apache.qpid.proton.engine.Event;
 import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.ProtonJSasl;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
 
 /**
  * A handler that mirrors the actions of the remote end of a connection.  This
@@ -33,9 +35,26 @@ import org.apache.qpid.proton.engine.Link;
  * closed.  Likewise if the remote end of the connection opens or closes
  * sessions and links, this handler responds by opening or closing the local end
  * of the session or link.
+ * <p>
+ * Given SASL server mechanisms, it also authenticates the remote end of each
+ * connection it is bound to, using those mechanisms.
  */
 public class Handshaker extends BaseHandler {
 
+    private final SaslServerMechanism[] saslMechanisms;
+
+    public Handshaker() {
+        this(new SaslServerMechanism[0]);
+    }
+
+    /**
+     * @param saslMechanisms the mechanisms offered to clients, in order of
+     *        preference, to authenticate with.
+     */
+    public Handshaker(SaslServerMechanism... saslMechanisms) {
+        this.saslMechanisms = saslMechanisms.clone();
+    }
+
     private void open(Endpoint endpoint) {
         if (endpoint.getLocalState() == EndpointState.UNINITIALIZED) {
             endpoint.open();
@@ -48,6 +67,14 @@ public class Handshaker extends BaseHandler {
         }
     }
 
+    @Override
+    public void onConnectionBound(Event event) {
+        if (saslMechanisms.length > 0) {
+            ProtonJSasl sasl = (ProtonJSasl) event.getTransport().sasl();
+            sasl.setServerMechanisms(saslMechanisms);
+        }
+    }
+
     @Override
     public void onConnectionRemoteOpen(Event event) {
         open(event.getConnection());
@@ -85,6 +85,29 @@ public interface Reactor {
      */
     long getTimeout();
 
+    /**
+     * Sets the maximum number of bytes the reactor will read from, or write
+     * to, a single connection each time the selector reports that connection
+     * as readable or writable.  The reactor keeps reading (or writing) until
+     * the socket has no more data (or space), the transport has no more
+     * capacity (or pending output), or this budget has been used up.
+     *
+     * @param budget the number of bytes, per readiness event.  A value of 1
+     *        or less results in a single read or write per event.
+     */
+    void setIOBudget(int budget);
+
+    /**
+     * @return the value previously set using {@link #setIOBudget(int)} or
+     *         {@link #DEFAULT_IO_BUDGET} if no value has been set.
+     */
+    int getIOBudget();
+
+    /**
+     * The default value for {@link #setIOBudget(int)}.
+     */
+    int DEFAULT_IO_BUDGET = 64 * 1024;
+
     /**
      * @return the global handler for this reactor.  Every event the reactor
      *         sees is dispatched to the global handler.  To receive every
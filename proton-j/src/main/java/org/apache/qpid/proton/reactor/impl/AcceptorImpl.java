@@ -77,7 +77,7 @@ public class AcceptorImpl implements Acceptor {
                 sasl.setMechanisms("ANONYMOUS");
                 sasl.done(SaslOutcome.PN_SASL_OK);
                 trans.bind(conn);
-                IOHandler.selectableTransport(reactor, socketChannel.socket(), trans);
+                IOHandler.createSelectableTransport(reactor, socketChannel.socket(), trans);
             } catch(IOException ioException) {
                 sel.error();
             }
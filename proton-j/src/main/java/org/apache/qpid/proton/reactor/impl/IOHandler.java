@@ -116,7 +116,14 @@ public class IOHandler extends BaseHandler {
         Record conn_recs = connection.attachments();
         if (conn_recs.get(AcceptorImpl.CONNECTION_ACCEPTOR_KEY, Acceptor.class) != null) {
             // Connection was created via the Acceptor, so the socket already
-            // exists
+            // exists.  Its transport's output is only looked at now, once the
+            // connection's handler has had the chance to configure SASL and
+            // SSL on it.
+            Selectable selectable = ((TransportImpl)event.getTransport()).getSelectable();
+            if (selectable != null && !selectable.isTerminal()) {
+                update(selectable);
+                reactor.update(selectable);
+            }
             return;
         }
         String url = reactor.getConnectionAddress(connection);
@@ -214,16 +221,26 @@ public class IOHandler extends BaseHandler {
         public void run(Selectable selectable) {
             Reactor reactor = selectable.getReactor();
             Transport transport = ((SelectableImpl)selectable).getTransport();
+            int budget = reactor.getIOBudget();
             int capacity = transport.capacity();
             if (capacity > 0) {
                 SocketChannel socketChannel = (SocketChannel)selectable.getChannel();
                 try {
-                    int n = socketChannel.read(transport.tail());
-                    if (n == -1) {
-                        transport.close_tail();
-                    } else {
+                    // Keep draining the socket until it has nothing more to
+                    // give, the transport can't accept any more, or the read
+                    // budget for this readiness event has been spent.
+                    do {
+                        int n = socketChannel.read(transport.tail());
+                        if (n == -1) {
+                            transport.close_tail();
+                            break;
+                        }
                         transport.process();
-                    }
+                        if (n == 0) {
+                            break;
+                        }
+                        budget -= n;
+                    } while (budget > 0 && transport.capacity() > 0);
                 } catch (IOException e) {
                     ErrorCondition condition = new ErrorCondition();
                     condition.setCondition(Symbol.getSymbol("proton:io"));
@@ -246,16 +263,26 @@ public class IOHandler extends BaseHandler {
         public void run(Selectable selectable) {
             Reactor reactor = selectable.getReactor();
             Transport transport = ((SelectableImpl)selectable).getTransport();
+            int budget = reactor.getIOBudget();
             int pending = transport.pending();
             if (pending > 0) {
                 SocketChannel channel = (SocketChannel)selectable.getChannel();
                 try {
-                    int n = channel.write(transport.head());
-                    if (n < 0) {
-                        transport.close_head();
-                    } else {
+                    // As for reads: keep writing until the socket stops
+                    // accepting data, the transport has nothing more to send,
+                    // or the write budget has been spent.
+                    do {
+                        int n = (int) channel.write(transport.heads());
+                        if (n < 0) {
+                            transport.close_head();
+                            break;
+                        }
                         transport.pop(n);
-                    }
+                        if (n == 0) {
+                            break;
+                        }
+                        budget -= n;
+                    } while (budget > 0 && transport.pending() > 0);
                 } catch(IOException ioException) {
                     ErrorCondition condition = new ErrorCondition();
                     condition.setCondition(Symbol.getSymbol("proton:io"));
@@ -316,7 +343,16 @@ public class IOHandler extends BaseHandler {
     // pn_reactor_selectable_transport
     // Note the socket argument can, validly be 'null' this is the equivalent of proton-c's PN_INVALID_SOCKET
     protected static Selectable selectableTransport(Reactor reactor, Socket socket, Transport transport) {
-        Selectable selectable = reactor.selectable();
+        Selectable selectable = createSelectableTransport(reactor, socket, transport);
+        update(selectable);
+        reactor.update(selectable);
+        return selectable;
+    }
+
+    // Creates the selectable without yet asking the transport for its output,
+    // which would fix the layers it has been given so far.
+    protected static Selectable createSelectableTransport(final Reactor reactor, Socket socket, Transport transport) {
+        final Selectable selectable = reactor.selectable();
         selectable.setChannel(socket != null ? socket.getChannel() : null);
         selectable.onReadable(connectionReadable);
         selectable.onWritable(connectionWritable);
@@ -326,8 +362,12 @@ public class IOHandler extends BaseHandler {
         ((SelectableImpl)selectable).setTransport(transport);
         ((TransportImpl)transport).setSelectable(selectable);
         ((TransportImpl)transport).setReactor(reactor);
-        update(selectable);
-        reactor.update(selectable);
+        ((TransportImpl)transport).setWakeup(new Runnable() {
+            @Override
+            public void run() {
+                ((ReactorImpl)reactor).wakeup(selectable);
+            }
+        });
         return selectable;
     }
 
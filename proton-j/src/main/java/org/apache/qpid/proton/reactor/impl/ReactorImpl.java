@@ -26,7 +26,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.Pipe;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.BaseHandler;
@@ -59,6 +61,7 @@ public class ReactorImpl implements Reactor, Extendable {
     private CollectorImpl collector;
     private long now;
     private long timeout;
+    private int ioBudget = DEFAULT_IO_BUDGET;
     private Handler global;
     private Handler handler;
     private Set<ReactorChild> children;
@@ -68,6 +71,7 @@ public class ReactorImpl implements Reactor, Extendable {
     private EventType previous;
     private Timer timer;
     private final Pipe wakeup;
+    private final Queue<Selectable> wokenSelectables = new ConcurrentLinkedQueue<Selectable>();
     private Selector selector;
     private Record attachments;
     private final IO io;
@@ -142,6 +146,16 @@ public class ReactorImpl implements Reactor, Extendable {
         this.timeout = timeout;
     }
 
+    @Override
+    public int getIOBudget() {
+        return ioBudget;
+    }
+
+    @Override
+    public void setIOBudget(int budget) {
+        this.ioBudget = budget;
+    }
+
     @Override
     public Handler getGlobalHandler() {
         return global;
@@ -318,6 +332,16 @@ public class ReactorImpl implements Reactor, Extendable {
         }
     }
 
+    /**
+     * Wakes the reactor and has it run the expired callback of the given selectable, so that
+     * its interest in I/O is re-evaluated.  Unlike the rest of the reactor, this may be called
+     * from any thread.
+     */
+    public void wakeup(Selectable selectable) {
+        wokenSelectables.add(selectable);
+        wakeup();
+    }
+
     @Override
     public void start() {
         collector.put(Type.REACTOR_INIT, this);
@@ -373,6 +397,12 @@ public class ReactorImpl implements Reactor, Extendable {
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+            Selectable woken;
+            while ((woken = wokenSelectables.poll()) != null) {
+                if (!woken.isTerminal()) {
+                    woken.expired();
+                }
+            }
             expireSelectable(selectable);
         }
 
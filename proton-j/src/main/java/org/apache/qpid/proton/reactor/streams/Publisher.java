@@ -0,0 +1,45 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+/**
+ * A provider of a potentially unbounded number of sequenced elements,
+ * publishing them according to the demand received from its
+ * {@link Subscriber}.
+ * <p>
+ * This interface, together with {@link Subscriber} and {@link Subscription},
+ * mirrors the Reactive Streams interfaces of the same name, so that adapting
+ * to a Reactive Streams library is a matter of delegating each method.
+ *
+ * @param <T> the type of element signalled.
+ */
+public interface Publisher<T>
+{
+    /**
+     * Requests the publisher to start streaming elements to the given
+     * subscriber.  The publisher calls {@link Subscriber#onSubscribe} before
+     * signalling anything else.
+     *
+     * @param subscriber the subscriber that will consume the elements.
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.ProtonException;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * Publishes the messages arriving on a {@link Receiver} link.  Demand
+ * requested by the subscriber is granted to the peer as link credit, so the
+ * sender can never get ahead of the subscriber.  Each message is accepted and
+ * settled as it is handed to {@link Subscriber#onNext(Object)}.  The stream
+ * completes when the peer closes the link, or fails if it closes the link
+ * with an error.
+ * <p>
+ * The publisher installs itself as the handler for the link, so it receives
+ * the link's events in place of the connection's handler.  Like the rest of
+ * the engine, it is not thread safe: {@link Subscription#request(long)} and
+ * {@link Subscription#cancel()} must be called from the reactor thread, for
+ * example from within {@link Subscriber#onNext(Object)}.
+ */
+public class ReceiverPublisher extends BaseHandler implements Publisher<Message> {
+
+    private final Receiver receiver;
+    private Subscriber<? super Message> subscriber;
+    private long demand;
+    private boolean done;
+
+    public ReceiverPublisher(Receiver receiver) {
+        this.receiver = receiver;
+        BaseHandler.setHandler(receiver, this);
+    }
+
+    /**
+     * Subscribes to the messages arriving on the link, opening the link if
+     * it has not been opened yet.  Only a single subscriber is supported.
+     */
+    @Override
+    public void subscribe(Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (this.subscriber != null) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("Link " + receiver.getName() + " already has a subscriber"));
+            return;
+        }
+
+        this.subscriber = subscriber;
+        if (receiver.getLocalState() == EndpointState.UNINITIALIZED) {
+            receiver.open();
+        }
+        subscriber.onSubscribe(new ReceiverSubscription());
+    }
+
+    @Override
+    public void onDelivery(Event event) {
+        Delivery delivery = event.getDelivery();
+        if (!delivery.isReadable() || delivery.isPartial()) {
+            return;
+        }
+
+        byte[] bytes = new byte[delivery.pending()];
+        receiver.recv(bytes, 0, bytes.length);
+        receiver.advance();
+        if (done) {
+            delivery.disposition(Released.getInstance());
+            delivery.settle();
+            return;
+        }
+
+        Message message = Proton.message();
+        message.decode(bytes, 0, bytes.length);
+        delivery.disposition(Accepted.getInstance());
+        delivery.settle();
+        grant();
+        subscriber.onNext(message);
+    }
+
+    @Override
+    public void onLinkRemoteDetach(Event event) {
+        terminate();
+    }
+
+    @Override
+    public void onLinkRemoteClose(Event event) {
+        terminate();
+    }
+
+    @Override
+    public void onLinkFinal(Event event) {
+        if (!done && subscriber != null) {
+            done = true;
+            subscriber.onError(new ProtonException("Link " + receiver.getName() + " freed"));
+        }
+    }
+
+    // Grants outstanding demand as credit, keeping the link's credit within
+    // the range of an int.
+    private void grant() {
+        int n = (int) Math.min(demand, Integer.MAX_VALUE - Math.max(receiver.getCredit(), 0));
+        if (n > 0) {
+            demand -= n;
+            receiver.flow(n);
+        }
+    }
+
+    private void terminate() {
+        if (receiver.getLocalState() == EndpointState.ACTIVE) {
+            receiver.close();
+        }
+        if (done || subscriber == null) {
+            return;
+        }
+
+        done = true;
+        ErrorCondition condition = receiver.getRemoteCondition();
+        if (condition != null && condition.getCondition() != null) {
+            subscriber.onError(new ProtonException("Link " + receiver.getName() + " closed by peer: " + condition));
+        } else {
+            subscriber.onComplete();
+        }
+    }
+
+    private class ReceiverSubscription implements Subscription {
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            grant();
+        }
+
+        @Override
+        public void cancel() {
+            if (!done) {
+                done = true;
+                demand = 0;
+                if (receiver.getLocalState() == EndpointState.ACTIVE) {
+                    receiver.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+import java.nio.BufferOverflowException;
+
+import org.apache.qpid.proton.amqp.transport.AmqpError;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.apache.qpid.proton.amqp.transport.SenderSettleMode;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * Sends the messages signalled by a {@link Publisher} over a {@link Sender}
+ * link.  The subscriber requests exactly as many messages as the peer has
+ * granted credit for, so the publisher can never get ahead of the peer.
+ * Deliveries are settled once the peer settles them, and the link is closed
+ * when the publisher completes and every delivery has been settled.  If the
+ * publisher fails, the link is closed with an
+ * {@link AmqpError#INTERNAL_ERROR} condition.
+ * <p>
+ * The subscriber installs itself as the handler for the link, so it receives
+ * the link's events in place of the connection's handler.  Like the rest of
+ * the engine, it is not thread safe: the publisher must signal it from the
+ * reactor thread.
+ */
+public class SenderSubscriber extends BaseHandler implements Subscriber<Message> {
+
+    private final Sender sender;
+    private Subscription subscription;
+    private int requested;
+    private boolean completed;
+    private long tag;
+    private byte[] buffer = new byte[1024];
+
+    public SenderSubscriber(Sender sender) {
+        this.sender = sender;
+        BaseHandler.setHandler(sender, this);
+    }
+
+    /**
+     * Opens the link, if it has not been opened yet, and requests as many
+     * messages as there is credit for.  A second subscription is cancelled.
+     */
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("subscription");
+        }
+        if (this.subscription != null || completed) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        if (sender.getLocalState() == EndpointState.UNINITIALIZED) {
+            sender.open();
+        }
+        request();
+    }
+
+    @Override
+    public void onNext(Message message) {
+        if (message == null) {
+            throw new NullPointerException("message");
+        }
+        if (completed) {
+            return;
+        }
+
+        requested--;
+        int size = encode(message);
+        Delivery delivery = sender.delivery(nextTag());
+        sender.send(buffer, 0, size);
+        sender.advance();
+        if (sender.getSenderSettleMode() == SenderSettleMode.SETTLED) {
+            delivery.settle();
+        }
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+        if (cause == null) {
+            throw new NullPointerException("cause");
+        }
+        completed = true;
+        if (sender.getLocalState() == EndpointState.ACTIVE) {
+            sender.setCondition(new ErrorCondition(AmqpError.INTERNAL_ERROR, String.valueOf(cause.getMessage())));
+            sender.close();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        closeIfSettled();
+    }
+
+    @Override
+    public void onLinkRemoteOpen(Event event) {
+        request();
+    }
+
+    @Override
+    public void onLinkFlow(Event event) {
+        request();
+    }
+
+    @Override
+    public void onDelivery(Event event) {
+        Delivery delivery = event.getDelivery();
+        if (delivery.remotelySettled()) {
+            delivery.settle();
+            closeIfSettled();
+        }
+    }
+
+    @Override
+    public void onLinkRemoteDetach(Event event) {
+        terminate();
+    }
+
+    @Override
+    public void onLinkRemoteClose(Event event) {
+        terminate();
+    }
+
+    @Override
+    public void onLinkFinal(Event event) {
+        terminate();
+    }
+
+    // Requests the credit not already covered by outstanding requests.  The
+    // count is updated first as the publisher may signal onNext before
+    // request returns.
+    private void request() {
+        if (subscription == null || completed) {
+            return;
+        }
+        int n = sender.getCredit() - requested;
+        if (n > 0) {
+            requested += n;
+            subscription.request(n);
+        }
+    }
+
+    private void closeIfSettled() {
+        if (completed && sender.getUnsettled() == 0 && sender.getLocalState() == EndpointState.ACTIVE) {
+            sender.close();
+        }
+    }
+
+    private void terminate() {
+        if (sender.getLocalState() == EndpointState.ACTIVE) {
+            sender.close();
+        }
+        if (subscription != null && !completed) {
+            completed = true;
+            subscription.cancel();
+        }
+    }
+
+    private int encode(Message message) {
+        while (true) {
+            try {
+                return message.encode(buffer, 0, buffer.length);
+            } catch (BufferOverflowException e) {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+    }
+
+    private byte[] nextTag() {
+        long value = tag++;
+        return new byte[] {
+            (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+        };
+    }
+}
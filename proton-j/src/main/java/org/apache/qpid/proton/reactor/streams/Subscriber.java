@@ -0,0 +1,58 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+/**
+ * Receives elements from a {@link Publisher}.  No elements are signalled
+ * until demand has been expressed through {@link Subscription#request(long)}.
+ *
+ * @param <T> the type of element signalled.
+ */
+public interface Subscriber<T>
+{
+    /**
+     * Invoked once, after {@link Publisher#subscribe(Subscriber)}, before any
+     * other signal.
+     *
+     * @param subscription the subscription used to request elements and to
+     *        cancel the stream.
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Invoked for each element, at most as many times as requested through
+     * {@link Subscription#request(long)}.
+     */
+    void onNext(T element);
+
+    /**
+     * Invoked when the stream has terminated with a failure.  No further
+     * signals follow.
+     */
+    void onError(Throwable cause);
+
+    /**
+     * Invoked when the stream has terminated successfully.  No further
+     * signals follow.
+     */
+    void onComplete();
+}
@@ -0,0 +1,43 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+/**
+ * The one-to-one relationship between a {@link Subscriber} and the
+ * {@link Publisher} it is subscribed to.
+ */
+public interface Subscription
+{
+    /**
+     * Adds the given number of elements to the outstanding demand.
+     *
+     * @param n a strictly positive number of elements.  Demand is capped at
+     *        {@link Long#MAX_VALUE}, which is treated as unbounded.
+     */
+    void request(long n);
+
+    /**
+     * Requests the publisher to stop signalling elements.  Elements already
+     * in flight may still be signalled.
+     */
+    void cancel();
+}
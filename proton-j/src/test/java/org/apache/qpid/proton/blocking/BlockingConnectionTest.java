@@ -0,0 +1,350 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.blocking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.ProtonException;
+import org.apache.qpid.proton.TimeoutException;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.message.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlockingConnectionTest
+{
+    private static final long TIMEOUT = 10000;
+
+    private BlockingAcceptor _acceptor;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _acceptor = BlockingAcceptor.Factory.create("127.0.0.1", 0);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        _acceptor.close();
+    }
+
+    private Thread server(final int count, final List<Object> received, final AtomicReference<Throwable> failure)
+    {
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingReceiver receiver = connection.acceptReceiver(10, TIMEOUT);
+                    for (int i = 0; i < count; i++)
+                    {
+                        Message message = receiver.receive(TIMEOUT);
+                        received.add(((AmqpValue) message.getBody()).getValue());
+                    }
+                    assertNull(receiver.receive(TIMEOUT));
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void testSendBlocksUntilAccepted() throws Exception
+    {
+        final int count = 100;
+        List<Object> received = new ArrayList<Object>();
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread server = server(count, received, failure);
+
+        BlockingConnection connection = BlockingConnection.Factory.connect("127.0.0.1", _acceptor.getPort(), TIMEOUT);
+        BlockingSender sender = connection.sender("queue", TIMEOUT);
+        for (int i = 0; i < count; i++)
+        {
+            Message message = Proton.message();
+            message.setBody(new AmqpValue("message-" + i));
+            DeliveryState outcome = sender.send(message, TIMEOUT);
+            assertTrue("Unexpected outcome: " + outcome, outcome instanceof Accepted);
+        }
+        sender.close(TIMEOUT);
+        connection.close(TIMEOUT);
+
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("message-" + i, received.get(i));
+        }
+    }
+
+    @Test
+    public void testReceiveTimesOutWithNoMessage() throws Exception
+    {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingSender sender = connection.acceptSender(TIMEOUT);
+                    timedOut.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    sender.close(TIMEOUT);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+
+        BlockingConnection connection = BlockingConnection.Factory.connect("127.0.0.1", _acceptor.getPort(), TIMEOUT);
+        BlockingReceiver receiver = connection.receiver("queue", 1, TIMEOUT);
+        assertNull(receiver.receive(100));
+        timedOut.countDown();
+
+        // the peer detaching the link ends the wait without a message
+        assertNull(receiver.receive(TIMEOUT));
+        receiver.close(TIMEOUT);
+        connection.close(TIMEOUT);
+
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testConcurrentSendAndReceive() throws Exception
+    {
+        final int count = 50;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingReceiver receiver = connection.acceptReceiver(10, TIMEOUT);
+                    BlockingSender sender = connection.acceptSender(TIMEOUT);
+                    for (int i = 0; i < count; i++)
+                    {
+                        sender.send(receiver.receive(TIMEOUT), TIMEOUT);
+                    }
+                    assertNull(receiver.receive(TIMEOUT));
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+
+        BlockingConnection connection = BlockingConnection.Factory.connect("127.0.0.1", _acceptor.getPort(), TIMEOUT);
+        BlockingSender sender = connection.sender("in", TIMEOUT);
+        final BlockingReceiver receiver = connection.receiver("out", 10, TIMEOUT);
+
+        // receives without a timeout while this thread sends on the same connection
+        final List<Object> received = new ArrayList<Object>();
+        final AtomicReference<Throwable> receiveFailure = new AtomicReference<Throwable>();
+        Thread receiving = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        received.add(((AmqpValue) receiver.receive(-1).getBody()).getValue());
+                    }
+                }
+                catch (Throwable t)
+                {
+                    receiveFailure.set(t);
+                }
+            }
+        });
+        receiving.start();
+
+        for (int i = 0; i < count; i++)
+        {
+            Message message = Proton.message();
+            message.setBody(new AmqpValue("message-" + i));
+            assertTrue(sender.send(message, TIMEOUT) instanceof Accepted);
+        }
+        receiving.join(TIMEOUT);
+        assertFalse("Receiver still blocked", receiving.isAlive());
+        assertNull("Receiver failed: " + receiveFailure.get(), receiveFailure.get());
+
+        sender.close(TIMEOUT);
+        connection.close(TIMEOUT);
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("message-" + i, received.get(i));
+        }
+    }
+
+    @Test
+    public void testLocalCloseWakesThreadsWaitingWithoutTimeout() throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // grants no credit and, once idle, answers nothing
+                    BlockingConnection connection = _acceptor.accept();
+                    connection.acceptReceiver(0, TIMEOUT);
+                    connection.acceptSender(TIMEOUT);
+                    done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+
+        BlockingConnection connection = BlockingConnection.Factory.connect("127.0.0.1", _acceptor.getPort(), TIMEOUT);
+        final BlockingSender sender = connection.sender("in", TIMEOUT);
+        final BlockingReceiver receiver = connection.receiver("out", 1, TIMEOUT);
+
+        final AtomicReference<Object> sent = new AtomicReference<Object>();
+        Thread sending = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Message message = Proton.message();
+                    message.setBody(new AmqpValue("never sent"));
+                    sent.set(sender.send(message, -1));
+                }
+                catch (Throwable t)
+                {
+                    sent.set(t);
+                }
+            }
+        });
+        final AtomicReference<Object> received = new AtomicReference<Object>();
+        Thread receiving = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    received.set(receiver.receive(-1));
+                }
+                catch (Throwable t)
+                {
+                    received.set(t);
+                }
+            }
+        });
+        sending.start();
+        receiving.start();
+        Thread.sleep(200);
+        assertTrue(sending.isAlive());
+        assertTrue(receiving.isAlive());
+
+        // the peer never acknowledges the detaches, so only the local close can wake them
+        closeUnacknowledged(sender);
+        sending.join(TIMEOUT);
+        assertFalse("Sender still blocked", sending.isAlive());
+        assertTrue("Unexpected send result: " + sent.get(), sent.get() instanceof ProtonException);
+
+        closeUnacknowledged(receiver);
+        receiving.join(TIMEOUT);
+        assertFalse("Receiver still blocked", receiving.isAlive());
+        assertNull(received.get());
+
+        done.countDown();
+        connection.close(TIMEOUT);
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+    }
+
+    private static void closeUnacknowledged(Object link) throws Exception
+    {
+        try
+        {
+            if (link instanceof BlockingSender)
+            {
+                ((BlockingSender) link).close(100);
+            }
+            else
+            {
+                ((BlockingReceiver) link).close(100);
+            }
+            fail("Peer acknowledged close of " + link);
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+    }
+}
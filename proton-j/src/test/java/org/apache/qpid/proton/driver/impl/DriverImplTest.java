@@ -0,0 +1,156 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.driver.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.driver.Connector;
+import org.apache.qpid.proton.driver.Listener;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DriverImplTest
+{
+    private static final long TIMEOUT = 10000;
+
+    private DriverImpl _driver;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _driver = new DriverImpl(2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _driver.destroy();
+    }
+
+    @Test
+    public void testConnectorsOpenAcrossShards() throws Exception
+    {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        channel.configureBlocking(false);
+        _driver.createListener(channel, null);
+        int port = channel.socket().getLocalPort();
+
+        List<Connection> clients = new ArrayList<Connection>();
+        for (int i = 0; i < 4; i++)
+        {
+            Connector<?> connector = _driver.createConnector("127.0.0.1", port, null);
+            Connection connection = Proton.connection();
+            connector.setConnection(connection);
+            connection.open();
+            connector.process();
+            clients.add(connection);
+        }
+
+        int accepted = 0;
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!allOpen(clients))
+        {
+            assertTrue("timed out waiting for connections to open", System.currentTimeMillis() < deadline);
+            _driver.doWait(100);
+            for (Listener<?> l = _driver.listener(); l != null; l = _driver.listener())
+            {
+                Connector<?> c = l.accept();
+                assertNotNull(c);
+                Connection connection = Proton.connection();
+                c.setConnection(connection);
+                connection.open();
+                c.process();
+                accepted++;
+            }
+            for (Connector<?> c = _driver.connector(); c != null; c = _driver.connector())
+            {
+                c.process();
+            }
+        }
+
+        assertEquals(4, accepted);
+        int count = 0;
+        for (Connector<?> c : _driver.connectors())
+        {
+            count++;
+        }
+        assertEquals(8, count);
+    }
+
+    private boolean allOpen(List<Connection> connections)
+    {
+        for (Connection connection : connections)
+        {
+            if (connection.getRemoteState() != EndpointState.ACTIVE)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testWakeupEndsWait() throws Exception
+    {
+        Thread waker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e)
+                {
+                    // wake up early
+                }
+                _driver.wakeup();
+            }
+        });
+        waker.start();
+
+        assertTrue(_driver.doWait(-1));
+        assertFalse(_driver.doWait(0));
+        waker.join(TIMEOUT);
+    }
+
+    @Test
+    public void testWaitTimesOut()
+    {
+        long start = System.nanoTime();
+        assertFalse(_driver.doWait(50));
+        assertTrue(System.nanoTime() - start >= 50 * 1000000L);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Simulates a receiver whose credit is managed by a fixed window and by
+ * {@link AdaptiveCredit}, and compares how much the consumer starves and
+ * how much memory it buffers.
+ *
+ * Time advances in milliseconds. The sender transmits whenever it holds
+ * credit, limited by the link bandwidth; transfers and flows each take a
+ * one-way delay to arrive. The consumer takes messages at a fixed rate.
+ */
+public class AdaptiveCreditBenchmark
+{
+    private static final int DURATION = 60 * 1000;
+
+    private static class Scenario
+    {
+        final String name;
+        final int messageSize;
+        final double consumeRate;   // messages per millisecond
+        final long bandwidth;       // bytes per millisecond
+        final int delay;            // one-way, in milliseconds
+
+        Scenario(String name, int messageSize, double consumeRate, long bandwidth, int delay)
+        {
+            this.name = name;
+            this.messageSize = messageSize;
+            this.consumeRate = consumeRate;
+            this.bandwidth = bandwidth;
+            this.delay = delay;
+        }
+    }
+
+    private static class Result
+    {
+        long consumed;
+        long idle;
+        long peakBytes;
+        int finalWindow;
+    }
+
+    public static void main(String[] args)
+    {
+        Scenario[] scenarios = {
+            new Scenario("slow consumer, 1MB messages", 1024 * 1024, 0.01, 100 * 1000, 5),
+            new Scenario("fast consumer, 100B messages, 20ms delay", 100, 100, 1000 * 1000, 20),
+            new Scenario("steady consumer, 10KB messages", 10 * 1024, 1, 10 * 1000, 10),
+        };
+        System.out.println(String.format(Locale.ROOT, "%-42s %-10s %12s %8s %14s %8s",
+                                         "scenario", "policy", "consumed", "idle%", "peak buffered", "window"));
+        for (Scenario scenario : scenarios)
+        {
+            print(scenario, "fixed", run(scenario, null, 1024));
+            AdaptiveCredit adaptive = new AdaptiveCredit(16, 16, 64 * 1024);
+            adaptive.setByteBudget(64 * 1024 * 1024);
+            print(scenario, "adaptive", run(scenario, adaptive, 1024));
+        }
+    }
+
+    private static void print(Scenario scenario, String policy, Result result)
+    {
+        System.out.println(String.format(Locale.ROOT, "%-42s %-10s %12d %7.1f%% %12dKB %8d",
+                                         scenario.name, policy, result.consumed,
+                                         100.0 * result.idle / DURATION,
+                                         result.peakBytes / 1024, result.finalWindow));
+    }
+
+    private static Result run(Scenario s, AdaptiveCredit adaptive, int fixedWindow)
+    {
+        Result result = new Result();
+        // arrival times of messages and credit in flight
+        ArrayDeque<long[]> transfers = new ArrayDeque<long[]>();
+        ArrayDeque<long[]> flows = new ArrayDeque<long[]>();
+
+        long senderCredit = 0;
+        long granted = 0;           // credit granted by the receiver
+        long delivered = 0;         // messages arrived at the receiver
+        long consumed = 0;
+        double consumable = 0;
+        long sendBudget = 0;        // bytes the link can carry this tick
+
+        for (long now = 0; now < DURATION; now++)
+        {
+            // arrivals
+            while (!flows.isEmpty() && flows.peek()[0] <= now)
+            {
+                senderCredit += flows.poll()[1];
+            }
+            while (!transfers.isEmpty() && transfers.peek()[0] <= now)
+            {
+                transfers.poll();
+                delivered++;
+            }
+
+            // the consumer
+            consumable = Math.min(consumable + s.consumeRate, Math.max(1, s.consumeRate));
+            if (delivered == consumed)
+            {
+                result.idle++;
+            }
+            while (consumable >= 1 && consumed < delivered)
+            {
+                consumed++;
+                consumable--;
+            }
+
+            // the receiver tops up credit
+            long buffered = delivered - consumed;
+            long bufferedBytes = buffered * s.messageSize;
+            result.peakBytes = Math.max(result.peakBytes, bufferedBytes);
+            long outstanding = granted - delivered;
+            long more;
+            if (adaptive != null)
+            {
+                adaptive.update(delivered, consumed, (int) outstanding, bufferedBytes, now);
+                more = adaptive.credit();
+            }
+            else
+            {
+                more = fixedWindow - outstanding - buffered;
+            }
+            if (more > 0)
+            {
+                granted += more;
+                flows.add(new long[] {now + s.delay, more});
+            }
+
+            // the sender
+            sendBudget = Math.min(sendBudget + s.bandwidth, s.bandwidth + s.messageSize);
+            while (senderCredit > 0 && sendBudget >= s.messageSize)
+            {
+                senderCredit--;
+                sendBudget -= s.messageSize;
+                transfers.add(new long[] {now + s.delay});
+            }
+        }
+
+        result.consumed = consumed;
+        result.finalWindow = adaptive == null ? fixedWindow : adaptive.getWindow();
+        return result;
+    }
+}
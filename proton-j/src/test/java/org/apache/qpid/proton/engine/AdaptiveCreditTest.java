@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveCreditTest
+{
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInitialOutsideBounds()
+    {
+        new AdaptiveCredit(10, 5, 100);
+    }
+
+    @Test
+    public void testGrowsWhileConsumerStarves()
+    {
+        AdaptiveCredit credit = new AdaptiveCredit(2, 8, 64);
+        long delivered = 0;
+        long now = 0;
+        credit.update(0, 0, 0, 0, now);
+        // every message is consumed as soon as it arrives
+        for (int i = 0; i < 200; i++)
+        {
+            delivered++;
+            now++;
+            credit.update(delivered, delivered, 0, 0, now);
+        }
+        assertEquals(64, credit.getWindow());
+        assertEquals(64, credit.credit());
+    }
+
+    @Test
+    public void testShrinksWhenMessagesWaitTooLong()
+    {
+        AdaptiveCredit credit = new AdaptiveCredit(2, 64, 64);
+        credit.setTargetLatency(100);
+        long consumed = 0;
+        long now = 0;
+        credit.update(64, 0, 0, 0, now);
+        // one message every 50ms with 64 buffered is a wait of over 3s
+        for (int i = 0; i < 100; i++)
+        {
+            consumed++;
+            now += 50;
+            credit.update(consumed + 64, consumed, 0, 0, now);
+        }
+        assertEquals(2, credit.getWindow());
+    }
+
+    @Test
+    public void testByteBudgetCapsWindow()
+    {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100, 100);
+        credit.setByteBudget(1024 * 1024);
+        credit.setTargetLatency(0);
+        long consumed = 0;
+        long now = 0;
+        credit.update(4, 0, 0, 4 * 100 * 1024, now);
+        for (int i = 0; i < 100; i++)
+        {
+            consumed++;
+            now++;
+            credit.update(consumed + 4, consumed, 0, 4 * 100 * 1024, now);
+        }
+        // ten messages of 100K fit the budget
+        assertEquals(10, credit.getWindow());
+        assertEquals(6, credit.credit());
+    }
+
+    @Test
+    public void testNoCreditWhileOverBudget()
+    {
+        AdaptiveCredit credit = new AdaptiveCredit(1, 100, 100);
+        credit.setByteBudget(1000);
+        credit.update(2, 0, 0, 2000, 0);
+        assertEquals(0, credit.credit());
+        // a window of 1000 byte messages is now a single message
+        credit.update(2, 1, 0, 1000, 1);
+        assertEquals(0, credit.credit());
+        credit.update(2, 2, 0, 0, 2);
+        assertEquals(1, credit.credit());
+    }
+}
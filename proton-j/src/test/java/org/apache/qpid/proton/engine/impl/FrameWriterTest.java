@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.junit.Test;
+
+public class FrameWriterTest
+{
+    private static final int SMALL = FrameWriter.PAYLOAD_REFERENCE_THRESHOLD - 1;
+    private static final int LARGE = FrameWriter.PAYLOAD_REFERENCE_THRESHOLD + 100;
+
+    private final FrameWriter _frameWriter;
+    private final ByteArrayOutputStream _expected = new ByteArrayOutputStream();
+    private byte _fill;
+
+    public FrameWriterTest()
+    {
+        DecoderImpl decoder = new DecoderImpl();
+        EncoderImpl encoder = new EncoderImpl(decoder);
+        AMQPDefinedTypes.registerAllTypes(decoder, encoder);
+        _frameWriter = new FrameWriter(encoder, 0, FrameWriter.AMQP_FRAME_TYPE, null, new TransportImpl());
+    }
+
+    /**
+     * Writes an empty-bodied frame carrying a payload of the given size, and
+     * records the bytes it should produce.
+     */
+    private byte[] writeFrame(int channel, int size)
+    {
+        byte[] payload = new byte[size];
+        Arrays.fill(payload, ++_fill);
+        _frameWriter.writeFrame(channel, null, ByteBuffer.wrap(payload), null);
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(8 + size);
+        header.put((byte) 2);
+        header.put(FrameWriter.AMQP_FRAME_TYPE);
+        header.putShort((short) channel);
+        _expected.write(header.array(), 0, 8);
+        _expected.write(payload, 0, size);
+        return payload;
+    }
+
+    private byte[] segmentBytes()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer segment : _frameWriter.segments())
+        {
+            assertTrue(segment.isReadOnly());
+            byte[] bytes = new byte[segment.remaining()];
+            segment.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] readAll(int chunk)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer dst = ByteBuffer.allocate(chunk);
+        int read;
+        do
+        {
+            dst.clear();
+            read = _frameWriter.readBytes(dst);
+            out.write(dst.array(), 0, read);
+        }
+        while (read > 0);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPayloadBelowThresholdIsCopied()
+    {
+        byte[] payload = writeFrame(1, SMALL);
+        Arrays.fill(payload, (byte) 0);
+
+        assertEquals(1, _frameWriter.segments().length);
+        assertArrayEquals(_expected.toByteArray(), segmentBytes());
+        assertArrayEquals(_expected.toByteArray(), readAll(4096));
+        assertEquals(0, _frameWriter.segments().length);
+    }
+
+    @Test
+    public void testPayloadAboveThresholdIsReferenced()
+    {
+        byte[] payload = writeFrame(1, LARGE);
+
+        ByteBuffer[] segments = _frameWriter.segments();
+        assertEquals(2, segments.length);
+        assertEquals(8, segments[0].remaining());
+        assertEquals(LARGE, segments[1].remaining());
+
+        // the reference sees the caller's array, not a copy of it
+        payload[0] = 42;
+        assertEquals(42, _frameWriter.segments()[1].get(0));
+    }
+
+    @Test
+    public void testMixedPayloadsReadInOrder()
+    {
+        writeFrame(1, LARGE);
+        writeFrame(2, SMALL);
+        writeFrame(3, 2 * LARGE);
+        writeFrame(4, 10);
+
+        assertEquals(5, _frameWriter.segments().length);
+        assertArrayEquals(_expected.toByteArray(), segmentBytes());
+        assertArrayEquals(_expected.toByteArray(), readAll(100000));
+    }
+
+    @Test
+    public void testReadsStoppingMidReference()
+    {
+        writeFrame(1, LARGE);
+        writeFrame(2, SMALL);
+        writeFrame(3, LARGE);
+
+        // a chunk that divides neither frame boundaries nor payloads
+        assertArrayEquals(_expected.toByteArray(), readAll(97));
+        assertFalse(_frameWriter.isFull());
+    }
+
+    @Test
+    public void testWritesBetweenPartialReadsAreRebased()
+    {
+        writeFrame(1, LARGE);
+        writeFrame(2, SMALL);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer dst = ByteBuffer.allocate(8 + LARGE / 2);
+        _frameWriter.readBytes(dst);
+        out.write(dst.array(), 0, dst.position());
+
+        // compaction moved the remaining frame buffer; later references must follow
+        writeFrame(3, LARGE);
+        writeFrame(4, SMALL);
+        byte[] rest = readAll(4096);
+        out.write(rest, 0, rest.length);
+
+        assertArrayEquals(_expected.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void testSkipBytesAfterSegments()
+    {
+        writeFrame(1, SMALL);
+        writeFrame(2, LARGE);
+        writeFrame(3, SMALL);
+        byte[] expected = _expected.toByteArray();
+
+        // as a gathering write that stops partway through the reference would
+        int written = 8 + SMALL + 8 + LARGE / 3;
+        assertEquals(expected.length, segmentBytes().length);
+        assertEquals(written, _frameWriter.skipBytes(written));
+        assertArrayEquals(Arrays.copyOfRange(expected, written, expected.length), segmentBytes());
+
+        writeFrame(4, LARGE);
+        expected = _expected.toByteArray();
+        assertArrayEquals(Arrays.copyOfRange(expected, written, expected.length), segmentBytes());
+
+        int remaining = expected.length - written;
+        assertEquals(remaining, _frameWriter.skipBytes(remaining + 10));
+        assertEquals(0, _frameWriter.segments().length);
+    }
+
+    @Test
+    public void testIsFullCountsReferencedBytes()
+    {
+        int frames = 0;
+        while (!_frameWriter.isFull())
+        {
+            writeFrame(frames++, 8 * 1024);
+        }
+        // the frame buffer itself only ever held the frame headers
+        assertTrue(frames * 8 < 1024);
+
+        ByteBuffer dst = ByteBuffer.allocate(8 + 8 * 1024 + 8 + 4 * 1024);
+        _frameWriter.readBytes(dst);
+        assertFalse(_frameWriter.isFull());
+
+        byte[] rest = readAll(4096);
+        assertEquals(_expected.size() - dst.capacity(), rest.length);
+        assertFalse(_frameWriter.isFull());
+    }
+}
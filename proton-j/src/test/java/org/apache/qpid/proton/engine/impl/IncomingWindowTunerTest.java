@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IncomingWindowTunerTest
+{
+    private static final int FRAME = 16 * 1024;
+    private static final long FLOOR = 64 * 1024;
+    private static final long CEILING = 16 * 1024 * 1024;
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private long _now = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Runs one echo round trip of the given length, receiving the given
+     * number of frames while it is outstanding.
+     */
+    private void roundTrip(IncomingWindowTuner tuner, int frames, long rtt)
+    {
+        tuner.transferReceived(FRAME, _now);
+        assertTrue(tuner.isProbeWanted());
+        tuner.probeSent(_now);
+        for (int i = 0; i < frames; i++)
+        {
+            tuner.transferReceived(FRAME, _now + rtt * i / Math.max(1, frames));
+        }
+        _now += rtt;
+        tuner.flowReceived(_now);
+    }
+
+    @Test
+    public void testGrowsWhileWindowLimited()
+    {
+        IncomingWindowTuner tuner = new IncomingWindowTuner(FLOOR);
+        long capacity = tuner.getCapacity(FLOOR, CEILING);
+        for (int i = 0; i < 4; i++)
+        {
+            roundTrip(tuner, (int) (capacity / FRAME / 2), RTT);
+            assertEquals(2 * capacity, tuner.getCapacity(FLOOR, CEILING));
+            capacity = 2 * capacity;
+        }
+        assertEquals(RTT, tuner.getRoundTripTime());
+        assertEquals(RTT, tuner.getMinRoundTripTime());
+    }
+
+    @Test
+    public void testGrowthIsBoundedByCeiling()
+    {
+        IncomingWindowTuner tuner = new IncomingWindowTuner(CEILING);
+        roundTrip(tuner, (int) (CEILING / FRAME), RTT);
+        assertEquals(CEILING, tuner.getCapacity(FLOOR, CEILING));
+    }
+
+    @Test
+    public void testQueueingDelayDoesNotGrowWindow()
+    {
+        IncomingWindowTuner tuner = new IncomingWindowTuner(FLOOR);
+        roundTrip(tuner, 2, RTT);
+        assertEquals(2 * FLOOR, tuner.getCapacity(FLOOR, CEILING));
+
+        // the whole window arrives, but over four times the round trip
+        roundTrip(tuner, 8, 4 * RTT);
+        assertEquals(2 * FLOOR, tuner.getCapacity(FLOOR, CEILING));
+        assertEquals(RTT, tuner.getMinRoundTripTime());
+    }
+
+    @Test
+    public void testShrinksWhenOversized()
+    {
+        IncomingWindowTuner tuner = new IncomingWindowTuner(CEILING);
+        roundTrip(tuner, 4, RTT);
+        assertEquals(4 * 4 * FRAME, tuner.getCapacity(FLOOR, CEILING));
+
+        // a recent larger sample holds the window up
+        roundTrip(tuner, 0, RTT);
+        assertEquals(4 * 4 * FRAME, tuner.getCapacity(FLOOR, CEILING));
+
+        // once it has aged out the window falls, but never below the floor
+        _now += TimeUnit.SECONDS.toNanos(11);
+        roundTrip(tuner, 0, RTT);
+        assertEquals(FLOOR, tuner.getCapacity(FLOOR, CEILING));
+    }
+
+    @Test
+    public void testUnansweredEchoRestoresCeiling()
+    {
+        IncomingWindowTuner tuner = new IncomingWindowTuner(FLOOR);
+        tuner.transferReceived(FRAME, _now);
+        tuner.probeSent(_now);
+        tuner.transferReceived(FRAME, _now + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(FLOOR, tuner.getCapacity(FLOOR, CEILING));
+
+        tuner.transferReceived(FRAME, _now + TimeUnit.SECONDS.toNanos(3));
+        assertEquals(CEILING, tuner.getCapacity(FLOOR, CEILING));
+        tuner.transferReceived(FRAME, _now + TimeUnit.SECONDS.toNanos(4));
+        assertFalse(tuner.isProbeWanted());
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.engine.impl;
+
+import static java.util.EnumSet.of;
+import static org.apache.qpid.proton.engine.EndpointState.ACTIVE;
+import static org.apache.qpid.proton.engine.EndpointState.UNINITIALIZED;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+
+/**
+ * Streams messages between two in-memory transports joined by a simulated
+ * link with a fixed one-way delay and bandwidth, and compares the throughput
+ * and incoming window of a receiving session with a static capacity against
+ * one with incoming window auto-tuning.
+ *
+ * The run is in real time, since the tuner measures round trips with the
+ * system clock.  The sender keeps the link busy and the receiver consumes
+ * everything as soon as it arrives, so the window alone limits throughput.
+ */
+public class SessionWindowBenchmark
+{
+    private static final long DURATION = TimeUnit.SECONDS.toNanos(5);
+    private static final int FRAME_SIZE = 16 * 1024;
+    private static final int MESSAGE_SIZE = 8 * 1024;
+
+    private static class Scenario
+    {
+        final String name;
+        final long delay;       // one-way, in nanoseconds
+        final long bandwidth;   // bytes per second
+
+        Scenario(String name, int delayMillis, long bandwidth)
+        {
+            this.name = name;
+            this.delay = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            this.bandwidth = bandwidth;
+        }
+    }
+
+    private static class Result
+    {
+        long consumed;
+        long peakWindow;
+        long finalWindow;
+        long rtt;
+    }
+
+    /**
+     * One direction of the link. Output is released in the order written,
+     * no faster than the bandwidth allows and a fixed delay later.
+     */
+    private static class Wire
+    {
+        private final ArrayDeque<long[]> _due = new ArrayDeque<long[]>();
+        private final ArrayDeque<ByteBuffer> _chunks = new ArrayDeque<ByteBuffer>();
+        private final Scenario _scenario;
+        private long _busyUntil;
+
+        Wire(Scenario scenario)
+        {
+            _scenario = scenario;
+        }
+
+        void write(Transport from, long now)
+        {
+            ByteBuffer output;
+            while ((output = from.getOutputBuffer()).hasRemaining())
+            {
+                ByteBuffer chunk = ByteBuffer.allocate(output.remaining());
+                chunk.put(output);
+                chunk.flip();
+                from.outputConsumed();
+
+                _busyUntil = Math.max(now, _busyUntil)
+                    + chunk.remaining() * TimeUnit.SECONDS.toNanos(1) / _scenario.bandwidth;
+                _due.add(new long[] {_busyUntil + _scenario.delay});
+                _chunks.add(chunk);
+            }
+        }
+
+        void read(Transport to, long now)
+        {
+            while (!_chunks.isEmpty() && _due.peek()[0] <= now)
+            {
+                ByteBuffer chunk = _chunks.peek();
+                ByteBuffer input = to.getInputBuffer();
+                int size = Math.min(chunk.remaining(), input.remaining());
+                ByteBuffer slice = chunk.duplicate();
+                slice.limit(slice.position() + size);
+                input.put(slice);
+                chunk.position(chunk.position() + size);
+                to.processInput().checkIsOk();
+                if (chunk.hasRemaining())
+                {
+                    break;
+                }
+                _chunks.poll();
+                _due.poll();
+            }
+        }
+
+        void reset()
+        {
+            _busyUntil = 0;
+        }
+
+        long next()
+        {
+            return _due.isEmpty() ? Long.MAX_VALUE : _due.peek()[0];
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        Scenario[] scenarios = {
+            new Scenario("5ms delay, 50MB/s", 5, 50L * 1024 * 1024),
+            new Scenario("20ms delay, 20MB/s", 20, 20L * 1024 * 1024),
+            new Scenario("50ms delay, 10MB/s", 50, 10L * 1024 * 1024),
+        };
+        System.out.println(String.format(Locale.ROOT, "%-22s %-16s %10s %12s %12s %8s",
+                                         "scenario", "window", "MB/s", "peak window", "final window", "rtt"));
+        for (Scenario scenario : scenarios)
+        {
+            print(scenario, "static 256KB", run(scenario, 256 * 1024, false));
+            print(scenario, "static 16MB", run(scenario, 16 * 1024 * 1024, false));
+            print(scenario, "tuned, max 16MB", run(scenario, 16 * 1024 * 1024, true));
+        }
+    }
+
+    private static void print(Scenario scenario, String policy, Result result)
+    {
+        double seconds = (double) DURATION / TimeUnit.SECONDS.toNanos(1);
+        System.out.println(String.format(Locale.ROOT, "%-22s %-16s %10.1f %10dKB %10dKB %6dms",
+                                         scenario.name, policy,
+                                         result.consumed / seconds / (1024 * 1024),
+                                         result.peakWindow / 1024, result.finalWindow / 1024,
+                                         TimeUnit.NANOSECONDS.toMillis(result.rtt)));
+    }
+
+    private static Result run(Scenario scenario, int capacity, boolean tuned)
+    {
+        Transport clientTransport = Proton.transport();
+        clientTransport.setMaxFrameSize(FRAME_SIZE);
+        Connection clientConnection = Proton.connection();
+        clientTransport.bind(clientConnection);
+        Transport serverTransport = Proton.transport();
+        Connection serverConnection = Proton.connection();
+        serverTransport.bind(serverConnection);
+
+        clientConnection.open();
+        Session session = clientConnection.session();
+        session.setIncomingCapacity(capacity);
+        session.setIncomingWindowAutoTuning(tuned);
+        session.open();
+        Receiver receiver = session.receiver("link");
+        Source source = new Source();
+        source.setAddress("queue");
+        receiver.setSource(source);
+        receiver.setTarget(new Target());
+        receiver.open();
+        receiver.flow(1024);
+
+        // the handshake is delivered at once, whatever the delay
+        Wire toServer = new Wire(scenario);
+        Wire toClient = new Wire(scenario);
+        Sender sender = null;
+        while (sender == null)
+        {
+            toServer.write(clientTransport, 0);
+            toServer.read(serverTransport, Long.MAX_VALUE);
+            serverConnection.open();
+            Session serverSession = serverConnection.sessionHead(of(UNINITIALIZED), of(ACTIVE));
+            if (serverSession != null)
+            {
+                serverSession.open();
+            }
+            sender = (Sender) serverConnection.linkHead(of(UNINITIALIZED), of(ACTIVE));
+            toClient.write(serverTransport, 0);
+            toClient.read(clientTransport, Long.MAX_VALUE);
+        }
+        sender.setSource(sender.getRemoteSource());
+        sender.setTarget(sender.getRemoteTarget());
+        sender.open();
+        toClient.write(serverTransport, 0);
+        toClient.read(clientTransport, Long.MAX_VALUE);
+        TransportSession transportSession = ((SessionImpl) session).getTransportSession();
+        byte[] payload = new byte[MESSAGE_SIZE];
+        byte[] buffer = new byte[MESSAGE_SIZE];
+        int tag = 0;
+        Result result = new Result();
+
+        long start = System.nanoTime();
+        long end = start + DURATION;
+        toServer.reset();
+        toClient.reset();
+        long now = start;
+        while (now < end)
+        {
+            while (sender.getCredit() > sender.getQueued() && sender.getQueued() < 64)
+            {
+                Delivery delivery = sender.delivery(Integer.toString(tag++).getBytes());
+                sender.send(payload, 0, payload.length);
+                sender.advance();
+                delivery.settle();
+            }
+
+            Delivery delivery;
+            while ((delivery = receiver.current()) != null && !delivery.isPartial())
+            {
+                int read;
+                while ((read = receiver.recv(buffer, 0, buffer.length)) > 0)
+                {
+                    result.consumed += read;
+                }
+                receiver.advance();
+                delivery.settle();
+            }
+            if (receiver.getCredit() < 512)
+            {
+                receiver.flow(1024);
+            }
+
+            toClient.write(serverTransport, now);
+            toServer.write(clientTransport, now);
+            long window = transportSession.getIncomingWindowSize().longValue() * FRAME_SIZE
+                + session.getIncomingBytes();
+            result.peakWindow = Math.max(result.peakWindow, window);
+            result.finalWindow = window;
+
+            long next = Math.min(toClient.next(), toServer.next());
+            now = System.nanoTime();
+            if (next > now)
+            {
+                LockSupport.parkNanos(Math.min(next, end) - now);
+                now = System.nanoTime();
+            }
+            toClient.read(clientTransport, now);
+            toServer.read(serverTransport, now);
+        }
+
+        IncomingWindowTuner tuner = transportSession.getIncomingWindowTuner();
+        if (tuner != null)
+        {
+            result.rtt = tuner.getMinRoundTripTime();
+        }
+        return result;
+    }
+}
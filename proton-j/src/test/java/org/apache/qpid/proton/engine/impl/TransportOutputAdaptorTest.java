@@ -123,10 +123,32 @@ public class TransportOutputAdaptorTest
         }
     }
 
+    @Test
+    public void testHeadsIncludesUnwrittenOutputAndPopSpansIt()
+    {
+        byte[] cannedBytes = "abcd".getBytes();
+        byte[] unwrittenBytes = "wxyz".getBytes();
+        _transportOutputWriter.setNextCannedOutput(cannedBytes);
+        _transportOutputWriter.setNextUnwrittenOutput(unwrittenBytes);
+
+        ByteBuffer[] heads = _transportOutput.heads();
+        assertEquals(2, heads.length);
+        assertByteBufferContentEquals(cannedBytes, heads[0]);
+        assertByteBufferContentEquals(unwrittenBytes, heads[1]);
+
+        _transportOutput.pop(6);
+
+        heads = _transportOutput.heads();
+        assertEquals(2, heads.length);
+        assertEquals(0, heads[0].remaining());
+        assertByteBufferContentEquals("yz".getBytes(), heads[1]);
+    }
+
     private static final class CannedTransportOutputWriter implements TransportOutputWriter
     {
 
         byte[] _cannedOutput = new byte[0];
+        ByteBuffer _unwrittenOutput = ByteBuffer.allocate(0);
 
         @Override
         public boolean writeInto(ByteBuffer outputBuffer)
@@ -140,6 +162,27 @@ public class TransportOutputAdaptorTest
             return false;
         }
 
+        @Override
+        public ByteBuffer[] unwrittenOutput()
+        {
+            if (_unwrittenOutput.hasRemaining())
+            {
+                return new ByteBuffer[] { _unwrittenOutput.asReadOnlyBuffer() };
+            }
+            return new ByteBuffer[0];
+        }
+
+        @Override
+        public void popUnwrittenOutput(int bytes)
+        {
+            _unwrittenOutput.position(_unwrittenOutput.position() + bytes);
+        }
+
+        void setNextUnwrittenOutput(byte[] unwrittenOutput)
+        {
+            _unwrittenOutput = ByteBuffer.wrap(unwrittenOutput);
+        }
+
         void setNextCannedOutput(byte[] cannedOutput)
         {
             _cannedOutput = cannedOutput;
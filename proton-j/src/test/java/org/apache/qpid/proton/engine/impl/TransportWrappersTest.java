@@ -0,0 +1,131 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Sasl;
+import org.apache.qpid.proton.engine.Transport;
+import org.junit.Test;
+
+public class TransportWrappersTest
+{
+    private final TransportImpl _client = new TransportImpl();
+    private final TransportImpl _server = new TransportImpl();
+
+    private void pump()
+    {
+        while (transfer(_client, _server) | transfer(_server, _client))
+        {
+            // keep going
+        }
+    }
+
+    private boolean transfer(Transport from, Transport to)
+    {
+        int pending = from.pending();
+        if (pending <= 0 || to.capacity() <= 0)
+        {
+            return false;
+        }
+        ByteBuffer head = from.head();
+        ByteBuffer tail = to.tail();
+        int size = Math.min(pending, tail.remaining());
+        head.limit(head.position() + size);
+        tail.put(head);
+        from.pop(size);
+        to.process();
+        return true;
+    }
+
+    private void assertCollapsed(TransportImpl transport)
+    {
+        assertTrue("input not collapsed: " + transport.getInputProcessor(),
+                   transport.getInputProcessor() instanceof FrameParser);
+        assertTrue("output not collapsed: " + transport.getOutputProcessor(),
+                   transport.getOutputProcessor() instanceof TransportOutputAdaptor);
+    }
+
+    private void openConnections()
+    {
+        Connection clientConnection = new ConnectionImpl();
+        Connection serverConnection = new ConnectionImpl();
+        _client.bind(clientConnection);
+        _server.bind(serverConnection);
+        clientConnection.open();
+        serverConnection.open();
+        pump();
+        assertEquals(EndpointState.ACTIVE, clientConnection.getRemoteState());
+        assertEquals(EndpointState.ACTIVE, serverConnection.getRemoteState());
+    }
+
+    @Test
+    public void testPlainTransportWrapperCollapses()
+    {
+        TransportInput input = new FrameParser(null, null, 512);
+        TransportOutput output = new TransportOutputAdaptor(null, 512);
+        PlainTransportWrapper wrapper = new PlainTransportWrapper(output, input);
+
+        assertSame(input, TransportWrappers.collapse((TransportInput) wrapper));
+        assertSame(output, TransportWrappers.collapse((TransportOutput) wrapper));
+    }
+
+    @Test
+    public void testSaslLayerIsRemovedOnceNegotiationCompletes()
+    {
+        Sasl clientSasl = _client.sasl();
+        clientSasl.client();
+        clientSasl.setMechanisms("ANONYMOUS");
+        Sasl serverSasl = _server.sasl();
+        serverSasl.server();
+        serverSasl.setMechanisms("ANONYMOUS");
+        pump();
+
+        // the layers remain while negotiation is in progress
+        assertTrue(_client.getInputProcessor() instanceof CollapsibleTransportWrapper);
+        assertTrue(_server.getOutputProcessor() instanceof CollapsibleTransportWrapper);
+
+        serverSasl.done(Sasl.SaslOutcome.PN_SASL_OK);
+        openConnections();
+
+        assertEquals(Sasl.SaslState.PN_SASL_PASS, clientSasl.getState());
+        assertCollapsed(_client);
+        assertCollapsed(_server);
+    }
+
+    @Test
+    public void testSkippedSaslLayerIsRemoved()
+    {
+        Sasl serverSasl = _server.sasl();
+        serverSasl.server();
+        serverSasl.allowSkip(true);
+        openConnections();
+
+        assertCollapsed(_server);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.sasl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import javax.security.sasl.SaslException;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+import org.junit.Test;
+
+public class ScramSha256Test
+{
+    // the example exchange of RFC 7677, section 3
+    private static final String CLIENT_NONCE = "rOprNGfwEbeRWgbNEkqO";
+    private static final String CLIENT_FIRST = "n,,n=user,r=rOprNGfwEbeRWgbNEkqO";
+    private static final String SERVER_FIRST =
+        "r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,s=W22ZaJ0SNY7soEsUEjb6gQ==,i=4096";
+    private static final String CLIENT_FINAL =
+        "c=biws,r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,p=dHzbZapWIk4jUhN+Ute9ytag9zjfMHgsqmmiz7AndVQ=";
+    private static final String SERVER_FINAL = "v=6rriTRBi23WpRR/wtup+mMhUZUn/dB5nLTJRsjl95G4=";
+
+    @Test
+    public void testBase64()
+    {
+        String[][] vectors = { { "", "" }, { "f", "Zg==" }, { "fo", "Zm8=" }, { "foo", "Zm9v" },
+                               { "foob", "Zm9vYg==" }, { "fooba", "Zm9vYmE=" }, { "foobar", "Zm9vYmFy" } };
+        for (String[] vector : vectors)
+        {
+            assertEquals(vector[1], Base64.encode(vector[0].getBytes(ScramSha256.UTF_8)));
+            assertArrayEquals(vector[0].getBytes(ScramSha256.UTF_8), Base64.decode(vector[1]));
+        }
+
+        for (String invalid : new String[] { "Zg=", "Z!==", "=Zg=" })
+        {
+            try
+            {
+                Base64.decode(invalid);
+                fail("expected " + invalid + " to be rejected");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testClientExchange() throws Exception
+    {
+        ScramSha256ClientMechanism client = new ScramSha256ClientMechanism("user", "pencil", CLIENT_NONCE);
+        assertEquals(CLIENT_FIRST, ScramSha256.toString(client.getInitialResponse()));
+        assertEquals(CLIENT_FINAL, ScramSha256.toString(client.getChallengeResponse(ScramSha256.toBinary(SERVER_FIRST))));
+        client.verifyCompletion(ScramSha256.toBinary(SERVER_FINAL));
+    }
+
+    @Test
+    public void testClientRejectsWrongServerSignature() throws Exception
+    {
+        ScramSha256ClientMechanism client = new ScramSha256ClientMechanism("user", "pencil", CLIENT_NONCE);
+        client.getInitialResponse();
+        client.getChallengeResponse(ScramSha256.toBinary(SERVER_FIRST));
+        try
+        {
+            client.verifyCompletion(ScramSha256.toBinary("v=" + Base64.encode(new byte[32])));
+            fail("expected the server signature to be rejected");
+        }
+        catch (SaslException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testClientRejectsServerNonceNotExtendingItsOwn() throws Exception
+    {
+        ScramSha256ClientMechanism client = new ScramSha256ClientMechanism("user", "pencil", CLIENT_NONCE);
+        client.getInitialResponse();
+        try
+        {
+            client.getChallengeResponse(new Binary("r=other,s=W22ZaJ0SNY7soEsUEjb6gQ==,i=4096".getBytes(ScramSha256.UTF_8)));
+            fail("expected the server nonce to be rejected");
+        }
+        catch (SaslException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUsernameEscaping() throws Exception
+    {
+        assertEquals("a=2Cb=3Dc", ScramSha256.escapeUsername("a,b=c"));
+        assertEquals("a,b=c", ScramSha256.unescapeUsername("a=2Cb=3Dc"));
+        try
+        {
+            ScramSha256.unescapeUsername("a=b");
+            fail("expected the invalid escape to be rejected");
+        }
+        catch (SaslException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testServerCarriesOnWithUnknownUserUntilProof() throws Exception
+    {
+        ScramSha256ServerMechanism server = new ScramSha256ServerMechanism(new SaslCredentialStore()
+        {
+            @Override
+            public ScramCredential getCredential(String username)
+            {
+                return null;
+            }
+        }, null);
+
+        RecordingResult first = new RecordingResult();
+        server.createExchange().handleResponse(ScramSha256.toBinary(CLIENT_FIRST), first);
+        SaslServerMechanism.Exchange exchange = server.createExchange();
+        RecordingResult second = new RecordingResult();
+        exchange.handleResponse(ScramSha256.toBinary(CLIENT_FIRST), second);
+
+        // offered the same salt each time, as a real user would be
+        assertNotNull(second._challenge);
+        String serverFirst = ScramSha256.toString(second._challenge);
+        assertEquals(salt(ScramSha256.toString(first._challenge)), salt(serverFirst));
+
+        ScramSha256ClientMechanism client = new ScramSha256ClientMechanism("user", "pencil", CLIENT_NONCE);
+        client.getInitialResponse();
+        RecordingResult last = new RecordingResult();
+        exchange.handleResponse(client.getChallengeResponse(second._challenge), last);
+        assertEquals(SaslOutcome.PN_SASL_AUTH, last._outcome);
+    }
+
+    private static String salt(String serverFirst)
+    {
+        return serverFirst.substring(serverFirst.indexOf(",s="), serverFirst.indexOf(",i="));
+    }
+
+    private static class RecordingResult implements SaslServerMechanism.Result
+    {
+        Binary _challenge;
+        SaslOutcome _outcome;
+
+        @Override
+        public void challenge(Binary challenge)
+        {
+            _challenge = challenge;
+        }
+
+        @Override
+        public void success(String user, Binary additionalData)
+        {
+            _outcome = SaslOutcome.PN_SASL_OK;
+        }
+
+        @Override
+        public void failure(SaslOutcome outcome)
+        {
+            _outcome = outcome;
+        }
+    }
+}
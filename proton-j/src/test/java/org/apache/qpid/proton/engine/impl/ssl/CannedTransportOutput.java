@@ -59,6 +59,12 @@ public class CannedTransportOutput implements TransportOutput
         return _head;
     }
 
+    @Override
+    public ByteBuffer[] heads()
+    {
+        return new ByteBuffer[] { _head };
+    }
+
     @Override
     public void pop(int bytes)
     {
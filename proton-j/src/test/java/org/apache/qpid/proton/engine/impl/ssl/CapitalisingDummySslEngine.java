@@ -38,7 +38,7 @@ import javax.net.ssl.SSLException;
  *
  * Using a true SSLEngine for this would be impractical.
  */
-public class CapitalisingDummySslEngine implements ProtonSslEngine
+public class CapitalisingDummySslEngine implements GatheringProtonSslEngine
 {
     static final int SHORT_ENCODED_CHUNK_SIZE = 2;
     static final int MAX_ENCODED_CHUNK_SIZE = 5;
@@ -52,6 +52,7 @@ public class CapitalisingDummySslEngine implements ProtonSslEngine
     private int _applicationBufferSize = CLEAR_CHUNK_SIZE;
     private int _packetBufferSize = MAX_ENCODED_CHUNK_SIZE;
     private int _unwrapCount;
+    private ByteBuffer _lastUnwrapDestination;
 
     /**
      * Converts a_ to <-A->.  z_ is special and encodes as <> (to give us packets of different lengths).
@@ -111,15 +112,36 @@ public class CapitalisingDummySslEngine implements ProtonSslEngine
         return new SSLEngineResult(resultStatus, HandshakeStatus.NOT_HANDSHAKING, consumed, produced);
     }
 
+    /**
+     * As {@link #wrap(ByteBuffer, ByteBuffer)}, using the first of the srcs that has any bytes
+     * remaining.  Clear text chunks are not expected to span srcs.
+     */
+    @Override
+    public SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst)
+            throws SSLException
+    {
+        for (ByteBuffer src : srcs)
+        {
+            if (src.hasRemaining())
+            {
+                return wrap(src, dst);
+            }
+        }
+        return new SSLEngineResult(Status.OK, HandshakeStatus.NOT_HANDSHAKING, 0, 0);
+    }
+
     /**
      * Converts <-A-><-B-><-C-> to a_. <> is special and decodes as z_
      * Input such as "<A" will causes a {@link Status#BUFFER_UNDERFLOW} result status.
+     * If dst has less room than the decoded chunk, we return {@link Status#BUFFER_OVERFLOW}
+     * and the src and dst ByteBuffers are unchanged.
      */
     @Override
     public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer dst)
             throws SSLException
     {
         _unwrapCount++;
+        _lastUnwrapDestination = dst;
 
         if(_nextException != null)
         {
@@ -165,6 +187,12 @@ public class CapitalisingDummySslEngine implements ProtonSslEngine
                 consumed = SHORT_ENCODED_CHUNK_SIZE;;
             }
 
+            if (dst.remaining() < CLEAR_CHUNK_SIZE)
+            {
+                src.reset();
+                return new SSLEngineResult(Status.BUFFER_OVERFLOW, HandshakeStatus.NOT_HANDSHAKING, 0, 0);
+            }
+
             char lowerCaseChar = Character.toLowerCase(capitalisedChar);
             dst.put((byte)lowerCaseChar);
             dst.put((byte)CLEARTEXT_PADDING);
@@ -218,7 +246,7 @@ public class CapitalisingDummySslEngine implements ProtonSslEngine
     @Override
     public HandshakeStatus getHandshakeStatus()
     {
-        throw new UnsupportedOperationException();
+        return HandshakeStatus.NOT_HANDSHAKING;
     }
 
     @Override
@@ -263,4 +291,8 @@ public class CapitalisingDummySslEngine implements ProtonSslEngine
     int getUnwrapCount() {
         return _unwrapCount;
     }
+
+    ByteBuffer getLastUnwrapDestination() {
+        return _lastUnwrapDestination;
+    }
 }
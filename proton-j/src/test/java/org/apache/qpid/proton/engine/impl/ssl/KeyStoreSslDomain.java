@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.qpid.proton.engine.SslContextProvider;
+import org.apache.qpid.proton.engine.SslPeerDetails;
+
+/**
+ * A domain whose engines are created from a context built from a PKCS12 key store, such as a
+ * self-signed one made by {@link #generateKeyStore()}, rather than from PEM files.
+ */
+public class KeyStoreSslDomain extends SslDomainImpl
+{
+    private static final char[] PASSWORD = "proton".toCharArray();
+
+    private final SSLContext _context;
+
+    public KeyStoreSslDomain(SSLContext context, Mode mode)
+    {
+        _context = context;
+        init(mode);
+    }
+
+    /**
+     * Generates, using the JDK's keytool, a self-signed RSA certificate and its key into a new
+     * PKCS12 key store that is deleted on exit.
+     */
+    public static File generateKeyStore() throws IOException, InterruptedException
+    {
+        File keyStore = File.createTempFile("proton-test", ".p12");
+        keyStore.delete();
+        keyStore.deleteOnExit();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "proton",
+                                             "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                                             "-dname", "CN=localhost", "-storetype", "PKCS12",
+                                             "-keystore", keyStore.getPath(),
+                                             "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+            .redirectErrorStream(true).start();
+        if (process.waitFor() != 0)
+        {
+            throw new IOException("keytool failed with exit code " + process.exitValue());
+        }
+        return keyStore;
+    }
+
+    /**
+     * @return a context of the given provider using the key store's key and trusting its certificate.
+     */
+    public static SSLContext createContext(SslContextProvider provider, File keyStore) throws Exception
+    {
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        InputStream in = new FileInputStream(keyStore);
+        try
+        {
+            ks.load(in, PASSWORD);
+        }
+        finally
+        {
+            in.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, PASSWORD);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+
+        SSLContext context = provider.createSslContext("TLS");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    @Override
+    public ProtonSslEngine createSslEngine(SslPeerDetails peerDetails)
+    {
+        SSLEngine engine = _context.createSSLEngine();
+        engine.setUseClientMode(getMode() == Mode.CLIENT);
+        // the transport's TLS wrapper does not yet complete TLSv1.3 handshakes
+        engine.setEnabledProtocols(new String[] { "TLSv1.2" });
+        return new DefaultSslEngineFacade(engine);
+    }
+}
@@ -344,6 +344,104 @@ public class SimpleSslTransportWrapperTest
         assertEquals(1, _dummySslEngine.getUnwrapCount()); // 1 decode (then exception)
     }
 
+    /**
+     * Tests that when the underlying input has room for the decoded bytes, they are unwrapped
+     * straight into its tail.
+     */
+    @Test
+    public void testUnderlyingInputWithRoom_isUnwrappedIntoDirectly()
+    {
+        putBytesIntoTransport("<-A->");
+
+        assertEquals("a_", _underlyingInput.getAcceptedInput());
+        assertTrue("Expected the engine to unwrap into the underlying tail",
+                   _dummySslEngine.getLastUnwrapDestination() == _underlyingInput.tail());
+        assertEquals(2, _dummySslEngine.getUnwrapCount()); // 1 packet, 1 underflow
+        assertEquals(1, _underlyingInput.getProcessCount());
+    }
+
+    /**
+     * Tests that when the underlying input's capacity passes the direct unwrap check but is
+     * smaller than a decoded record (1 byte against 2 here), the engine's
+     * {@link javax.net.ssl.SSLEngineResult.Status#BUFFER_OVERFLOW} sends the record through the
+     * intermediate buffer instead, and the next record is again tried directly.
+     */
+    @Test
+    public void testUnderlyingInputSmallerThanDecodedRecord_fallsBackToIntermediateBuffer()
+    {
+        _underlyingInput.setInputBufferSize(1);
+        _dummySslEngine.setApplicationBufferSize(1);
+        _dummySslEngine.setPacketBufferSize(10);
+        _sslWrapper = new SimpleSslTransportWrapper(_dummySslEngine, _underlyingInput, _underlyingOutput);
+
+        _sslWrapper.tail().put("<-A-><-B->".getBytes(StandardCharsets.UTF_8));
+        _sslWrapper.process();
+
+        assertEquals("a_b_", _underlyingInput.getAcceptedInput());
+        assertEquals(10, _sslWrapper.capacity());
+        assertEquals(4, _underlyingInput.getProcessCount()); // 1 per decoded byte
+
+        // per packet: 1 direct overflow, 1 decode into the intermediate buffer, with 1 extra
+        // overflow the first time while that buffer grows to fit; then 1 underflow
+        assertEquals(6, _dummySslEngine.getUnwrapCount());
+    }
+
+    /**
+     * Tests that when the underlying input closes after taking a directly unwrapped packet, the
+     * wrapper closes its own tail without error.
+     */
+    @Test
+    public void testUnderlyingInputClosesAfterDirectUnwrap_closesTail()
+    {
+        _underlyingInput.setZeroCapacityAtCount(2);
+
+        _sslWrapper.tail().put("<-A->".getBytes(StandardCharsets.UTF_8));
+        _sslWrapper.process();
+
+        assertEquals("a_", _underlyingInput.getAcceptedInput());
+        assertEquals(Transport.END_OF_STREAM, _sslWrapper.capacity());
+
+        // the head closes too once there is no output left to write
+        _underlyingOutput.setOutput("");
+        assertEquals(Transport.END_OF_STREAM, _sslWrapper.pending());
+
+        try
+        {
+            _sslWrapper.tail();
+            fail("Expected an exception");
+        }
+        catch (TransportException te)
+        {
+            // expected.
+        }
+    }
+
+    /**
+     * As {@link #testUnderlyingInputClosesAfterDirectUnwrap_closesTail()}, but with a further
+     * packet that can no longer be passed on.
+     */
+    @Test
+    public void testUnderlyingInputClosesAfterDirectUnwrapWithInputRemaining_throwsException()
+    {
+        _underlyingInput.setZeroCapacityAtCount(2);
+        _dummySslEngine.setPacketBufferSize(10);
+        _sslWrapper = new SimpleSslTransportWrapper(_dummySslEngine, _underlyingInput, _underlyingOutput);
+
+        _sslWrapper.tail().put("<-A-><-B->".getBytes(StandardCharsets.UTF_8));
+        try
+        {
+            _sslWrapper.process();
+            fail("Expected an exception");
+        }
+        catch (TransportException te)
+        {
+            assertEquals("bytes left unconsumed", te.getMessage());
+        }
+
+        assertEquals("a_", _underlyingInput.getAcceptedInput());
+        assertEquals(Transport.END_OF_STREAM, _sslWrapper.capacity());
+    }
+
     @Test
     public void testSslUnwrapThrowsException_returnsErrorResultAndRefusesFurtherInput() throws Exception
     {
@@ -446,6 +544,40 @@ public class SimpleSslTransportWrapperTest
         }
     }
 
+    @Test
+    public void testOutputCoalescedWhilePreviousOutputPending()
+    {
+        _dummySslEngine.setApplicationBufferSize(4);
+        _sslWrapper = new SimpleSslTransportWrapper(_dummySslEngine, _underlyingInput, _underlyingOutput, true);
+
+        _underlyingOutput.setOutput("a_");
+        assertEquals("<-A->", pourBufferToString(_sslWrapper.head().duplicate()));
+
+        // less than a packet's worth is held back until the previous output is written
+        _underlyingOutput.setOutput("b_");
+        assertEquals(5, _sslWrapper.pending());
+        _sslWrapper.pop(5);
+        assertEquals("<-B->", getAllBytesFromTransport());
+
+        // a packet's worth is wrapped straight away
+        _underlyingOutput.setOutput("c_");
+        assertEquals(5, _sslWrapper.pending());
+        _underlyingOutput.setOutput("d_e_");
+        assertEquals(10, _sslWrapper.pending());
+        assertEquals("<-C-><-D-><-E->", getAllBytesFromTransport());
+    }
+
+    @Test
+    public void testOutputNotCoalescedByDefault()
+    {
+        _underlyingOutput.setOutput("a_");
+        assertEquals(5, _sslWrapper.pending());
+
+        _underlyingOutput.setOutput("b_");
+        assertEquals(10, _sslWrapper.pending());
+        assertEquals("<-A-><-B->", getAllBytesFromTransport());
+    }
+
     private String getAllBytesFromTransport()
     {
         StringBuilder readBytes = new StringBuilder();
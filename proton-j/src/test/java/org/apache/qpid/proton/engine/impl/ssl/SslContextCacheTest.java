@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.engine.SslDomain;
+import org.junit.After;
+import org.junit.Test;
+
+public class SslContextCacheTest
+{
+    @After
+    public void tearDown()
+    {
+        SslContextCache.clear();
+    }
+
+    private SslDomain createDomain(SslDomain.Mode mode, String trustedCaDb)
+    {
+        SslDomain domain = SslDomain.Factory.create();
+        domain.init(mode);
+        domain.setTrustedCaDb(trustedCaDb);
+        return domain;
+    }
+
+    private SSLContext createContext() throws Exception
+    {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+        return context;
+    }
+
+    @Test
+    public void testEquivalentDomainsShareContext() throws Exception
+    {
+        SSLContext context = createContext();
+        assertSame(context, SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, "ca.pem"), context));
+
+        // the mode is applied to each engine, not to the context
+        assertSame(context, SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "ca.pem")));
+        assertSame(context, SslContextCache.get(createDomain(SslDomain.Mode.SERVER, "ca.pem")));
+        assertNull(SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "other-ca.pem")));
+
+        SslDomain verifying = createDomain(SslDomain.Mode.CLIENT, "ca.pem");
+        verifying.setPeerAuthentication(SslDomain.VerifyMode.VERIFY_PEER);
+        assertNull(SslContextCache.get(verifying));
+    }
+
+    @Test
+    public void testFirstContextPutIsKept() throws Exception
+    {
+        SSLContext first = createContext();
+        assertSame(first, SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, null), first));
+        assertSame(first, SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, null), createContext()));
+    }
+
+    @Test
+    public void testContextReplacedWhenFileModified() throws Exception
+    {
+        File ca = File.createTempFile("proton-ca", ".pem");
+        try
+        {
+            assertTrue(ca.setLastModified(1000000000000L));
+            SslDomain domain = createDomain(SslDomain.Mode.CLIENT, ca.getPath());
+            SSLContext context = createContext();
+            SslContextCache.put(domain, context);
+            assertSame(context, SslContextCache.get(domain));
+
+            assertTrue(ca.setLastModified(2000000000000L));
+            assertNull(SslContextCache.get(domain));
+
+            SSLContext replacement = createContext();
+            assertSame(replacement, SslContextCache.put(domain, replacement));
+            assertSame(replacement, SslContextCache.get(domain));
+        }
+        finally
+        {
+            ca.delete();
+        }
+    }
+
+    @Test
+    public void testSessionContextSettingsApplied() throws Exception
+    {
+        int size = SslContextCache.getSessionCacheSize();
+        int timeout = SslContextCache.getSessionTimeout();
+        try
+        {
+            SSLContext context = createContext();
+            SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, null), context);
+
+            SslContextCache.setSessionCacheSize(42);
+            SslContextCache.setSessionTimeout(60);
+            assertEquals(42, context.getClientSessionContext().getSessionCacheSize());
+            assertEquals(42, context.getServerSessionContext().getSessionCacheSize());
+            assertEquals(60, context.getClientSessionContext().getSessionTimeout());
+            assertEquals(60, context.getServerSessionContext().getSessionTimeout());
+
+            SSLContext later = createContext();
+            SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, "ca.pem"), later);
+            assertEquals(42, later.getClientSessionContext().getSessionCacheSize());
+            assertEquals(60, later.getServerSessionContext().getSessionTimeout());
+        }
+        finally
+        {
+            SslContextCache.setSessionCacheSize(size);
+            SslContextCache.setSessionTimeout(timeout);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedContextEvicted() throws Exception
+    {
+        int size = SslContextCache.getContextCacheSize();
+        try
+        {
+            SslContextCache.setContextCacheSize(2);
+            SSLContext a = SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, "a.pem"), createContext());
+            SSLContext b = SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, "b.pem"), createContext());
+
+            // using a makes b the least recently used
+            assertSame(a, SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "a.pem")));
+            SSLContext c = SslContextCache.put(createDomain(SslDomain.Mode.CLIENT, "c.pem"), createContext());
+            assertNull(SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "b.pem")));
+            assertSame(a, SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "a.pem")));
+            assertSame(c, SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "c.pem")));
+
+            SslContextCache.setContextCacheSize(1);
+            assertNull(SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "a.pem")));
+            assertSame(c, SslContextCache.get(createDomain(SslDomain.Mode.CLIENT, "c.pem")));
+        }
+        finally
+        {
+            SslContextCache.setContextCacheSize(size);
+        }
+    }
+
+    @Test
+    public void testContextKeyedByPassword() throws Exception
+    {
+        SslDomain domain = createDomain(SslDomain.Mode.CLIENT, null);
+        domain.setCredentials("cert.pem", "key.pem", "secret");
+        SSLContext context = createContext();
+        SslContextCache.put(domain, context);
+
+        SslDomain same = createDomain(SslDomain.Mode.CLIENT, null);
+        same.setCredentials("cert.pem", "key.pem", "secret");
+        assertSame(context, SslContextCache.get(same));
+
+        SslDomain other = createDomain(SslDomain.Mode.CLIENT, null);
+        other.setCredentials("cert.pem", "key.pem", "other");
+        assertNull(SslContextCache.get(other));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.SslContextProvider;
+import org.apache.qpid.proton.engine.SslDomain;
+import org.apache.qpid.proton.engine.Transport;
+
+/**
+ * Compares the handshake rate and bulk throughput of the available {@link SslContextProvider}s,
+ * using a pair of in-memory transports authenticated with a self-signed certificate that is
+ * generated, using the JDK's keytool, for the run.
+ * <p>
+ * Usage: <code>SslContextProviderBenchmark [handshakes [messages [messageSize]]]</code>
+ */
+public class SslContextProviderBenchmark
+{
+    private static final int BATCH = 100;
+
+    private final File _keyStore;
+
+    public SslContextProviderBenchmark(File keyStore)
+    {
+        _keyStore = keyStore;
+    }
+
+    private static void transfer(Transport from, Transport to)
+    {
+        int pending = from.pending();
+        if (pending > 0)
+        {
+            ByteBuffer head = from.head();
+            int count = Math.min(head.remaining(), to.capacity());
+            ByteBuffer tail = to.tail();
+            ByteBuffer slice = head.duplicate();
+            slice.limit(slice.position() + count);
+            tail.put(slice);
+            to.process();
+            from.pop(count);
+        }
+    }
+
+    private static void pump(Transport client, Transport server)
+    {
+        while (client.pending() > 0 || server.pending() > 0)
+        {
+            transfer(client, server);
+            transfer(server, client);
+        }
+    }
+
+    private Connection[] connect(SslContextProvider provider, SSLContext context)
+    {
+        Transport client = Proton.transport();
+        client.ssl(new KeyStoreSslDomain(context, SslDomain.Mode.CLIENT));
+        Connection clientConnection = Proton.connection();
+        client.bind(clientConnection);
+
+        Transport server = Proton.transport();
+        server.ssl(new KeyStoreSslDomain(context, SslDomain.Mode.SERVER));
+        Connection serverConnection = Proton.connection();
+        server.bind(serverConnection);
+
+        clientConnection.open();
+        serverConnection.open();
+        pump(client, server);
+        if (clientConnection.getRemoteState() != EndpointState.ACTIVE)
+        {
+            throw new IllegalStateException(provider.getName() + ": connection not opened");
+        }
+        return new Connection[] { clientConnection, serverConnection };
+    }
+
+    public double handshakesPerSecond(SslContextProvider provider, int handshakes) throws Exception
+    {
+        // a context per connection, so that no session is resumed
+        long start = System.nanoTime();
+        for (int i = 0; i < handshakes; i++)
+        {
+            connect(provider, KeyStoreSslDomain.createContext(provider, _keyStore));
+        }
+        return handshakes / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public double megabytesPerSecond(SslContextProvider provider, int messages, int messageSize) throws Exception
+    {
+        Connection[] connections = connect(provider, KeyStoreSslDomain.createContext(provider, _keyStore));
+        Transport client = connections[0].getTransport();
+        Transport server = connections[1].getTransport();
+
+        Session clientSession = connections[0].session();
+        Sender sender = clientSession.sender("benchmark");
+        clientSession.open();
+        sender.open();
+        pump(client, server);
+
+        Session serverSession = connections[1].sessionHead(EnumSet.of(EndpointState.UNINITIALIZED), EnumSet.of(EndpointState.ACTIVE));
+        serverSession.open();
+        Receiver receiver = (Receiver) connections[1].linkHead(EnumSet.of(EndpointState.UNINITIALIZED), EnumSet.of(EndpointState.ACTIVE));
+        receiver.open();
+        receiver.flow(messages);
+        pump(client, server);
+
+        byte[] payload = new byte[messageSize];
+        byte[] buffer = new byte[messageSize];
+        long start = System.nanoTime();
+        for (int sent = 0; sent < messages; )
+        {
+            for (int batch = Math.min(BATCH, messages - sent); batch > 0; batch--, sent++)
+            {
+                sender.delivery(Integer.toString(sent).getBytes());
+                sender.send(payload, 0, payload.length);
+                sender.advance();
+            }
+            pump(client, server);
+
+            Delivery delivery;
+            while ((delivery = receiver.current()) != null && !delivery.isPartial())
+            {
+                receiver.recv(buffer, 0, buffer.length);
+                receiver.advance();
+                delivery.settle();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return ((double) messages * messageSize) / (1024 * 1024) / seconds;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int messageSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        SslContextProviderBenchmark benchmark = new SslContextProviderBenchmark(KeyStoreSslDomain.generateKeyStore());
+        for (SslContextProvider provider : SslContextProviders.getProviders())
+        {
+            if (!provider.isAvailable())
+            {
+                System.out.printf("%-10s not available%n", provider.getName());
+                continue;
+            }
+            // warm up before measuring
+            benchmark.handshakesPerSecond(provider, Math.max(1, handshakes / 10));
+            benchmark.megabytesPerSecond(provider, Math.max(1, messages / 10), messageSize);
+
+            System.out.printf("%-10s %10.1f handshakes/s %10.1f MB/s%n", provider.getName(),
+                              benchmark.handshakesPerSecond(provider, handshakes),
+                              benchmark.megabytesPerSecond(provider, messages, messageSize));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.engine.ProtonJSslDomain;
+import org.apache.qpid.proton.engine.SslContextProvider;
+import org.apache.qpid.proton.engine.SslDomain;
+import org.apache.qpid.proton.engine.TransportException;
+import org.junit.After;
+import org.junit.Test;
+
+public class SslContextProvidersTest
+{
+    @After
+    public void tearDown()
+    {
+        TestSslContextProvider.available = false;
+        TestSslContextProvider.created.set(0);
+        SslContextCache.clear();
+    }
+
+    @Test
+    public void testDiscoveredProvidersPrecedeJdk()
+    {
+        List<SslContextProvider> providers = SslContextProviders.getProviders();
+        assertEquals("test", providers.get(0).getName());
+        assertSame(SslContextProviders.JDK, providers.get(providers.size() - 1));
+    }
+
+    @Test
+    public void testDefaultIsFirstAvailableProvider()
+    {
+        assertSame(SslContextProviders.JDK, SslContextProviders.getProvider(null));
+
+        TestSslContextProvider.available = true;
+        assertEquals("test", SslContextProviders.getProvider(null).getName());
+        assertSame(SslContextProviders.JDK, SslContextProviders.getProvider("jdk"));
+    }
+
+    @Test
+    public void testUnknownOrUnavailableProviderRejected()
+    {
+        try
+        {
+            SslContextProviders.getProvider("no-such-provider");
+            fail("expected an exception");
+        }
+        catch (TransportException e)
+        {
+            assertTrue(e.getMessage().contains("no-such-provider"));
+        }
+
+        try
+        {
+            SslContextProviders.getProvider("test");
+            fail("expected an exception");
+        }
+        catch (TransportException e)
+        {
+            assertTrue(e.getMessage().contains("not available"));
+        }
+    }
+
+    @Test
+    public void testDomainSelectsProvider() throws Exception
+    {
+        TestSslContextProvider.available = true;
+
+        ProtonJSslDomain domain = (ProtonJSslDomain) SslDomain.Factory.create();
+        domain.init(SslDomain.Mode.CLIENT);
+        assertEquals("test", SslEngineFacadeFactory.getSslContextProvider(domain).getName());
+        domain.setSslContextProvider("jdk");
+        assertSame(SslContextProviders.JDK, SslEngineFacadeFactory.getSslContextProvider(domain));
+    }
+
+    @Test
+    public void testContextsOfDifferentProvidersCachedSeparately() throws Exception
+    {
+        TestSslContextProvider.available = true;
+
+        ProtonJSslDomain domain = (ProtonJSslDomain) SslDomain.Factory.create();
+        domain.init(SslDomain.Mode.CLIENT);
+        domain.setSslContextProvider("test");
+        SSLContext context = SSLContext.getInstance("TLS");
+        assertSame(context, SslContextCache.put(domain, context));
+
+        domain.setSslContextProvider("jdk");
+        assertNull(SslContextCache.get(domain));
+        domain.setSslContextProvider("test");
+        assertSame(context, SslContextCache.get(domain));
+    }
+}
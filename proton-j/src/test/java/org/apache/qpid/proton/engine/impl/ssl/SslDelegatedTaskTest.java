@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.SslDomain;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.reactor.Acceptor;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.impl.AcceptorImpl;
+import org.junit.Test;
+
+public class SslDelegatedTaskTest
+{
+    private static File _keyStore;
+
+    private final List<Runnable> _queuedTasks = new ArrayList<Runnable>();
+
+    private static synchronized File getKeyStore() throws Exception
+    {
+        if (_keyStore == null)
+        {
+            _keyStore = KeyStoreSslDomain.generateKeyStore();
+        }
+        return _keyStore;
+    }
+
+    private KeyStoreSslDomain createDomain(SslDomain.Mode mode, Executor executor) throws Exception
+    {
+        KeyStoreSslDomain domain = new KeyStoreSslDomain(KeyStoreSslDomain.createContext(SslContextProviders.JDK, getKeyStore()), mode);
+        domain.setDelegatedTaskExecutor(executor);
+        return domain;
+    }
+
+    private Connection[] connect(Executor executor) throws Exception
+    {
+        Connection[] connections = new Connection[2];
+        SslDomain.Mode[] modes = { SslDomain.Mode.CLIENT, SslDomain.Mode.SERVER };
+        for (int i = 0; i < 2; i++)
+        {
+            Transport transport = Proton.transport();
+            transport.ssl(createDomain(modes[i], executor));
+            connections[i] = Proton.connection();
+            transport.bind(connections[i]);
+            connections[i].open();
+        }
+        return connections;
+    }
+
+    private static boolean transfer(Transport from, Transport to)
+    {
+        // checking the capacity resumes a transport whose delegated tasks have completed
+        int capacity = to.capacity();
+        int pending = from.pending();
+        if (pending <= 0 || capacity <= 0)
+        {
+            return false;
+        }
+
+        ByteBuffer head = from.head().duplicate();
+        int count = Math.min(head.remaining(), capacity);
+        head.limit(head.position() + count);
+        to.tail().put(head);
+        to.process();
+        from.pop(count);
+        return true;
+    }
+
+    private static void pump(Connection[] connections)
+    {
+        Transport client = connections[0].getTransport();
+        Transport server = connections[1].getTransport();
+        while (transfer(client, server) | transfer(server, client))
+        {
+        }
+    }
+
+    private static boolean isOpen(Connection[] connections)
+    {
+        return connections[0].getRemoteState() == EndpointState.ACTIVE &&
+               connections[1].getRemoteState() == EndpointState.ACTIVE;
+    }
+
+    @Test
+    public void testHandshakeWaitsForTasksRunByExecutor() throws Exception
+    {
+        Connection[] connections = connect(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                _queuedTasks.add(command);
+            }
+        });
+
+        int executed = 0;
+        pump(connections);
+        while (!_queuedTasks.isEmpty())
+        {
+            assertTrue("handshake should be waiting for its delegated tasks", !isOpen(connections));
+            List<Runnable> tasks = new ArrayList<Runnable>(_queuedTasks);
+            _queuedTasks.clear();
+            for (Runnable task : tasks)
+            {
+                task.run();
+                executed++;
+            }
+            pump(connections);
+        }
+
+        assertTrue("expected delegated tasks to be handed to the executor", executed > 0);
+        assertTrue("connection should be open", isOpen(connections));
+    }
+
+    @Test
+    public void testTasksRejectedByExecutorRunDirectly() throws Exception
+    {
+        Connection[] connections = connect(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        pump(connections);
+        assertTrue("connection should be open", isOpen(connections));
+    }
+
+    private static class ServerHandler extends BaseHandler
+    {
+        private final SslDomain _domain;
+        private Acceptor _acceptor;
+
+        ServerHandler(SslDomain domain)
+        {
+            _domain = domain;
+        }
+
+        @Override
+        public void onConnectionBound(Event event)
+        {
+            event.getTransport().ssl(_domain);
+        }
+
+        @Override
+        public void onConnectionRemoteOpen(Event event)
+        {
+            event.getConnection().open();
+        }
+
+        @Override
+        public void onConnectionRemoteClose(Event event)
+        {
+            event.getConnection().close();
+            _acceptor.close();
+        }
+    }
+
+    @Test
+    public void testReactorResumesTransportWhenTasksComplete() throws Exception
+    {
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        final AtomicInteger executed = new AtomicInteger();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                executed.incrementAndGet();
+                pool.execute(command);
+            }
+        };
+        final SslDomain serverDomain = createDomain(SslDomain.Mode.SERVER, executor);
+        final SslDomain clientDomain = createDomain(SslDomain.Mode.CLIENT, executor);
+        final AtomicInteger opened = new AtomicInteger();
+
+        Reactor reactor = Proton.reactor();
+        ServerHandler serverHandler = new ServerHandler(serverDomain);
+        Acceptor acceptor = reactor.acceptor("127.0.0.1", 0, serverHandler);
+        serverHandler._acceptor = acceptor;
+        reactor.connectionToHost("127.0.0.1", ((AcceptorImpl) acceptor).getPortNumber(), new BaseHandler()
+        {
+            @Override
+            public void onConnectionInit(Event event)
+            {
+                event.getConnection().open();
+            }
+
+            @Override
+            public void onConnectionBound(Event event)
+            {
+                event.getTransport().ssl(clientDomain);
+            }
+
+            @Override
+            public void onConnectionRemoteOpen(Event event)
+            {
+                opened.incrementAndGet();
+                event.getConnection().close();
+            }
+        });
+
+        try
+        {
+            reactor.run();
+        }
+        finally
+        {
+            reactor.free();
+            pool.shutdown();
+        }
+
+        assertEquals("client connection should have opened", 1, opened.get());
+        assertTrue("expected delegated tasks to be handed to the executor", executed.get() > 0);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.impl.ssl;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.engine.SslContextProvider;
+
+/**
+ * A provider of the JDK's {@link SSLContext}, registered with {@link java.util.ServiceLoader} for
+ * the tests.  It is unavailable, so not the default, unless a test makes it available.
+ */
+public class TestSslContextProvider implements SslContextProvider
+{
+    static volatile boolean available;
+    static final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public String getName()
+    {
+        return "test";
+    }
+
+    @Override
+    public boolean isAvailable()
+    {
+        return available;
+    }
+
+    @Override
+    public SSLContext createSslContext(String protocol) throws NoSuchAlgorithmException
+    {
+        created.incrementAndGet();
+        return SSLContext.getInstance(protocol);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.engine.sasl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SaslCredentialCacheTest
+{
+    private final ScramCredential _credential = ScramCredential.create("pencil", 1);
+
+    @Test
+    public void testEntriesAreKeyedByMechanismAndUser()
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(10, 1, TimeUnit.HOURS);
+        cache.put("PLAIN", "user", _credential);
+
+        assertSame(_credential, cache.get("PLAIN", "user"));
+        assertNull(cache.get("SCRAM-SHA-256", "user"));
+        assertNull(cache.get("PLAIN", "other"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted()
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(2, 1, TimeUnit.HOURS);
+        cache.put("PLAIN", "a", _credential);
+        cache.put("PLAIN", "b", _credential);
+        cache.get("PLAIN", "a");
+        cache.put("PLAIN", "c", _credential);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertSame(_credential, cache.get("PLAIN", "a"));
+        assertNull(cache.get("PLAIN", "b"));
+        assertSame(_credential, cache.get("PLAIN", "c"));
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(10, 20, TimeUnit.MILLISECONDS);
+        cache.put("PLAIN", "user", _credential);
+        Thread.sleep(50);
+
+        assertNull(cache.get("PLAIN", "user"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidateRemovesAllMechanismsOfUser()
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(10, 1, TimeUnit.HOURS);
+        cache.put("PLAIN", "user", _credential);
+        cache.put("SCRAM-SHA-256", "user", _credential);
+        cache.put("PLAIN", "other", _credential);
+        cache.invalidate("user");
+
+        assertEquals(1, cache.size());
+        assertSame(_credential, cache.get("PLAIN", "other"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+}
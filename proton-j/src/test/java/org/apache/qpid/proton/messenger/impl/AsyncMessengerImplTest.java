@@ -0,0 +1,333 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.messenger.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.blocking.BlockingAcceptor;
+import org.apache.qpid.proton.blocking.BlockingConnection;
+import org.apache.qpid.proton.blocking.BlockingReceiver;
+import org.apache.qpid.proton.blocking.BlockingSender;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.messenger.AsyncMessenger;
+import org.apache.qpid.proton.messenger.MessengerException;
+import org.apache.qpid.proton.messenger.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncMessengerImplTest
+{
+    private static final long TIMEOUT = 10000;
+
+    private BlockingAcceptor _acceptor;
+    private AsyncMessenger _messenger;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _acceptor = BlockingAcceptor.Factory.create("127.0.0.1", 0);
+        _messenger = AsyncMessenger.Factory.create("async-test");
+        _messenger.start();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _messenger.stop();
+        _acceptor.close();
+    }
+
+    private String address()
+    {
+        return "amqp://127.0.0.1:" + _acceptor.getPort() + "/queue";
+    }
+
+    private static Message message(String address, Object value)
+    {
+        Message message = Proton.message();
+        message.setAddress(address);
+        message.setBody(new AmqpValue(value));
+        return message;
+    }
+
+    @Test
+    public void testPutsCompleteWithOutcome() throws Exception
+    {
+        final int count = 50;
+        final List<Object> received = new ArrayList<Object>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingReceiver receiver = connection.acceptReceiver(count, TIMEOUT);
+                    for (int i = 0; i < count; i++)
+                    {
+                        received.add(((AmqpValue) receiver.receive(TIMEOUT).getBody()).getValue());
+                    }
+                    done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+
+        // every put is in flight before any outcome is waited for
+        final CountDownLatch callbacks = new CountDownLatch(count);
+        AsyncMessenger.Callback<Status> callback = new AsyncMessenger.Callback<Status>()
+        {
+            public void completed(Status result)
+            {
+                callbacks.countDown();
+            }
+
+            public void failed(Throwable cause)
+            {
+            }
+        };
+        List<Future<Status>> outcomes = new ArrayList<Future<Status>>();
+        for (int i = 0; i < count; i++)
+        {
+            outcomes.add(_messenger.put(message(address(), "message-" + i), callback));
+        }
+        for (Future<Status> outcome : outcomes)
+        {
+            assertEquals(Status.ACCEPTED, outcome.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(callbacks.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        done.countDown();
+
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("message-" + i, received.get(i));
+        }
+    }
+
+    @Test
+    public void testSubscriptionDeliversToHandler() throws Exception
+    {
+        final int count = 20;
+        final List<DeliveryState> outcomes = new ArrayList<DeliveryState>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingSender sender = connection.acceptSender(TIMEOUT);
+                    for (int i = 0; i < count; i++)
+                    {
+                        outcomes.add(sender.send(message(null, i % 5 == 0 ? "bad" : "good"), TIMEOUT));
+                    }
+                    done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.start();
+
+        final BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+        _messenger.subscribe(address(), new AsyncMessenger.MessageHandler()
+        {
+            public void onMessage(Message message) throws Exception
+            {
+                if ("bad".equals(((AmqpValue) message.getBody()).getValue()))
+                {
+                    throw new Exception("bad message");
+                }
+                queue.add(message);
+            }
+        });
+
+        for (int i = 0; i < count - count / 5; i++)
+        {
+            Message message = queue.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals("good", ((AmqpValue) message.getBody()).getValue());
+        }
+        done.countDown();
+
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+        assertEquals(count, outcomes.size());
+        for (int i = 0; i < count; i++)
+        {
+            Class<?> expected = i % 5 == 0 ? Rejected.class : Accepted.class;
+            assertEquals(expected, outcomes.get(i).getClass());
+        }
+    }
+
+    @Test
+    public void testStopFailsUnsettledPuts() throws Exception
+    {
+        String address = address();
+        _acceptor.close();
+
+        // nothing is listening, so the message can never be settled
+        Future<Status> outcome = _messenger.put(message(address, "lost"));
+        _messenger.stop();
+        assertTrue(outcome.isDone());
+        try
+        {
+            outcome.get();
+            fail("expected put to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof MessengerException);
+        }
+    }
+
+    @Test
+    public void testPutToUnreachableAddressFailsWithoutStopping() throws Exception
+    {
+        BlockingAcceptor closed = BlockingAcceptor.Factory.create("127.0.0.1", 0);
+        String unreachable = "amqp://127.0.0.1:" + closed.getPort() + "/queue";
+        closed.close();
+
+        Future<Status> outcome = _messenger.put(message(unreachable, "lost"));
+        try
+        {
+            outcome.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("expected put to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof MessengerException);
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingReceiver receiver = connection.acceptReceiver(1, TIMEOUT);
+                    receiver.receive(TIMEOUT);
+                    done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        assertEquals(Status.ACCEPTED, _messenger.put(message(address(), "sent")).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        done.countDown();
+        server.join(TIMEOUT);
+        assertNull("Server failed: " + failure.get(), failure.get());
+    }
+
+    @Test
+    public void testPutAfterStopFails() throws Exception
+    {
+        _messenger.stop();
+        Future<Status> outcome = _messenger.put(message(address(), "late"));
+        assertTrue(outcome.isDone());
+        try
+        {
+            outcome.get();
+            fail("expected put to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof MessengerException);
+        }
+    }
+
+    @Test
+    public void testStopIsBoundedWhenPeerNeverCloses() throws Exception
+    {
+        // accepts the connection but never answers, so it can't close
+        ServerSocket silent = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try
+        {
+            // the messenger has no timeout of its own
+            AsyncMessenger async = AsyncMessenger.Factory.create("async-silent");
+            async.start();
+            Future<Status> outcome = async.put(message("amqp://127.0.0.1:" + silent.getLocalPort() + "/queue", "lost"));
+            Socket socket = silent.accept();
+            try
+            {
+                long start = System.currentTimeMillis();
+                async.stop();
+                assertTrue("stop took too long", System.currentTimeMillis() - start < AsyncMessengerImpl.STOP_TIMEOUT + TIMEOUT);
+                assertTrue(outcome.isDone());
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        finally
+        {
+            silent.close();
+        }
+    }
+}
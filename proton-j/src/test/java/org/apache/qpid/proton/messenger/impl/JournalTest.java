@@ -0,0 +1,259 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.messenger.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.messenger.Messenger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+
+    private File _directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        _directory = File.createTempFile("journal", "");
+        _directory.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = _directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        _directory.delete();
+    }
+
+    private static byte[] message(int i)
+    {
+        return ("message-" + i).getBytes();
+    }
+
+    private static long put(Journal journal, int i) throws IOException
+    {
+        byte[] message = message(i);
+        return journal.put("amqp://host/queue" + i, message, message.length);
+    }
+
+    @Test
+    public void testRecoversLiveMessagesInOrder() throws IOException
+    {
+        Journal journal = new Journal(_directory);
+        long[] ids = new long[5];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = put(journal, i);
+        }
+        journal.remove(ids[1]);
+        journal.remove(ids[3]);
+        journal.close();
+
+        journal = new Journal(_directory);
+        List<Journal.Record> records = journal.recover();
+        assertEquals(3, records.size());
+        int[] expected = { 0, 2, 4 };
+        for (int i = 0; i < expected.length; i++)
+        {
+            Journal.Record record = records.get(i);
+            assertEquals(ids[expected[i]], record.getId());
+            assertEquals("amqp://host/queue" + expected[i], record.getAddress());
+            assertArrayEquals(message(expected[i]), record.getMessage());
+        }
+
+        // ids carry on from where they left off
+        assertTrue(put(journal, 5) > ids[4]);
+        journal.close();
+    }
+
+    @Test
+    public void testDeletesSegmentsOnceNothingInThemIsLive() throws IOException
+    {
+        Journal journal = new Journal(_directory, 256);
+        long[] ids = new long[50];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = put(journal, i);
+        }
+        assertTrue(journal.getSegmentCount() > 5);
+
+        for (long id : ids)
+        {
+            journal.remove(id);
+        }
+        journal.sync();
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(1, _directory.listFiles().length);
+        journal.close();
+
+        assertEquals(0, new Journal(_directory, 256).recover().size());
+    }
+
+    @Test
+    public void testCompactionMovesLiveMessagesOutOfOldestSegment() throws IOException
+    {
+        Journal journal = new Journal(_directory, 256);
+        long kept = put(journal, 0);
+        for (int i = 1; i < 200; i++)
+        {
+            journal.remove(put(journal, i));
+            journal.sync();
+        }
+        // without compaction the first message would pin every segment
+        assertTrue(journal.getSegmentCount() <= 3);
+        journal.close();
+
+        List<Journal.Record> records = new Journal(_directory, 256).recover();
+        assertEquals(1, records.size());
+        assertEquals(kept, records.get(0).getId());
+        assertArrayEquals(message(0), records.get(0).getMessage());
+    }
+
+    @Test
+    public void testCompactedSegmentIsKeptUntilSync() throws IOException
+    {
+        Journal journal = new Journal(_directory, 256);
+        long kept = put(journal, 0);
+        File oldest = _directory.listFiles()[0];
+        int i = 1;
+        while (journal.getSegmentCount() < 3)
+        {
+            journal.remove(put(journal, i++));
+        }
+        // the copy of the first message may not be durable yet
+        assertTrue(oldest.exists());
+
+        journal.sync();
+        assertFalse(oldest.exists());
+        journal.close();
+
+        List<Journal.Record> records = new Journal(_directory, 256).recover();
+        assertEquals(1, records.size());
+        assertEquals(kept, records.get(0).getId());
+    }
+
+    @Test
+    public void testRecordFollowingCompactedRecordsGetsRoom() throws IOException
+    {
+        Journal journal = new Journal(_directory, 1000);
+        long large = journal.put("amqp://host/queue", new byte[800], 800);
+        long first = journal.put("amqp://host/queue", new byte[10], 10);
+        long second = journal.put("amqp://host/queue", new byte[10], 10);
+        journal.remove(first);
+        journal.remove(second);
+        // the new segment takes the large record when compacted, leaving
+        // too little room for this one
+        long last = journal.put("amqp://host/queue", new byte[300], 300);
+        journal.close();
+
+        List<Journal.Record> records = new Journal(_directory, 1000).recover();
+        assertEquals(2, records.size());
+        assertEquals(large, records.get(0).getId());
+        assertEquals(800, records.get(0).getMessage().length);
+        assertEquals(last, records.get(1).getId());
+        assertEquals(300, records.get(1).getMessage().length);
+    }
+
+    @Test
+    public void testTornWriteAtEndIsIgnored() throws IOException
+    {
+        Journal journal = new Journal(_directory);
+        put(journal, 0);
+        put(journal, 1);
+        journal.close();
+
+        // corrupt the last byte of the second record's checksum
+        File segment = _directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try
+        {
+            int first = file.readInt() + 4;
+            int second = 4 + (int) readInt(file, first);
+            file.seek(first + second - 1);
+            int last = file.read();
+            file.seek(first + second - 1);
+            file.write(last ^ 0xFF);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        journal = new Journal(_directory);
+        assertEquals(1, journal.recover().size());
+        put(journal, 2);
+        journal.close();
+
+        List<Journal.Record> records = new Journal(_directory).recover();
+        assertEquals(2, records.size());
+        assertArrayEquals(message(0), records.get(0).getMessage());
+        assertArrayEquals(message(2), records.get(1).getMessage());
+    }
+
+    private static int readInt(RandomAccessFile file, long position) throws IOException
+    {
+        file.seek(position);
+        return file.readInt();
+    }
+
+    @Test
+    public void testMessengerRequeuesJournalledMessages() throws Exception
+    {
+        Messenger messenger = Proton.messenger();
+        messenger.setStorePath(_directory.getPath());
+        messenger.start();
+        for (int i = 0; i < 3; i++)
+        {
+            Message message = Proton.message();
+            message.setAddress("amqp://127.0.0.1:1/queue");
+            message.setBody(new AmqpValue(i));
+            messenger.put(message);
+        }
+        assertEquals(3, messenger.outgoing());
+        // the messenger is abandoned, as if the process had died
+
+        messenger = Proton.messenger();
+        messenger.setStorePath(_directory.getPath());
+        messenger.start();
+        assertEquals(3, messenger.outgoing());
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.messenger.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.blocking.BlockingAcceptor;
+import org.apache.qpid.proton.blocking.BlockingConnection;
+import org.apache.qpid.proton.blocking.BlockingReceiver;
+import org.apache.qpid.proton.blocking.BlockingSender;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.messenger.Messenger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessengerImplTest
+{
+    private static final long TIMEOUT = 10000;
+
+    private BlockingAcceptor _first;
+    private BlockingAcceptor _second;
+    private Messenger _messenger;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _first = BlockingAcceptor.Factory.create("127.0.0.1", 0);
+        _second = BlockingAcceptor.Factory.create("127.0.0.1", 0);
+        _messenger = Messenger.Factory.create("messenger-test");
+        _messenger.setTimeout(TIMEOUT);
+        _messenger.start();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _messenger.stop();
+        _first.close();
+        _second.close();
+    }
+
+    private static String address(BlockingAcceptor acceptor, String name)
+    {
+        return "amqp://127.0.0.1:" + acceptor.getPort() + "/" + name;
+    }
+
+    private void send(String address, Object value) throws Exception
+    {
+        Message message = Proton.message();
+        message.setAddress(address);
+        message.setBody(new AmqpValue(value));
+        _messenger.put(message);
+        _messenger.send();
+    }
+
+    // accepts connections on an acceptor, queueing every message they carry
+    private static class Server extends Thread
+    {
+        private final BlockingAcceptor _acceptor;
+        private final int _connections;
+        private final boolean _closeAfterEach;
+        private final BlockingQueue<Message> _received = new LinkedBlockingQueue<Message>();
+        private final Semaphore _closed = new Semaphore(0);
+        private volatile Throwable _failure;
+
+        Server(BlockingAcceptor acceptor, int connections, boolean closeAfterEach)
+        {
+            _acceptor = acceptor;
+            _connections = connections;
+            _closeAfterEach = closeAfterEach;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < _connections; i++)
+                {
+                    BlockingConnection connection = _acceptor.accept();
+                    BlockingReceiver receiver = connection.acceptReceiver(10, TIMEOUT);
+                    if (_closeAfterEach)
+                    {
+                        _received.add(receiver.receive(TIMEOUT));
+                        connection.close(TIMEOUT);
+                        _closed.release();
+                    }
+                    else
+                    {
+                        while (true)
+                        {
+                            Message message = receiver.receive(TIMEOUT);
+                            if (message == null)
+                            {
+                                break;
+                            }
+                            _received.add(message);
+                        }
+                    }
+                }
+            }
+            catch (Throwable t)
+            {
+                _failure = t;
+            }
+        }
+
+        // drives the messenger until it has answered the close of a connection
+        void awaitClose(Messenger messenger) throws Exception
+        {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!_closed.tryAcquire())
+            {
+                assertTrue(System.currentTimeMillis() < deadline);
+                messenger.work(50);
+            }
+        }
+
+        Message next()
+        {
+            assertNull("Server failed: " + _failure, _failure);
+            try
+            {
+                return _received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static Object value(Message message)
+    {
+        return ((AmqpValue) message.getBody()).getValue();
+    }
+
+    @Test
+    public void testRouteAddedAfterPutRedirectsAddress() throws Exception
+    {
+        Server first = new Server(_first, 1, false);
+        Server second = new Server(_second, 1, false);
+        first.start();
+        second.start();
+
+        String address = address(_first, "queue");
+        send(address, "before");
+        assertEquals("before", value(first.next()));
+
+        _messenger.route(address(_first, "*"), address(_second, "$1"));
+        send(address, "after");
+        assertEquals("after", value(second.next()));
+    }
+
+    @Test
+    public void testRewriteAddedAfterPutChangesMessageAddress() throws Exception
+    {
+        Server server = new Server(_first, 1, false);
+        server.start();
+
+        String address = address(_first, "queue");
+        send(address, "before");
+        assertEquals(address, server.next().getAddress());
+
+        _messenger.rewrite(address(_first, "*"), "rewritten/$1");
+        send(address, "after");
+        Message message = server.next();
+        assertEquals("after", value(message));
+        assertEquals("rewritten/queue", message.getAddress());
+    }
+
+    @Test
+    public void testPutAfterPeerClosesConnectionReconnects() throws Exception
+    {
+        Server server = new Server(_first, 2, true);
+        server.start();
+
+        String address = address(_first, "queue");
+        send(address, "first");
+        assertEquals("first", value(server.next()));
+        server.awaitClose(_messenger);
+
+        // the peer has closed the connection the remembered sender is on
+        send(address, "second");
+        assertEquals("second", value(server.next()));
+    }
+
+    @Test
+    public void testGetDecodesIntoGivenMessage() throws Exception
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread server = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    BlockingConnection connection = _first.accept();
+                    BlockingSender sender = connection.acceptSender(TIMEOUT);
+                    Message first = Proton.message();
+                    first.setSubject("first");
+                    first.setApplicationProperties(new ApplicationProperties(
+                        Collections.singletonMap("key", "value")));
+                    first.setBody(new AmqpValue("one"));
+                    sender.send(first, TIMEOUT);
+                    Message second = Proton.message();
+                    second.setBody(new AmqpValue("two"));
+                    sender.send(second, TIMEOUT);
+                    connection.close(TIMEOUT);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        _messenger.subscribe(address(_first, "queue"));
+        Message reused = Proton.message();
+        assertSame(reused, receive(reused));
+        assertEquals("first", reused.getSubject());
+        assertEquals("value", reused.getApplicationProperties().getValue().get("key"));
+        assertEquals("one", value(reused));
+
+        // every section of the previous message is replaced
+        assertSame(reused, receive(reused));
+        assertNull(reused.getSubject());
+        assertNull(reused.getApplicationProperties());
+        assertEquals("two", value(reused));
+
+        // the server waits for each message to be settled
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (server.isAlive() && System.currentTimeMillis() < deadline)
+        {
+            _messenger.work(50);
+        }
+        assertNull("Server failed: " + failure.get(), failure.get());
+    }
+
+    private Message receive(Message reuse) throws Exception
+    {
+        Message message;
+        while ((message = _messenger.get(reuse)) == null)
+        {
+            _messenger.recv(1);
+        }
+        _messenger.accept(_messenger.incomingTracker(), 0);
+        return message;
+    }
+
+    @Test
+    public void testSenderIsNotOpenOnceItsConnectionCloses()
+    {
+        Connection connection = Proton.connection();
+        connection.open();
+        Session session = connection.session();
+        session.open();
+        Sender sender = session.sender("sender");
+        sender.open();
+        assertTrue(MessengerImpl.isOpen(sender));
+
+        // the sender itself is still active
+        connection.close();
+        assertFalse(MessengerImpl.isOpen(sender));
+    }
+
+    @Test
+    public void testDestinationIndexKeepsMostRecentlyUsed()
+    {
+        Map<String, Object> index = new MessengerImpl.DestinationIndex<Object>();
+        for (int i = 0; i < MessengerImpl.MAX_DESTINATIONS; i++)
+        {
+            index.put("address-" + i, i);
+        }
+        // touching the eldest keeps it when the next address is added
+        assertEquals(0, index.get("address-0"));
+        index.put("address-new", -1);
+
+        assertEquals(MessengerImpl.MAX_DESTINATIONS, index.size());
+        assertTrue(index.containsKey("address-0"));
+        assertFalse(index.containsKey("address-1"));
+        assertTrue(index.containsKey("address-new"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.messenger.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.qpid.proton.messenger.Messenger;
+import org.apache.qpid.proton.messenger.Status;
+import org.junit.Test;
+
+public class StoreTest {
+
+    @Test
+    public void testEntriesAreQueuedInOrderOverallAndByAddress()
+    {
+        Store store = new Store();
+        StoreEntry a1 = store.put("a");
+        StoreEntry b1 = store.put("b");
+        StoreEntry a2 = store.put("a");
+        StoreEntry n = store.put(null);
+        assertEquals(4, store.size());
+
+        assertSame(a1, store.get(null));
+        assertSame(a1, store.get("a"));
+        assertSame(b1, store.get("b"));
+        assertSame(n, store.get(""));
+
+        store.freeEntry(a1);
+        assertFalse(a1.isStored());
+        assertSame(b1, store.get(null));
+        assertSame(a2, store.get("a"));
+
+        // freeing from the middle, and freeing twice
+        store.freeEntry(a2);
+        store.freeEntry(a2);
+        assertNull(store.get("a"));
+        assertSame(b1, store.get(null));
+        assertEquals(2, store.size());
+
+        store.freeEntry(b1);
+        store.freeEntry(n);
+        assertNull(store.get(null));
+        assertEquals(0, store.size());
+
+        StoreEntry a3 = store.put("a");
+        assertSame(a3, store.get(null));
+        assertSame(a3, store.get("a"));
+    }
+
+    @Test
+    public void testWindowForgetsOldestTrackedEntries()
+    {
+        Store store = new Store();
+        store.setWindow(10);
+        List<StoreEntry> entries = new ArrayList<StoreEntry>();
+        for (int i = 0; i < 100; i++)
+        {
+            StoreEntry entry = store.put("a");
+            assertEquals(i, store.trackEntry(entry));
+            entries.add(entry);
+        }
+        assertNull(store.getEntry(89));
+        for (int i = 90; i < 100; i++)
+        {
+            assertSame(entries.get(i), store.getEntry(i));
+        }
+        assertNull(store.getEntry(100));
+        assertNull(store.getEntry(-1));
+    }
+
+    @Test
+    public void testTrackingGrowsBeyondInitialCapacity()
+    {
+        Store store = new Store();
+        store.setWindow(-1);
+        List<StoreEntry> entries = new ArrayList<StoreEntry>();
+        for (int i = 0; i < 1000; i++)
+        {
+            StoreEntry entry = store.put("a");
+            store.trackEntry(entry);
+            entries.add(entry);
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            assertSame(entries.get(i), store.getEntry(i));
+        }
+    }
+
+    @Test
+    public void testCumulativeSettle()
+    {
+        Store store = new Store();
+        store.setWindow(-1);
+        for (int i = 0; i < 50; i++)
+        {
+            store.trackEntry(store.put("a"));
+        }
+        store.update(10, Status.UNKNOWN, 0, true, true);
+        assertNull(store.getEntry(10));
+        assertEquals(Status.UNKNOWN, store.getEntry(11).getStatus());
+
+        store.update(29, Status.UNKNOWN, Messenger.CUMULATIVE, true, true);
+        for (int i = 0; i < 30; i++)
+        {
+            assertNull(store.getEntry(i));
+        }
+
+        int count = 0;
+        Iterator<StoreEntry> entries = store.trackedEntries();
+        while (entries.hasNext())
+        {
+            assertSame(store.getEntry(30 + count), entries.next());
+            count++;
+        }
+        assertEquals(20, count);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.messenger.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TransformTest {
+
+    private static String apply(Transform transform, String src)
+    {
+        return transform.apply(src) ? transform.result() : null;
+    }
+
+    @Test
+    public void testWildcardsAndSubstitution()
+    {
+        Transform transform = new Transform();
+        transform.rule("amqp://%/*", "amqp://broker/$1/$2");
+        assertEquals("amqp://broker/host/queue/a", apply(transform, "amqp://host/queue/a"));
+        // % doesn't match across a '/'
+        assertNull(apply(transform, "amqp://host"));
+        assertFalse(transform.matched());
+        assertNull(transform.result());
+    }
+
+    @Test
+    public void testFirstMatchingRuleWins()
+    {
+        Transform transform = new Transform();
+        transform.rule("*", "catch-all");
+        transform.rule("amqp://host/*", "specific");
+        transform.rule("amqp://*", "general");
+        assertEquals("catch-all", apply(transform, "amqp://host/queue"));
+
+        transform = new Transform();
+        transform.rule("amqp://host/*", "specific");
+        transform.rule("amqp://*", "general");
+        transform.rule("*", "catch-all");
+        assertEquals("specific", apply(transform, "amqp://host/queue"));
+        assertEquals("general", apply(transform, "amqp://other/queue"));
+        assertEquals("catch-all", apply(transform, "amqps://host/queue"));
+    }
+
+    @Test
+    public void testLiteralPattern()
+    {
+        Transform transform = new Transform();
+        transform.rule("amqp://host/queue", "exact");
+        assertEquals("exact", apply(transform, "amqp://host/queue"));
+        assertNull(apply(transform, "amqp://host/queue2"));
+        assertNull(apply(transform, "amqp://host/q"));
+    }
+
+    @Test
+    public void testRegularExpressionCharactersInPattern()
+    {
+        // the pattern is compiled as a regular expression, so '.' matches any character
+        Transform transform = new Transform();
+        transform.rule("amqp://a.b/*", "$1");
+        assertEquals("x", apply(transform, "amqp://a.b/x"));
+        assertEquals("x", apply(transform, "amqp://aXb/x"));
+    }
+
+    @Test
+    public void testQuantifiedCharacterIsNotPartOfPrefix()
+    {
+        Transform transform = new Transform();
+        transform.rule("ab?c", "optional");
+        assertEquals("optional", apply(transform, "ac"));
+        assertEquals("optional", apply(transform, "abc"));
+
+        transform = new Transform();
+        transform.rule("ab{0,1}c", "counted");
+        assertEquals("counted", apply(transform, "ac"));
+        assertEquals("counted", apply(transform, "abc"));
+    }
+
+    @Test
+    public void testAlternationMatchesEitherBranch()
+    {
+        Transform transform = new Transform();
+        transform.rule("amqp://a|amqp://b", "either");
+        assertEquals("either", apply(transform, "amqp://a"));
+        assertEquals("either", apply(transform, "amqp://b"));
+        assertNull(apply(transform, "amqp://c"));
+    }
+
+    @Test
+    public void testRuleAddedAfterApplyIsUsed()
+    {
+        Transform transform = new Transform();
+        transform.rule("amqp://host/*", "first");
+        assertNull(apply(transform, "amqp://other/queue"));
+        assertEquals("first", apply(transform, "amqp://host/queue"));
+
+        transform.rule("amqp://other/*", "second");
+        assertEquals("second", apply(transform, "amqp://other/queue"));
+        assertEquals("first", apply(transform, "amqp://host/queue"));
+    }
+
+    @Test
+    public void testManyRules()
+    {
+        Transform transform = new Transform();
+        for (int i = 0; i < 5000; i++) {
+            transform.rule("amqp://host/queue" + i + "/*", "amqp://broker" + i + "/$1");
+        }
+        for (int i = 0; i < 5000; i += 7) {
+            assertEquals("amqp://broker" + i + "/x", apply(transform, "amqp://host/queue" + i + "/x"));
+        }
+        assertTrue(transform.apply("amqp://host/queue4999/y"));
+        assertEquals("amqp://broker4999/y", transform.result());
+        assertNull(apply(transform, "amqp://host/queue5000/x"));
+    }
+}
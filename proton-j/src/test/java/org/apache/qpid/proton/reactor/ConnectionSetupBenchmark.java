@@ -0,0 +1,393 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.amqp.transport.Attach;
+import org.apache.qpid.proton.amqp.transport.Begin;
+import org.apache.qpid.proton.amqp.transport.FrameBody;
+import org.apache.qpid.proton.amqp.transport.Open;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.ProtonJSasl;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.SslDomain;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.impl.ProtocolTracer;
+import org.apache.qpid.proton.engine.impl.TransportImpl;
+import org.apache.qpid.proton.engine.impl.ssl.KeyStoreSslDomain;
+import org.apache.qpid.proton.engine.impl.ssl.SslContextProviders;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.apache.qpid.proton.reactor.impl.AcceptorImpl;
+
+/**
+ * Measures how long a client reactor takes to set up a connection to a server reactor over
+ * loopback, for each combination of TLS, SASL mechanism and SASL pipelining.  Connections are
+ * made one after another, each opening a session and a sending link and closing once the
+ * server has granted it credit, and the latency of every step is reported as percentiles of
+ * the time since the connect began:
+ * <ul>
+ * <li><b>secure</b> - TLS and SASL have completed and the client sends its open (not
+ * measured when pipelined, as the open is sent before the outcome arrives)</li>
+ * <li><b>open</b>, <b>begin</b>, <b>attach</b> - the server's open, begin and attach
+ * arrive</li>
+ * <li><b>flow</b> - the link has credit, so the first message could be sent</li>
+ * </ul>
+ * TLS and SASL share one milestone, as the engine doesn't signal the end of the TLS handshake;
+ * their costs separate by comparing the combinations with and without TLS.  The bytes the two
+ * reactor threads allocate, per connection, are reported too where the JVM can count them.
+ * <p>
+ * Usage: <code>ConnectionSetupBenchmark [connections]</code>
+ */
+public class ConnectionSetupBenchmark {
+
+    private static final String HOST = "127.0.0.1";
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark";
+
+    private static final String[] PHASES = { "secure", "open", "begin", "attach", "flow" };
+    private static final int SECURE = 0;
+    private static final int OPEN = 1;
+    private static final int BEGIN = 2;
+    private static final int ATTACH = 3;
+    private static final int FLOW = 4;
+
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+    private final SSLContext sslContext;
+    private final ScramCredential credential = ScramCredential.create(PASSWORD);
+
+    public ConnectionSetupBenchmark(File keyStore) throws Exception {
+        sslContext = KeyStoreSslDomain.createContext(SslContextProviders.getProvider(null), keyStore);
+    }
+
+    /**
+     * A combination of the features under measurement.
+     */
+    public static class Setup {
+        private final boolean tls;
+        private final String mechanism;
+        private final boolean pipelined;
+
+        public Setup(boolean tls, String mechanism, boolean pipelined) {
+            this.tls = tls;
+            this.mechanism = mechanism;
+            this.pipelined = pipelined;
+        }
+
+        SaslClientMechanism clientMechanism() {
+            if ("PLAIN".equals(mechanism)) {
+                return SaslClientMechanism.Factory.plain(USERNAME, PASSWORD);
+            } else if ("SCRAM-SHA-256".equals(mechanism)) {
+                return SaslClientMechanism.Factory.scramSha256(USERNAME, PASSWORD);
+            }
+            return SaslClientMechanism.Factory.anonymous();
+        }
+
+        @Override
+        public String toString() {
+            return (tls ? "TLS " : "") + mechanism + (pipelined ? " pipelined" : "");
+        }
+    }
+
+    /**
+     * The latencies, in nanoseconds, of each phase of the connections measured, and the bytes
+     * allocated per connection, or -1 if that couldn't be counted.
+     */
+    public static class Result {
+        private final long[][] latencies;
+        private final long allocated;
+
+        Result(long[][] latencies, long allocated) {
+            this.latencies = latencies;
+            this.allocated = allocated;
+        }
+
+        public long percentile(int phase, double percentile) {
+            long[] sorted = latencies[phase].clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        public long getAllocatedPerConnection() {
+            return allocated;
+        }
+    }
+
+    private class ServerHandler extends Handshaker {
+        private final Setup setup;
+
+        ServerHandler(Setup setup) {
+            super(SaslServerMechanism.Factory.anonymous(),
+                  SaslServerMechanism.Factory.plain(new Store(), null),
+                  SaslServerMechanism.Factory.scramSha256(new Store(), null));
+            this.setup = setup;
+        }
+
+        @Override
+        public void onConnectionBound(Event event) {
+            super.onConnectionBound(event);
+            if (setup.tls) {
+                event.getTransport().ssl(new KeyStoreSslDomain(sslContext, SslDomain.Mode.SERVER));
+            }
+        }
+
+        @Override
+        public void onLinkRemoteOpen(Event event) {
+            super.onLinkRemoteOpen(event);
+            Link link = event.getLink();
+            if (link instanceof Receiver) {
+                ((Receiver) link).flow(1);
+            }
+        }
+    }
+
+    private class Store implements SaslCredentialStore {
+        @Override
+        public ScramCredential getCredential(String username) {
+            return USERNAME.equals(username) ? credential : null;
+        }
+    }
+
+    /**
+     * Makes the connections, one at a time, recording when each reaches every phase.
+     */
+    private class ClientHandler extends BaseHandler implements ProtocolTracer {
+        private final Setup setup;
+        private final int port;
+        private final long[][] latencies;
+        private int connections;
+        private long start;
+        private final long[] marks = new long[PHASES.length];
+
+        ClientHandler(Setup setup, int port, int count) {
+            this.setup = setup;
+            this.port = port;
+            latencies = new long[PHASES.length][count];
+        }
+
+        void connect(Reactor reactor) {
+            Arrays.fill(marks, 0);
+            start = System.nanoTime();
+            reactor.connectionToHost(HOST, port, this);
+        }
+
+        private void mark(int phase) {
+            if (marks[phase] == 0) {
+                marks[phase] = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void onConnectionInit(Event event) {
+            Connection connection = event.getConnection();
+            connection.open();
+            Session session = connection.session();
+            session.open();
+            Sender sender = session.sender("benchmark");
+            Source source = new Source();
+            source.setAddress("benchmark");
+            sender.setSource(source);
+            Target target = new Target();
+            target.setAddress("benchmark");
+            sender.setTarget(target);
+            sender.open();
+        }
+
+        @Override
+        public void onConnectionBound(Event event) {
+            Transport transport = event.getTransport();
+            ProtonJSasl sasl = (ProtonJSasl) transport.sasl();
+            sasl.setClientMechanisms(setup.clientMechanism());
+            sasl.setPipelined(setup.pipelined);
+            if (setup.tls) {
+                transport.ssl(new KeyStoreSslDomain(sslContext, SslDomain.Mode.CLIENT));
+            }
+            ((TransportImpl) transport).setProtocolTracer(this);
+        }
+
+        @Override
+        public void sentFrame(TransportFrame frame) {
+            if (frame.getBody() instanceof Open) {
+                mark(SECURE);
+            }
+        }
+
+        @Override
+        public void receivedFrame(TransportFrame frame) {
+            FrameBody body = frame.getBody();
+            if (body instanceof Open) {
+                mark(OPEN);
+            } else if (body instanceof Begin) {
+                mark(BEGIN);
+            } else if (body instanceof Attach) {
+                mark(ATTACH);
+            }
+        }
+
+        @Override
+        public void onLinkFlow(Event event) {
+            if (marks[FLOW] == 0 && event.getLink().getCredit() > 0) {
+                mark(FLOW);
+                event.getConnection().close();
+            }
+        }
+
+        @Override
+        public void onTransportClosed(Event event) {
+            if (marks[FLOW] == 0) {
+                throw new IllegalStateException(setup + ": connection closed before the link had credit: "
+                                                + event.getTransport().getCondition());
+            }
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                latencies[phase][connections] = marks[phase] == 0 ? 0 : marks[phase] - start;
+            }
+            if (++connections < latencies[0].length) {
+                connect(event.getReactor());
+            }
+        }
+    }
+
+    private static long allocatedBytes(List<Thread> threads) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (Thread thread : threads) {
+            total += allocations.getThreadAllocatedBytes(thread.getId());
+        }
+        return total;
+    }
+
+    private long[][] connect(Setup setup, int port, int connections) throws IOException {
+        ClientHandler client = new ClientHandler(setup, port, connections);
+        Reactor reactor = Proton.reactor();
+        client.connect(reactor);
+        reactor.run();
+        return client.latencies;
+    }
+
+    public Result measure(Setup setup, int connections) throws Exception {
+        final Reactor server = Proton.reactor();
+        server.setTimeout(100);
+        final Acceptor acceptor = server.acceptor(HOST, 0, new ServerHandler(setup));
+        int port = ((AcceptorImpl) acceptor).getPortNumber();
+
+        final boolean[] stopped = new boolean[1];
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.start();
+                while (server.process()) {
+                    synchronized (stopped) {
+                        if (stopped[0]) {
+                            break;
+                        }
+                    }
+                }
+                acceptor.close();
+                server.stop();
+            }
+        }, "benchmark-server");
+        serverThread.start();
+
+        try {
+            // warm up before measuring
+            connect(setup, port, Math.max(1, connections / 10));
+
+            List<Thread> threads = Arrays.asList(Thread.currentThread(), serverThread);
+            long before = allocatedBytes(threads);
+            long[][] latencies = connect(setup, port, connections);
+            long after = allocatedBytes(threads);
+            return new Result(latencies, before < 0 ? -1 : (after - before) / connections);
+        } finally {
+            synchronized (stopped) {
+                stopped[0] = true;
+            }
+            server.wakeup();
+            serverThread.join();
+        }
+    }
+
+    public static List<Setup> setups() {
+        List<Setup> setups = new ArrayList<Setup>();
+        for (boolean tls : new boolean[] { false, true }) {
+            for (String mechanism : new String[] { "ANONYMOUS", "PLAIN", "SCRAM-SHA-256" }) {
+                setups.add(new Setup(tls, mechanism, false));
+                // SCRAM's challenge can't be pipelined
+                if (!"SCRAM-SHA-256".equals(mechanism)) {
+                    setups.add(new Setup(tls, mechanism, true));
+                }
+            }
+        }
+        return setups;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+        ConnectionSetupBenchmark benchmark = new ConnectionSetupBenchmark(KeyStoreSslDomain.generateKeyStore());
+        for (Setup setup : setups()) {
+            Result result = benchmark.measure(setup, connections);
+            long allocated = result.getAllocatedPerConnection();
+            System.out.printf("%s: %d connections, %s allocated per connection%n", setup, connections,
+                              allocated < 0 ? "unknown" : String.format("%.1f KB", allocated / 1024.0));
+            System.out.printf("  %-8s %10s %10s %10s  (microseconds since connect)%n", "", "p50", "p90", "p99");
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                if (phase == SECURE && setup.pipelined) {
+                    continue;
+                }
+                System.out.printf("  %-8s", PHASES[phase]);
+                for (double percentile : PERCENTILES) {
+                    System.out.printf(" %10.1f", result.percentile(phase, percentile) / 1000.0);
+                }
+                System.out.println();
+            }
+        }
+    }
+}
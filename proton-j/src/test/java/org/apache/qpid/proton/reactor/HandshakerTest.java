@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.ProtonJSasl;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+import org.apache.qpid.proton.reactor.impl.AcceptorImpl;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link Handshaker} given SASL server mechanisms authenticates the
+ * connections a reactor accepts, with a client reactor using the matching client
+ * mechanisms.
+ */
+public class HandshakerTest {
+
+    private static final String USERNAME = "user";
+    private static final String PASSWORD = "pencil";
+
+    private final ScramCredential credential = ScramCredential.create(PASSWORD, 1024);
+
+    private final SaslCredentialStore store = new SaslCredentialStore() {
+        @Override
+        public ScramCredential getCredential(String username) {
+            return USERNAME.equals(username) ? credential : null;
+        }
+    };
+
+    private static class ServerHandler extends Handshaker {
+        private Acceptor acceptor;
+        private SaslOutcome outcome;
+        private String authenticatedUser;
+        private boolean remoteOpened;
+
+        ServerHandler(SaslServerMechanism... mechanisms) {
+            super(mechanisms);
+        }
+
+        @Override
+        public void onConnectionRemoteOpen(Event event) {
+            super.onConnectionRemoteOpen(event);
+            remoteOpened = true;
+        }
+
+        @Override
+        public void onTransportClosed(Event event) {
+            ProtonJSasl sasl = (ProtonJSasl) event.getTransport().sasl();
+            outcome = sasl.getOutcome();
+            authenticatedUser = sasl.getAuthenticatedUser();
+            acceptor.close();
+        }
+    }
+
+    private static class ClientHandler extends BaseHandler {
+        private final SaslClientMechanism mechanism;
+        private SaslOutcome outcome;
+        private boolean remoteOpened;
+
+        ClientHandler(SaslClientMechanism mechanism) {
+            this.mechanism = mechanism;
+        }
+
+        @Override
+        public void onConnectionInit(Event event) {
+            event.getConnection().open();
+        }
+
+        @Override
+        public void onConnectionBound(Event event) {
+            ((ProtonJSasl) event.getTransport().sasl()).setClientMechanisms(mechanism);
+        }
+
+        @Override
+        public void onConnectionRemoteOpen(Event event) {
+            remoteOpened = true;
+            event.getConnection().close();
+        }
+
+        @Override
+        public void onTransportError(Event event) {
+            outcome = event.getTransport().sasl().getOutcome();
+        }
+
+        @Override
+        public void onTransportClosed(Event event) {
+            outcome = event.getTransport().sasl().getOutcome();
+            if (event.getConnection().getLocalState() != EndpointState.CLOSED) {
+                event.getConnection().close();
+            }
+        }
+    }
+
+    private void handshake(ServerHandler server, ClientHandler client) throws IOException {
+        Reactor reactor = Proton.reactor();
+        server.acceptor = reactor.acceptor("127.0.0.1", 0, server);
+        reactor.connectionToHost("127.0.0.1", ((AcceptorImpl) server.acceptor).getPortNumber(), client);
+        reactor.run();
+        reactor.free();
+    }
+
+    @Test
+    public void plainHandshake() throws IOException {
+        ServerHandler server = new ServerHandler(SaslServerMechanism.Factory.plain(store, null));
+        ClientHandler client = new ClientHandler(SaslClientMechanism.Factory.plain(USERNAME, PASSWORD));
+        handshake(server, client);
+
+        assertEquals(SaslOutcome.PN_SASL_OK, server.outcome);
+        assertEquals(USERNAME, server.authenticatedUser);
+        assertEquals(SaslOutcome.PN_SASL_OK, client.outcome);
+        assertTrue("server should have seen the client's open", server.remoteOpened);
+        assertTrue("client should have seen the server's open", client.remoteOpened);
+    }
+
+    @Test
+    public void scramHandshake() throws IOException {
+        ServerHandler server = new ServerHandler(SaslServerMechanism.Factory.plain(store, null),
+                                                 SaslServerMechanism.Factory.scramSha256(store, null));
+        ClientHandler client = new ClientHandler(SaslClientMechanism.Factory.scramSha256(USERNAME, PASSWORD));
+        handshake(server, client);
+
+        assertEquals(SaslOutcome.PN_SASL_OK, server.outcome);
+        assertEquals(USERNAME, server.authenticatedUser);
+        assertEquals(SaslOutcome.PN_SASL_OK, client.outcome);
+        assertTrue("client should have seen the server's open", client.remoteOpened);
+    }
+
+    /**
+     * The credential checks run on another thread, which must wake the reactor
+     * to carry on with the handshake.
+     */
+    @Test
+    public void scramHandshakeVerifiedOnExecutor() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ServerHandler server = new ServerHandler(SaslServerMechanism.Factory.scramSha256(store, executor));
+            ClientHandler client = new ClientHandler(SaslClientMechanism.Factory.scramSha256(USERNAME, PASSWORD));
+            handshake(server, client);
+
+            assertEquals(SaslOutcome.PN_SASL_OK, server.outcome);
+            assertEquals(USERNAME, server.authenticatedUser);
+            assertTrue("client should have seen the server's open", client.remoteOpened);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void wrongPasswordFailsHandshake() throws IOException {
+        ServerHandler server = new ServerHandler(SaslServerMechanism.Factory.plain(store, null),
+                                                 SaslServerMechanism.Factory.scramSha256(store, null));
+        ClientHandler client = new ClientHandler(SaslClientMechanism.Factory.scramSha256(USERNAME, "wrong"));
+        handshake(server, client);
+
+        assertEquals(SaslOutcome.PN_SASL_AUTH, server.outcome);
+        assertNull(server.authenticatedUser);
+        assertEquals(SaslOutcome.PN_SASL_AUTH, client.outcome);
+        assertFalse("server should not have seen the client's open", server.remoteOpened);
+        assertFalse("client should not have seen the server's open", client.remoteOpened);
+    }
+}
@@ -437,14 +437,23 @@ public class ReactorTest {
     }
 
     private void transfer(int count, int window) throws IOException {
+        transfer(count, window, Reactor.DEFAULT_IO_BUDGET);
+    }
+
+    private void transfer(int count, int window, int ioBudget) throws IOException {
+        transfer(count, new FlowController(window), ioBudget);
+    }
+
+    private void transfer(int count, FlowController flowController, int ioBudget) throws IOException {
         reactor = reactorFactory.newReactor();
+        reactor.setIOBudget(ioBudget);
         ServerHandler sh = new ServerHandler();
         Acceptor acceptor = reactor.acceptor("127.0.0.1", 0, sh);
         sh.setAcceptor(acceptor);
         sh.add(new Handshaker());
         // XXX: a window of 1 doesn't work unless the flowcontroller is
         // added after the thing that settles the delivery
-        sh.add(new FlowController(window));
+        sh.add(flowController);
         SinkHandler snk = new SinkHandler();
         sh.add(snk);
 
@@ -474,6 +483,23 @@ public class ReactorTest {
         transfer(4*1024, 1024);
     }
 
+    @Test
+    public void transfer_4096_1024_singleIOPerEvent() throws IOException {
+        transfer(4*1024, 1024, 1);
+    }
+
+    @Test
+    public void transfer_4096_adaptive() throws IOException {
+        transfer(4*1024, new FlowController(2, 16, 1024), Reactor.DEFAULT_IO_BUDGET);
+    }
+
+    @Test
+    public void transfer_4096_adaptive_byteBudget() throws IOException {
+        FlowController flowController = new FlowController(2, 64, 1024);
+        flowController.setByteBudget(4*1024);
+        transfer(4*1024, flowController, Reactor.DEFAULT_IO_BUDGET);
+    }
+
     @Test
     public void schedule() throws IOException {
         TestHandler reactorHandler = new TestHandler();
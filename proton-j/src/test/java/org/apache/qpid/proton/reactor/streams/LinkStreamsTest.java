@@ -0,0 +1,239 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.reactor.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.reactor.Acceptor;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.impl.AcceptorImpl;
+import org.junit.Test;
+
+public class LinkStreamsTest {
+
+    /**
+     * Publishes a fixed number of messages, never signalling more than has
+     * been requested.
+     */
+    private static class CountingPublisher implements Publisher<Message> {
+        private final int count;
+        private int sent;
+        private long requested;
+        private long total;
+
+        CountingPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super Message> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    total += n;
+                    while (requested > 0 && sent < count) {
+                        requested--;
+                        Message message = Proton.message();
+                        message.setBody(new AmqpValue("message-" + sent++));
+                        subscriber.onNext(message);
+                    }
+                    if (sent == count) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    sent = count;
+                }
+            });
+        }
+    }
+
+    /**
+     * Requests messages in batches, recording any signal beyond its demand.
+     */
+    private static class BatchingSubscriber implements Subscriber<Message> {
+        private final int batch;
+        private final List<Object> received = new ArrayList<Object>();
+        private Subscription subscription;
+        private long outstanding;
+        private boolean completed;
+        private Throwable failure;
+        private Connection connection;
+        private Acceptor acceptor;
+
+        BatchingSubscriber(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            outstanding += batch;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(Message message) {
+            if (--outstanding < 0) {
+                failure = new AssertionError("Received more than requested");
+            }
+            received.add(((AmqpValue) message.getBody()).getValue());
+            if (outstanding == 0) {
+                outstanding += batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            failure = cause;
+            finish();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            finish();
+        }
+
+        private void finish() {
+            acceptor.close();
+            connection.close();
+        }
+    }
+
+    private static class ServerHandler extends BaseHandler {
+        private final BatchingSubscriber subscriber;
+
+        ServerHandler(BatchingSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onConnectionRemoteOpen(Event event) {
+            subscriber.connection = event.getConnection();
+            event.getConnection().open();
+        }
+
+        @Override
+        public void onSessionRemoteOpen(Event event) {
+            event.getSession().open();
+        }
+
+        @Override
+        public void onLinkRemoteOpen(Event event) {
+            Link link = event.getLink();
+            if (link instanceof Receiver) {
+                link.setSource(link.getRemoteSource().copy());
+                link.setTarget(link.getRemoteTarget().copy());
+                new ReceiverPublisher((Receiver) link).subscribe(subscriber);
+            }
+        }
+    }
+
+    private static class ClientHandler extends BaseHandler {
+        private final Publisher<Message> publisher;
+
+        ClientHandler(Publisher<Message> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void onConnectionInit(Event event) {
+            Connection connection = event.getConnection();
+            Session session = connection.session();
+            Sender sender = session.sender("sender");
+            Source source = new Source();
+            source.setAddress("queue");
+            sender.setSource(source);
+            Target target = new Target();
+            target.setAddress("queue");
+            sender.setTarget(target);
+            connection.open();
+            session.open();
+            publisher.subscribe(new SenderSubscriber(sender));
+        }
+
+        @Override
+        public void onConnectionRemoteClose(Event event) {
+            event.getConnection().close();
+        }
+    }
+
+    private void transfer(int count, int batch) throws IOException {
+        Reactor reactor = Proton.reactor();
+        BatchingSubscriber subscriber = new BatchingSubscriber(batch);
+        Acceptor acceptor = reactor.acceptor("127.0.0.1", 0, new ServerHandler(subscriber));
+        subscriber.acceptor = acceptor;
+
+        CountingPublisher publisher = new CountingPublisher(count);
+        reactor.connectionToHost("127.0.0.1", ((AcceptorImpl) acceptor).getPortNumber(), new ClientHandler(publisher));
+        reactor.run();
+        reactor.free();
+
+        assertNull("Unexpected failure: " + subscriber.failure, subscriber.failure);
+        assertTrue("Stream did not complete", subscriber.completed);
+        assertEquals(count, subscriber.received.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("message-" + i, subscriber.received.get(i));
+        }
+        // the publisher is only ever asked for what the receiver has granted
+        assertTrue("Publisher was asked for more than the receiver requested",
+                   publisher.total <= subscriber.received.size() + subscriber.outstanding);
+    }
+
+    @Test
+    public void transfer_1_1() throws IOException {
+        transfer(1, 1);
+    }
+
+    @Test
+    public void transfer_1000_7() throws IOException {
+        transfer(1000, 7);
+    }
+
+    @Test
+    public void transfer_1000_1000() throws IOException {
+        transfer(1000, 1000);
+    }
+}
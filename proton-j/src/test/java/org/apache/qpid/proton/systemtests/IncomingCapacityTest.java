@@ -0,0 +1,378 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.proton.systemtests;
+
+import static java.util.EnumSet.of;
+import static org.apache.qpid.proton.engine.EndpointState.ACTIVE;
+import static org.apache.qpid.proton.engine.EndpointState.UNINITIALIZED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.amqp.transport.Flow;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.impl.ProtocolTracer;
+import org.apache.qpid.proton.engine.impl.TransportImpl;
+import org.apache.qpid.proton.framing.TransportFrame;
+import org.junit.Test;
+
+public class IncomingCapacityTest extends EngineTestBase
+{
+    private static final int FRAME_SIZE = 512;
+
+    private int _tag;
+    private boolean _autoTuning;
+    private int _connectionCapacity;
+
+    private void open(int maxFrameSize) throws Exception
+    {
+        getClient().transport = Proton.transport();
+        getServer().transport = Proton.transport();
+        if (maxFrameSize > 0)
+        {
+            getClient().transport.setMaxFrameSize(maxFrameSize);
+        }
+
+        getClient().connection = Proton.connection();
+        getClient().connection.setIncomingCapacity(_connectionCapacity);
+        getClient().transport.bind(getClient().connection);
+        getServer().connection = Proton.connection();
+        getServer().transport.bind(getServer().connection);
+
+        getClient().connection.open();
+        getServer().connection.open();
+        doOutputInputCycle();
+
+        getClient().session = getClient().connection.session();
+        getClient().session.setIncomingWindowAutoTuning(_autoTuning);
+        getClient().session.open();
+        pumpClientToServer();
+        getServer().session = getServer().connection.sessionHead(of(UNINITIALIZED), of(ACTIVE));
+        getServer().session.open();
+        pumpServerToClient();
+
+        getClient().source = new Source();
+        getClient().source.setAddress("queue");
+        getClient().target = new Target();
+        getClient().receiver = getClient().session.receiver("link1");
+        getClient().receiver.setSource(getClient().source);
+        getClient().receiver.setTarget(getClient().target);
+        getClient().receiver.open();
+        pumpClientToServer();
+
+        getServer().sender = (Sender) getServer().connection.linkHead(of(UNINITIALIZED), of(ACTIVE));
+        getServer().sender.setSource(getServer().sender.getRemoteSource());
+        getServer().sender.setTarget(getServer().sender.getRemoteTarget());
+        getServer().sender.open();
+        pumpServerToClient();
+        assertEndpointState(getClient().receiver, ACTIVE, ACTIVE);
+    }
+
+    private void pump()
+    {
+        while (transfer(getClient().transport, getServer().transport)
+               | transfer(getServer().transport, getClient().transport))
+        {
+        }
+    }
+
+    /**
+     * Moves as much output as the destination input buffer accepts, which
+     * a small max frame size keeps below a full burst of transfers.
+     */
+    private boolean transfer(Transport from, Transport to)
+    {
+        ByteBuffer output = from.getOutputBuffer();
+        if (!output.hasRemaining())
+        {
+            return false;
+        }
+        ByteBuffer input = to.getInputBuffer();
+        int size = Math.min(output.remaining(), input.remaining());
+        ByteBuffer chunk = output.duplicate();
+        chunk.limit(chunk.position() + size);
+        input.put(chunk);
+        output.position(output.position() + size);
+        from.outputConsumed();
+        to.processInput().checkIsOk();
+        return true;
+    }
+
+    private void send(int size)
+    {
+        send(getServer().sender, size);
+    }
+
+    private void send(Sender sender, int size)
+    {
+        sender.delivery(Integer.toString(_tag++).getBytes());
+        byte[] payload = new byte[size];
+        Arrays.fill(payload, (byte) 'x');
+        assertEquals(size, sender.send(payload, 0, size));
+        sender.advance();
+    }
+
+    private int consume()
+    {
+        Receiver receiver = getClient().receiver;
+        byte[] buffer = new byte[4096];
+        int count = 0;
+        Delivery delivery;
+        while ((delivery = receiver.current()) != null && !delivery.isPartial())
+        {
+            while (receiver.recv(buffer, 0, buffer.length) > 0)
+            {
+            }
+            receiver.advance();
+            delivery.settle();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testReceiverCapacityWithholdsCredit() throws Exception
+    {
+        open(0);
+        Receiver receiver = getClient().receiver;
+        receiver.setIncomingCapacity(1000);
+        receiver.flow(100);
+        pump();
+
+        // nothing is known about delivery sizes yet, so a single credit is issued
+        assertEquals(1, getServer().sender.getCredit());
+        assertEquals(100, receiver.getCredit());
+
+        send(300);
+        pump();
+        assertEquals(300, receiver.getIncomingBytes());
+        assertEquals(0, getServer().sender.getCredit());
+
+        assertEquals(1, consume());
+        pump();
+        assertEquals(0, receiver.getIncomingBytes());
+        assertEquals(1000 / 300, getServer().sender.getCredit());
+
+        for (int i = 0; i < 1000 / 300; i++)
+        {
+            send(300);
+        }
+        pump();
+        assertTrue(receiver.getIncomingBytes() <= 1000);
+        assertEquals(0, getServer().sender.getCredit());
+
+        assertEquals(1000 / 300, consume());
+        pump();
+        assertEquals(1000 / 300, getServer().sender.getCredit());
+    }
+
+    @Test
+    public void testReceiverCapacityAdmitsOversizedDelivery() throws Exception
+    {
+        open(0);
+        Receiver receiver = getClient().receiver;
+        receiver.setIncomingCapacity(100);
+        receiver.flow(10);
+        pump();
+
+        send(300);
+        pump();
+        assertEquals(300, receiver.getIncomingBytes());
+        assertEquals(0, getServer().sender.getCredit());
+
+        // an empty buffer always earns one credit, however large deliveries are
+        assertEquals(1, consume());
+        pump();
+        assertEquals(1, getServer().sender.getCredit());
+    }
+
+    @Test
+    public void testDrainReleasesWithheldCredit() throws Exception
+    {
+        open(0);
+        Receiver receiver = getClient().receiver;
+        receiver.setIncomingCapacity(100);
+        receiver.drain(10);
+        pump();
+
+        assertEquals(1, getServer().sender.getCredit());
+        getServer().sender.drained();
+        pump();
+
+        assertEquals(0, receiver.getCredit());
+        assertTrue(!receiver.draining());
+    }
+
+    @Test
+    public void testConnectionCapacityBoundsBufferedBytes() throws Exception
+    {
+        open(FRAME_SIZE);
+        int capacity = 8 * FRAME_SIZE;
+        getClient().connection.setIncomingCapacity(capacity);
+        getClient().receiver.flow(100);
+        pump();
+
+        int total = 20;
+        for (int i = 0; i < total; i++)
+        {
+            send(1000);
+        }
+        pump();
+
+        int received = 0;
+        while (received < total)
+        {
+            assertTrue("buffered " + getClient().connection.getIncomingBytes(),
+                       getClient().connection.getIncomingBytes() <= capacity);
+            int consumed = consume();
+            assertTrue("no progress after " + received, consumed > 0);
+            received += consumed;
+            pump();
+        }
+        assertEquals(total, received);
+        assertEquals(0, getClient().connection.getIncomingBytes());
+    }
+
+    @Test
+    public void testConnectionCapacityIsSharedBetweenSessions() throws Exception
+    {
+        assertSessionsShareCapacity(false);
+    }
+
+    @Test
+    public void testSessionStarvedByStaleWindowIsFlowedAgain() throws Exception
+    {
+        // the second session's window is worked out while the first still
+        // holds the whole capacity, so it is only reopened once the first
+        // gives up its excess
+        assertSessionsShareCapacity(true);
+    }
+
+    private void assertSessionsShareCapacity(boolean secondFlowsFirst) throws Exception
+    {
+        _connectionCapacity = 64 * 1024;
+        open(4096);
+
+        // a second session, begun after the first was offered the whole capacity
+        Session session = getClient().connection.session();
+        session.open();
+        Receiver receiver = session.receiver("link2");
+        receiver.setSource(getClient().source);
+        receiver.setTarget(getClient().target);
+        receiver.open();
+        pump();
+        getServer().connection.sessionHead(of(UNINITIALIZED), of(ACTIVE)).open();
+        Sender sender = (Sender) getServer().connection.linkHead(of(UNINITIALIZED), of(ACTIVE));
+        sender.setSource(sender.getRemoteSource());
+        sender.setTarget(sender.getRemoteTarget());
+        sender.open();
+        pump();
+
+        if (secondFlowsFirst)
+        {
+            receiver.flow(10);
+            getClient().receiver.flow(10);
+        }
+        else
+        {
+            getClient().receiver.flow(10);
+            receiver.flow(10);
+        }
+        pump();
+        for (int i = 0; i < 3; i++)
+        {
+            send(100);
+            send(sender, 100);
+        }
+        pump();
+
+        assertEquals(3, getClient().receiver.getQueued());
+        assertEquals(3, receiver.getQueued());
+    }
+
+    @Test
+    public void testAutoTunedSessionEchoIsAnswered() throws Exception
+    {
+        _autoTuning = true;
+        open(FRAME_SIZE);
+        final List<Flow> flowsIn = new ArrayList<Flow>();
+        final List<Flow> flowsOut = new ArrayList<Flow>();
+        ((TransportImpl) getServer().transport).setProtocolTracer(new ProtocolTracer()
+        {
+            @Override
+            public void receivedFrame(TransportFrame transportFrame)
+            {
+                if (transportFrame.getBody() instanceof Flow)
+                {
+                    flowsIn.add((Flow) transportFrame.getBody());
+                }
+            }
+
+            @Override
+            public void sentFrame(TransportFrame transportFrame)
+            {
+                if (transportFrame.getBody() instanceof Flow)
+                {
+                    flowsOut.add((Flow) transportFrame.getBody());
+                }
+            }
+        });
+        getClient().receiver.flow(100);
+        pump();
+
+        int total = 20;
+        for (int i = 0; i < total; i++)
+        {
+            send(1000);
+        }
+        int received = 0;
+        while (received < total)
+        {
+            pump();
+            int consumed = consume();
+            assertTrue("no progress after " + received, consumed > 0);
+            received += consumed;
+        }
+        pump();
+
+        int echoes = 0;
+        for (Flow flow : flowsIn)
+        {
+            if (flow.getEcho())
+            {
+                echoes++;
+            }
+        }
+        assertTrue("no round trip was probed", echoes > 0);
+        assertTrue("echo left unanswered", flowsOut.size() >= echoes);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.systemtests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.ProtonJSasl;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.Sasl.SaslState;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialCache;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+import org.junit.Test;
+
+public class SaslMechanismTest extends EngineTestBase
+{
+    private final Map<String, ScramCredential> _credentials = new HashMap<String, ScramCredential>();
+
+    private final SaslCredentialStore _credentialStore = new SaslCredentialStore()
+    {
+        @Override
+        public ScramCredential getCredential(String username)
+        {
+            return _credentials.get(username);
+        }
+    };
+
+    private final List<Runnable> _tasks = new ArrayList<Runnable>();
+
+    private final Executor _executor = new Executor()
+    {
+        @Override
+        public void execute(Runnable task)
+        {
+            _tasks.add(task);
+        }
+    };
+
+    private ProtonJSasl _clientSasl;
+    private ProtonJSasl _serverSasl;
+
+    private void createTransports(SaslClientMechanism clientMechanism, SaslServerMechanism... serverMechanisms)
+    {
+        _credentials.put("user", ScramCredential.create("pencil", 1024));
+
+        getClient().transport = Proton.transport();
+        _clientSasl = (ProtonJSasl) getClient().transport.sasl();
+        _clientSasl.setClientMechanisms(clientMechanism);
+
+        getServer().transport = Proton.transport();
+        _serverSasl = (ProtonJSasl) getServer().transport.sasl();
+        _serverSasl.setServerMechanisms(serverMechanisms);
+    }
+
+    /**
+     * Moves bytes between the transports until neither has anything left to write.
+     */
+    private void pump()
+    {
+        while (transfer(getClient().transport, getServer().transport) | transfer(getServer().transport, getClient().transport))
+        {
+            // keep going
+        }
+    }
+
+    private boolean transfer(Transport from, Transport to)
+    {
+        int pending = from.pending();
+        if (pending <= 0 || to.capacity() <= 0)
+        {
+            return false;
+        }
+        ByteBuffer head = from.head();
+        ByteBuffer tail = to.tail();
+        int size = Math.min(pending, tail.remaining());
+        head.limit(head.position() + size);
+        tail.put(head);
+        from.pop(size);
+        to.process();
+        return true;
+    }
+
+    private void assertOutcome(SaslOutcome outcome)
+    {
+        SaslState state = outcome == SaslOutcome.PN_SASL_OK ? SaslState.PN_SASL_PASS : SaslState.PN_SASL_FAIL;
+        assertEquals(outcome, _serverSasl.getOutcome());
+        assertEquals(state, _serverSasl.getState());
+        assertEquals(outcome, _clientSasl.getOutcome());
+        assertEquals(state, _clientSasl.getState());
+    }
+
+    @Test
+    public void testPlain()
+    {
+        createTransports(SaslClientMechanism.Factory.plain("user", "pencil"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null));
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+        assertEquals("user", _serverSasl.getAuthenticatedUser());
+    }
+
+    @Test
+    public void testPlainWithWrongPassword()
+    {
+        createTransports(SaslClientMechanism.Factory.plain("user", "pen"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null));
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_AUTH);
+        assertNull(_serverSasl.getAuthenticatedUser());
+
+        // neither end has anything more to say once authentication has failed
+        assertEquals(Transport.END_OF_STREAM, getServer().transport.pending());
+        assertEquals(Transport.END_OF_STREAM, getClient().transport.pending());
+        assertEquals(Transport.END_OF_STREAM, getClient().transport.capacity());
+        assertNotNull(getClient().transport.getCondition());
+    }
+
+    @Test
+    public void testScramSha256()
+    {
+        createTransports(SaslClientMechanism.Factory.scramSha256("user", "pencil"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null),
+                         SaslServerMechanism.Factory.scramSha256(_credentialStore, null));
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+        assertEquals("user", _serverSasl.getAuthenticatedUser());
+        assertNull(getClient().transport.getCondition());
+    }
+
+    @Test
+    public void testScramSha256WithUnknownUser()
+    {
+        createTransports(SaslClientMechanism.Factory.scramSha256("nobody", "pencil"),
+                         SaslServerMechanism.Factory.scramSha256(_credentialStore, null));
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_AUTH);
+    }
+
+    @Test
+    public void testAnonymous()
+    {
+        createTransports(SaslClientMechanism.Factory.anonymous(),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null),
+                         SaslServerMechanism.Factory.anonymous());
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+        assertEquals("anonymous", _serverSasl.getAuthenticatedUser());
+    }
+
+    @Test
+    public void testNoMechanismInCommonClosesClient()
+    {
+        createTransports(SaslClientMechanism.Factory.plain("user", "pencil"),
+                         SaslServerMechanism.Factory.anonymous());
+        pump();
+
+        assertEquals(SaslState.PN_SASL_FAIL, _clientSasl.getState());
+        assertNotNull(getClient().transport.getCondition());
+        assertTrue(getClient().transport.pending() < 0);
+    }
+
+    @Test
+    public void testVerificationOnExecutor()
+    {
+        createTransports(SaslClientMechanism.Factory.scramSha256("user", "pencil"),
+                         SaslServerMechanism.Factory.scramSha256(_credentialStore, _executor));
+
+        // the server holds its first challenge back until the credential has been looked up
+        pump();
+        assertEquals(SaslState.PN_SASL_STEP, _serverSasl.getState());
+        assertEquals(1, _tasks.size());
+        _tasks.remove(0).run();
+        pump();
+
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+        assertEquals("user", _serverSasl.getAuthenticatedUser());
+    }
+
+    private void authenticateTwiceWithCache(SaslClientMechanism firstClient, SaslClientMechanism secondClient,
+                                            SaslServerMechanism serverMechanism)
+    {
+        createTransports(firstClient, serverMechanism);
+        pump();
+        assertEquals(1, _tasks.size());
+        _tasks.remove(0).run();
+        pump();
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+
+        // the reconnecting client is verified from the cache, without using the executor
+        createTransports(secondClient, serverMechanism);
+        pump();
+        assertEquals(0, _tasks.size());
+        assertOutcome(SaslOutcome.PN_SASL_OK);
+        assertEquals("user", _serverSasl.getAuthenticatedUser());
+    }
+
+    @Test
+    public void testPlainWithCache()
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(10, 1, TimeUnit.HOURS);
+        SaslServerMechanism server = SaslServerMechanism.Factory.plain(_credentialStore, _executor, cache);
+        authenticateTwiceWithCache(SaslClientMechanism.Factory.plain("user", "pencil"),
+                                   SaslClientMechanism.Factory.plain("user", "pencil"), server);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // a different password is not accepted from the cache
+        createTransports(SaslClientMechanism.Factory.plain("user", "pen"), server);
+        pump();
+        assertEquals(1, _tasks.size());
+        _tasks.remove(0).run();
+        pump();
+        assertOutcome(SaslOutcome.PN_SASL_AUTH);
+    }
+
+    @Test
+    public void testScramSha256WithCache()
+    {
+        SaslCredentialCache cache = new SaslCredentialCache(10, 1, TimeUnit.HOURS);
+        SaslServerMechanism server = SaslServerMechanism.Factory.scramSha256(_credentialStore, _executor, cache);
+        authenticateTwiceWithCache(SaslClientMechanism.Factory.scramSha256("user", "pencil"),
+                                   SaslClientMechanism.Factory.scramSha256("user", "pencil"), server);
+        assertEquals(1, cache.getHits());
+
+        // the cached credential still requires the right password
+        createTransports(SaslClientMechanism.Factory.scramSha256("user", "pen"), server);
+        pump();
+        assertEquals(0, _tasks.size());
+        assertOutcome(SaslOutcome.PN_SASL_AUTH);
+    }
+}
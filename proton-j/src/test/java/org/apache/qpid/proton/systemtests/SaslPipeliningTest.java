@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.proton.systemtests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.ProtonJSasl;
+import org.apache.qpid.proton.engine.Sasl.SaslOutcome;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.engine.TransportException;
+import org.apache.qpid.proton.engine.sasl.SaslClientMechanism;
+import org.apache.qpid.proton.engine.sasl.SaslCredentialStore;
+import org.apache.qpid.proton.engine.sasl.SaslServerMechanism;
+import org.apache.qpid.proton.engine.sasl.ScramCredential;
+import org.junit.Test;
+
+/**
+ * Counts the flights of bytes from client to server, each costing a round trip after the
+ * first, and the writes the client makes, before the server sees the client's open.
+ */
+public class SaslPipeliningTest extends EngineTestBase
+{
+    private static final Logger LOGGER = Logger.getLogger(SaslPipeliningTest.class.getName());
+
+    private static final ScramCredential CREDENTIAL = ScramCredential.create("pencil", 1024);
+
+    private final SaslCredentialStore _credentialStore = new SaslCredentialStore()
+    {
+        @Override
+        public ScramCredential getCredential(String username)
+        {
+            return "user".equals(username) ? CREDENTIAL : null;
+        }
+    };
+
+    private ProtonJSasl _clientSasl;
+    private ProtonJSasl _serverSasl;
+    private int _clientWrites;
+
+    private void createTransports(boolean pipelined, SaslClientMechanism clientMechanism,
+                                  SaslServerMechanism... serverMechanisms)
+    {
+        getClient().transport = Proton.transport();
+        _clientSasl = (ProtonJSasl) getClient().transport.sasl();
+        _clientSasl.setClientMechanisms(clientMechanism);
+        _clientSasl.setPipelined(pipelined);
+        getClient().connection = Proton.connection();
+        getClient().transport.bind(getClient().connection);
+        getClient().connection.open();
+
+        getServer().transport = Proton.transport();
+        _serverSasl = (ProtonJSasl) getServer().transport.sasl();
+        _serverSasl.setServerMechanisms(serverMechanisms);
+        getServer().connection = Proton.connection();
+        getServer().transport.bind(getServer().connection);
+        getServer().connection.open();
+    }
+
+    /**
+     * Moves everything one transport has to write to the other, as the other can take it.
+     *
+     * @return the number of writes, each of what was pending at the time.
+     */
+    private int flight(Transport from, Transport to)
+    {
+        int writes = 0;
+        int pending;
+        while ((pending = from.pending()) > 0)
+        {
+            ByteBuffer head = from.head().duplicate();
+            head.limit(head.position() + pending);
+            while (head.hasRemaining() && to.capacity() > 0)
+            {
+                ByteBuffer tail = to.tail();
+                ByteBuffer chunk = head.duplicate();
+                chunk.limit(chunk.position() + Math.min(head.remaining(), tail.remaining()));
+                head.position(chunk.limit());
+                tail.put(chunk);
+                to.process();
+            }
+            from.pop(pending - head.remaining());
+            writes++;
+            if (head.hasRemaining())
+            {
+                break;
+            }
+        }
+        return writes;
+    }
+
+    private boolean isServerOpen()
+    {
+        return getServer().connection.getRemoteState() == EndpointState.ACTIVE;
+    }
+
+    /**
+     * @return the number of flights from client to server before the server saw the client's
+     *         open, or -1 if it did not within a few.
+     */
+    private int flightsUntilServerOpen()
+    {
+        _clientWrites = 0;
+        for (int flights = 1; flights <= 4; flights++)
+        {
+            _clientWrites += flight(getClient().transport, getServer().transport);
+            if (isServerOpen())
+            {
+                flight(getServer().transport, getClient().transport);
+                return flights;
+            }
+            flight(getServer().transport, getClient().transport);
+        }
+        return -1;
+    }
+
+    @Test
+    public void testPipeliningSavesRoundTrip()
+    {
+        createTransports(false, SaslClientMechanism.Factory.plain("user", "pencil"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null));
+        int flights = flightsUntilServerOpen();
+        int writes = _clientWrites;
+        // the client waits for the server's mechanisms, then for the outcome
+        assertEquals(3, flights);
+        assertEquals(SaslOutcome.PN_SASL_OK, _clientSasl.getOutcome());
+
+        createTransports(true, SaslClientMechanism.Factory.plain("user", "pencil"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null));
+        int pipelinedFlights = flightsUntilServerOpen();
+        assertEquals(1, pipelinedFlights);
+        assertEquals(1, _clientWrites);
+        assertTrue(writes > _clientWrites);
+        assertEquals(SaslOutcome.PN_SASL_OK, _clientSasl.getOutcome());
+        assertEquals(EndpointState.ACTIVE, getClient().connection.getRemoteState());
+        assertEquals("user", _serverSasl.getAuthenticatedUser());
+
+        LOGGER.fine("Flights until open: " + flights + " unpipelined, " + pipelinedFlights + " pipelined; client writes: "
+                    + writes + " unpipelined, " + _clientWrites + " pipelined");
+    }
+
+    @Test
+    public void testPipelinedInputIsHeldBackUntilVerified()
+    {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                tasks.add(task);
+            }
+        };
+        createTransports(true, SaslClientMechanism.Factory.plain("user", "pencil"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, executor));
+
+        flight(getClient().transport, getServer().transport);
+        assertEquals(1, tasks.size());
+        assertEquals(EndpointState.UNINITIALIZED, getServer().connection.getRemoteState());
+
+        tasks.remove(0).run();
+        flight(getServer().transport, getClient().transport);
+        assertTrue(isServerOpen());
+        assertEquals(EndpointState.ACTIVE, getClient().connection.getRemoteState());
+    }
+
+    @Test
+    public void testPipelinedInputIsDiscardedOnFailure()
+    {
+        createTransports(true, SaslClientMechanism.Factory.plain("user", "pen"),
+                         SaslServerMechanism.Factory.plain(_credentialStore, null));
+        assertEquals(-1, flightsUntilServerOpen());
+
+        assertEquals(SaslOutcome.PN_SASL_AUTH, _clientSasl.getOutcome());
+        assertEquals(EndpointState.UNINITIALIZED, getServer().connection.getRemoteState());
+    }
+
+    @Test
+    public void testChallengeFailsPipelinedExchange()
+    {
+        createTransports(true, SaslClientMechanism.Factory.scramSha256("user", "pencil"),
+                         SaslServerMechanism.Factory.scramSha256(_credentialStore, null));
+        try
+        {
+            flightsUntilServerOpen();
+            fail("expected the pipelined AMQP header to be rejected");
+        }
+        catch (TransportException e)
+        {
+            // expected
+        }
+
+        assertEquals(EndpointState.UNINITIALIZED, getServer().connection.getRemoteState());
+    }
+}